@@ -0,0 +1,28 @@
+#!/usr/bin/env bash
+# Builds the JMH suites (bench profile) and runs them, writing JSON results to
+# bench-results/<date>-<commit>.json so runs can be compared across commits.
+#
+# Usage: scripts/run-benchmarks.sh [JMH options...]
+#   e.g. scripts/run-benchmarks.sh PersistenceBenchmark -p history=1000
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+cd "$ROOT"
+
+mvn -B -q -Pbench -DskipTests package
+
+COMMIT="$(git rev-parse --short HEAD 2>/dev/null || echo nogit)"
+if ! git diff --quiet HEAD 2>/dev/null; then
+    COMMIT="${COMMIT}-dirty"
+fi
+mkdir -p bench-results
+RESULT="$ROOT/bench-results/$(date +%Y%m%d-%H%M%S)-${COMMIT}.json"
+
+# The benchmarks read and write messages.json in the working directory,
+# so run them from a scratch directory instead of the project root.
+WORK="$ROOT/target/bench-work"
+rm -rf "$WORK" && mkdir -p "$WORK"
+cd "$WORK"
+
+java -Djava.awt.headless=true -jar "$ROOT/target/benchmarks.jar" -rf json -rff "$RESULT" "$@"
+echo "Results written to $RESULT"
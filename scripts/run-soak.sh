@@ -0,0 +1,19 @@
+#!/usr/bin/env bash
+# Runs the open-loop load generator against the messaging core from a scratch directory.
+#
+# Usage: scripts/run-soak.sh [--users 5000] [--rate 100] [--duration 3600] [--zipf 1.1] ...
+# An interval histogram log is written to target/soak-work/soak.hlog.
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+cd "$ROOT"
+
+mvn -B -q -Pbench -DskipTests package
+
+# LoadGenerator reads and writes users.json and messages.json in the working directory
+WORK="$ROOT/target/soak-work"
+rm -rf "$WORK" && mkdir -p "$WORK"
+cd "$WORK"
+
+java -Djava.awt.headless=true -Xlog:gc:file=gc.log -cp "$ROOT/target/benchmarks.jar" \
+    LoadGenerator --histogram-log soak.hlog "$@"
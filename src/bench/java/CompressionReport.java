@@ -0,0 +1,153 @@
+//Libraries
+import com.google.gson.Gson;                          // Imports Gson for the uncompressed baseline
+import com.google.gson.GsonBuilder;                   // Imports GsonBuilder for the baseline configuration
+import java.io.ByteArrayOutputStream;                 // Imports ByteArrayOutputStream for the gzip comparison
+import java.io.IOException;                           // Imports IOException for I/O errors
+import java.nio.charset.StandardCharsets;             // Imports UTF-8 for sizes in bytes
+import java.nio.file.Files;                           // Imports Files for reading a real history
+import java.nio.file.Paths;                           // Imports Paths for the history location
+import java.util.ArrayList;                           // Imports ArrayList for the corpus
+import java.util.Arrays;                              // Imports Arrays for wrapping loaded records
+import java.util.List;                                // Imports List interface
+import java.util.concurrent.ThreadLocalRandom;        // Imports ThreadLocalRandom for generated text
+import java.util.zip.GZIPOutputStream;                // Imports GZIPOutputStream for the gzip comparison
+
+/**
+ * Reports what dictionary compression of message bodies saves on disk and costs in time.
+ *
+ * The corpus is either an existing messages.json or generated traffic: Zipf-distributed
+ * stock replies mixed with free text built from a chat vocabulary, within Main's
+ * 50-character limit. A dictionary is trained on the oldest fifth of the corpus and the
+ * whole corpus is then written both ways and read back.
+ *
+ * Usage: java -Dquickchat.compress=true -cp target/benchmarks.jar CompressionReport
+ *        [messages (default 100000) | path/to/messages.json]
+ */
+public class CompressionReport {
+
+    // Stock replies, most common first
+    private static final String[] REPLIES = {
+            "ok", "on my way", "thanks!", "see you at five", "call me when you land",
+            "running late, start without me", "where are you?", "sure", "happy birthday!",
+            "can you pick up milk on the way home", "love you", "good night"
+    };
+    // Vocabulary for free text
+    private static final String[] WORDS = {
+            "ok", "on", "my", "way", "see", "you", "at", "five", "call", "me", "when", "you",
+            "land", "thanks", "where", "are", "dinner", "tonight", "running", "late", "sure",
+            "tomorrow", "meeting", "the", "office", "home", "going", "to", "be", "just", "got"
+    };
+
+    public static void main(String[] args) throws IOException {
+        if (!MessageDictionary.ENABLED) {
+            System.out.println("Run with -Dquickchat.compress=true");
+            return;
+        }
+        List<MessageEntry> corpus = args.length > 0 && Files.exists(Paths.get(args[0]))
+                ? Arrays.asList(JsonSupport.MESSAGES.fromJson(Files.readString(Paths.get(args[0])), MessageEntry[].class))
+                : generate(args.length > 0 ? Integer.parseInt(args[0]) : 100_000);
+
+        // Trains on the oldest fifth, so the rest is text the dictionary has not seen
+        List<String> training = new ArrayList<>();
+        for (MessageEntry entry : corpus.subList(0, Math.max(1, corpus.size() / 5))) {
+            training.add(entry.Message);
+        }
+        MessageDictionary dictionary = MessageDictionary.train(1, training);
+        MessageDictionary.install(dictionary); // In memory only; nothing is written to disk
+
+        Gson plainGson = new GsonBuilder().setPrettyPrinting().create(); // Reflective Gson writes plain bodies
+        long start = System.nanoTime();
+        byte[] plain = plainGson.toJson(corpus).getBytes(StandardCharsets.UTF_8);
+        long plainWrite = System.nanoTime() - start;
+        start = System.nanoTime();
+        byte[] compressed = JsonSupport.MESSAGES.toJson(corpus).getBytes(StandardCharsets.UTF_8);
+        long compressedWrite = System.nanoTime() - start;
+
+        long bodyBytes = 0;
+        long storedBodyBytes = 0;
+        int compressedBodies = 0;
+        for (MessageEntry entry : corpus) {
+            bodyBytes += entry.Message.getBytes(StandardCharsets.UTF_8).length;
+            String z = dictionary.compress(entry.Message);
+            if (z != null) compressedBodies++;
+            storedBodyBytes += z != null ? z.getBytes(StandardCharsets.UTF_8).length + 1 // +1 for the longer field name
+                    : entry.Message.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        long[] reads = bestReadNanos(plain, compressed);
+        long plainRead = reads[0];
+        long compressedRead = reads[1];
+
+        System.out.printf("corpus: %d messages, %.1f MB of bodies, dictionary %d bytes%n",
+                corpus.size(), bodyBytes / 1048576.0, dictionary.size());
+        System.out.printf("bodies stored compressed: %.1f%%, body bytes saved: %.1f%%%n",
+                100.0 * compressedBodies / corpus.size(), 100.0 * (bodyBytes - storedBodyBytes) / bodyBytes);
+        System.out.printf("%-22s %12s %12s %12s%n", "", "file bytes", "write ms", "read ms");
+        System.out.printf("%-22s %12d %12.0f %12.0f%n", "plain", plain.length, plainWrite / 1e6, plainRead / 1e6);
+        System.out.printf("%-22s %12d %12.0f %12.0f%n", "dictionary", compressed.length,
+                compressedWrite / 1e6, compressedRead / 1e6);
+        System.out.printf("%-22s %12d%n", "plain + gzip (whole file)", gzip(plain).length);
+        System.out.printf("saved on disk: %.1f%%%n", 100.0 * (plain.length - compressed.length) / plain.length);
+    }
+
+    /**
+     * Generates a corpus of realistic chat traffic.
+     */
+    private static List<MessageEntry> generate(int size) {
+        ZipfSampler replies = new ZipfSampler(REPLIES.length, 1.1);
+        ZipfSampler words = new ZipfSampler(WORDS.length, 0.8);
+        ZipfSampler recipients = new ZipfSampler(10_000, 1.0);
+        List<MessageEntry> corpus = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String body;
+            if (ThreadLocalRandom.current().nextInt(10) < 6) {
+                body = REPLIES[replies.next()]; // Most traffic is stock replies
+            } else {
+                StringBuilder text = new StringBuilder();
+                while (text.length() < 50) {
+                    String word = WORDS[words.next()];
+                    if (text.length() + word.length() + 1 > 50) break;
+                    if (text.length() > 0) text.append(' ');
+                    text.append(word);
+                }
+                body = text.toString();
+            }
+            String id = String.format("%010d", ThreadLocalRandom.current().nextLong(10_000_000_000L));
+            corpus.add(new MessageEntry(id, id.substring(0, 2) + ":" + (i + 1) + ":" + body.toUpperCase(),
+                    "+27" + String.format("%09d", recipients.next()), body));
+        }
+        return corpus;
+    }
+
+    /**
+     * Returns the best of ten full decodes of each file, taken in turns so that both see
+     * the same JIT and GC conditions.
+     */
+    private static long[] bestReadNanos(byte[]... files) {
+        String[] json = new String[files.length];
+        for (int f = 0; f < files.length; f++) {
+            json[f] = new String(files[f], StandardCharsets.UTF_8);
+        }
+        long[] best = new long[files.length];
+        Arrays.fill(best, Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            for (int f = 0; f < files.length; f++) {
+                long start = System.nanoTime();
+                JsonSupport.MESSAGES.fromJson(json[f], MessageEntry[].class);
+                best[f] = Math.min(best[f], System.nanoTime() - start);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Compresses a whole file with gzip, for comparison.
+     */
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,87 @@
+//Libraries
+import java.lang.management.GarbageCollectorMXBean;   // Imports GC statistics
+import java.lang.management.ManagementFactory;        // Imports the platform MXBeans
+import java.util.ArrayList;                           // Imports ArrayList for the on-heap layout
+import java.util.List;                                // Imports List interface
+
+/**
+ * Compares the heap footprint and GC cost of a large message history held as plain
+ * MessageEntry objects, the same objects with recipients and short bodies pooled through
+ * StringInterner (as loadMessagesFromJson builds them), and the columnar MessageList.
+ * Recipients and bodies are drawn from Zipf distributions, like real skewed traffic.
+ *
+ * Usage: java -Xmx8g -cp target/benchmarks.jar HeapFootprint [heap|interned|arena] [messages]
+ *
+ * Run each layout in its own JVM so the numbers do not mix, e.g. with 10000000 messages.
+ */
+public class HeapFootprint {
+
+    // Bodies from most to least common
+    private static final String[] BODIES = {
+            "ok", "on my way", "thanks!", "see you at five", "call me when you land",
+            "running late, start without me", "where are you?", "sure"
+    };
+
+    public static void main(String[] args) {
+        String layout = args.length > 0 ? args[0] : "arena";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        ZipfSampler recipients = new ZipfSampler(10_000, 1.0);
+        ZipfSampler bodies = new ZipfSampler(BODIES.length, 1.0);
+        boolean intern = layout.equals("interned");
+
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        long start = System.nanoTime();
+        List<MessageEntry> messages = layout.equals("arena") ? new MessageList() : new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String id = String.format("%010d", i);
+            // Fresh String objects each time, as a JSON parser would produce them
+            String recipient = "+27" + String.format("%09d", recipients.next());
+            String body = new String(BODIES[bodies.next()]);
+            if (intern) {
+                recipient = StringInterner.RECIPIENTS.intern(recipient);
+                body = StringInterner.MESSAGES.intern(body);
+            }
+            messages.add(new MessageEntry(id, id.substring(0, 2) + ":" + i + ":OKTHANKS", recipient, body));
+        }
+        long fillMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // A full collection with the history live shows what every old-generation pass costs
+        long fullStart = System.nanoTime();
+        System.gc();
+        long fullGcMillis = (System.nanoTime() - fullStart) / 1_000_000;
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+        System.out.printf("layout=%s messages=%d%n", layout, messages.size());
+        System.out.printf("fill: %d ms, %d collections, %d ms in GC%n",
+                fillMillis, gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+        System.out.printf("live heap after full GC: %.1f MB (full GC took %d ms)%n",
+                heapUsed / 1048576.0, fullGcMillis);
+        if (messages instanceof MessageList list) {
+            System.out.printf("off-heap arena: %.1f MB%n", list.arenaBytes() / 1048576.0);
+        }
+    }
+
+    /**
+     * Returns the number of collections so far, across all collectors.
+     */
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    /**
+     * Returns the milliseconds spent collecting so far, across all collectors.
+     */
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,342 @@
+//Libraries
+import java.io.FileOutputStream;                      // Imports FileOutputStream for the histogram log
+import java.io.PrintStream;                           // Imports PrintStream for the histogram log
+import java.lang.management.GarbageCollectorMXBean;   // Imports GC statistics
+import java.lang.management.ManagementFactory;        // Imports the platform MXBeans
+import java.lang.management.MemoryUsage;              // Imports heap usage figures
+import java.util.HashMap;                             // Imports HashMap for the options
+import java.util.List;                                // Imports List interface
+import java.util.Map;                                 // Imports Map interface
+import java.util.Random;                              // Imports Random for the recipient permutation
+import java.util.concurrent.Executors;                // Imports Executors for the reporter thread
+import java.util.concurrent.LinkedBlockingQueue;      // Imports the worker backlog queue
+import java.util.concurrent.ScheduledExecutorService; // Imports the reporter scheduler
+import java.util.concurrent.ThreadLocalRandom;        // Imports ThreadLocalRandom for traffic generation
+import java.util.concurrent.ThreadPoolExecutor;       // Imports the worker pool
+import java.util.concurrent.TimeUnit;                 // Imports TimeUnit for durations
+import java.util.concurrent.atomic.AtomicLong;        // Imports AtomicLong for counters
+import java.util.concurrent.locks.LockSupport;        // Imports LockSupport for precise pacing
+import org.HdrHistogram.Histogram;                    // Imports HdrHistogram for latency distributions
+import org.HdrHistogram.HistogramLogWriter;           // Imports the histogram log writer
+import org.HdrHistogram.Recorder;                     // Imports the interval recorder
+
+/**
+ * Open-loop load generator and soak harness for the chat flow.
+ *
+ * Simulated users register, log in and send messages through UserManager and Messages
+ * in-process. Operations arrive at a fixed rate whether or not earlier ones have finished
+ * (open loop), and latency is measured from the moment an operation was due, so queueing
+ * behind a slow storeMessage shows up in the numbers instead of being hidden.
+ *
+ * Usage: java -cp target/benchmarks.jar LoadGenerator [--users 2000] [--rate 50]
+ *        [--duration 60] [--zipf 1.0] [--arrivals poisson|uniform] [--report 10]
+ *        [--session 20] [--histogram-log soak.hlog]
+ *
+ * Run it from a scratch directory: it reads and writes users.json and messages.json there.
+ */
+public class LoadGenerator {
+
+    // Password that satisfies Validation.checkPasswordComplexity
+    private static final String PASSWORD = "Passw0rd!";
+    // Vocabulary for generated message bodies
+    private static final String[] WORDS = {
+            "ok", "on", "my", "way", "see", "you", "at", "five", "call", "me", "when", "you",
+            "land", "thanks", "where", "are", "dinner", "tonight", "running", "late", "sure"
+    };
+    // Highest trackable latency (one hour) with 3 significant digits
+    private static final long MAX_LATENCY_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    // Messaging core under test
+    private final UserManager userManager;
+    private final Messages messages;
+
+    // Load shape
+    private final int users;
+    private final double rate;
+    private final long durationNanos;
+    private final boolean poisson;
+    private final int sessionLength;
+    private final ZipfSampler recipients;
+    private final int[] recipientByRank;
+
+    // Per-user state, only touched by the worker thread
+    private final boolean[] registered;
+    private final int[] sessionLeft;
+
+    // Latency recorders per operation type, plus whole-run totals
+    private final Recorder registerRecorder = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final Recorder loginRecorder = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final Recorder sendRecorder = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final Histogram registerTotal = new Histogram(MAX_LATENCY_NANOS, 3);
+    private final Histogram loginTotal = new Histogram(MAX_LATENCY_NANOS, 3);
+    private final Histogram sendTotal = new Histogram(MAX_LATENCY_NANOS, 3);
+
+    // Outcome counters
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    // Single worker, because Messages and UserManager are not thread-safe
+    private final ThreadPoolExecutor worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+
+    private HistogramLogWriter histogramLog;
+    private long lastGcCount;
+    private long lastGcMillis;
+
+    /**
+     * Creates a load generator over a fresh UserManager and Messages.
+     * @param options The parsed command-line options.
+     */
+    public LoadGenerator(Map<String, String> options) {
+        this.users = Integer.parseInt(options.getOrDefault("users", "2000"));
+        this.rate = Double.parseDouble(options.getOrDefault("rate", "50"));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+        this.poisson = !"uniform".equals(options.getOrDefault("arrivals", "poisson"));
+        this.sessionLength = Integer.parseInt(options.getOrDefault("session", "20"));
+        this.recipients = new ZipfSampler(users, Double.parseDouble(options.getOrDefault("zipf", "1.0")));
+
+        // Shuffles which user sits at which popularity rank
+        this.recipientByRank = new int[users];
+        Random rand = new Random(42);
+        for (int i = 0; i < users; i++) {
+            int j = rand.nextInt(i + 1);
+            recipientByRank[i] = recipientByRank[j];
+            recipientByRank[j] = i;
+        }
+
+        this.registered = new boolean[users];
+        this.sessionLeft = new int[users];
+        this.userManager = new UserManager();
+        this.messages = new Messages();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]); // Reads "--name value" pairs
+        }
+        LoadGenerator generator = new LoadGenerator(options);
+        String log = options.get("histogram-log");
+        if (log != null) {
+            generator.histogramLog = new HistogramLogWriter(new PrintStream(new FileOutputStream(log)));
+            generator.histogramLog.outputLogFormatVersion();
+            generator.histogramLog.outputLegend();
+        }
+        generator.run(Long.parseLong(options.getOrDefault("report", "10")));
+        System.exit(0);
+    }
+
+    /**
+     * Drives the load for the configured duration, reporting every interval.
+     * @param reportSeconds Seconds between interval reports.
+     */
+    public void run(long reportSeconds) throws InterruptedException {
+        System.out.printf("Open-loop load: %d users, %.1f ops/s (%s), %d s%n",
+                users, rate, poisson ? "poisson" : "uniform", TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+        snapshotGc();
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long runStart = System.nanoTime();
+        reporter.scheduleAtFixedRate(this::report, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+
+        // Dispatches operations on schedule, regardless of how far behind the worker is
+        long next = runStart;
+        long end = runStart + durationNanos;
+        while (next < end) {
+            long now;
+            while ((now = System.nanoTime()) < next) {
+                LockSupport.parkNanos(next - now);
+            }
+            final long intended = next;
+            worker.execute(() -> perform(intended));
+            next += nextGapNanos();
+        }
+
+        // Lets the backlog drain before the final report
+        worker.shutdown();
+        worker.awaitTermination(1, TimeUnit.HOURS);
+        reporter.shutdownNow();
+        report();
+        summarize(System.nanoTime() - runStart);
+    }
+
+    /**
+     * Time until the next arrival.
+     * @return The gap in nanoseconds.
+     */
+    private long nextGapNanos() {
+        double seconds = poisson
+                ? -Math.log(1 - ThreadLocalRandom.current().nextDouble()) / rate // Exponential gaps
+                : 1.0 / rate;                                                     // Constant gaps
+        return (long) (seconds * 1_000_000_000L);
+    }
+
+    /**
+     * Performs one operation for a random user: registration if they are new,
+     * a login if their session ran out, otherwise a message send.
+     * @param intended The System.nanoTime() at which the operation was due.
+     */
+    private void perform(long intended) {
+        int user = ThreadLocalRandom.current().nextInt(users);
+        try {
+            if (!registered[user]) {
+                String result = userManager.registerUser(username(user), PASSWORD, "Load", "User" + user, cellphone(user));
+                if (!result.startsWith("✅")) failed.incrementAndGet();
+                registered[user] = true;
+                registerRecorder.recordValue(System.nanoTime() - intended);
+            } else if (sessionLeft[user] == 0) {
+                if (!userManager.loginUser(username(user), PASSWORD)) failed.incrementAndGet();
+                sessionLeft[user] = 1 + ThreadLocalRandom.current().nextInt(sessionLength);
+                loginRecorder.recordValue(System.nanoTime() - intended);
+            } else {
+                send();
+                sessionLeft[user]--;
+                sendRecorder.recordValue(System.nanoTime() - intended);
+            }
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sends one message the way Main does: validate, generate the ID and hash, store.
+     */
+    private void send() {
+        String recipient = cellphone(recipientByRank[recipients.next()]);
+        String text = randomText();
+        if (!messages.checkRecipient(recipient) || text.length() > 50) {
+            rejected.incrementAndGet(); // Main turns these away before storing
+            return;
+        }
+        String id = messages.generateMessageID();
+        String hash = messages.createMessageHash(id, messages.returnTotalMessages() + 1, text);
+        messages.storeMessage(id, hash, recipient, text);
+    }
+
+    /**
+     * Generates a message body. Most are short; a few exceed Main's 50-character limit,
+     * and a very few exceed the 250-character limit.
+     * @return The message text.
+     */
+    private static String randomText() {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        int p = rand.nextInt(100);
+        int target = p < 70 ? 2 + rand.nextInt(19)     // 70%: up to 20 characters
+                : p < 95 ? 21 + rand.nextInt(30)       // 25%: 21 to 50 characters
+                : p < 99 ? 51 + rand.nextInt(200)      // 4%: over 50, rejected by Main
+                : 251 + rand.nextInt(100);             // 1%: over 250, rejected by Main
+        StringBuilder sb = new StringBuilder(target + 8);
+        while (sb.length() < target) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(WORDS[rand.nextInt(WORDS.length)]);
+        }
+        return sb.length() > target ? sb.substring(0, target).trim() : sb.toString();
+    }
+
+    /**
+     * Username for a simulated user: base-36 index plus '_' (at most 5 characters).
+     * @param user The user index.
+     * @return The username.
+     */
+    private static String username(int user) {
+        return Integer.toString(user, 36) + "_";
+    }
+
+    /**
+     * Cellphone number for a simulated user.
+     * @param user The user index.
+     * @return A number in the +27XXXXXXXXX format.
+     */
+    private static String cellphone(int user) {
+        return "+27" + (600_000_000 + user);
+    }
+
+    /**
+     * Prints throughput and latency for the last interval, plus heap and GC figures.
+     */
+    private synchronized void report() {
+        Histogram register = registerRecorder.getIntervalHistogram();
+        Histogram login = loginRecorder.getIntervalHistogram();
+        Histogram send = sendRecorder.getIntervalHistogram();
+        registerTotal.add(register);
+        loginTotal.add(login);
+        sendTotal.add(send);
+
+        double seconds = Math.max(1e-9, (send.getEndTimeStamp() - send.getStartTimeStamp()) / 1000.0);
+        System.out.printf("%n[%tT] backlog=%d rejected=%d failed=%d%n",
+                System.currentTimeMillis(), worker.getQueue().size(), rejected.get(), failed.get());
+        printLine("register", register, seconds);
+        printLine("login", login, seconds);
+        printLine("send", send, seconds);
+        printMemory();
+
+        if (histogramLog != null) {
+            send.setTag("send");
+            histogramLog.outputIntervalHistogram(send);
+        }
+    }
+
+    /**
+     * Prints one latency line.
+     * @param name The operation name.
+     * @param h The histogram of latencies in nanoseconds.
+     * @param seconds The interval length in seconds.
+     */
+    private static void printLine(String name, Histogram h, double seconds) {
+        System.out.printf("  %-8s %8d ops %9.1f ops/s  p50=%s p90=%s p99=%s p99.9=%s max=%s%n",
+                name, h.getTotalCount(), h.getTotalCount() / seconds,
+                millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(90)),
+                millis(h.getValueAtPercentile(99)), millis(h.getValueAtPercentile(99.9)),
+                millis(h.getMaxValue()));
+    }
+
+    /**
+     * Prints heap usage and garbage collection activity since the last report.
+     */
+    private void printMemory() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long gcCount = lastGcCount;
+        long gcMillis = lastGcMillis;
+        snapshotGc();
+        System.out.printf("  heap used=%d MB committed=%d MB max=%d MB, gc=%d collections / %d ms%n",
+                heap.getUsed() >> 20, heap.getCommitted() >> 20, heap.getMax() >> 20,
+                lastGcCount - gcCount, lastGcMillis - gcMillis);
+    }
+
+    /**
+     * Records the cumulative GC counters so the next report can print deltas.
+     */
+    private void snapshotGc() {
+        List<GarbageCollectorMXBean> gcs = ManagementFactory.getGarbageCollectorMXBeans();
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : gcs) {
+            count += Math.max(0, gc.getCollectionCount());
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        lastGcCount = count;
+        lastGcMillis = millis;
+    }
+
+    /**
+     * Prints whole-run totals and full latency distributions.
+     * @param elapsedNanos The length of the run.
+     */
+    private void summarize(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%n=== Summary: %.0f s, %d messages stored ===%n", seconds, messages.returnTotalMessages());
+        printLine("register", registerTotal, seconds);
+        printLine("login", loginTotal, seconds);
+        printLine("send", sendTotal, seconds);
+        System.out.println("\nsend latency distribution (ms):");
+        sendTotal.outputPercentileDistribution(System.out, 5, 1_000_000.0);
+    }
+
+    /**
+     * Formats nanoseconds as milliseconds.
+     * @param nanos The value in nanoseconds.
+     * @return The formatted value.
+     */
+    private static String millis(long nanos) {
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+}
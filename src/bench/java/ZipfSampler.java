@@ -0,0 +1,41 @@
+//Libraries
+import java.util.Arrays;                          // Imports Arrays for binary search
+import java.util.concurrent.ThreadLocalRandom;   // Imports ThreadLocalRandom for sampling
+
+/**
+ * Samples ranks 0..n-1 with Zipfian skew: rank k is picked with probability
+ * proportional to 1 / (k + 1)^s. With s around 1, a handful of ranks receive
+ * most of the picks, like the few popular recipients in real chat traffic.
+ */
+public class ZipfSampler {
+
+    // Cumulative probabilities, cdf[k] = P(rank <= k)
+    private final double[] cdf;
+
+    /**
+     * Builds the cumulative distribution for n ranks.
+     * @param n The number of ranks.
+     * @param exponent The skew; 0 is uniform, larger values are more skewed.
+     */
+    public ZipfSampler(int n, double exponent) {
+        cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent); // Weight of rank k
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum; // Normalises to probabilities
+        }
+    }
+
+    /**
+     * Picks a rank.
+     * @return A rank between 0 and n-1.
+     */
+    public int next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        int i = Arrays.binarySearch(cdf, u); // Finds the first rank whose cdf covers u
+        return Math.min(i >= 0 ? i : -i - 1, cdf.length - 1);
+    }
+}
@@ -0,0 +1,59 @@
+package bench;
+
+//Libraries
+import com.google.gson.GsonBuilder;   // Imports GsonBuilder to write the fixture like Messages does
+import java.io.File;                  // Imports File for clearing old snapshot files
+import java.io.FileWriter;            // Imports FileWriter for writing the fixture file
+import java.io.IOException;           // Imports IOException for I/O errors
+import java.io.UncheckedIOException;  // Imports UncheckedIOException to rethrow from setup code
+import java.util.ArrayList;           // Imports ArrayList for the generated records
+import java.util.LinkedHashMap;       // Imports LinkedHashMap to keep field order stable
+import java.util.List;                // Imports List interface
+import java.util.Map;                 // Imports Map interface
+import java.util.Random;              // Imports Random for reproducible data
+
+/**
+ * Writes a messages.json with a given number of records into the working directory,
+ * in the same shape and formatting as Messages.writeMessagesToJson.
+ */
+final class HistoryFixture {
+
+    // Message bodies that look like real traffic (Main caps messages at 50 characters)
+    private static final String[] BODIES = {
+            "ok", "on my way", "Hi Mike, can you join us for dinner tonight",
+            "Call me when you land", "See you at 5", "Thanks!", "Where are you?"
+    };
+
+    private HistoryFixture() {
+    }
+
+    /**
+     * Replaces messages.json with {@code size} generated records.
+     * Call Messages.flush() first if a Messages instance may still be saving.
+     * @param size The number of records to write.
+     */
+    static void writeHistory(int size) {
+        Random rand = new Random(size); // Seeded so every fork sees the same data
+        List<Map<String, String>> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Map<String, String> record = new LinkedHashMap<>();
+            String id = String.format("%010d", rand.nextInt(Integer.MAX_VALUE));
+            String body = BODIES[rand.nextInt(BODIES.length)];
+            record.put("MessageID", id);
+            record.put("MessageHash", id.substring(0, 2) + ":" + (i + 1) + ":" + body.toUpperCase());
+            record.put("Recipient", "+27" + String.format("%09d", rand.nextInt(1_000_000_000)));
+            record.put("Message", body);
+            records.add(record);
+        }
+        try (FileWriter writer = new FileWriter("messages.json")) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(records, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Drops the checksum and older generations left by earlier snapshots,
+        // so the fixture is read as a plain legacy file
+        for (File file : new File(".").listFiles((dir, name) -> name.startsWith("messages.json."))) {
+            file.delete();
+        }
+    }
+}
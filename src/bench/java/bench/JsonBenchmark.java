@@ -0,0 +1,76 @@
+package bench;
+
+//Libraries
+import com.google.gson.Gson;                       // Imports Gson for serialization
+import com.google.gson.GsonBuilder;                // Imports GsonBuilder for the old per-call setup
+import com.google.gson.reflect.TypeToken;          // Imports TypeToken for the MessageEntry[] type
+import java.io.IOException;                        // Imports IOException for fixture reading
+import java.nio.file.Files;                        // Imports Files for reading the fixture
+import java.nio.file.Paths;                        // Imports Paths for the fixture path
+import java.util.Arrays;                           // Imports Arrays to wrap the loaded array
+import java.util.List;                             // Imports List interface
+import java.util.concurrent.TimeUnit;              // Imports TimeUnit for reporting units
+import org.openjdk.jmh.annotations.Benchmark;      // Imports JMH annotations
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * messages.json encoding and decoding: the old per-call reflective Gson against the shared
+ * instances with hand-written adapters, in pretty and compact form.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class JsonBenchmark {
+
+    @Param({"100", "10000"})
+    public int history;
+
+    private List<?> messages;
+    private String json;
+    private Class<?> arrayType;
+
+    @Setup
+    public void setUp() throws IOException {
+        HistoryFixture.writeHistory(history);
+        json = Files.readString(Paths.get("messages.json"));
+        arrayType = TypeToken.getArray(QuickChat.MESSAGE_ENTRY).getRawType();
+        messages = Arrays.asList((Object[]) new Gson().fromJson(json, arrayType));
+    }
+
+    @Benchmark
+    public String encodeReflective() {
+        return new GsonBuilder().setPrettyPrinting().create().toJson(messages); // As Messages used to
+    }
+
+    @Benchmark
+    public String encodeAdapterPretty() {
+        return QuickChat.JSON_PRETTY.toJson(messages);
+    }
+
+    @Benchmark
+    public String encodeAdapterCompact() {
+        return QuickChat.JSON_COMPACT.toJson(messages);
+    }
+
+    @Benchmark
+    public Object decodeReflective() {
+        return new Gson().fromJson(json, arrayType); // As Messages used to
+    }
+
+    @Benchmark
+    public Object decodeAdapter() {
+        return QuickChat.JSON_PRETTY.fromJson(json, arrayType);
+    }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+//Libraries
+import java.util.concurrent.TimeUnit;              // Imports TimeUnit for reporting units
+import org.openjdk.jmh.annotations.Benchmark;      // Imports JMH annotations
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CPU-only hot paths of Messages: ID generation, recipient checks and message hashing.
+ * None of these touch the disk, but the Messages constructor loads messages.json, so the
+ * runner script starts JMH from an empty scratch directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class MessagesBenchmark {
+
+    private Object messages;
+    private final String validRecipient = "+27831234567";
+    private final String invalidRecipient = "0831234567";
+
+    /**
+     * Message text for the hashing benchmark, at lengths around the limits enforced
+     * in Main (50 and 250 characters). Kept separate so the other benchmarks do not
+     * run once per text length.
+     */
+    @State(Scope.Thread)
+    public static class Text {
+        @Param({"short", "limit50", "limit250"})
+        public String length;
+
+        String message;
+
+        @Setup
+        public void setUp() {
+            switch (length) {
+                case "short": message = "on my way"; break;
+                case "limit50": message = "Hi Mike, can you join us for dinner tonight at 7?"; break;
+                default: message = "word ".repeat(50).trim(); break;
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() throws Throwable {
+        messages = QuickChat.NEW_MESSAGES.invokeExact();
+    }
+
+    @Benchmark
+    public String generateMessageID() throws Throwable {
+        return (String) QuickChat.GENERATE_MESSAGE_ID.invokeExact(messages);
+    }
+
+    @Benchmark
+    public String createMessageHash(Text text) throws Throwable {
+        return (String) QuickChat.CREATE_MESSAGE_HASH.invokeExact(messages, "0123456789", 42, text.message);
+    }
+
+    @Benchmark
+    public boolean checkRecipient_Valid() throws Throwable {
+        return (boolean) QuickChat.CHECK_RECIPIENT.invokeExact(messages, validRecipient);
+    }
+
+    @Benchmark
+    public boolean checkRecipient_Invalid() throws Throwable {
+        return (boolean) QuickChat.CHECK_RECIPIENT.invokeExact(messages, invalidRecipient);
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+//Libraries
+import java.util.concurrent.TimeUnit;              // Imports TimeUnit for reporting units
+import org.openjdk.jmh.annotations.Benchmark;      // Imports JMH annotations
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * storeMessage and loadMessagesFromJson at several history sizes.
+ * Both read and write messages.json in the working directory, so the runner script
+ * starts JMH from a scratch directory and each trial rewrites the fixture first.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PersistenceBenchmark {
+
+    // Number of messages already in the history
+    @Param({"100", "1000", "10000"})
+    public int history;
+
+    private Object messages;
+    private int sequence;
+
+    /**
+     * Resets the history before each iteration, so storeMessage always appends to a
+     * history of roughly the configured size.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() throws Throwable {
+        if (messages != null) {
+            QuickChat.FLUSH.invokeExact(messages); // Lets the last iteration's save finish first
+        }
+        HistoryFixture.writeHistory(history);
+        messages = QuickChat.NEW_MESSAGES.invokeExact(); // Loads the fixture
+        QuickChat.AWAIT_HISTORY.invokeExact(messages);   // Lets the background load finish first
+        sequence = 0;
+    }
+
+    /**
+     * Appends one message. The file itself is written by a background thread; queued
+     * snapshots are coalesced, so this measures the caller-visible cost only.
+     */
+    @Benchmark
+    public void storeMessage() throws Throwable {
+        String id = String.format("%010d", sequence++);
+        QuickChat.STORE_MESSAGE.invokeExact(messages, id, id.substring(0, 2) + ":1:OKOK", "+27831234567", "ok");
+    }
+
+    /**
+     * Time until the whole history is decoded and in place.
+     */
+    @Benchmark
+    public Object loadMessagesFromJson() throws Throwable {
+        Object loaded = QuickChat.NEW_MESSAGES.invokeExact(); // The constructor starts loading messages.json
+        QuickChat.AWAIT_HISTORY.invokeExact(loaded);
+        return loaded;
+    }
+}
@@ -0,0 +1,172 @@
+package bench;
+
+//Libraries
+import com.google.gson.Gson;           // Imports Gson for the shared instances
+import java.lang.invoke.MethodHandle;  // Imports MethodHandle for fast reflective calls
+import java.lang.invoke.MethodHandles; // Imports MethodHandles to turn reflected members into handles
+import java.lang.invoke.MethodType;    // Imports MethodType to erase receiver types to Object
+import java.lang.reflect.Constructor;  // Imports Constructor for reflective object creation
+import java.lang.reflect.Method;       // Imports Method for reflective method lookup
+import java.lang.reflect.Modifier;     // Imports Modifier to tell static from instance methods
+import java.nio.file.Path;             // Imports Path for the stores' directories
+import java.util.List;                 // Imports List interface
+import java.util.Map;                  // Imports Map interface
+
+/**
+ * Bridge from the benchmark package to the QuickChat classes.
+ * The application lives in the default package, which cannot be imported from a named
+ * package, and JMH refuses benchmarks in the default package. Every call therefore goes
+ * through a static final MethodHandle, which the JIT inlines like a direct call.
+ */
+final class QuickChat {
+
+    // Handles for the Messages class
+    static final MethodHandle NEW_MESSAGES;
+    static final MethodHandle GENERATE_MESSAGE_ID;
+    static final MethodHandle CHECK_RECIPIENT;
+    static final MethodHandle CREATE_MESSAGE_HASH;
+    static final MethodHandle STORE_MESSAGE;
+    static final MethodHandle RETURN_TOTAL_MESSAGES;
+    static final MethodHandle FLUSH;
+    static final MethodHandle AWAIT_HISTORY;
+
+    // Handles for the ShardedMessageStore class
+    static final MethodHandle NEW_SHARDED_STORE;
+    static final MethodHandle SHARDED_STORE;
+    static final MethodHandle SHARDED_AWAIT_WRITTEN;
+    static final MethodHandle SHARDED_CLOSE;
+    static final MethodHandle NEW_MESSAGE_ENTRY;
+
+    // Handles for the MessageStore interface, for comparing backends
+    static final MethodHandle OPEN_MESSAGE_STORE;
+    static final MethodHandle STORE_STORE;
+    static final MethodHandle STORE_FLUSH;
+    static final MethodHandle STORE_FIND_BY_ID;
+    static final MethodHandle STORE_FIND_TO_RECIPIENT;
+    static final MethodHandle STORE_CLOSE;
+
+    // Handles for the Validation class
+    static final MethodHandle NEW_VALIDATION;
+    static final MethodHandle CHECK_USER_NAME;
+    static final MethodHandle CHECK_PASSWORD_COMPLEXITY;
+    static final MethodHandle CHECK_CELL_PHONE_NUMBER;
+    static final MethodHandle REGISTER_USER;
+    static final MethodHandle LOGIN_USER;
+
+    // The MessageEntry class and the shared Gson instances from JsonSupport
+    static final Class<?> MESSAGE_ENTRY;
+    static final Gson JSON_PRETTY;
+    static final Gson JSON_COMPACT;
+
+    // Handles for the User class
+    static final MethodHandle NEW_USER;
+    static final MethodHandle SET_USERNAME;
+    static final MethodHandle SET_PASSWORD;
+    static final MethodHandle SET_NAME;
+    static final MethodHandle SET_CELLPHONE_NUMBER;
+
+    static {
+        try {
+            Class<?> messages = Class.forName("Messages");
+            Class<?> validation = Class.forName("Validation");
+            Class<?> user = Class.forName("User");
+
+            NEW_MESSAGES = constructor(messages);
+            GENERATE_MESSAGE_ID = method(messages, "generateMessageID");
+            CHECK_RECIPIENT = method(messages, "checkRecipient", String.class);
+            CREATE_MESSAGE_HASH = method(messages, "createMessageHash", String.class, int.class, String.class);
+            STORE_MESSAGE = method(messages, "storeMessage", String.class, String.class, String.class, String.class);
+            RETURN_TOTAL_MESSAGES = method(messages, "returnTotalMessages");
+            FLUSH = method(messages, "flush");
+            AWAIT_HISTORY = method(messages, "awaitHistory");
+
+            Class<?> sharded = Class.forName("ShardedMessageStore");
+            Class<?> entry = Class.forName("MessageEntry");
+            NEW_SHARDED_STORE = constructor(sharded, Path.class, int.class);
+            SHARDED_STORE = method(sharded, "store", entry).asType(MethodType.methodType(int.class, Object.class, Object.class));
+            SHARDED_AWAIT_WRITTEN = method(sharded, "awaitWritten", int.class);
+            SHARDED_CLOSE = method(sharded, "close");
+            NEW_MESSAGE_ENTRY = constructor(entry, String.class, String.class, String.class, String.class);
+
+            Class<?> messageStore = Class.forName("MessageStore");
+            OPEN_MESSAGE_STORE = method(messageStore, "open", String.class, Path.class)
+                    .asType(MethodType.methodType(Object.class, String.class, Path.class));
+            STORE_STORE = method(messageStore, "store", entry).asType(MethodType.methodType(int.class, Object.class, Object.class));
+            STORE_FLUSH = method(messageStore, "flush");
+            STORE_FIND_BY_ID = method(messageStore, "findMessageByID", String.class)
+                    .asType(MethodType.methodType(Object.class, Object.class, String.class));
+            STORE_FIND_TO_RECIPIENT = method(messageStore, "findMessagesToRecipient", String.class)
+                    .asType(MethodType.methodType(List.class, Object.class, String.class));
+            STORE_CLOSE = method(messageStore, "close");
+
+            NEW_VALIDATION = constructor(validation);
+            CHECK_USER_NAME = method(validation, "checkUserName", String.class);
+            CHECK_PASSWORD_COMPLEXITY = method(validation, "checkPasswordComplexity", String.class);
+            CHECK_CELL_PHONE_NUMBER = method(validation, "checkCellPhoneNumber", String.class);
+            REGISTER_USER = method(validation, "registerUser", String.class, String.class, String.class);
+            LOGIN_USER = method(validation, "loginUser", String.class, String.class, Map.class);
+
+            MESSAGE_ENTRY = Class.forName("MessageEntry");
+            Class<?> jsonSupport = Class.forName("JsonSupport");
+            JSON_PRETTY = (Gson) jsonSupport.getField("PRETTY").get(null);
+            JSON_COMPACT = (Gson) jsonSupport.getField("COMPACT").get(null);
+
+            NEW_USER = constructor(user);
+            SET_USERNAME = method(user, "setUsername", String.class);
+            SET_PASSWORD = method(user, "setPassword", String.class);
+            SET_NAME = method(user, "setName", String.class);
+            SET_CELLPHONE_NUMBER = method(user, "setCellphoneNumber", String.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private QuickChat() {
+    }
+
+    /**
+     * Creates a User with the given credentials, as registration would.
+     * @param username The username.
+     * @param password The password.
+     * @param cellphone The cellphone number.
+     * @return The new User object.
+     */
+    static Object newUser(String username, String password, String cellphone) throws Throwable {
+        Object user = NEW_USER.invokeExact();
+        SET_USERNAME.invokeExact(user, username);
+        SET_PASSWORD.invokeExact(user, password);
+        SET_NAME.invokeExact(user, "Bench");
+        SET_CELLPHONE_NUMBER.invokeExact(user, cellphone);
+        return user;
+    }
+
+    /**
+     * Looks up a (possibly package-private) constructor and erases its return type to Object.
+     * @param type The class to construct.
+     * @param params The parameter types.
+     * @return A handle of type (params) -> Object.
+     */
+    private static MethodHandle constructor(Class<?> type, Class<?>... params) throws ReflectiveOperationException {
+        Constructor<?> c = type.getDeclaredConstructor(params);
+        c.setAccessible(true);
+        return MethodHandles.lookup().unreflectConstructor(c).asType(MethodType.methodType(Object.class, params));
+    }
+
+    /**
+     * Looks up a (possibly package-private) method and erases the receiver type to Object.
+     * @param type The declaring class.
+     * @param name The method name.
+     * @param params The parameter types.
+     * @return A handle whose receiver, if any, is typed as Object.
+     */
+    private static MethodHandle method(Class<?> type, String name, Class<?>... params) throws ReflectiveOperationException {
+        Method m = type.getDeclaredMethod(name, params);
+        m.setAccessible(true);
+        MethodHandle handle = MethodHandles.lookup().unreflect(m);
+        MethodType erased = handle.type();
+        if (!Modifier.isStatic(m.getModifiers())) {
+            erased = erased.changeParameterType(0, Object.class); // Receiver becomes Object
+        }
+        return handle.asType(erased);
+    }
+}
@@ -0,0 +1,82 @@
+package bench;
+
+//Libraries
+import java.io.IOException;                        // Imports IOException for cleanup errors
+import java.nio.file.Files;                        // Imports Files for the scratch directory
+import java.nio.file.Path;                         // Imports Path for the scratch directory
+import java.util.Comparator;                       // Imports Comparator to delete children first
+import java.util.concurrent.ThreadLocalRandom;     // Imports ThreadLocalRandom for recipients
+import java.util.concurrent.TimeUnit;              // Imports TimeUnit for reporting units
+import java.util.stream.Stream;                    // Imports Stream for walking the directory
+import org.openjdk.jmh.annotations.Benchmark;      // Imports JMH annotations
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Durable write throughput of the sharded store at several shard counts.
+ * Eight threads store messages to random recipients and each waits until its message is
+ * in the log and fsynced, so the score is acknowledged writes per millisecond. With one
+ * shard every write queues behind one file; more shards add parallel writer threads and
+ * parallel fsyncs. Run with -jvmArgsAppend -Dquickchat.log.fsync=false to measure the
+ * write path without the disk.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Threads(8)
+@State(Scope.Benchmark)
+public class ShardedStoreBenchmark {
+
+    // Number of shards
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    private Path dir;
+    private Object store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        dir = Files.createTempDirectory("quickchat-shards");
+        store = QuickChat.NEW_SHARDED_STORE.invokeExact(dir, shards);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        QuickChat.SHARDED_CLOSE.invokeExact(store);
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stores one message and waits until it is durable.
+     */
+    @Benchmark
+    public void storeDurably() throws Throwable {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String id = String.format("%010d", random.nextLong(10_000_000_000L));
+        String recipient = "+27" + (710_000_000 + random.nextInt(100_000));
+        Object entry = QuickChat.NEW_MESSAGE_ENTRY.invokeExact(id, id.substring(0, 2) + ":1:OKOK", recipient, "ok");
+        int reference = (int) QuickChat.SHARDED_STORE.invokeExact(store, entry);
+        QuickChat.SHARDED_AWAIT_WRITTEN.invokeExact(store, reference);
+    }
+}
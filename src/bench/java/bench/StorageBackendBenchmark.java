@@ -0,0 +1,125 @@
+package bench;
+
+//Libraries
+import java.io.IOException;                        // Imports IOException for cleanup errors
+import java.nio.file.Files;                        // Imports Files for the scratch directory
+import java.nio.file.Path;                         // Imports Path for the scratch directory
+import java.util.Comparator;                       // Imports Comparator to delete children first
+import java.util.List;                             // Imports List interface
+import java.util.concurrent.ThreadLocalRandom;     // Imports ThreadLocalRandom for lookups
+import java.util.concurrent.TimeUnit;              // Imports TimeUnit for reporting units
+import java.util.stream.Stream;                    // Imports Stream for walking the directory
+import org.openjdk.jmh.annotations.Benchmark;      // Imports JMH annotations
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The MessageStore backends side by side on a history of {@code history} messages to 100
+ * recipients: a durable store (store, then flush), a lookup by ID and a lookup by
+ * recipient. json rewrites messages.json on every store, as the app's JSON path does, so
+ * its store cost grows with the history; sql inserts one row through the embedded
+ * database's batched writer; memory is the floor with no I/O at all.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class StorageBackendBenchmark {
+
+    // Backend passed to MessageStore.open
+    @Param({"json", "sharded", "sql", "memory"})
+    public String backend;
+
+    // Messages stored before measuring
+    @Param({"10000"})
+    public int history;
+
+    private Path dir;
+    private Object store;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        dir = Files.createTempDirectory("quickchat-backend");
+        store = QuickChat.OPEN_MESSAGE_STORE.invokeExact(backend, dir);
+        for (int i = 0; i < history; i++) {
+            int reference = (int) QuickChat.STORE_STORE.invokeExact(store, entry(i));
+        }
+        QuickChat.STORE_FLUSH.invokeExact(store);
+        next = history;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        QuickChat.STORE_CLOSE.invokeExact(store);
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stores one message and waits until it is written.
+     */
+    @Benchmark
+    public void storeDurably() throws Throwable {
+        int reference = (int) QuickChat.STORE_STORE.invokeExact(store, entry(next++));
+        QuickChat.STORE_FLUSH.invokeExact(store);
+    }
+
+    /**
+     * Finds a random stored message by its ID.
+     */
+    @Benchmark
+    public Object findByID() throws Throwable {
+        return (Object) QuickChat.STORE_FIND_BY_ID.invokeExact(store, id(ThreadLocalRandom.current().nextInt(history)));
+    }
+
+    /**
+     * Finds every message to a random recipient, about history / 100 of them.
+     */
+    @Benchmark
+    public List<?> findToRecipient() throws Throwable {
+        return (List<?>) QuickChat.STORE_FIND_TO_RECIPIENT.invokeExact(store, recipient(ThreadLocalRandom.current().nextInt(100)));
+    }
+
+    /**
+     * Builds the message with a number.
+     */
+    private static Object entry(int i) throws Throwable {
+        String id = id(i);
+        return (Object) QuickChat.NEW_MESSAGE_ENTRY.invokeExact(id, id.substring(0, 2) + ":" + i + ":HIWORLD",
+                recipient(i % 100), "Hi there, this is message " + i + " of the benchmark history. World");
+    }
+
+    /**
+     * Returns the 10-digit ID of the message with a number.
+     */
+    private static String id(int i) {
+        return String.format("%010d", 1_000_000_000L + i);
+    }
+
+    /**
+     * Returns the cell number of one of 100 recipients.
+     */
+    private static String recipient(int i) {
+        return "+277100" + String.format("%05d", i);
+    }
+}
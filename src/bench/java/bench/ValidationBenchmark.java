@@ -0,0 +1,108 @@
+package bench;
+
+//Libraries
+import java.util.HashMap;                          // Imports HashMap for the registered users
+import java.util.Map;                              // Imports Map interface
+import java.util.concurrent.TimeUnit;              // Imports TimeUnit for reporting units
+import org.openjdk.jmh.annotations.Benchmark;      // Imports JMH annotations
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every Validation check, plus registerUser and loginUser against user maps of several sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ValidationBenchmark {
+
+    private Object validator;
+
+    @Setup
+    public void setUp() throws Throwable {
+        validator = QuickChat.NEW_VALIDATION.invokeExact();
+    }
+
+    /**
+     * A map of registered users, as UserManager keeps it in memory.
+     */
+    @State(Scope.Thread)
+    public static class Users {
+        @Param({"10", "1000", "100000"})
+        public int users;
+
+        Map<String, Object> map;
+        String lastUsername;
+
+        @Setup
+        public void setUp() throws Throwable {
+            map = new HashMap<>();
+            for (int i = 0; i < users; i++) {
+                String username = Integer.toString(i, 36) + "_"; // Usernames are short and contain '_'
+                map.put(username, QuickChat.newUser(username, "Passw0rd!", "+27831234567"));
+                lastUsername = username;
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean checkUserName_Valid() throws Throwable {
+        return (boolean) QuickChat.CHECK_USER_NAME.invokeExact("ky_1");
+    }
+
+    @Benchmark
+    public boolean checkUserName_Invalid() throws Throwable {
+        return (boolean) QuickChat.CHECK_USER_NAME.invokeExact("kyle!!!!!!!");
+    }
+
+    @Benchmark
+    public boolean checkPasswordComplexity_Valid() throws Throwable {
+        return (boolean) QuickChat.CHECK_PASSWORD_COMPLEXITY.invokeExact("Ch&&sec@ke99!");
+    }
+
+    @Benchmark
+    public boolean checkPasswordComplexity_Invalid() throws Throwable {
+        return (boolean) QuickChat.CHECK_PASSWORD_COMPLEXITY.invokeExact("password");
+    }
+
+    @Benchmark
+    public boolean checkCellPhoneNumber_Valid() throws Throwable {
+        return (boolean) QuickChat.CHECK_CELL_PHONE_NUMBER.invokeExact("+27838968976");
+    }
+
+    @Benchmark
+    public boolean checkCellPhoneNumber_Invalid() throws Throwable {
+        return (boolean) QuickChat.CHECK_CELL_PHONE_NUMBER.invokeExact("08966553");
+    }
+
+    @Benchmark
+    public String registerUser() throws Throwable {
+        return (String) QuickChat.REGISTER_USER.invokeExact(validator, "ky_1", "Ch&&sec@ke99!", "+27838968976");
+    }
+
+    @Benchmark
+    public boolean loginUser_Success(Users users) throws Throwable {
+        return (boolean) QuickChat.LOGIN_USER.invokeExact(validator, users.lastUsername, "Passw0rd!", (Map) users.map);
+    }
+
+    @Benchmark
+    public boolean loginUser_WrongPassword(Users users) throws Throwable {
+        return (boolean) QuickChat.LOGIN_USER.invokeExact(validator, users.lastUsername, "wrong", (Map) users.map);
+    }
+
+    @Benchmark
+    public boolean loginUser_UnknownUser(Users users) throws Throwable {
+        return (boolean) QuickChat.LOGIN_USER.invokeExact(validator, "nobody", "Passw0rd!", (Map) users.map);
+    }
+}
@@ -0,0 +1,95 @@
+//Libraries
+import java.util.Arrays;   // Imports Arrays for growing the index lists
+import java.util.HashMap;  // Imports HashMap for the conversation table
+import java.util.Map;      // Imports Map interface
+
+/**
+ * Index of two-way conversations: for every unordered (sender, recipient) pair, the
+ * positions of its messages in store order, which is also time order.
+ *
+ * A conversation is found with one hash lookup, and its newest messages are the tail of
+ * its list, so loading the latest page is O(page size). Paging back from a position is a
+ * binary search in the list, O(log n + page size). Messages without a sender, such as
+ * those stored before senders were recorded, belong to no conversation.
+ *
+ * Positions are added in increasing order by one writer; readers may run at the same time.
+ */
+public class ConversationIndex {
+
+    // Message positions of each conversation, keyed by conversationKey()
+    private final Map<String, Positions> conversations = new HashMap<>();
+
+    /**
+     * Returns the key of a conversation, the same whichever side sent the message.
+     * @param a One participant's cell number.
+     * @param b The other participant's cell number.
+     * @return The key.
+     */
+    static String conversationKey(String a, String b) {
+        return a.compareTo(b) <= 0 ? a + '|' + b : b + '|' + a;
+    }
+
+    /**
+     * Adds a message. Positions must be added in increasing order.
+     * @param sender The sender's cell number, or null if unknown.
+     * @param recipient The recipient's cell number.
+     * @param position The message's position.
+     */
+    public synchronized void add(String sender, String recipient, int position) {
+        if (sender == null || recipient == null) {
+            return; // Not part of any known conversation
+        }
+        conversations.computeIfAbsent(conversationKey(sender, recipient), k -> new Positions()).add(position);
+    }
+
+    /**
+     * Returns the positions of the newest messages in a conversation before a position.
+     * @param a One participant's cell number.
+     * @param b The other participant's cell number.
+     * @param limit The most positions to return.
+     * @param before Only positions below this are returned; Integer.MAX_VALUE for the newest.
+     * @return The positions, oldest first.
+     */
+    public synchronized int[] latest(String a, String b, int limit, int before) {
+        Positions positions = conversations.get(conversationKey(a, b));
+        if (positions == null) {
+            return new int[0];
+        }
+        int end = positions.countBelow(before); // Binary search; the list is sorted
+        return Arrays.copyOfRange(positions.values, Math.max(0, end - limit), end);
+    }
+
+    /**
+     * Returns the number of messages in a conversation.
+     * @param a One participant's cell number.
+     * @param b The other participant's cell number.
+     * @return The message count.
+     */
+    public synchronized int size(String a, String b) {
+        Positions positions = conversations.get(conversationKey(a, b));
+        return positions == null ? 0 : positions.size;
+    }
+
+    /**
+     * Growable, sorted list of positions.
+     */
+    private static final class Positions {
+        int[] values = new int[4]; // Most conversations are short
+        int size;
+
+        void add(int position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = position;
+        }
+
+        int countBelow(int position) {
+            if (size == 0 || values[size - 1] < position) {
+                return size; // Usual case: asking for the newest
+            }
+            int index = Arrays.binarySearch(values, 0, size, position);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
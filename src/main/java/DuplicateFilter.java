@@ -0,0 +1,253 @@
+//Libraries
+import java.util.ArrayDeque;            // Imports ArrayDeque for the live time slices
+import java.util.ArrayList;             // Imports ArrayList for the Bloom layers
+import java.util.Iterator;              // Imports Iterator for walking the slices
+import java.util.List;                  // Imports List interface
+import java.util.function.LongSupplier; // Imports LongSupplier for the clock
+
+/**
+ * Remembers the keys of recent sends, so a retried send can be recognised.
+ *
+ * The window (a day by default) is cut into time slices. Each slice has a scalable Bloom
+ * filter that answers "definitely not seen" in constant time from a few cache lines, and
+ * an exact index from the key's 64-bit fingerprint to the message it produced, consulted
+ * only when the Bloom filter says "maybe". When a slice receives more keys than planned,
+ * its filter gains a larger layer with a tighter error rate instead of degrading.
+ * Slices older than the window are dropped whole, and so is the oldest slice whenever the
+ * total would exceed the key limit, so memory stays bounded however busy the day is.
+ */
+public class DuplicateFilter {
+
+    // Target false-positive rate of a slice's first Bloom layer
+    private static final double FIRST_LAYER_ERROR = 0.01;
+    // Bloom hash functions per key; the best count for a 1% error rate
+    private static final int HASHES = 7;
+
+    // Length of the window and of one slice, in milliseconds
+    private final long windowMillis;
+    private final long sliceMillis;
+    // Keys each slice's first Bloom layer is sized for
+    private final int expectedPerSlice;
+    // Most keys kept across all slices
+    private final int maxKeys;
+    // Current time in milliseconds
+    private final LongSupplier clock;
+
+    // Live slices, oldest first
+    private final ArrayDeque<Slice> slices = new ArrayDeque<>();
+    // Keys across all live slices
+    private int keys;
+
+    /**
+     * Creates a filter.
+     * @param windowMillis How long a key is remembered.
+     * @param sliceCount Slices the window is cut into; more slices expire keys more precisely.
+     * @param expectedPerSlice Keys a slice is sized for before its filter has to grow.
+     * @param maxKeys Most keys kept at once; the oldest slice is dropped early beyond this.
+     * @param clock The current time in milliseconds.
+     */
+    public DuplicateFilter(long windowMillis, int sliceCount, int expectedPerSlice, int maxKeys, LongSupplier clock) {
+        this.windowMillis = windowMillis;
+        this.sliceMillis = Math.max(1, windowMillis / sliceCount);
+        this.expectedPerSlice = expectedPerSlice;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+    }
+
+    /**
+     * Looks a key up.
+     * @param key The idempotency key.
+     * @return The message index recorded with the key, or -1 if it was not seen in the window.
+     */
+    public synchronized int find(String key) {
+        expire(clock.getAsLong());
+        long fingerprint = fingerprint(key);
+        for (Iterator<Slice> it = slices.descendingIterator(); it.hasNext(); ) { // Retries are usually recent
+            Slice slice = it.next();
+            if (slice.mightContain(fingerprint)) {
+                int index = slice.index.get(fingerprint); // Exact check behind the Bloom filter
+                if (index >= 0) return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records a key with the message it produced.
+     * @param key The idempotency key.
+     * @param messageIndex The index of the stored message.
+     */
+    public synchronized void record(String key, int messageIndex) {
+        long now = clock.getAsLong();
+        expire(now);
+        Slice newest = slices.peekLast();
+        if (newest == null || now - newest.start >= sliceMillis) {
+            newest = new Slice(now);
+            slices.addLast(newest);
+        }
+        long fingerprint = fingerprint(key);
+        newest.add(fingerprint, messageIndex);
+        keys++;
+        while (keys > maxKeys && slices.size() > 1) { // Bounds memory on unusually busy days
+            keys -= slices.removeFirst().count;
+        }
+    }
+
+    /**
+     * Returns the number of keys currently remembered.
+     * @return The key count.
+     */
+    public synchronized int size() {
+        return keys;
+    }
+
+    /**
+     * Drops slices that have left the window.
+     * @param now The current time.
+     */
+    private void expire(long now) {
+        while (!slices.isEmpty() && now - slices.peekFirst().start >= windowMillis + sliceMillis) {
+            keys -= slices.removeFirst().count; // Every key in it is older than the window
+        }
+    }
+
+    /**
+     * Hashes a key to 64 bits (FNV-1a over the chars, then a finalising mix).
+     * @param key The key.
+     * @return The fingerprint, never 0.
+     */
+    static long fingerprint(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33; // Spreads the bits so the Bloom indexes are independent
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h; // 0 marks an empty slot in the index
+    }
+
+    /**
+     * Keys recorded during one slice of time.
+     */
+    private final class Slice {
+        // When the slice started
+        final long start;
+        // Bloom layers, each larger and stricter than the one before
+        final List<BloomLayer> layers = new ArrayList<>();
+        // Exact fingerprint index
+        final FingerprintIndex index = new FingerprintIndex();
+        // Keys in the slice
+        int count;
+
+        Slice(long start) {
+            this.start = start;
+            layers.add(new BloomLayer(expectedPerSlice, FIRST_LAYER_ERROR));
+        }
+
+        boolean mightContain(long fingerprint) {
+            for (BloomLayer layer : layers) {
+                if (layer.mightContain(fingerprint)) return true;
+            }
+            return false;
+        }
+
+        void add(long fingerprint, int messageIndex) {
+            BloomLayer last = layers.get(layers.size() - 1);
+            if (last.count >= last.capacity) {
+                // Scalable Bloom filter: twice the capacity, half the error rate, so the
+                // combined error rate stays below twice the first layer's
+                last = new BloomLayer(last.capacity * 2, last.errorRate / 2);
+                layers.add(last);
+            }
+            last.add(fingerprint);
+            index.put(fingerprint, messageIndex);
+            count++;
+        }
+    }
+
+    /**
+     * One fixed-size Bloom filter.
+     */
+    private static final class BloomLayer {
+        final int capacity;
+        final double errorRate;
+        final long[] bits;
+        final long bitCount;
+        int count;
+
+        BloomLayer(int capacity, double errorRate) {
+            this.capacity = capacity;
+            this.errorRate = errorRate;
+            // Optimal size for n keys at error rate p: -n ln p / (ln 2)^2 bits
+            long m = (long) Math.ceil(-capacity * Math.log(errorRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new long[(int) Math.max(1, (m + 63) / 64)];
+            this.bitCount = bits.length * 64L;
+        }
+
+        void add(long fingerprint) {
+            long h1 = fingerprint;
+            long h2 = (fingerprint >>> 32) | 1; // Double hashing: h1 + i * h2
+            for (int i = 0; i < HASHES; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            count++;
+        }
+
+        boolean mightContain(long fingerprint) {
+            long h1 = fingerprint;
+            long h2 = (fingerprint >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Open-addressing map from fingerprint to message index, grown by doubling.
+     */
+    private static final class FingerprintIndex {
+        long[] keys = new long[64];
+        int[] values = new int[64];
+        int size;
+
+        int get(long fingerprint) {
+            int mask = keys.length - 1;
+            for (int slot = (int) fingerprint & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == fingerprint) return values[slot];
+            }
+            return -1;
+        }
+
+        void put(long fingerprint, int value) {
+            if (size * 2 >= keys.length) {
+                grow(); // Keeps probe sequences short
+            }
+            int mask = keys.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (keys[slot] != 0 && keys[slot] != fingerprint) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) size++;
+            keys[slot] = fingerprint;
+            values[slot] = value;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
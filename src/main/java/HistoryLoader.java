@@ -0,0 +1,514 @@
+//Libraries
+import com.google.gson.TypeAdapter;        // Imports TypeAdapter to decode single records
+import com.google.gson.stream.JsonReader;  // Imports JsonReader for streaming input
+import com.google.gson.stream.JsonToken;   // Imports JsonToken to skip null records
+import java.io.IOException;                // Imports IOException for I/O errors
+import java.io.StringReader;               // Imports StringReader to read one chunk
+import java.nio.charset.StandardCharsets;  // Imports UTF-8 for decoding the file
+import java.util.ArrayList;                // Imports ArrayList for the decode tasks
+import java.util.Arrays;                   // Imports Arrays for growing the chunk tables
+import java.util.List;                     // Imports List interface
+import java.util.concurrent.Callable;      // Imports Callable for the file source
+import java.util.concurrent.ForkJoinPool;  // Imports ForkJoinPool for parallel decoding
+import java.util.function.LongSupplier;    // Imports LongSupplier for the legacy timestamp
+
+/**
+ * Loads the message history into a {@link MessageList} on a background thread.
+ *
+ * The file is first scanned for record boundaries, which is a quick pass over the bytes
+ * that only counts braces outside strings. That fixes how many messages the history holds,
+ * so the list can reserve their rows and new messages can be appended after them straight
+ * away. The records are then decoded in chunks, newest chunk first, and each chunk is
+ * published as soon as it is in place. Readers wait only for the chunks they touch.
+ *
+ * Chunks are decoded in parallel on a fork-join pool. Parsing, the expensive part, runs
+ * on every core; copying a decoded chunk into its rows is done under the list's lock.
+ * Each chunk lands in the rows its records came from, so the result is the same as
+ * decoding one chunk after another.
+ *
+ * Records saved before messages carried a timestamp are given the time the history was
+ * last saved, which no such message can be newer than. The next save writes it out.
+ *
+ * A chunk that fails to decode is decoded again one record at a time, so only the records
+ * that are actually bad are lost from the loaded list; their rows are left as deleted
+ * tombstones. A history with bad records, or one that could not be read at all, is
+ * reported by {@link #isDamaged()}, so the caller can keep the file instead of saving over it.
+ * A record compressed with a dictionary that has no intact file is not counted as bad: every
+ * record using that dictionary would be lost, so loading stops and the history is reported
+ * by {@link #failure()} instead; waiting for it then throws.
+ */
+public class HistoryLoader {
+
+    // Records per chunk, one MessageList page
+    static final int CHUNK = MessageList.PAGE_SIZE;
+    // Threads decoding chunks; 1 decodes on the loader thread alone
+    static final int PARALLELISM = Integer.getInteger("quickchat.load.parallelism",
+            Runtime.getRuntime().availableProcessors());
+
+    // List being filled
+    private final MessageList target;
+    // Reads the file; returns null if there is no history
+    private final Callable<byte[]> source;
+    // Runs on the loader thread at the end if a save was put off while loading
+    private final Runnable deferredWrite;
+    // Threads used for decoding
+    private final int parallelism;
+    // Returns the time given to records without a timestamp, or null to leave them without one
+    private final LongSupplier legacyTime;
+    // Time given to records without a timestamp, or null; set by the loader thread before decoding
+    private Long legacyTimestamp;
+
+    // Number of history records, or -1 until the scan has finished
+    private int records = -1;
+    // Which chunks are in place
+    private boolean[] loaded = new boolean[0];
+    // True once every chunk is in place (or loading gave up)
+    private boolean done;
+    // True if a save was put off until the history is complete
+    private boolean writeDeferred;
+    // True if the file could not be read or some of its records could not be decoded
+    private volatile boolean damaged;
+    // Set if a record names a compression dictionary that cannot be read
+    private volatile MessageDictionary.MissingException failure;
+
+    // File content and the byte range of each chunk; written by the loader thread
+    // before any decode task starts
+    private byte[] data;
+    private int[] chunkStart = new int[16];
+    private int[] chunkEnd = new int[16];
+
+    /**
+     * Creates a loader. Call {@link #start()} to begin.
+     * @param target The empty list to fill.
+     * @param source Reads the file; returns null if there is no history.
+     * @param deferredWrite Saves the list; run on the loader thread once the history is
+     *                      in place, if {@link #deferWrite()} was called while loading.
+     */
+    public HistoryLoader(MessageList target, Callable<byte[]> source, Runnable deferredWrite) {
+        this(target, source, deferredWrite, null, PARALLELISM);
+    }
+
+    /**
+     * Creates a loader that timestamps older records with the time the history was saved.
+     * @param target The empty list to fill.
+     * @param source Reads the file; returns null if there is no history.
+     * @param deferredWrite Saves the list if a save was put off while loading.
+     * @param legacyTime Returns the time, in epoch milliseconds, the history was last saved;
+     *                   called once, right after the file is read.
+     */
+    public HistoryLoader(MessageList target, Callable<byte[]> source, Runnable deferredWrite, LongSupplier legacyTime) {
+        this(target, source, deferredWrite, legacyTime, PARALLELISM);
+    }
+
+    /**
+     * Creates a loader with a given number of decoding threads.
+     * @param target The empty list to fill.
+     * @param source Reads the file; returns null if there is no history.
+     * @param deferredWrite Saves the list if a save was put off while loading.
+     * @param parallelism The number of decoding threads.
+     */
+    HistoryLoader(MessageList target, Callable<byte[]> source, Runnable deferredWrite, int parallelism) {
+        this(target, source, deferredWrite, null, parallelism);
+    }
+
+    /**
+     * Creates a loader with a legacy timestamp source, which may be null, and a given number of decoding threads.
+     */
+    HistoryLoader(MessageList target, Callable<byte[]> source, Runnable deferredWrite, LongSupplier legacyTime,
+                  int parallelism) {
+        this.target = target;
+        this.source = source;
+        this.deferredWrite = deferredWrite;
+        this.legacyTime = legacyTime;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Starts loading on a background thread and returns immediately.
+     */
+    public void start() {
+        Thread thread = new Thread(this::run, "history-loader");
+        thread.setDaemon(true); // Loading is pointless once the app exits
+        thread.start();
+    }
+
+    /**
+     * Blocks until the number of history records is known and their rows are reserved.
+     * @return The number of history records.
+     */
+    public synchronized int awaitRecords() {
+        while (records < 0) {
+            awaitChange();
+        }
+        return records;
+    }
+
+    /**
+     * Blocks until every history record in {@code [from, to)} is in place.
+     * Indexes past the history (messages stored since startup) never wait.
+     * @param from The first index.
+     * @param to One past the last index.
+     */
+    public synchronized void awaitLoaded(int from, int to) {
+        int last = Math.min(to, awaitRecords()) - 1;
+        for (int chunk = from / CHUNK; chunk <= last / CHUNK && last >= 0; chunk++) {
+            while (!done && !loaded[chunk]) {
+                awaitChange();
+            }
+            checkFailure();
+        }
+    }
+
+    /**
+     * Blocks until the whole history is in place.
+     */
+    public synchronized void awaitAll() {
+        while (!done) {
+            awaitChange();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Puts off saving until the history is complete, since a snapshot taken now would
+     * miss the records not yet in place.
+     * @return True if the save was put off; false if loading has finished and the
+     *         caller should save now.
+     */
+    public synchronized boolean deferWrite() {
+        if (done) return false;
+        writeDeferred = true;
+        return true;
+    }
+
+    /**
+     * Returns whether part of the saved history was lost while loading: the file could not
+     * be read, was not a JSON array, or held records that could not be decoded. Only final
+     * once {@link #awaitAll()} has returned.
+     * @return True if saving the loaded list would drop messages from the file.
+     */
+    public boolean isDamaged() {
+        return damaged;
+    }
+
+    /**
+     * Returns why loading stopped, if a record names a compression dictionary that cannot be read.
+     * @return The error, or null if loading did not stop.
+     */
+    public MessageDictionary.MissingException failure() {
+        return failure;
+    }
+
+    /**
+     * Throws the error loading stopped with, if any.
+     */
+    private void checkFailure() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Waits for the loader thread to publish progress.
+     */
+    private void awaitChange() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading messages", e);
+        }
+    }
+
+    /**
+     * Loader thread: reads and scans the file, then decodes the chunks newest first.
+     */
+    private void run() {
+        PersistenceEvent event = new PersistenceEvent(); // Flight Recorder event for this load
+        event.begin();
+        int count = 0;
+        try {
+            long ioStart = System.nanoTime();
+            try {
+                data = source.call(); // Reads the newest intact snapshot
+                legacyTimestamp = legacyTime == null ? null : legacyTime.getAsLong();
+            } catch (Exception e) {
+                System.out.println("Error reading messages: " + e.getMessage()); // Prints message
+                damaged = true; // The file is there but unreadable
+            }
+            event.ioTime = System.nanoTime() - ioStart;
+
+            long decodeStart = System.nanoTime();
+            if (data == null) {
+                System.out.println("No previous messages found or error reading file."); // Prints message
+            } else {
+                try {
+                    count = scan(data);
+                } catch (IOException e) {
+                    System.out.println("Error reading messages: " + e.getMessage());
+                    count = 0; // Treats a file that is not a JSON array as empty
+                    damaged = true;
+                }
+            }
+            synchronized (target) {
+                target.reserve(count); // Rows for the history; new messages go after them
+            }
+            publishRecords(count);
+
+            decodeAll(count);
+            event.encodeTime = System.nanoTime() - decodeStart;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = "messages.json";
+                event.operation = "load";
+                event.records = count;
+                event.bytes = data == null ? 0 : data.length;
+                event.commit();
+            }
+            data = null; // The file content is no longer needed
+            while (takeDeferredWrite()) { // Releases waiting readers, even if loading failed, once nothing is put off
+                try {
+                    deferredWrite.run(); // Submits the save of what was stored while loading, before flush() can return
+                } catch (RuntimeException e) {
+                    System.out.println("Error saving messages: " + e.getMessage()); // Prints message
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the byte range of every chunk of records in a JSON array of objects.
+     * Braces inside strings are skipped; UTF-8 continuation bytes never look like ASCII,
+     * so the scan can work on raw bytes.
+     * @param data The file content.
+     * @return The number of records.
+     * @throws IOException If the content is not a JSON array.
+     */
+    private int scan(byte[] data) throws IOException {
+        int i = 0;
+        while (i < data.length && data[i] <= ' ') i++; // Skips leading whitespace
+        if (i == data.length || data[i] == 'n') return 0; // Empty file or "null"
+        if (data[i] != '[') throw new IOException("messages.json is not a JSON array");
+
+        int count = 0;
+        int depth = 0;
+        boolean inString = false;
+        for (i++; i < data.length; i++) {
+            byte b = data[i];
+            if (inString) {
+                if (b == '\\') i++;                // Skips the escaped character
+                else if (b == '"') inString = false;
+                continue;
+            }
+            if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                if (depth == 0 && b == '{' && count % CHUNK == 0) {
+                    setChunkStart(count / CHUNK, i); // First record of a new chunk
+                }
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (depth == 0) break; // End of the top-level array
+                depth--;
+                if (depth == 0 && b == '}') {
+                    chunkEnd[count / CHUNK] = i + 1; // Chunk so far ends after this record
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decodes every chunk, newest first, on the loader thread alone or on a fork-join pool.
+     * @param count The number of history records.
+     */
+    private void decodeAll(int count) {
+        int chunks = (count + CHUNK - 1) / CHUNK;
+        if (parallelism == 1 || chunks <= 1) {
+            for (int chunk = chunks - 1; chunk >= 0; chunk--) { // Newest first
+                decodeChunk(chunk, count);
+                publishChunk(chunk);
+            }
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(chunks);
+        for (int chunk = chunks - 1; chunk >= 0; chunk--) { // Queued newest first
+            int c = chunk;
+            tasks.add(() -> {
+                decodeChunk(c, count);
+                publishChunk(c);
+                return null;
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, chunks));
+        try {
+            pool.invokeAll(tasks); // Returns once every chunk is in place
+        } finally {
+            pool.shutdown(); // Lets the worker threads exit
+        }
+    }
+
+    /**
+     * Decodes one chunk and copies its records into their reserved rows.
+     * If the chunk cannot be decoded in one go, its records are decoded one by one and
+     * each bad record's row is left as a deleted tombstone, which is never saved.
+     * @param chunk The chunk number.
+     * @param count The number of history records.
+     */
+    private void decodeChunk(int chunk, int count) {
+        if (failure != null) {
+            return; // Loading has stopped
+        }
+        int first = chunk * CHUNK;
+        MessageEntry[] entries = new MessageEntry[Math.min(CHUNK, count - first)];
+        TypeAdapter<MessageEntry> adapter = JsonSupport.MESSAGES.getAdapter(MessageEntry.class);
+        try {
+            decodeRecords(chunkStart[chunk], chunkEnd[chunk], adapter, entries, 0);
+        } catch (MessageDictionary.MissingException e) {
+            stop(e);
+            return; // Its rows stay empty; readers are stopped by the failure
+        } catch (IOException | RuntimeException e) {
+            Arrays.fill(entries, null); // Starts again, one record at a time
+            if (!decodeEachRecord(chunk, adapter, entries)) {
+                return;
+            }
+        }
+        synchronized (target) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] != null) {
+                    target.fill(first + i, entries[i]);
+                } else {
+                    target.fill(first + i, new MessageEntry(null, null, null, null)); // Keeps later indexes in place
+                    target.delete(first + i); // Hidden from readers and left out of every save
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the records in a byte range of the file into an array.
+     * @param from The offset of the first record.
+     * @param to The offset just past the last record.
+     * @param adapter The message adapter.
+     * @param entries Receives the records.
+     * @param at The array index of the first record.
+     * @throws IOException If a record is not valid JSON.
+     */
+    private void decodeRecords(int from, int to, TypeAdapter<MessageEntry> adapter, MessageEntry[] entries, int at)
+            throws IOException {
+        String json = "[" + new String(data, from, to - from, StandardCharsets.UTF_8) + "]";
+        JsonReader in = new JsonReader(new StringReader(json));
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() == JsonToken.NULL) { // Null elements were not counted as records
+                in.nextNull();
+                continue;
+            }
+            MessageEntry entry = adapter.read(in);
+            if (entry.Timestamp == null) { // Stays null without a legacy time
+                entry.Timestamp = legacyTimestamp; // Saved before messages were timestamped
+            }
+            entries[at++] = entry;
+        }
+    }
+
+    /**
+     * Decodes a chunk's records one at a time, so a bad record costs only itself.
+     * Record boundaries are found with the same brace count as {@link #scan}.
+     * @param chunk The chunk number.
+     * @param adapter The message adapter.
+     * @param entries Receives the records; a bad record's slot stays null.
+     * @return False if loading stopped because a record's dictionary cannot be read.
+     */
+    private boolean decodeEachRecord(int chunk, TypeAdapter<MessageEntry> adapter, MessageEntry[] entries) {
+        int n = 0;
+        int depth = 0;
+        int start = -1;
+        boolean inString = false;
+        for (int i = chunkStart[chunk]; i < chunkEnd[chunk] && n < entries.length; i++) {
+            byte b = data[i];
+            if (inString) {
+                if (b == '\\') i++;
+                else if (b == '"') inString = false;
+                continue;
+            }
+            if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                if (depth++ == 0) start = i;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                try {
+                    decodeRecords(start, i + 1, adapter, entries, n);
+                } catch (MessageDictionary.MissingException e) {
+                    stop(e);
+                    return false;
+                } catch (IOException | RuntimeException e) {
+                    entries[n] = null;
+                    damaged = true;
+                    System.out.println("Error reading message " + (chunk * CHUNK + n + 1) + ": " + e.getMessage()); // Prints message
+                }
+                n++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops loading because a record's dictionary cannot be read, and says so once.
+     */
+    private synchronized void stop(MessageDictionary.MissingException e) {
+        if (failure == null) {
+            failure = e;
+            System.out.println("Error reading messages: " + e.getMessage()); // Prints message
+        }
+    }
+
+    /**
+     * Records where a chunk starts, growing the tables if needed.
+     */
+    private void setChunkStart(int chunk, int offset) {
+        if (chunk == chunkStart.length) {
+            chunkStart = Arrays.copyOf(chunkStart, chunk * 2);
+            chunkEnd = Arrays.copyOf(chunkEnd, chunk * 2);
+        }
+        chunkStart[chunk] = offset;
+    }
+
+    /**
+     * Publishes the record count and wakes waiting readers.
+     */
+    private synchronized void publishRecords(int count) {
+        loaded = new boolean[(count + CHUNK - 1) / CHUNK];
+        records = count;
+        notifyAll();
+    }
+
+    /**
+     * Marks a chunk as in place and wakes waiting readers.
+     */
+    private synchronized void publishChunk(int chunk) {
+        loaded[chunk] = true;
+        notifyAll();
+    }
+
+    /**
+     * Takes a save that was put off while loading or, if there is none, marks loading as
+     * finished and wakes waiting readers. Loading is only marked finished once no save is
+     * pending, so a caller that waits for it also finds that save submitted.
+     * @return True if a save was put off and the caller must run it, then call this again.
+     */
+    private synchronized boolean takeDeferredWrite() {
+        if (writeDeferred) {
+            writeDeferred = false;
+            return true;
+        }
+        if (records < 0) {
+            records = 0; // Failed before the scan; nothing was reserved
+        }
+        done = true;
+        notifyAll();
+        return false;
+    }
+}
@@ -0,0 +1,402 @@
+//Libraries
+import java.util.HashSet;                          // Imports HashSet for the cached pages of a scope
+import java.util.Iterator;                         // Imports Iterator for walking the LRU order
+import java.util.LinkedHashMap;                    // Imports LinkedHashMap for the LRU order
+import java.util.Map;                              // Imports Map interface
+import java.util.Set;                              // Imports Set interface
+import java.util.concurrent.ConcurrentHashMap;     // Imports ConcurrentHashMap for lock-free lookups
+import java.util.concurrent.atomic.AtomicLong;     // Imports AtomicLong for the read buffer position
+import java.util.concurrent.atomic.AtomicLongArray; // Imports AtomicLongArray for the scope versions
+import java.util.concurrent.atomic.AtomicReferenceArray; // Imports AtomicReferenceArray for the read buffer
+import java.util.concurrent.atomic.LongAdder;      // Imports LongAdder for the hit and miss counts
+import java.util.concurrent.locks.ReentrantLock;   // Imports ReentrantLock for the eviction policy
+import java.util.function.Supplier;                // Imports Supplier for loading a missing page
+
+/**
+ * Bounded cache of formatted history pages, such as the newest page of a conversation,
+ * so a page that was already shown is not decoded and formatted again.
+ *
+ * A page is keyed by its scope (a conversation, or the whole history), a variant (whose
+ * point of view it is shown from) and its page number, and weighs roughly its size in
+ * bytes. Lookups are lock-free reads of a concurrent map; each hit is noted in a small
+ * lossy buffer that is replayed into the eviction policy the next time it runs, so readers
+ * never wait for each other. The policy keeps pages in least-recently-used order and,
+ * when the cache is full, only admits a new page if it has been asked for at least as
+ * often as the page it would evict (TinyLFU), judged by a small count-min sketch of recent
+ * requests. A one-off read of an old page therefore cannot push out the pages of busy
+ * conversations.
+ *
+ * Invalidation is precise: storing a message drops only the pages of its conversation.
+ * Every scope has a version that invalidation bumps; a page loaded while its scope changed
+ * is returned but not cached, so a stale page can never be put back after the change.
+ */
+public class HistoryPageCache {
+
+    // Most bytes of pages kept per cache
+    static final long MAX_BYTES = Long.getLong("quickchat.cache.bytes", 8L * 1024 * 1024);
+
+    // Bytes a page costs besides its text
+    private static final int PAGE_OVERHEAD = 96;
+    // Slots in the lossy buffer of recent hits (a power of two)
+    private static final int READ_BUFFER = 128;
+    // Version stripes; scopes that share a stripe invalidate each other's loads in flight
+    private static final int STRIPES = 256;
+
+    // Hit and miss counts, published as metrics too
+    private static final MetricCounter HIT_COUNTER = Metrics.counter("history_cache_hits");
+    private static final MetricCounter MISS_COUNTER = Metrics.counter("history_cache_misses");
+    private static final MetricCounter EVICTION_COUNTER = Metrics.counter("history_cache_evictions");
+
+    // Most bytes kept
+    private final long maxBytes;
+    // Cached pages, read without locking
+    private final Map<Key, Page> pages = new ConcurrentHashMap<>();
+    // Policy state below is guarded by the lock
+    private final ReentrantLock lock = new ReentrantLock();
+    // Pages in least-recently-used order, oldest first
+    private final LinkedHashMap<Key, Page> order = new LinkedHashMap<>(64, 0.75f, true);
+    // Cached pages of each scope, for invalidating a scope
+    private final Map<String, Set<Key>> scopes = new ConcurrentHashMap<>();
+    // Request frequencies
+    private final FrequencySketch sketch = new FrequencySketch();
+    // Bytes of the cached pages
+    private long weight;
+    // Recent hits not yet replayed into the policy
+    private final AtomicReferenceArray<Key> reads = new AtomicReferenceArray<>(READ_BUFFER);
+    private final AtomicLong readsWritten = new AtomicLong();
+    private long readsDrained;
+    // Version of each scope stripe
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    // Lookups answered from the cache and lookups that had to load
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Identifies a page.
+     */
+    private static final class Key {
+        final String scope;
+        final String variant;
+        final int page;
+
+        Key(String scope, String variant, int page) {
+            this.scope = scope;
+            this.variant = variant;
+            this.page = page;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return page == k.page && scope.equals(k.scope) && variant.equals(k.variant);
+        }
+
+        @Override
+        public int hashCode() {
+            return (scope.hashCode() * 31 + variant.hashCode()) * 31 + page;
+        }
+    }
+
+    /**
+     * A cached page and what it costs.
+     */
+    private static final class Page {
+        final String text;
+        final int weight;
+
+        Page(String text) {
+            this.text = text;
+            this.weight = PAGE_OVERHEAD + 2 * text.length();
+        }
+    }
+
+    /**
+     * Creates an empty cache.
+     * @param maxBytes The most bytes of pages to keep.
+     */
+    public HistoryPageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a page, loading and caching it if it is not cached.
+     * Two readers missing the same page at once may both load it.
+     * @param scope What the page belongs to, e.g. a conversation key.
+     * @param variant Whose view of the scope it is, or "" if everyone sees the same page.
+     * @param page The page number.
+     * @param loader Builds the page; runs without any lock held.
+     * @return The page text.
+     */
+    public String get(String scope, String variant, int page, Supplier<String> loader) {
+        Key key = new Key(scope, variant, page);
+        Page cached = pages.get(key);
+        if (cached != null) {
+            hits.increment();
+            HIT_COUNTER.increment();
+            recordRead(key);
+            return cached.text;
+        }
+        misses.increment();
+        MISS_COUNTER.increment();
+        long version = versions.get(stripe(scope)); // Read before loading, checked before caching
+        String text = loader.get();
+        lock.lock();
+        try {
+            drainReads();
+            sketch.increment(key.hashCode());
+            if (versions.get(stripe(scope)) == version) {
+                admit(key, new Page(text));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return text;
+    }
+
+    /**
+     * Drops every page of a scope.
+     * @param scope The scope.
+     */
+    public void invalidate(String scope) {
+        invalidateFrom(scope, 0);
+    }
+
+    /**
+     * Drops the pages of a scope numbered {@code fromPage} or higher.
+     * @param scope The scope.
+     * @param fromPage The first page to drop.
+     */
+    public void invalidateFrom(String scope, int fromPage) {
+        invalidate(scope, fromPage, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Drops one page of a scope, in every variant.
+     * @param scope The scope.
+     * @param page The page number.
+     */
+    public void invalidatePage(String scope, int page) {
+        invalidate(scope, page, page);
+    }
+
+    /**
+     * Drops every page.
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            for (int i = 0; i < STRIPES; i++) {
+                versions.incrementAndGet(i);
+            }
+            pages.clear();
+            order.clear();
+            scopes.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the share of lookups answered from the cache.
+     * @return The hit ratio between 0 and 1; 0 before the first lookup.
+     */
+    public double hitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     * @return The hit count.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to load their page.
+     * @return The miss count.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of cached pages.
+     * @return The page count.
+     */
+    public int size() {
+        return pages.size();
+    }
+
+    /**
+     * Returns the bytes the cached pages take.
+     * @return The weight.
+     */
+    public long weight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the pages of a scope in a range of page numbers.
+     */
+    private void invalidate(String scope, int fromPage, int toPage) {
+        versions.incrementAndGet(stripe(scope)); // Loads in flight for the scope are not cached
+        Set<Key> keys = scopes.get(scope);
+        if (keys == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            for (Iterator<Key> it = keys.iterator(); it.hasNext(); ) {
+                Key key = it.next();
+                if (key.page >= fromPage && key.page <= toPage) {
+                    it.remove();
+                    remove(key);
+                }
+            }
+            if (keys.isEmpty()) {
+                scopes.remove(scope);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Notes a hit in the read buffer, replaying the buffer if it is half full and the lock is free.
+     */
+    private void recordRead(Key key) {
+        long slot = readsWritten.getAndIncrement();
+        reads.lazySet((int) slot & (READ_BUFFER - 1), key); // Lossy: an unreplayed slot may be overwritten
+        if (slot - readsDrained >= READ_BUFFER / 2 && lock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replays buffered hits into the LRU order and the sketch. Called under the lock.
+     */
+    private void drainReads() {
+        long end = readsWritten.get();
+        for (long i = Math.max(readsDrained, end - READ_BUFFER); i < end; i++) {
+            Key key = reads.getAndSet((int) i & (READ_BUFFER - 1), null);
+            if (key != null) {
+                sketch.increment(key.hashCode());
+                order.get(key); // Moves it to the most recently used end, if still cached
+            }
+        }
+        readsDrained = end;
+    }
+
+    /**
+     * Caches a page, evicting least recently used pages to make room, unless the page
+     * is asked for less often than the page it would evict. Called under the lock.
+     */
+    private void admit(Key key, Page page) {
+        if (page.weight > maxBytes) {
+            return; // Larger than the whole cache
+        }
+        remove(key); // A reload replaces the old copy
+        int frequency = sketch.frequency(key.hashCode());
+        Iterator<Map.Entry<Key, Page>> eldest = order.entrySet().iterator();
+        while (weight + page.weight > maxBytes) {
+            Map.Entry<Key, Page> victim = eldest.next();
+            if (sketch.frequency(victim.getKey().hashCode()) > frequency) {
+                return; // The resident page is more popular; the new one is not cached
+            }
+            eldest.remove();
+            pages.remove(victim.getKey());
+            Set<Key> keys = scopes.get(victim.getKey().scope);
+            if (keys != null) keys.remove(victim.getKey());
+            weight -= victim.getValue().weight;
+            EVICTION_COUNTER.increment();
+        }
+        order.put(key, page);
+        pages.put(key, page);
+        scopes.computeIfAbsent(key.scope, s -> new HashSet<>()).add(key);
+        weight += page.weight;
+    }
+
+    /**
+     * Removes a cached page. Called under the lock.
+     */
+    private void remove(Key key) {
+        Page old = order.remove(key);
+        if (old != null) {
+            pages.remove(key);
+            weight -= old.weight;
+        }
+    }
+
+    /**
+     * Returns the version stripe of a scope.
+     */
+    private static int stripe(String scope) {
+        return scope.hashCode() & (STRIPES - 1);
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters: an estimate of how often each page was asked
+     * for recently. Counters are halved once enough requests have been counted, so old
+     * popularity fades.
+     */
+    private static final class FrequencySketch {
+        // Sixteen 4-bit counters per long
+        private final long[] table = new long[512];
+        // Requests counted since the last halving, and when to halve
+        private int additions;
+        private final int resetAt = table.length * 16 * 2;
+
+        int frequency(int hash) {
+            int min = 15;
+            for (int i = 0; i < 4; i++) {
+                min = Math.min(min, counter(index(hash, i), hash, i));
+            }
+            return min;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = index(hash, i);
+                int shift = shift(hash, i);
+                if (((table[index] >>> shift) & 0xF) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= resetAt) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777_7777_7777_7777L; // Halves every counter
+                }
+                additions /= 2;
+            }
+        }
+
+        private int counter(int index, int hash, int i) {
+            return (int) (table[index] >>> shift(hash, i)) & 0xF;
+        }
+
+        private int index(int hash, int i) {
+            int h = (hash + i) * 0x9E3779B9; // A different spread for each row
+            return (h ^ (h >>> 16)) & (table.length - 1);
+        }
+
+        private static int shift(int hash, int i) {
+            return (((hash >>> (i * 8)) & 3) + i * 4) << 2; // Counter i of the long's group i
+        }
+    }
+}
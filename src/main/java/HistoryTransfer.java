@@ -0,0 +1,694 @@
+//Libraries
+import com.google.gson.stream.JsonReader;           // Imports JsonReader for reading NDJSON
+import com.google.gson.stream.JsonToken;            // Imports JsonToken to detect the end of the input
+import com.google.gson.stream.JsonWriter;           // Imports JsonWriter for writing NDJSON
+import java.io.BufferedInputStream;                 // Imports BufferedInputStream for large reads
+import java.io.BufferedOutputStream;                // Imports BufferedOutputStream for large writes
+import java.io.BufferedReader;                      // Imports BufferedReader for reading text
+import java.io.BufferedWriter;                      // Imports BufferedWriter for writing text
+import java.io.FilterInputStream;                   // Imports FilterInputStream for counting bytes read
+import java.io.FilterOutputStream;                  // Imports FilterOutputStream for counting bytes written
+import java.io.IOException;                         // Imports IOException for I/O errors
+import java.io.InputStream;                         // Imports InputStream for the import source
+import java.io.InputStreamReader;                   // Imports InputStreamReader to decode UTF-8
+import java.io.OutputStream;                        // Imports OutputStream for the export target
+import java.io.OutputStreamWriter;                  // Imports OutputStreamWriter to encode UTF-8
+import java.io.PrintStream;                         // Imports PrintStream for progress lines
+import java.io.Reader;                              // Imports Reader for parsing CSV
+import java.io.UncheckedIOException;                // Imports UncheckedIOException to leave forEach on errors
+import java.io.Writer;                              // Imports Writer for writing text
+import java.nio.ByteBuffer;                         // Imports ByteBuffer for binary records
+import java.nio.charset.StandardCharsets;           // Imports UTF-8 for text formats
+import java.nio.file.Files;                         // Imports Files for opening the dump file
+import java.nio.file.Path;                          // Imports Path for file locations
+import java.nio.file.Paths;                         // Imports Paths for parsing arguments
+import java.util.ArrayList;                         // Imports ArrayList for CSV fields and import batches
+import java.util.List;                              // Imports List interface
+import java.util.Locale;                            // Imports Locale for parsing format names
+
+/**
+ * Command-line export and import of the message history, streamed one message at a time
+ * so memory use does not grow with the size of the history.
+ *
+ * Formats:
+ * - ndjson: one JSON object per line, with the same field names as messages.json
+ * - csv: a header line, then one row per message (RFC 4180 quoting)
+ * - binary: {@link MessageLog} records, checksummed; a sharded store's shard log can be imported as is
+ *
+ * Exports read the store with {@link MessageStore#forEach}; imports hand the store
+ * {@link #FLUSH_EVERY} messages at a time with {@link MessageStore#storeAll}, so a backend's
+ * write queue stays short and messages.json is written once at the end. Both directions can keep only one recipient's messages and only
+ * messages stored in a time range.
+ *
+ * Usage:
+ * java -cp ... HistoryTransfer export|import FORMAT FILE [--store BACKEND] [--dir DIR]
+ *     [--recipient NUMBER] [--from MILLIS] [--to MILLIS] [--quiet]
+ * FILE "-" is standard output for an export and standard input for an import.
+ */
+public class HistoryTransfer {
+
+    // Messages handed to the target store at a time
+    static final int FLUSH_EVERY = 8192;
+    // Bytes buffered between the tool and the file
+    private static final int BUFFER = 1 << 20;
+    // Milliseconds between progress lines
+    private static final long PROGRESS_INTERVAL = 1000;
+    // Column names of the CSV header, in order
+    static final String[] CSV_COLUMNS = {"MessageID", "MessageHash", "Recipient", "Sender", "Timestamp", "Message"};
+
+    /**
+     * Dump file formats.
+     */
+    public enum Format {
+        NDJSON, CSV, BINARY;
+
+        /**
+         * Parses a format name such as "ndjson".
+         * @param name The name, in any case.
+         * @return The format.
+         * @throws IllegalArgumentException If the name is unknown.
+         */
+        public static Format of(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown format " + name + "; use ndjson, csv or binary");
+            }
+        }
+    }
+
+    /**
+     * Which messages to transfer: optionally one recipient's, optionally a time range.
+     * Messages without a timestamp only pass when no range is set.
+     */
+    public static class Filter {
+
+        // Every message
+        public static final Filter ALL = new Filter(null, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        // Recipient to keep, or null for all
+        final String recipient;
+        // Time range in epoch milliseconds, from inclusive, to exclusive
+        final long fromMillis;
+        final long toMillis;
+
+        /**
+         * Creates a filter.
+         * @param recipient The recipient's cell number, or null for every recipient.
+         * @param fromMillis The start of the range, inclusive; Long.MIN_VALUE for no start.
+         * @param toMillis The end of the range, exclusive; Long.MAX_VALUE for no end.
+         */
+        public Filter(String recipient, long fromMillis, long toMillis) {
+            this.recipient = recipient;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+        }
+
+        /**
+         * Checks a message against the filter.
+         * @param recipient The message's recipient.
+         * @param timestamp When it was stored, or null.
+         * @return True if it should be transferred.
+         */
+        boolean accepts(String recipient, Long timestamp) {
+            if (this.recipient != null && !this.recipient.equals(recipient)) {
+                return false;
+            }
+            if (fromMillis == Long.MIN_VALUE && toMillis == Long.MAX_VALUE) {
+                return true; // No range
+            }
+            return timestamp != null && timestamp >= fromMillis && timestamp < toMillis;
+        }
+    }
+
+    /**
+     * Prints how far a transfer has got, at most once per second, with its throughput.
+     */
+    public static class Progress {
+
+        // Reports nothing
+        public static final Progress NONE = new Progress(null, "");
+
+        // Where lines go, or null for none
+        private final PrintStream out;
+        // "Exported" or "Imported"
+        private final String verb;
+        // When the transfer started and when the last line was printed
+        private final long started = System.nanoTime();
+        private long printed = started;
+
+        /**
+         * Creates a progress reporter.
+         * @param out Where to print, or null to stay quiet.
+         * @param verb The word starting each line.
+         */
+        public Progress(PrintStream out, String verb) {
+            this.out = out;
+            this.verb = verb;
+        }
+
+        /**
+         * Prints a line if a second has passed since the last one.
+         * @param messages Messages transferred so far.
+         * @param bytes Bytes written or read so far.
+         */
+        void update(long messages, long bytes) {
+            if (out == null || (messages & 1023) != 0) {
+                return; // Checks the clock once per 1024 messages
+            }
+            long now = System.nanoTime();
+            if (now - printed >= PROGRESS_INTERVAL * 1_000_000L) {
+                printed = now;
+                print(messages, bytes, now);
+            }
+        }
+
+        /**
+         * Prints the final line.
+         * @param messages Messages transferred.
+         * @param bytes Bytes written or read.
+         */
+        void done(long messages, long bytes) {
+            if (out != null) {
+                print(messages, bytes, System.nanoTime());
+            }
+        }
+
+        /**
+         * Prints one progress line.
+         */
+        private void print(long messages, long bytes, long now) {
+            double seconds = Math.max(now - started, 1) / 1e9;
+            out.printf(Locale.ROOT, "%s %d messages, %.1f MB in %.1f s (%.1f MB/s)%n",
+                    verb, messages, bytes / 1e6, seconds, bytes / 1e6 / seconds);
+        }
+    }
+
+    /**
+     * Writes a store's messages to a stream.
+     * @param store The store to read.
+     * @param format The dump format.
+     * @param filter Which messages to write.
+     * @param out The stream; flushed but not closed.
+     * @param progress Receives progress.
+     * @return The number of messages written.
+     * @throws IOException If writing fails.
+     */
+    public static long export(MessageStore store, Format format, Filter filter, OutputStream out, Progress progress)
+            throws IOException {
+        CountingOutputStream counted = new CountingOutputStream(new BufferedOutputStream(out, BUFFER));
+        Exporter exporter = format == Format.BINARY ? new BinaryExporter(counted) : new TextExporter(format, counted);
+        long[] count = {0};
+        try {
+            store.forEach(view -> {
+                if (!filter.accepts(view.getRecipient(), view.getTimestamp())) {
+                    return;
+                }
+                try {
+                    exporter.write(view, count[0] + 1);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e); // Leaves forEach; rethrown below
+                }
+                progress.update(++count[0], counted.count);
+            });
+            exporter.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        progress.done(count[0], counted.count);
+        return count[0];
+    }
+
+    /**
+     * Reads messages from a stream into a store and waits until they are written.
+     * @param store The store to add to.
+     * @param format The dump format.
+     * @param filter Which messages to keep.
+     * @param in The stream; not closed.
+     * @param progress Receives progress.
+     * @return The number of messages stored.
+     * @throws IOException If the stream cannot be read or is not in the format.
+     */
+    public static long importInto(MessageStore store, Format format, Filter filter, InputStream in, Progress progress)
+            throws IOException {
+        CountingInputStream counted = new CountingInputStream(new BufferedInputStream(in, BUFFER));
+        Importer importer = new Importer(store, filter, counted, progress);
+        switch (format) {
+            case NDJSON: readNdjson(counted, importer); break;
+            case CSV: readCsv(counted, importer); break;
+            default: readBinary(counted, importer);
+        }
+        importer.finish();
+        store.flush();
+        progress.done(importer.count, counted.count);
+        return importer.count;
+    }
+
+    /**
+     * Writes messages in one of the dump formats.
+     */
+    private interface Exporter {
+        void write(MessageView view, long sequence) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    /**
+     * Writes NDJSON or CSV through one UTF-8 writer.
+     */
+    private static class TextExporter implements Exporter {
+
+        private final Format format;
+        private final Writer text;
+        private final JsonWriter json;
+
+        TextExporter(Format format, OutputStream out) throws IOException {
+            this.format = format;
+            this.text = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER);
+            this.json = new JsonWriter(text);
+            json.setLenient(true);         // One top-level object per line
+            json.setSerializeNulls(false); // Missing fields are left out, as in messages.json
+            if (format == Format.CSV) {
+                writeCsvRow(text, CSV_COLUMNS);
+            }
+        }
+
+        @Override
+        public void write(MessageView view, long sequence) throws IOException {
+            Long timestamp = view.getTimestamp();
+            if (format == Format.CSV) {
+                writeCsvRow(text, view.getMessageID(), view.getMessageHash(), view.getRecipient(), view.getSender(),
+                        timestamp == null ? null : Long.toString(timestamp), view.getMessage());
+                return;
+            }
+            json.beginObject(); // Plain text even with compression on, so the dump reads anywhere
+            json.name("MessageID").value(view.getMessageID());
+            json.name("MessageHash").value(view.getMessageHash());
+            json.name("Recipient").value(view.getRecipient());
+            json.name("Message").value(view.getMessage());
+            json.name("Sender").value(view.getSender());
+            json.name("Timestamp").value(timestamp);
+            json.endObject();
+            text.write('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            json.flush(); // Flushes the text writer and the streams under it
+        }
+    }
+
+    /**
+     * Writes MessageLog records, a batch at a time.
+     */
+    private static class BinaryExporter implements Exporter {
+
+        private final OutputStream out;
+        private ByteBuffer batch = ByteBuffer.allocate(BUFFER);
+
+        BinaryExporter(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(MessageView view, long sequence) throws IOException {
+            batch = MessageLog.encode(batch, sequence, view.toEntry());
+            if (batch.position() >= BUFFER) {
+                drain();
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        /**
+         * Writes the encoded records and empties the batch.
+         */
+        private void drain() throws IOException {
+            out.write(batch.array(), 0, batch.position());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Stores the imported messages that pass the filter, a batch at a time.
+     */
+    private static class Importer {
+
+        private final MessageStore store;
+        private final Filter filter;
+        private final CountingInputStream in;
+        private final Progress progress;
+        // Messages kept so far
+        long count;
+        // Kept messages not yet handed to the store
+        private final List<MessageEntry> batch = new ArrayList<>();
+
+        Importer(MessageStore store, Filter filter, CountingInputStream in, Progress progress) {
+            this.store = store;
+            this.filter = filter;
+            this.in = in;
+            this.progress = progress;
+        }
+
+        /**
+         * Keeps one message if the filter does, storing a full batch.
+         */
+        void accept(MessageEntry entry) {
+            if (!filter.accepts(entry.Recipient, entry.Timestamp)) {
+                return;
+            }
+            batch.add(entry);
+            if (batch.size() == FLUSH_EVERY) {
+                finish();
+            }
+            progress.update(++count, in.count);
+        }
+
+        /**
+         * Stores the messages kept since the last batch, if any.
+         */
+        void finish() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            store.storeAll(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Reads one JSON object after another, each usually on its own line.
+     */
+    private static void readNdjson(InputStream in, Importer importer) throws IOException {
+        MessageEntryAdapter adapter = new MessageEntryAdapter();
+        JsonReader json = new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER));
+        json.setLenient(true); // Many top-level objects
+        try {
+            while (json.peek() != JsonToken.END_DOCUMENT) {
+                importer.accept(adapter.read(json));
+            }
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Bad NDJSON: " + e.getMessage(), e); // Gson reports bad input unchecked
+        }
+    }
+
+    /**
+     * Reads a CSV dump, finding the columns by the names in its header.
+     */
+    private static void readCsv(InputStream in, Importer importer) throws IOException {
+        CsvReader text = new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> row = new ArrayList<>();
+        if (!text.readRow(row)) {
+            return; // Empty file
+        }
+        int[] columns = new int[CSV_COLUMNS.length];
+        for (int i = 0; i < CSV_COLUMNS.length; i++) {
+            columns[i] = row.indexOf(CSV_COLUMNS[i]); // -1 if the column is missing
+        }
+        if (columns[0] < 0) {
+            throw new IOException("CSV header has no MessageID column");
+        }
+        long line = 1;
+        while (text.readRow(row)) {
+            line++;
+            try {
+                String timestamp = field(row, columns[4]);
+                importer.accept(new MessageEntry(field(row, columns[0]), field(row, columns[1]),
+                        StringInterner.RECIPIENTS.intern(field(row, columns[2])),
+                        StringInterner.MESSAGES.intern(field(row, columns[5])),
+                        StringInterner.RECIPIENTS.intern(field(row, columns[3])),
+                        timestamp == null ? null : Long.parseLong(timestamp)));
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad timestamp in CSV row " + line + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Reads MessageLog records; edits and deletes in a shard log are applied as they come.
+     */
+    private static void readBinary(InputStream in, Importer importer) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(BUFFER);
+        IOException[] failed = {null};
+        MessageLog.RecordHandler handler = (type, sequence, payload) -> {
+            if (type == MessageLog.MESSAGE) {
+                importer.accept(MessageLog.decode(payload));
+            } else if (type == MessageLog.UPDATE) {
+                MessageEntry edit = MessageLog.decode(payload);
+                importer.finish(); // The edited message may still be in the batch
+                importer.store.update(edit.MessageID, edit.MessageHash, edit.Message);
+            } else if (type == MessageLog.DELETE) {
+                importer.finish();
+                importer.store.delete(MessageLog.decode(payload).MessageID);
+            }
+        };
+        while (true) {
+            int n = in.read(data.array(), data.position(), data.remaining());
+            if (n < 0) {
+                break;
+            }
+            data.position(data.position() + n);
+            data.flip();
+            MessageLog.scanRecords(data, handler);
+            data.compact(); // Keeps a record cut off at the end of this read
+            if (!data.hasRemaining()) { // One record bigger than the buffer
+                data = ByteBuffer.allocate(data.capacity() * 2).put(data.flip());
+            }
+        }
+        if (data.position() > 0) {
+            throw new IOException("Binary dump ends in the middle of a record (" + data.position() + " bytes)");
+        }
+    }
+
+    /**
+     * Writes one CSV row, quoting fields that need it; null is written as an empty, unquoted field.
+     */
+    static void writeCsvRow(Writer out, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) out.write(',');
+            String field = fields[i];
+            if (field == null) continue;
+            boolean quote = field.isEmpty(); // "" tells an empty text apart from a missing one
+            for (int c = 0; c < field.length() && !quote; c++) {
+                char ch = field.charAt(c);
+                quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+            }
+            if (!quote) {
+                out.write(field);
+                continue;
+            }
+            out.write('"');
+            out.write(field.replace("\"", "\"\""));
+            out.write('"');
+        }
+        out.write("\r\n");
+    }
+
+    /**
+     * Splits CSV text into rows, reading the text a buffer at a time.
+     */
+    static class CsvReader {
+
+        private final Reader in;
+        private final char[] buffer = new char[64 * 1024];
+        // Next character to read and end of the buffered characters
+        private int position;
+        private int limit;
+        // Characters of the field being read
+        private final StringBuilder field = new StringBuilder();
+
+        CsvReader(Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * Reads one row; quoted fields may hold commas, quotes and line breaks. An empty,
+         * unquoted field is read as null.
+         * @param row Receives the fields, replacing what it held.
+         * @return False at the end of the input.
+         * @throws IOException If reading fails or the text ends inside quotes.
+         */
+        boolean readRow(List<String> row) throws IOException {
+            row.clear();
+            field.setLength(0);
+            int ch = read();
+            if (ch < 0) {
+                return false;
+            }
+            boolean quoted = false;
+            boolean wasQuoted = false;
+            while (ch >= 0) {
+                if (quoted) {
+                    if (ch != '"') {
+                        field.append((char) ch);
+                    } else if (peek() == '"') {
+                        field.append('"'); // Escaped quote
+                        position++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (ch == '"' && field.length() == 0) {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if (ch == ',') {
+                    row.add(wasQuoted || field.length() > 0 ? field.toString() : null);
+                    field.setLength(0);
+                    wasQuoted = false;
+                } else if (ch == '\n') {
+                    break;
+                } else if (ch != '\r') {
+                    field.append((char) ch);
+                }
+                ch = read();
+            }
+            if (quoted) {
+                throw new IOException("CSV ends inside a quoted field");
+            }
+            row.add(wasQuoted || field.length() > 0 ? field.toString() : null);
+            return true;
+        }
+
+        /**
+         * Returns the next character, or -1 at the end.
+         */
+        private int read() throws IOException {
+            int ch = peek();
+            if (ch >= 0) position++;
+            return ch;
+        }
+
+        /**
+         * Returns the next character without consuming it, or -1 at the end.
+         */
+        private int peek() throws IOException {
+            if (position == limit) {
+                int n = in.read(buffer);
+                if (n <= 0) return -1;
+                position = 0;
+                limit = n;
+            }
+            return buffer[position];
+        }
+    }
+
+    /**
+     * Returns a field of a row, or null if the column is missing or the field is null.
+     */
+    private static String field(List<String> row, int column) {
+        return column < 0 || column >= row.size() ? null : row.get(column);
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    /**
+     * Runs an export or an import.
+     * @param args export|import, the format, the file and options (see the class comment).
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || !(args[0].equals("export") || args[0].equals("import"))) {
+            System.out.println("Usage: HistoryTransfer export|import ndjson|csv|binary FILE [--store BACKEND] [--dir DIR]"
+                    + " [--recipient NUMBER] [--from MILLIS] [--to MILLIS] [--quiet]");
+            return;
+        }
+        boolean export = args[0].equals("export");
+        String backend = MessageStore.BACKEND;
+        Path dir = Paths.get("");
+        String recipient = null;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        boolean quiet = false;
+        try {
+            Format format = Format.of(args[1]);
+            for (int i = 3; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--store": backend = value(args, ++i); break;
+                    case "--dir": dir = Paths.get(value(args, ++i)); break;
+                    case "--recipient": recipient = value(args, ++i); break;
+                    case "--from": from = Long.parseLong(value(args, ++i)); break;
+                    case "--to": to = Long.parseLong(value(args, ++i)); break;
+                    case "--quiet": quiet = true; break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            Filter filter = new Filter(recipient, from, to);
+            boolean standard = args[2].equals("-");
+            try (MessageStore store = MessageStore.open(backend, dir)) {
+                // Timed from when the store is open; goes to standard error, since standard output may carry the dump
+                Progress progress = quiet ? Progress.NONE : new Progress(System.err, export ? "Exported" : "Imported");
+                if (export) {
+                    try (OutputStream out = standard ? System.out : Files.newOutputStream(Paths.get(args[2]))) {
+                        export(store, format, filter, out, progress);
+                    }
+                } else {
+                    try (InputStream in = standard ? System.in : Files.newInputStream(Paths.get(args[2]))) {
+                        importInto(store, format, filter, in, progress);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            System.err.println("Transfer failed: " + e.getMessage()); // Prints message
+            System.exit(1);
+        }
+        System.exit(0); // Stops the stores' background threads
+    }
+
+    /**
+     * Returns the value after an option.
+     */
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        }
+        return args[i];
+    }
+}
@@ -0,0 +1,185 @@
+//Libraries
+import java.io.IOException;         // Imports IOException for I/O errors
+import java.util.ArrayList;         // Imports ArrayList for query results
+import java.util.List;              // Imports List interface
+import java.util.function.Consumer; // Imports Consumer for listing every message
+
+/**
+ * Message store that keeps everything in memory and writes nothing, for tests and for
+ * benchmarking the rest of the app without disk I/O. Messages live in one off-heap
+ * {@link MessageList} with an ID index and a conversation index, the same structures a
+ * single shard of the sharded store uses.
+ *
+ * Writers are serialised; readers work on a snapshot of the list and never wait for them.
+ */
+public class InMemoryMessageStore implements MessageStore {
+
+    // The messages, in the order they were stored
+    private final MessageList rows = new MessageList();
+    // Position of each message ID
+    private final MessageIdIndex ids = new MessageIdIndex();
+    // Positions of each conversation's messages
+    private final ConversationIndex conversations = new ConversationIndex();
+    // Deleted rows, which keep their positions
+    private int deleted;
+    // Formatted conversation pages, dropped as their conversations change
+    private final HistoryPageCache pageCache = new HistoryPageCache(HistoryPageCache.MAX_BYTES);
+
+    @Override
+    public int store(MessageEntry entry) {
+        if (entry.Timestamp == null) {
+            entry = new MessageEntry(entry.MessageID, entry.MessageHash, entry.Recipient, entry.Message, entry.Sender,
+                    System.currentTimeMillis());
+        }
+        int index = add(entry);
+        changed(entry.Sender, entry.Recipient);
+        return index;
+    }
+
+    @Override
+    public boolean update(String messageID, String hash, String message) {
+        return edit(messageID, hash, message, false);
+    }
+
+    @Override
+    public boolean delete(String messageID) {
+        return edit(messageID, null, null, true);
+    }
+
+    @Override
+    public MessageView view(int reference, MessageView view) {
+        return rows().view(reference, view);
+    }
+
+    @Override
+    public synchronized int size() {
+        return rows.size() - deleted;
+    }
+
+    @Override
+    public void forEach(Consumer<MessageView> action) {
+        MessageList.Snapshot snapshot = rows();
+        MessageView view = new MessageView();
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (!snapshot.isDeleted(i)) {
+                action.accept(snapshot.view(i, view));
+            }
+        }
+    }
+
+    @Override
+    public List<MessageEntry> findMessagesBetween(long fromMillis, long toMillis) {
+        MessageList.Snapshot snapshot = rows();
+        List<MessageEntry> found = new ArrayList<>();
+        MessageView view = new MessageView();
+        snapshot.forEachInTimeRange(fromMillis, toMillis, index -> found.add(snapshot.view(index, view).toEntry()));
+        return found;
+    }
+
+    @Override
+    public MessageEntry findMessageByID(String messageID) {
+        MessageList.Snapshot snapshot = rows();
+        int index = ids.find(messageID, snapshot);
+        return index < 0 ? null : snapshot.view(index, new MessageView()).toEntry();
+    }
+
+    @Override
+    public List<MessageEntry> findMessagesToRecipient(String recipient) {
+        MessageList.Snapshot snapshot = rows();
+        List<MessageEntry> found = new ArrayList<>();
+        MessageView view = new MessageView();
+        snapshot.forEachToRecipient(recipient, index -> found.add(snapshot.view(index, view).toEntry()));
+        return found;
+    }
+
+    @Override
+    public List<MessageEntry> loadConversation(String a, String b, int limit) {
+        MessageList.Snapshot snapshot = rows();
+        List<MessageEntry> page = new ArrayList<>();
+        MessageView view = new MessageView();
+        int before = snapshot.size(); // Only rows the snapshot holds
+        while (page.size() < limit) {
+            int[] positions = conversations.latest(a, b, limit - page.size(), before);
+            for (int i = positions.length - 1; i >= 0; i--) {
+                if (!snapshot.isDeleted(positions[i])) page.add(0, snapshot.view(positions[i], view).toEntry());
+            }
+            if (positions.length == 0) break;
+            before = positions[0]; // Pages further back past deleted messages
+        }
+        return page;
+    }
+
+    @Override
+    public void flush() {
+        // Nothing is written
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    @Override
+    public HistoryPageCache pageCache() {
+        return pageCache;
+    }
+
+    /**
+     * Adds a message to the list and its indexes without stamping it or dropping cached
+     * pages, as a loaded message is added.
+     * @param entry The message.
+     * @return The message's position.
+     */
+    protected synchronized int add(MessageEntry entry) {
+        rows.add(entry);
+        int index = rows.size() - 1;
+        ids.add(entry.MessageID, index);
+        conversations.add(entry.Sender, entry.Recipient, index);
+        return index;
+    }
+
+    /**
+     * Returns a view of the messages stored so far that stays valid while more are added.
+     * @return The snapshot.
+     */
+    protected synchronized MessageList.Snapshot rows() {
+        return rows.snapshot();
+    }
+
+    /**
+     * Edits or deletes the earliest message with an ID, in place.
+     */
+    private boolean edit(String messageID, String hash, String message, boolean delete) {
+        String sender;
+        String recipient;
+        synchronized (this) {
+            MessageList.Snapshot snapshot = rows.snapshot();
+            int index = ids.find(messageID, snapshot);
+            if (index < 0) {
+                return false;
+            }
+            MessageView view = snapshot.view(index, new MessageView());
+            sender = view.getSender();
+            recipient = view.getRecipient();
+            if (delete) {
+                rows.delete(index);
+                deleted++;
+            } else {
+                rows.revise(index, hash, message);
+            }
+        }
+        changed(sender, recipient);
+        return true;
+    }
+
+    /**
+     * Called after a conversation's messages changed: drops its cached pages.
+     * @param sender The sender's cell number, or null if unknown.
+     * @param recipient The recipient's cell number.
+     */
+    protected void changed(String sender, String recipient) {
+        if (sender != null && recipient != null) {
+            pageCache.invalidate(ConversationIndex.conversationKey(sender, recipient));
+        }
+    }
+}
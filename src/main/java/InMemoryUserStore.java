@@ -0,0 +1,52 @@
+//Libraries
+import java.util.HashMap; // Imports HashMap for the saved users
+import java.util.Map;     // Imports Map interface
+
+/**
+ * User store that keeps the last saved users in memory and writes nothing, for tests and
+ * benchmarks. Users are copied in and out, so changing a loaded User does not change
+ * what was saved, as with the file backends.
+ */
+public class InMemoryUserStore implements UserStore {
+
+    // Copies of the last saved users
+    private Map<String, User> saved = new HashMap<>();
+
+    @Override
+    public synchronized Map<String, User> load() {
+        return copy(saved);
+    }
+
+    @Override
+    public synchronized void save(Map<String, User> users) {
+        saved = copy(users);
+    }
+
+    @Override
+    public void flush() {
+        // Nothing is written
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Copies a map of users and the users in it.
+     */
+    private static Map<String, User> copy(Map<String, User> users) {
+        Map<String, User> copy = new HashMap<>();
+        for (Map.Entry<String, User> e : users.entrySet()) {
+            User from = e.getValue();
+            User to = new User();
+            to.setUsername(from.getUsername());
+            to.setPassword(from.getPassword());
+            to.setName(from.getName());
+            to.setSurname(from.getSurname());
+            to.setCellphoneNumber(from.getCellphoneNumber());
+            copy.put(e.getKey(), to);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,192 @@
+//Libraries
+import com.google.gson.TypeAdapter;                 // Imports TypeAdapter to decode single records
+import com.google.gson.stream.JsonReader;           // Imports JsonReader for streaming input
+import java.io.ByteArrayInputStream;                // Imports ByteArrayInputStream to read the loaded file
+import java.io.IOException;                         // Imports IOException for I/O errors
+import java.io.InputStreamReader;                   // Imports InputStreamReader to decode UTF-8
+import java.nio.ByteBuffer;                         // Imports ByteBuffer for reading the edits log
+import java.nio.charset.StandardCharsets;           // Imports UTF-8 for decoding the file
+import java.nio.file.Files;                         // Imports Files for the file's modification time
+import java.nio.file.NoSuchFileException;           // Imports NoSuchFileException for a missing edits log
+import java.nio.file.Path;                          // Imports Path for the file location
+import java.nio.file.Paths;                         // Imports Paths for the dictionaries' location
+import java.util.List;                              // Imports List interface
+
+/**
+ * Message store kept in a messages.json file, in the format the app has always written.
+ * The history is held in memory as in {@link InMemoryMessageStore}; after each change the
+ * whole file is rewritten as a crash-safe snapshot on a background thread, and changes made
+ * while a write is running are saved together by the next one. A failed write is reported
+ * by {@link #flush()} until a later one succeeds.
+ *
+ * Edits and deletes that {@link Messages} has logged to messages.edits.log but not yet
+ * folded into the file are applied when it is opened, so the messages read are the ones the
+ * app shows. The log is left for Messages to fold in.
+ */
+public class JsonMessageStore extends InMemoryMessageStore {
+
+    // Metric shared with the messages.json path of Messages
+    private static final LatencyHistogram WRITE_TIMER = Metrics.timer("write_messages_json");
+
+    // Edits log that Messages keeps next to messages.json
+    static final String EDITS_LOG = "messages.edits.log";
+
+    // Background writer of the file
+    private final SnapshotWriter writer;
+    // True when messages added by storeAll have not been queued for writing yet
+    private boolean unsaved;
+
+    /**
+     * Opens a messages.json file, loading every message in it and applying the edits log.
+     * Messages saved before timestamps were recorded get the time the file was last written.
+     * @param file The file; created by the first change if missing.
+     * @throws IOException If the file exists but cannot be read, or a compression dictionary is missing.
+     */
+    public JsonMessageStore(Path file) throws IOException {
+        MessageDictionary.checkFiles(Paths.get(".")); // Compressed bodies are read with the working directory's dictionaries
+        writer = SnapshotWriter.forFile(file, WRITE_TIMER);
+        byte[] data = writer.read(); // The newest intact snapshot
+        if (data != null) {
+            load(file, data);
+        }
+        replayEdits(file.resolveSibling(EDITS_LOG));
+    }
+
+    /**
+     * Adds every message of a loaded snapshot.
+     * @param file The file it was read from.
+     * @param data The file content.
+     * @throws IOException If the content is not a JSON array of messages.
+     */
+    private void load(Path file, byte[] data) throws IOException {
+        long saved = Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : System.currentTimeMillis();
+        TypeAdapter<MessageEntry> adapter = JsonSupport.MESSAGES.getAdapter(MessageEntry.class);
+        try (JsonReader in = new JsonReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8))) {
+            in.beginArray();
+            while (in.hasNext()) {
+                MessageEntry entry = adapter.read(in);
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.Timestamp == null) {
+                    entry.Timestamp = saved;
+                }
+                add(entry);
+            }
+            in.endArray();
+        } catch (MessageDictionary.MissingException e) {
+            throw new IOException(e.getMessage(), e); // Not damage to the file itself
+        } catch (RuntimeException e) {
+            throw new IOException("Damaged " + file.getFileName() + ": " + e.getMessage(), e); // Gson reports bad JSON unchecked
+        }
+    }
+
+    /**
+     * Applies the edits and deletes of an edits log, up to its end or its first damaged
+     * record, as Messages does when it replays the log. The log itself is not changed.
+     * @param log The edits log.
+     * @throws IOException If the log exists but cannot be read.
+     */
+    private void replayEdits(Path log) throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(log);
+        } catch (NoSuchFileException e) {
+            return; // No edits since the last compaction
+        }
+        try {
+            MessageLog.scanRecords(ByteBuffer.wrap(data), (type, sequence, payload) -> {
+                MessageEntry change = MessageLog.decode(payload);
+                if (type == MessageLog.DELETE) {
+                    super.delete(change.MessageID);
+                } else if (type == MessageLog.UPDATE) {
+                    super.update(change.MessageID, change.MessageHash, change.Message);
+                }
+            });
+        } catch (IOException e) {
+            // A torn or damaged record ends the log, as when Messages opens it
+        }
+    }
+
+    @Override
+    public int store(MessageEntry entry) {
+        int index = super.store(entry);
+        save();
+        return index;
+    }
+
+    @Override
+    public boolean update(String messageID, String hash, String message) {
+        boolean found = super.update(messageID, hash, message);
+        if (found) save();
+        return found;
+    }
+
+    @Override
+    public boolean delete(String messageID) {
+        boolean found = super.delete(messageID);
+        if (found) save(); // The rewritten file leaves the message out
+        return found;
+    }
+
+    /**
+     * Adds a batch of messages without writing them, so an import rewrites the file once,
+     * on the next {@link #flush()}, instead of once per batch.
+     * @param batch The messages.
+     */
+    @Override
+    public synchronized void storeAll(List<MessageEntry> batch) {
+        for (MessageEntry entry : batch) {
+            super.store(entry);
+        }
+        unsaved = true;
+    }
+
+    /**
+     * Blocks until every change so far has been written.
+     * @throws IllegalStateException If the newest snapshot could not be written.
+     */
+    @Override
+    public void flush() {
+        try {
+            writePending();
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes what is pending.
+     * @throws IOException If the newest snapshot could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        writePending();
+    }
+
+    /**
+     * Queues the messages added by storeAll, then waits until everything is written.
+     * @throws IOException If the newest snapshot could not be written.
+     */
+    private void writePending() throws IOException {
+        synchronized (this) {
+            if (unsaved) {
+                save();
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Queues a snapshot of the current messages for writing.
+     */
+    private synchronized void save() { // A later save never submits an older snapshot
+        unsaved = false; // The snapshot holds every message added so far
+        MessageList.Snapshot snapshot = rows();
+        try {
+            writer.submit(snapshot.size(), () -> JsonSupport.toJson(snapshot));
+        } catch (IOException e) {
+            // Queued all the same; flush() reports the failure if this write fails too
+        }
+    }
+}
@@ -0,0 +1,68 @@
+//Libraries
+import com.google.gson.Gson;                  // Imports Gson for JSON serialization/deserialization
+import com.google.gson.GsonBuilder;           // Imports GsonBuilder for Gson configuration
+import com.google.gson.reflect.TypeToken;     // Imports TypeToken for the users map type
+import com.google.gson.stream.JsonWriter;     // Imports JsonWriter for streaming output
+import java.io.IOException;                   // Imports IOException for I/O errors
+import java.io.StringWriter;                  // Imports StringWriter to collect the output
+import java.io.UncheckedIOException;          // Imports UncheckedIOException to rethrow writer errors
+import java.lang.reflect.Type;                // Imports Type for generic types
+import java.util.Map;                         // Imports Map interface
+
+/**
+ * Shared, pre-configured Gson instances.
+ * Gson objects are thread-safe and costly to build, so they are created once here with the
+ * hand-written adapters registered, instead of once per read or write.
+ */
+public final class JsonSupport {
+
+    // Indented output, as messages.json has always been written
+    public static final Gson PRETTY = builder().setPrettyPrinting().create();
+    // Single-line output, as users.json has always been written
+    public static final Gson COMPACT = builder().create();
+
+    // Gson used for messages.json; compact when started with -Dquickchat.json.compact=true
+    public static final Gson MESSAGES = Boolean.getBoolean("quickchat.json.compact") ? COMPACT : PRETTY;
+
+    // Type of the users map in users.json
+    public static final Type USER_MAP_TYPE = new TypeToken<Map<String, User>>() {}.getType();
+
+    private JsonSupport() {
+    }
+
+    /**
+     * Writes a message snapshot as messages.json content, straight from the arena.
+     * The output is identical to {@code MESSAGES.toJson(list)} for the same messages.
+     * @param snapshot The messages to write.
+     * @return The JSON text.
+     */
+    public static String toJson(MessageList.Snapshot snapshot) {
+        StringWriter text = new StringWriter();
+        MessageView view = new MessageView(); // One flyweight for the whole history
+        try (JsonWriter out = MESSAGES.newJsonWriter(text)) {
+            out.beginArray();
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (snapshot.isDeleted(i)) {
+                    continue; // Purged from the saved file
+                }
+                snapshot.view(i, view);
+                MessageEntryAdapter.write(out, view.getMessageID(), view.getMessageHash(),
+                        view.getRecipient(), view.getMessage(), view.getSender(), view.getTimestamp());
+            }
+            out.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter never fails
+        }
+        return text.toString();
+    }
+
+    /**
+     * Creates a builder with the streaming adapters registered.
+     * @return The builder.
+     */
+    private static GsonBuilder builder() {
+        return new GsonBuilder()
+                .registerTypeAdapter(MessageEntry.class, new MessageEntryAdapter().nullSafe())
+                .registerTypeAdapter(User.class, new UserAdapter().nullSafe());
+    }
+}
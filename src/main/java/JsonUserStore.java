@@ -0,0 +1,88 @@
+//Libraries
+import java.io.IOException;              // Imports IOException for I/O errors
+import java.nio.charset.StandardCharsets; // Imports UTF-8 for decoding the file
+import java.nio.file.Path;               // Imports Path for the file location
+import java.util.HashMap;                // Imports HashMap for the loaded users
+import java.util.Map;                    // Imports Map interface
+
+/**
+ * User store kept in a users.json file, a single-line JSON object of users by username,
+ * as the app has always written it. Each save rewrites the whole file as a crash-safe
+ * snapshot on a background thread and waits for it, so a failed write reaches the caller;
+ * saves made while a write is running are written together by the next one.
+ */
+public class JsonUserStore implements UserStore {
+
+    // Metric for user saves (no-op unless metrics are enabled)
+    private static final LatencyHistogram SAVE_TIMER = Metrics.timer("save_users");
+
+    // The users file
+    private final Path file;
+    // Background writer of the file
+    private final SnapshotWriter writer;
+
+    /**
+     * Opens a users file. Nothing is read until {@link #load()}.
+     * @param file The file; created by the first save if missing.
+     */
+    public JsonUserStore(Path file) {
+        this.file = file;
+        this.writer = SnapshotWriter.forFile(file, SAVE_TIMER);
+    }
+
+    @Override
+    public Map<String, User> load() throws IOException {
+        PersistenceEvent event = new PersistenceEvent(); // Flight Recorder event for this load
+        event.begin();
+        long ioStart = System.nanoTime();
+        Map<String, User> users = null;
+        int bytes = 0;
+        byte[] data = writer.read(); // Reads the newest intact snapshot
+        event.ioTime = System.nanoTime() - ioStart;
+        if (data != null) {
+            // Deserializes the Map using the precomputed generic type
+            long decodeStart = System.nanoTime();
+            bytes = data.length;
+            users = JsonSupport.COMPACT.fromJson(new String(data, StandardCharsets.UTF_8), JsonSupport.USER_MAP_TYPE);
+            event.encodeTime = System.nanoTime() - decodeStart;
+        }
+        if (users == null) users = new HashMap<>(); // No file yet, or it was empty or contained null
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file.toString();
+            event.operation = "load";
+            event.records = users.size();
+            event.bytes = bytes;
+            event.commit();
+        }
+        return users;
+    }
+
+    @Override
+    public void save(Map<String, User> users) throws IOException {
+        try {
+            writer.submit(users.size(), () -> JsonSupport.COMPACT.toJson(users)); // Serializes the map in the background
+        } catch (IOException e) {
+            // Queued all the same; the flush below reports whether this write failed too
+        }
+        writer.flush(); // Throws if the users did not reach the file
+    }
+
+    /**
+     * Blocks until every save so far has been written.
+     * @throws IllegalStateException If the newest snapshot could not be written.
+     */
+    @Override
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.flush();
+    }
+}
@@ -0,0 +1,144 @@
+//Libraries
+import java.util.concurrent.atomic.AtomicLong;      // Imports AtomicLong for the running maximum
+import java.util.concurrent.atomic.AtomicLongArray; // Imports AtomicLongArray for the bucket counts
+import java.util.concurrent.atomic.LongAdder;       // Imports LongAdder for contended totals
+
+/**
+ * A lock-free latency histogram with logarithmic buckets, safe to record into from any thread.
+ */
+public class LatencyHistogram {
+
+    // Each power of two is split into 2^SUB_BITS buckets (about 6% precision)
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // Enough buckets for any non-negative long
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT + SUB_COUNT;
+
+    // Name of the metric, e.g. "store_message"
+    private final String name;
+    // Counts per bucket, updated without locks
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    // Total number of recorded values
+    private final LongAdder count = new LongAdder();
+    // Sum of all recorded values, in nanoseconds
+    private final LongAdder sum = new LongAdder();
+    // Largest recorded value, in nanoseconds
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates an empty histogram.
+     * @param name The metric name.
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the metric name.
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records the time elapsed since a start time taken with {@link Metrics#start()}.
+     * Does nothing when metrics are disabled.
+     * @param startNanos The start time in nanoseconds.
+     */
+    public void recordSince(long startNanos) {
+        if (!Metrics.ENABLED) return; // Folded away by the JIT when metrics are off
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records one latency value.
+     * @param nanos The latency in nanoseconds; negative values count as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(value)); // Lock-free bucket update
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return The count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of all recorded values.
+     * @return The sum in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     * @return The maximum in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Estimates a percentile from the bucket counts.
+     * Concurrent recordings may or may not be included.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The upper bound of the bucket holding the percentile, in nanoseconds.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0)); // Rank of the wanted value
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get()); // Never report more than the real maximum
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Maps a value to its bucket.
+     * Values below SUB_COUNT get a bucket each; above that, each power of two
+     * is split into SUB_COUNT equal buckets.
+     * @param value The non-negative value.
+     * @return The bucket index.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // Position of the highest set bit
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1); // Next SUB_BITS bits
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Returns the largest value that maps to a bucket.
+     * @param bucket The bucket index.
+     * @return The inclusive upper bound of the bucket.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        if (exponent >= 63) return Long.MAX_VALUE; // Top bucket would overflow
+        long sub = bucket % SUB_COUNT;
+        long lower = (SUB_COUNT + sub) << (exponent - SUB_BITS);
+        long width = 1L << (exponent - SUB_BITS);
+        return lower + width - 1;
+    }
+}
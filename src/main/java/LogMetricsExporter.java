@@ -0,0 +1,60 @@
+//Libraries
+import java.util.concurrent.Executors;                // Imports Executors for the dump thread
+import java.util.concurrent.ScheduledExecutorService; // Imports ScheduledExecutorService for periodic dumps
+import java.util.concurrent.TimeUnit;                 // Imports TimeUnit for the interval
+
+/**
+ * Prints every metric to the console at a fixed interval.
+ */
+public class LogMetricsExporter implements MetricsExporter {
+
+    // Seconds between dumps
+    private final int intervalSeconds;
+    // Background thread that prints the dumps
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates an exporter that dumps every {@code intervalSeconds} seconds.
+     * @param intervalSeconds The dump interval in seconds.
+     */
+    public LogMetricsExporter(int intervalSeconds) {
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-log");
+            t.setDaemon(true); // Must not keep the application alive
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(() -> System.out.print(render()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Renders one line per metric, with latencies in milliseconds.
+     * @return The dump text.
+     */
+    static String render() {
+        StringBuilder sb = new StringBuilder("--- metrics ---\n");
+        for (MetricCounter counter : Metrics.counters()) {
+            sb.append(counter.getName()).append(" = ").append(counter.get()).append('\n');
+        }
+        for (LatencyHistogram timer : Metrics.timers()) {
+            sb.append(String.format("%s count=%d p50=%.3fms p99=%.3fms max=%.3fms%n",
+                    timer.getName(), timer.getCount(),
+                    timer.getValueAtPercentile(50) / 1e6,
+                    timer.getValueAtPercentile(99) / 1e6,
+                    timer.getMaxNanos() / 1e6));
+        }
+        return sb.toString();
+    }
+}
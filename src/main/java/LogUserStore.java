@@ -0,0 +1,99 @@
+//Libraries
+import java.io.IOException;              // Imports IOException for I/O errors
+import java.nio.ByteBuffer;              // Imports ByteBuffer for encoding records
+import java.nio.charset.StandardCharsets; // Imports UTF-8 for the record payloads
+import java.nio.file.Path;               // Imports Path for the log location
+import java.util.ArrayList;              // Imports ArrayList for removed users
+import java.util.HashMap;                // Imports HashMap for the users
+import java.util.List;                   // Imports List interface
+import java.util.Map;                    // Imports Map interface
+
+/**
+ * User store kept in an append-only {@link MessageLog} (users.log). A save appends a USER
+ * record, the user as compact JSON, for each user that is new or changed, and a DELETE
+ * record, the username, for each user that is gone, so registering one user writes one
+ * small record instead of every user. Opening the log replays it; the last record for a
+ * username wins, and a record torn by a crash is cut off.
+ */
+public class LogUserStore implements UserStore {
+
+    // Metric for user saves (no-op unless metrics are enabled)
+    private static final LatencyHistogram SAVE_TIMER = Metrics.timer("save_users");
+
+    // The open log
+    private final MessageLog log;
+    // JSON of every user as last written, by username
+    private final Map<String, String> written = new HashMap<>();
+    // Sequence number of the next record
+    private long nextSequence;
+
+    /**
+     * Opens a users log, replaying the users in it.
+     * @param file The log file; created if missing.
+     * @throws IOException If the log cannot be opened.
+     */
+    public LogUserStore(Path file) throws IOException {
+        log = new MessageLog(file, (type, sequence, payload) -> {
+            String value = StandardCharsets.UTF_8.decode(payload).toString();
+            if (type == MessageLog.USER) {
+                User user = JsonSupport.COMPACT.fromJson(value, User.class);
+                written.put(user.getUsername(), value);
+            } else if (type == MessageLog.DELETE) {
+                written.remove(value);
+            }
+            nextSequence = sequence + 1;
+        });
+    }
+
+    @Override
+    public synchronized Map<String, User> load() {
+        Map<String, User> users = new HashMap<>();
+        for (Map.Entry<String, String> e : written.entrySet()) {
+            users.put(e.getKey(), JsonSupport.COMPACT.fromJson(e.getValue(), User.class)); // New objects the caller may change
+        }
+        return users;
+    }
+
+    @Override
+    public synchronized void save(Map<String, User> users) throws IOException {
+        long start = Metrics.start();
+        ByteBuffer batch = ByteBuffer.allocate(1024);
+        Map<String, String> changed = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+        long sequence = nextSequence;
+        for (Map.Entry<String, User> e : users.entrySet()) {
+            String json = JsonSupport.COMPACT.toJson(e.getValue());
+            if (!json.equals(written.get(e.getKey()))) { // New or changed since the last save
+                batch = MessageLog.encode(batch, MessageLog.USER, sequence++, json.getBytes(StandardCharsets.UTF_8));
+                changed.put(e.getKey(), json);
+            }
+        }
+        for (String username : written.keySet()) {
+            if (!users.containsKey(username)) {
+                batch = MessageLog.encode(batch, MessageLog.DELETE, sequence++, username.getBytes(StandardCharsets.UTF_8));
+                removed.add(username);
+            }
+        }
+        if (batch.position() == 0) {
+            return; // Nothing changed
+        }
+        log.append(batch.flip());
+        if (MessageShard.FSYNC) {
+            log.force(); // Durable before the save returns
+        }
+        nextSequence = sequence; // Only once the records are written
+        written.putAll(changed);
+        written.keySet().removeAll(removed);
+        SAVE_TIMER.recordSince(start);
+    }
+
+    @Override
+    public void flush() {
+        // Every save is written before it returns
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+}
@@ -1,13 +1,27 @@
 //Libraries
 import javax.swing.*;
+import java.io.IOException; // Imports IOException for the schedule of delayed sends
+import java.nio.file.Paths; // Imports Paths for the quota and schedule files
+import java.util.Date;      // Imports Date for showing when a scheduled message goes out
 
 public class Main {
     public static void main(String[] args) {
 
+        // Starts the metrics exporters, if metrics are enabled
+        Metrics.startExporters();
+
         // Creates an instance of the userManager class to handle user-related operations
         UserManager user = new UserManager();
         // Creates an instance of the Messages class to handle message-related operations
         Messages m = new Messages();
+        // Limits how many messages each user may send per minute and per day, across logins and restarts
+        m.setQuota(SendQuota.forFile(Paths.get("quotas.json")));
+        // Sends scheduled messages as they fall due, including any left from the last run
+        try {
+            m.startScheduledSends(Paths.get("schedule.log"));
+        } catch (IOException e) {
+            System.out.println("Error opening scheduled messages: " + e.getMessage()); // Prints message
+        }
 
         // Starts an infinite loop for the application's main menu
         while (true) {
@@ -52,7 +66,10 @@ public class Main {
                             "\n1) Send Messages" +
                             "\n2) Show recently sent messages" +
                             "\n3) View your Profile" +
-                            "\n4) Quit");
+                            "\n4) Show a conversation" +
+                            "\n5) Edit a message" +
+                            "\n6) Delete a message" +
+                            "\n7) Quit");
 
                     // Uses a switch statement to handle the logged-in user's choice
                     switch (menu) {
@@ -92,15 +109,20 @@ public class Main {
                             m.setTotalMessages(m.returnTotalMessages() + 1);
                             // Creates a hash for the message
                             String hash = m.createMessageHash(messageID, m.returnTotalMessages(), messageText);
-                            // Determines the action (send, store, disregard) for the message
+                            // Determines the action (send, store, schedule, disregard) for the message
                             String action = m.sentMessage();
 
                             // Handles the message action
                             switch (action) {
                                 case "send":
                                 case "store":
-                                    // Stores the message details
-                                    m.storeMessage(messageID, hash, recipient, messageText);
+                                    // Stores the message details, unless the sender's quota is used up
+                                    if (!m.storeMessage(messageID, hash, recipient, messageText,
+                                            user.getLoggedInUser().getCellphoneNumber())) { // Records who sent it
+                                        JOptionPane.showMessageDialog(null, "Quota reached: at most " + SendQuota.PER_MINUTE
+                                                + " messages a minute and " + SendQuota.PER_DAY + " a day. Try again later.");
+                                        break;
+                                    }
                                     sentCount++; // Increments the sent messages counter for the current session
                                     // Displays message details and status
                                     JOptionPane.showMessageDialog(null,
@@ -110,6 +132,31 @@ public class Main {
                                                     "Message: " + messageText + "\n" +
                                                     "Status: Message " + (action.equals("send") ? "Sent" : "Stored") + " Successfully");
                                     break;
+                                case "schedule":
+                                    // Asks when to send it and adds it to the schedule
+                                    String delay = JOptionPane.showInputDialog("Send in how many minutes?");
+                                    if (delay == null) {
+                                        break; // Cancelled
+                                    }
+                                    try {
+                                        long minutes = Long.parseLong(delay.trim());
+                                        if (minutes < 0 || minutes > MessageScheduler.MAX_DELAY_MINUTES) { // Also keeps the product below from overflowing
+                                            JOptionPane.showMessageDialog(null, "Please enter a number of minutes from 0 to "
+                                                    + MessageScheduler.MAX_DELAY_MINUTES + ".");
+                                            break;
+                                        }
+                                        long due = System.currentTimeMillis() + minutes * 60_000;
+                                        long scheduleId = m.scheduleMessage(messageID, hash, recipient, messageText,
+                                                user.getLoggedInUser().getCellphoneNumber(), due);
+                                        sentCount++; // Counts towards this session's limit like any other message
+                                        JOptionPane.showMessageDialog(null, "Message scheduled for " + new Date(due)
+                                                + " (schedule #" + scheduleId + ").");
+                                    } catch (NumberFormatException e) {
+                                        JOptionPane.showMessageDialog(null, "Please enter a whole number of minutes.");
+                                    } catch (IOException | IllegalStateException e) {
+                                        JOptionPane.showMessageDialog(null, "Could not schedule the message: " + e.getMessage());
+                                    }
+                                    break;
                                 case "disregard":
                                     JOptionPane.showMessageDialog(null, "Message was disregarded."); // Informs user message was disregarded
                                     break;
@@ -124,6 +171,39 @@ public class Main {
                             user.viewProfile(); // Calls method to view user profile
                             break;
                         case "4":
+                            // Asks who the conversation is with and shows its newest messages
+                            String other = JOptionPane.showInputDialog("Enter the other person's cell number:");
+                            if (other != null) {
+                                m.printConversation(user.getLoggedInUser().getCellphoneNumber(), other.trim());
+                            }
+                            break;
+                        case "5":
+                        case "6":
+                            // Edits or deletes one of the user's own messages by its ID
+                            String targetID = JOptionPane.showInputDialog("Enter the message ID:");
+                            MessageEntry target = targetID == null ? null : m.findMessageByID(targetID.trim());
+                            if (target == null || !user.getLoggedInUser().getCellphoneNumber().equals(target.Sender)) {
+                                JOptionPane.showMessageDialog(null, "You have no message with that ID.");
+                                break;
+                            }
+                            try {
+                                if (menu.equals("6")) {
+                                    m.deleteMessage(target.MessageID);
+                                    JOptionPane.showMessageDialog(null, "Message deleted.");
+                                    break;
+                                }
+                                String newText = JOptionPane.showInputDialog("Enter the new message (max 250 characters):", target.Message);
+                                if (newText != null && newText.length() <= 250) {
+                                    m.editMessage(target.MessageID, newText);
+                                    JOptionPane.showMessageDialog(null, "Message edited.");
+                                } else if (newText != null) {
+                                    JOptionPane.showMessageDialog(null, "Message too long. Max 250 characters.");
+                                }
+                            } catch (IOException e) {
+                                JOptionPane.showMessageDialog(null, "Could not save the change: " + e.getMessage());
+                            }
+                            break;
+                        case "7":
                             // Displays total messages sent and exits the inner loop, returning to the main menu logic
                             JOptionPane.showMessageDialog(null, "You sent " + m.returnTotalMessages() + " message(s). Goodbye!");
                             return; // Exits the main method, terminating the application
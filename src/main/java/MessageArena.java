@@ -0,0 +1,159 @@
+//Libraries
+import java.nio.ByteBuffer;                // Imports ByteBuffer for the memory chunks
+import java.nio.charset.StandardCharsets;  // Imports UTF-8 for encoding strings
+
+/**
+ * Append-only store for encoded strings, kept in large ByteBuffer chunks.
+ *
+ * With direct buffers the bytes live outside the Java heap, so millions of stored
+ * message fields cost the garbage collector nothing to trace or copy. Each string is
+ * stored as a 4-byte length (-1 for null) followed by its UTF-8 bytes, and is found
+ * again by its address: the chunk number in the high 32 bits, the offset in the low 32.
+ *
+ * One thread appends; any number of threads may read strings that were appended
+ * before the reader was handed their addresses.
+ */
+public class MessageArena {
+
+    // Size of the first chunk; later chunks double up to MAX_CHUNK
+    private static final int FIRST_CHUNK = 64 * 1024;
+    private static final int MAX_CHUNK = 4 * 1024 * 1024;
+
+    // Whether chunks are allocated off-heap
+    private final boolean direct;
+    // Allocated chunks; replaced by a larger copy when full
+    private volatile ByteBuffer[] chunks = new ByteBuffer[8];
+    // Index of the chunk being appended to, or -1 before the first append
+    private int current = -1;
+    // Write position in the current chunk
+    private int position;
+    // Total bytes allocated, for reporting
+    private long capacity;
+
+    /**
+     * Creates an empty arena.
+     * @param direct True to keep the bytes off the Java heap.
+     */
+    public MessageArena(boolean direct) {
+        this.direct = direct;
+    }
+
+    /**
+     * Appends a string.
+     * @param value The string, or null.
+     * @return The address of the stored string.
+     */
+    public long put(String value) {
+        byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        int length = bytes == null ? 0 : bytes.length;
+        ByteBuffer chunk = reserve(4 + length);
+        long address = address(current, position);
+        chunk.putInt(position, bytes == null ? -1 : length); // Absolute writes leave the buffer state alone
+        if (bytes != null) {
+            chunk.put(position + 4, bytes);
+        }
+        position += 4 + length;
+        return address;
+    }
+
+    /**
+     * Reads a string back.
+     * @param address The address returned by {@link #put(String)}.
+     * @return The string, or null if null was stored.
+     */
+    public String get(long address) {
+        ByteBuffer chunk = chunks[chunkOf(address)];
+        int offset = offsetOf(address);
+        int length = chunk.getInt(offset);
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        chunk.get(offset + 4, bytes); // Absolute read, safe alongside other readers
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the address of the string stored right after the one at {@code address}.
+     * Strings put one after another stay adjacent unless a chunk filled up in between,
+     * so callers that need that guarantee use {@link #putAll(String...)}.
+     * @param address The address of a stored string.
+     * @return The address of the following string.
+     */
+    public long next(long address) {
+        ByteBuffer chunk = chunks[chunkOf(address)];
+        int offset = offsetOf(address);
+        return address + 4 + Math.max(0, chunk.getInt(offset));
+    }
+
+    /**
+     * Appends several strings next to each other in one chunk, so they can be walked
+     * with {@link #next(long)}.
+     * @param values The strings; any may be null.
+     * @return The address of the first string.
+     */
+    public long putAll(String... values) {
+        int total = 0;
+        for (String value : values) {
+            total += 4 + (value == null ? 0 : value.length() * 3); // UTF-8 never exceeds 3 bytes per char
+        }
+        reserve(total); // Guarantees they all land in the same chunk
+        long first = put(values[0]);
+        for (int i = 1; i < values.length; i++) {
+            put(values[i]);
+        }
+        return first;
+    }
+
+    /**
+     * Returns the number of bytes allocated for chunks.
+     * @return The capacity in bytes.
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Makes sure the current chunk has room for {@code bytes} more bytes,
+     * starting a new chunk if not.
+     * @param bytes The number of bytes needed.
+     * @return The chunk to write to.
+     */
+    private ByteBuffer reserve(int bytes) {
+        if (current >= 0 && chunks[current].capacity() - position >= bytes) {
+            return chunks[current];
+        }
+        int size = current < 0 ? FIRST_CHUNK : Math.min(MAX_CHUNK, chunks[current].capacity() * 2);
+        size = Math.max(size, bytes); // Oversized strings get a chunk of their own
+        ByteBuffer chunk = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        ByteBuffer[] all = chunks;
+        if (current + 1 == all.length) {
+            all = java.util.Arrays.copyOf(all, all.length * 2); // Readers keep using the old array safely
+        }
+        all[current + 1] = chunk;
+        chunks = all; // Volatile write publishes the new chunk
+        current++;
+        position = 0;
+        capacity += size;
+        return chunk;
+    }
+
+    /**
+     * Builds an address from a chunk number and an offset.
+     */
+    private static long address(int chunk, int offset) {
+        return ((long) chunk << 32) | offset;
+    }
+
+    /**
+     * Extracts the chunk number from an address.
+     */
+    private static int chunkOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    /**
+     * Extracts the offset from an address.
+     */
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+}
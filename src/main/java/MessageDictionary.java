@@ -0,0 +1,613 @@
+//Libraries
+import java.io.IOException;                    // Imports IOException for I/O errors
+import java.nio.charset.StandardCharsets;      // Imports UTF-8 for encoding message text
+import java.nio.file.Files;                    // Imports Files for listing dictionary files
+import java.nio.file.Path;                     // Imports Path for file locations
+import java.nio.file.Paths;                    // Imports Paths for the default location
+import java.util.ArrayList;                    // Imports ArrayList for the candidates
+import java.util.Arrays;                       // Imports Arrays for trimming buffers
+import java.util.Base64;                       // Imports Base64 for bodies compressed by older versions
+import java.util.HashMap;                      // Imports HashMap for counting
+import java.util.List;                         // Imports List interface
+import java.util.Map;                          // Imports Map interface
+import java.util.concurrent.ConcurrentHashMap; // Imports ConcurrentHashMap for loaded versions
+import java.util.concurrent.atomic.AtomicReferenceArray; // Imports AtomicReferenceArray for the codec caches
+import java.util.stream.Stream;                // Imports Stream for directory listings
+import java.util.zip.DataFormatException;      // Imports DataFormatException for corrupt older bodies
+import java.util.zip.Inflater;                 // Imports Inflater for bodies compressed by older versions
+
+/**
+ * Shared compression dictionary for message bodies.
+ *
+ * Chat messages are too short for a compressor to find repeats within one message, but they
+ * repeat each other. A dictionary of the phrases that recur across the history (whole stock
+ * replies and common words) lets a body refer to them instead of spelling them out.
+ *
+ * A compressed body is stored as "version;text", where each phrase from the dictionary is
+ * replaced by one private-use character (U+E001 onwards) and any private-use character in
+ * the body itself is escaped with U+E000. The result stays JSON text, so it needs no base64,
+ * and decoding is a single pass over the characters with no native compressor involved.
+ * That still costs more than reading plain text (see CompressionReport), so compression
+ * trades some load time for disk space. Bodies written by older versions as "version:base64"
+ * (Deflate primed with the dictionary) are still read.
+ *
+ * Dictionaries are trained from the history and saved next to messages.json as
+ * messages.dict.1, messages.dict.2, ... (each with a checksum, like snapshots). The version
+ * in every body keeps records decoding after a newer dictionary is trained, so a missing or
+ * damaged dictionary file stops startup ({@link #checkFiles(Path)}) rather than counting as
+ * damage to every record that uses it. Compression is off unless started with
+ * -Dquickchat.compress=true.
+ */
+public final class MessageDictionary {
+
+    // Whether new snapshots compress message bodies
+    public static final boolean ENABLED = Boolean.getBoolean("quickchat.compress");
+    // Largest dictionary, with a zero byte between phrases
+    static final int MAX_SIZE = 4 * 1024;
+    // Escapes a private-use character of the body itself; phrase codes follow it
+    private static final char ESCAPE = '\uE000';
+    // Last character of the private-use area, and so of the phrase codes
+    private static final char LAST_CODE = '\uF8FF';
+    // Most phrases a dictionary can give codes to
+    static final int MAX_PHRASES = LAST_CODE - ESCAPE;
+    // Shortest phrase worth a code, in UTF-8 bytes; a code itself takes three
+    static final int MIN_PHRASE = 4;
+    // Messages a history needs before a dictionary is trained from it
+    static final int TRAIN_MIN = 1000;
+    // Most recent messages sampled for training
+    static final int TRAIN_SAMPLE = 20_000;
+
+    // Dictionaries already read, by version
+    private static final Map<Integer, MessageDictionary> versions = new ConcurrentHashMap<>();
+    // Newest dictionary, used for writing; null until one is found or trained
+    private static volatile MessageDictionary current;
+    // True once the working directory has been searched for dictionary files
+    private static volatile boolean scanned;
+    // Dictionary of the last body decompressed
+    private static volatile MessageDictionary lastDecoded;
+
+    // Per-thread decompressors for older bodies, reused because they hold native memory
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    // Version number, stored with every body compressed with this dictionary
+    private final int version;
+    // Dictionary content: the phrases, separated by zero bytes
+    private final byte[] bytes;
+    // Phrases by code, less the first code
+    private final String[] phrases;
+    // The same phrases as Latin-1 bytes, or null for those with other characters
+    private final byte[][] latin1;
+    // Codes of the phrases by their first two characters, longest phrase first, in an open-addressed
+    // table; " the" and " you" fall in different slots, where one per character would hold every word
+    private final int[] pairKeys;
+    private final int[][] pairCodes;
+    // Recently compressed bodies, "" for those not worth compressing
+    private final Cache compressed = new Cache(1024);
+
+    /**
+     * Creates a dictionary.
+     * @param version The version number.
+     * @param bytes The content.
+     */
+    MessageDictionary(int version, byte[] bytes) {
+        this.version = version;
+        this.bytes = bytes;
+        List<String> split = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= bytes.length && split.size() < MAX_PHRASES; i++) {
+            if (i == bytes.length || bytes[i] == 0) {
+                if (i > start) split.add(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        this.phrases = split.toArray(new String[0]);
+        this.latin1 = new byte[phrases.length][];
+        for (int code = 0; code < phrases.length; code++) {
+            if (phrases[code].chars().allMatch(c -> c < 256)) {
+                latin1[code] = phrases[code].getBytes(StandardCharsets.ISO_8859_1);
+            }
+        }
+        Map<Integer, List<Integer>> starts = new HashMap<>();
+        for (int code = 0; code < phrases.length; code++) {
+            if (phrases[code].length() >= 2) { // Always, once trained; older dictionaries may differ
+                starts.computeIfAbsent(pair(phrases[code], 0), key -> new ArrayList<>()).add(code);
+            }
+        }
+        int slots = Integer.highestOneBit(Math.max(1, starts.size()) * 4 - 1) << 1; // At most half full
+        pairKeys = new int[slots];
+        pairCodes = new int[slots][];
+        for (Map.Entry<Integer, List<Integer>> entry : starts.entrySet()) {
+            int slot = slot(entry.getKey());
+            while (pairCodes[slot] != null) slot = (slot + 1) & (slots - 1);
+            pairKeys[slot] = entry.getKey();
+            pairCodes[slot] = entry.getValue().stream()
+                    .sorted((a, b) -> phrases[b].length() - phrases[a].length()) // Longest match wins
+                    .mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Returns the version number.
+     * @return The version.
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Returns the size of the dictionary.
+     * @return The size in bytes.
+     */
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * Compresses a message body.
+     * @param text The body.
+     * @return "version;text", or null if that would not be shorter than the body itself.
+     */
+    public String compress(String text) {
+        String cached = compressed.get(text);
+        if (cached != null) {
+            return cached.isEmpty() ? null : cached;
+        }
+        String encoded = encode(text);
+        compressed.put(text, encoded == null ? "" : encoded);
+        return encoded;
+    }
+
+    /**
+     * Compresses a body without the cache, replacing the longest phrase at each position.
+     */
+    private String encode(String text) {
+        StringBuilder out = new StringBuilder(text.length()).append(version).append(';');
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            int[] codes = i + 1 < text.length() ? codes(pair(text, i)) : null;
+            int matched = -1;
+            if (codes != null) {
+                for (int code : codes) {
+                    if (text.startsWith(phrases[code], i)) {
+                        matched = code;
+                        break;
+                    }
+                }
+            }
+            if (matched >= 0) {
+                out.append((char) (ESCAPE + 1 + matched));
+                i += phrases[matched].length();
+            } else {
+                if (c >= ESCAPE && c <= LAST_CODE) out.append(ESCAPE); // Not to be read as a phrase
+                out.append(c);
+                i++;
+            }
+        }
+        String encoded = out.toString();
+        return utf8Length(encoded) < utf8Length(text) ? encoded : null;
+    }
+
+    /**
+     * Returns the two characters at an offset as one key.
+     */
+    private static int pair(String text, int at) {
+        return text.charAt(at) << 16 | text.charAt(at + 1);
+    }
+
+    /**
+     * Returns the slot a pair key starts looking from.
+     */
+    private int slot(int key) {
+        return (key * 0x9E3779B9 >>> 16) & (pairKeys.length - 1); // Fibonacci hashing mixes both characters
+    }
+
+    /**
+     * Returns the codes of the phrases starting with a pair of characters.
+     * @return The codes, longest phrase first, or null if there are none.
+     */
+    private int[] codes(int key) {
+        for (int slot = slot(key); pairCodes[slot] != null; slot = (slot + 1) & (pairKeys.length - 1)) {
+            if (pairKeys[slot] == key) return pairCodes[slot];
+        }
+        return null;
+    }
+
+    /**
+     * Returns how many bytes a string takes in UTF-8, as it is written to the file.
+     */
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) length++;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c)) { length += 4; i++; }
+            else length += 3;
+        }
+        return length;
+    }
+
+    /**
+     * Decompresses a body written by {@link #compress(String)}, or by an older version as
+     * "version:base64", with whichever dictionary version it names.
+     * @param encoded The compressed body.
+     * @return The original body.
+     * @throws IOException If the data is corrupt.
+     * @throws MissingException If the dictionary it names has no intact file.
+     */
+    public static String decompress(String encoded) throws IOException {
+        int version = 0;
+        int end = 0;
+        for (char c; end < encoded.length() && end < 9 && (c = encoded.charAt(end)) >= '0' && c <= '9'; end++) {
+            version = version * 10 + (c - '0'); // Parsed in place; this runs once per record
+        }
+        if (end == 0 || end == encoded.length()) {
+            throw new IOException("Malformed compressed message");
+        }
+        MessageDictionary dictionary = lastDecoded;
+        if (dictionary == null || dictionary.version != version) {
+            lastDecoded = dictionary = required(version); // Nearly every record names the same version
+        }
+        return encoded.charAt(end) == ';' ? dictionary.decode(encoded, end + 1) : dictionary.inflate(encoded, end + 1);
+    }
+
+    /**
+     * Expands the phrase codes of a body, starting at an offset: one pass to size the
+     * result and one to fill it.
+     */
+    private String decode(String encoded, int from) throws IOException {
+        if (encoded.length() == from + 1) {
+            int code = encoded.charAt(from) - ESCAPE - 1;
+            if (code >= 0 && code < phrases.length) {
+                return phrases[code]; // A whole stock reply: the shared copy, with nothing to build
+            }
+        }
+        int length = 0;
+        boolean narrow = true; // Whether every character fits in Latin-1
+        for (int i = from; i < encoded.length(); i++) {
+            char c = encoded.charAt(i);
+            if (c > ESCAPE && c <= LAST_CODE) {
+                int code = c - ESCAPE - 1;
+                if (code >= phrases.length) throw new IOException("Corrupt compressed message");
+                length += phrases[code].length();
+                narrow &= latin1[code] != null;
+            } else {
+                if (c == ESCAPE) {
+                    if (++i == encoded.length()) throw new IOException("Truncated compressed message");
+                    c = encoded.charAt(i);
+                }
+                length++;
+                narrow &= c < 256;
+            }
+        }
+        if (!narrow) {
+            StringBuilder text = new StringBuilder(length);
+            for (int i = from; i < encoded.length(); i++) {
+                char c = encoded.charAt(i);
+                if (c > ESCAPE && c <= LAST_CODE) {
+                    text.append(phrases[c - ESCAPE - 1]);
+                } else {
+                    text.append(c == ESCAPE ? encoded.charAt(++i) : c);
+                }
+            }
+            return text.toString();
+        }
+        byte[] text = new byte[length]; // Chat text is nearly always Latin-1, which a String stores as bytes
+        int at = 0;
+        for (int i = from; i < encoded.length(); i++) {
+            char c = encoded.charAt(i);
+            if (c > ESCAPE && c <= LAST_CODE) {
+                byte[] phrase = latin1[c - ESCAPE - 1];
+                System.arraycopy(phrase, 0, text, at, phrase.length);
+                at += phrase.length;
+            } else {
+                text[at++] = (byte) (c == ESCAPE ? encoded.charAt(++i) : c);
+            }
+        }
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Decompresses a body written by an older version, Deflate primed with this dictionary,
+     * starting at the base64 after the colon.
+     */
+    private String inflate(String encoded, int from) throws IOException {
+        if (encoded.charAt(from - 1) != ':') throw new IOException("Malformed compressed message");
+        byte[] input;
+        try {
+            input = Base64.getDecoder().decode(encoded.substring(from));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed compressed message", e);
+        }
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setDictionary(bytes); // Raw Deflate streams take the dictionary up front
+        inflater.setInput(input);
+        byte[] output = new byte[Math.max(64, input.length * 8)];
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                int n = inflater.inflate(output, length, output.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated compressed message");
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed message", e);
+        }
+        return new String(output, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds a dictionary from sample message bodies. Whole bodies and single words that
+     * recur are ranked by how many bytes their codes would save, and the best are kept.
+     * @param version The version number to give it.
+     * @param bodies The sample bodies.
+     * @return The dictionary.
+     */
+    public static MessageDictionary train(int version, Iterable<String> bodies) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String body : bodies) {
+            if (body == null || body.isEmpty() || body.indexOf('\0') >= 0) continue; // Zero bytes separate phrases
+            counts.merge(body, 1, Integer::sum);
+            for (String word : body.split(" ")) {
+                if (word.length() >= 3 && !word.equals(body)) {
+                    counts.merge(" " + word, 1, Integer::sum); // With the space that usually precedes it
+                }
+            }
+        }
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() >= 2 && utf8Length(entry.getKey()) >= MIN_PHRASE) {
+                candidates.add(entry);
+            }
+        }
+        // Highest saving first: occurrences times the bytes a code saves
+        candidates.sort((a, b) -> Long.compare((long) b.getValue() * (utf8Length(b.getKey()) - 3),
+                (long) a.getValue() * (utf8Length(a.getKey()) - 3)));
+
+        byte[] dictionary = new byte[MAX_SIZE];
+        int size = 0;
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : candidates) {
+            byte[] phrase = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            int separator = size == 0 ? 0 : 1;
+            if (size + separator + phrase.length > MAX_SIZE) continue;
+            size += separator; // Left zero
+            System.arraycopy(phrase, 0, dictionary, size, phrase.length);
+            size += phrase.length;
+            if (++count == MAX_PHRASES) break;
+        }
+        return new MessageDictionary(version, Arrays.copyOf(dictionary, size));
+    }
+
+    /**
+     * Builds a dictionary from the most recent messages of a history.
+     * @param version The version number to give it.
+     * @param snapshot The history.
+     * @return The dictionary.
+     */
+    static MessageDictionary train(int version, MessageList.Snapshot snapshot) {
+        List<String> sample = new ArrayList<>();
+        MessageView view = new MessageView();
+        for (int i = snapshot.size() - 1; i >= Math.max(0, snapshot.size() - TRAIN_SAMPLE); i--) {
+            sample.add(snapshot.view(i, view).getMessage()); // Most recent messages
+        }
+        return train(version, sample);
+    }
+
+    /**
+     * Trains a new dictionary version from messages.json in the working directory.
+     * New snapshots use it from the next start; older versions stay for older records.
+     * Usage: java -cp ... MessageDictionary
+     * @param args Unused.
+     */
+    public static void main(String[] args) {
+        MessageList history = new MessageList();
+        HistoryLoader loader = new HistoryLoader(history,
+                () -> SnapshotWriter.readLatest(Paths.get("messages.json"), SnapshotWriter.GENERATIONS), () -> { });
+        loader.start();
+        loader.awaitAll();
+        MessageDictionary trained = train(newestVersion(Paths.get(".")) + 1, history.snapshot());
+        try {
+            trained.save(Paths.get("."));
+            System.out.println("Saved messages.dict." + trained.version + " (" + trained.size()
+                    + " bytes, trained on " + Math.min(history.size(), TRAIN_SAMPLE) + " messages)");
+        } catch (IOException e) {
+            System.out.println("Error saving message dictionary: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the newest dictionary in the working directory, for compressing new snapshots.
+     * @return The dictionary, or null if none has been trained yet.
+     */
+    public static MessageDictionary current() {
+        if (!scanned) {
+            synchronized (MessageDictionary.class) {
+                if (!scanned) {
+                    int newest = newestVersion(Paths.get("."));
+                    if (newest > 0 && current == null) {
+                        current = version(newest);
+                    }
+                    scanned = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Returns a dictionary by version, reading it from the working directory on first use.
+     * @param version The version.
+     * @return The dictionary, or null if there is no intact file for it.
+     */
+    public static MessageDictionary version(int version) {
+        MessageDictionary dictionary = versions.get(version);
+        if (dictionary == null) {
+            try {
+                dictionary = load(Paths.get("."), version);
+            } catch (IOException e) {
+                System.out.println("Error reading message dictionary " + version + ": " + e.getMessage());
+            }
+            if (dictionary != null) {
+                versions.putIfAbsent(version, dictionary);
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Returns a dictionary by version for decoding, which cannot go on without it.
+     * @param version The version.
+     * @return The dictionary.
+     * @throws MissingException If there is no intact file for it.
+     */
+    private static MessageDictionary required(int version) {
+        MessageDictionary dictionary = version(version);
+        if (dictionary == null) {
+            throw new MissingException(version);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Checks at startup that every dictionary version up to the newest can be read, so a
+     * missing or damaged file stops the app with a clear message instead of turning every
+     * record compressed with it into a damaged one.
+     * @param directory The directory holding messages.json.
+     * @throws IOException If a dictionary file is missing or damaged.
+     */
+    public static void checkFiles(Path directory) throws IOException {
+        for (int version = newestVersion(directory); version > 0; version--) {
+            MessageDictionary dictionary;
+            try {
+                dictionary = load(directory, version);
+            } catch (IOException e) {
+                throw new IOException(file(directory, version) + " is damaged (" + e.getMessage()
+                        + "); restore it from a backup before starting", e);
+            }
+            if (dictionary == null) {
+                throw new IOException(file(directory, version) + " is missing; restore it from a backup before starting");
+            }
+        }
+    }
+
+    /**
+     * Trains a dictionary from a history snapshot and makes it current, if compression is on,
+     * none exists yet and the history is large enough to learn from. Runs on the writer thread.
+     * @param snapshot The history.
+     */
+    static void trainIfMissing(MessageList.Snapshot snapshot) {
+        if (!ENABLED || current() != null || snapshot.size() < TRAIN_MIN) return;
+        MessageDictionary trained = train(1, snapshot);
+        try {
+            trained.save(Paths.get(".")); // Saved before any record refers to it
+            install(trained);
+        } catch (IOException e) {
+            System.out.println("Error saving message dictionary: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Makes a dictionary available for decoding and, if it is the newest, for encoding.
+     * @param dictionary The dictionary.
+     */
+    static synchronized void install(MessageDictionary dictionary) {
+        versions.put(dictionary.version, dictionary);
+        if (current == null || dictionary.version > current.version) {
+            current = dictionary;
+        }
+    }
+
+    /**
+     * Writes the dictionary as messages.dict.VERSION, with a checksum, crash-safely.
+     * @param directory The directory holding messages.json.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path directory) throws IOException {
+        SnapshotWriter.writeAtomically(file(directory, version), bytes, 0);
+    }
+
+    /**
+     * Reads a dictionary file.
+     * @param directory The directory holding messages.json.
+     * @param version The version.
+     * @return The dictionary, or null if there is no file for it.
+     * @throws IOException If the file is damaged.
+     */
+    static MessageDictionary load(Path directory, int version) throws IOException {
+        byte[] bytes = SnapshotWriter.readLatest(file(directory, version), 0);
+        return bytes == null ? null : new MessageDictionary(version, bytes);
+    }
+
+    /**
+     * Finds the highest dictionary version saved in a directory.
+     * @param directory The directory holding messages.json.
+     * @return The version, or 0 if there is none.
+     */
+    static int newestVersion(Path directory) {
+        int newest = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.matches("messages\\.dict\\.\\d+")) {
+                    newest = Math.max(newest, Integer.parseInt(name.substring("messages.dict.".length())));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error listing message dictionaries: " + e.getMessage());
+        }
+        return newest;
+    }
+
+    /**
+     * Returns the file of a dictionary version.
+     */
+    private static Path file(Path directory, int version) {
+        return directory.resolve("messages.dict." + version);
+    }
+
+    /**
+     * Thrown when a body names a dictionary version that has no intact file. Every body
+     * compressed with that version is unreadable until the file is restored, so this is
+     * reported as a startup error rather than as damage to the records.
+     */
+    public static final class MissingException extends IllegalStateException {
+
+        MissingException(int version) {
+            super("messages.dict." + version + " is missing or damaged; restore it from a backup before starting");
+        }
+    }
+
+    /**
+     * Small lock-free cache of key/value pairs, one pair per slot, overwritten on collision.
+     */
+    private static final class Cache {
+
+        private final AtomicReferenceArray<String[]> slots;
+
+        Cache(int size) {
+            slots = new AtomicReferenceArray<>(size);
+        }
+
+        String get(String key) {
+            String[] pair = slots.getAcquire(index(key));
+            return pair != null && pair[0].equals(key) ? pair[1] : null;
+        }
+
+        void put(String key, String value) {
+            slots.setRelease(index(key), new String[] {key, value}); // Pairs are never changed once stored
+        }
+
+        private int index(String key) {
+            int hash = key.hashCode();
+            return ((hash ^ (hash >>> 16)) & 0x7fffffff) % slots.length();
+        }
+    }
+}
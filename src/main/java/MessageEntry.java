@@ -4,12 +4,26 @@ class MessageEntry {
     String MessageHash;
     String Recipient;
     String Message;
+    String Sender; // Sender's cell number; null for messages stored before senders were recorded
+    Long Timestamp; // When the message was stored, in epoch milliseconds
 
     //Constructor
     public MessageEntry(String id, String hash, String recipient, String message) {
+        this(id, hash, recipient, message, null);
+    }
+
+    //Constructor with the sender
+    public MessageEntry(String id, String hash, String recipient, String message, String sender) {
+        this(id, hash, recipient, message, sender, null);
+    }
+
+    //Constructor with the sender and the time the message was stored
+    public MessageEntry(String id, String hash, String recipient, String message, String sender, Long timestamp) {
         this.MessageID = id;
         this.MessageHash = hash;
         this.Recipient = recipient;
         this.Message = message;
+        this.Sender = sender;
+        this.Timestamp = timestamp;
     }
 }
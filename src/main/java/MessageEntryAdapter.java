@@ -0,0 +1,82 @@
+//Libraries
+import com.google.gson.TypeAdapter;          // Imports TypeAdapter, the base for streaming adapters
+import com.google.gson.stream.JsonReader;    // Imports JsonReader for streaming input
+import com.google.gson.stream.JsonToken;     // Imports JsonToken to detect nulls
+import com.google.gson.stream.JsonWriter;    // Imports JsonWriter for streaming output
+import java.io.IOException;                  // Imports IOException for I/O errors
+
+/**
+ * Hand-written Gson adapter for MessageEntry.
+ * Writes the fields in declaration order and skips nulls, exactly like Gson's reflective
+ * binding, so files stay byte-for-byte the same while skipping reflection entirely.
+ * Recipients and short bodies read from a file are pooled through {@link StringInterner}.
+ * With compression on, bodies are written as "MessageZ" using {@link MessageDictionary}
+ * whenever that is shorter; both forms are always read.
+ */
+public class MessageEntryAdapter extends TypeAdapter<MessageEntry> {
+
+    @Override
+    public void write(JsonWriter out, MessageEntry entry) throws IOException {
+        write(out, entry.MessageID, entry.MessageHash, entry.Recipient, entry.Message, entry.Sender, entry.Timestamp);
+    }
+
+    /**
+     * Writes one message object from its fields, for callers that hold no MessageEntry.
+     * @param out The JSON writer.
+     * @param id The message ID.
+     * @param hash The message hash.
+     * @param recipient The recipient's cell number.
+     * @param message The message text.
+     * @param sender The sender's cell number, or null.
+     * @param timestamp When the message was stored, in epoch milliseconds, or null.
+     * @throws IOException If writing fails.
+     */
+    static void write(JsonWriter out, String id, String hash, String recipient, String message, String sender,
+                      Long timestamp) throws IOException {
+        out.beginObject();
+        out.name("MessageID").value(id);     // Null values are dropped with their name
+        out.name("MessageHash").value(hash);
+        out.name("Recipient").value(recipient);
+        MessageDictionary dictionary = MessageDictionary.ENABLED && message != null ? MessageDictionary.current() : null;
+        String compressed = dictionary == null ? null : dictionary.compress(message);
+        if (compressed != null) {
+            out.name("MessageZ").value(compressed); // Only when it is shorter than the text
+        } else {
+            out.name("Message").value(message);
+        }
+        out.name("Sender").value(sender); // After the original fields, so older records look as they always did
+        out.name("Timestamp").value(timestamp);
+        out.endObject();
+    }
+
+    @Override
+    public MessageEntry read(JsonReader in) throws IOException {
+        String id = null;
+        String hash = null;
+        String recipient = null;
+        String message = null;
+        String sender = null;
+        Long timestamp = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) { // Explicit nulls leave the field unset
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "MessageID": id = in.nextString(); break;
+                case "MessageHash": hash = in.nextString(); break;
+                case "Recipient": recipient = StringInterner.RECIPIENTS.intern(in.nextString()); break; // Shared copies for repeats
+                case "Message": message = StringInterner.MESSAGES.intern(in.nextString()); break;
+                case "MessageZ": message = StringInterner.MESSAGES.intern(MessageDictionary.decompress(in.nextString())); break;
+                case "Sender": sender = StringInterner.RECIPIENTS.intern(in.nextString()); break;
+                case "Timestamp": timestamp = in.nextLong(); break;
+                default: in.skipValue(); // Ignores fields this version does not know
+            }
+        }
+        in.endObject();
+        return new MessageEntry(id, hash, recipient, message, sender, timestamp);
+    }
+}
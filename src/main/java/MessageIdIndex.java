@@ -0,0 +1,117 @@
+/**
+ * Index from message ID to the position of the first message with that ID, so an edit or
+ * delete finds its message in constant time instead of scanning the ID column.
+ *
+ * IDs are kept as their 64-bit fingerprints in an open-addressing table. A hit is checked
+ * against the messages themselves; when the fingerprint belongs to another ID, or the
+ * indexed message was deleted while a later one shares its ID, the lookup falls back to a
+ * scan, which gives the same answer as {@link MessageList#indexOfMessageID}.
+ *
+ * Positions are added in increasing order by one writer; readers may run at the same time.
+ */
+public class MessageIdIndex {
+
+    // Fingerprints (0 marks a free slot) and the positions they map to
+    private long[] keys = new long[64];
+    private int[] values = new int[64];
+    // Used slots
+    private int size;
+    // Positions added so far, for catching up with a list
+    private int indexed;
+
+    /**
+     * Adds a message. An ID seen before keeps its first position.
+     * @param messageID The message ID; null IDs are not indexed.
+     * @param position The message's position.
+     */
+    public synchronized void add(String messageID, int position) {
+        indexed = Math.max(indexed, position + 1);
+        if (messageID == null) {
+            return;
+        }
+        if (size * 2 >= keys.length) {
+            grow(); // Keeps probe sequences short
+        }
+        put(DuplicateFilter.fingerprint(messageID), position);
+    }
+
+    /**
+     * Indexes the messages a list gained since the last call, starting over if the list
+     * was cleared in between.
+     * @param rows The list's current contents.
+     */
+    public synchronized void catchUp(MessageList.Snapshot rows) {
+        if (rows.size() < indexed) {
+            keys = new long[64];
+            values = new int[64];
+            size = 0;
+            indexed = 0;
+        }
+        MessageView view = new MessageView();
+        for (int i = indexed; i < rows.size(); i++) {
+            add(rows.view(i, view).getMessageID(), i);
+        }
+    }
+
+    /**
+     * Finds the first live message with an ID.
+     * @param messageID The message ID.
+     * @param rows The messages the index was built from.
+     * @return The position, or -1 if there is none.
+     */
+    public synchronized int find(String messageID, MessageList.Snapshot rows) {
+        if (messageID == null) {
+            return rows.indexOfMessageID(null);
+        }
+        int position = get(DuplicateFilter.fingerprint(messageID));
+        if (position < 0) {
+            return -1; // Never added
+        }
+        if (position < rows.size() && !rows.isDeleted(position)
+                && messageID.equals(rows.view(position, new MessageView()).getMessageID())) {
+            return position;
+        }
+        return rows.indexOfMessageID(messageID); // Fingerprint clash, deleted first copy, or not yet visible
+    }
+
+    /**
+     * Returns the position stored for a fingerprint, or -1.
+     */
+    private int get(long fingerprint) {
+        int mask = keys.length - 1;
+        for (int slot = (int) fingerprint & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == fingerprint) return values[slot];
+        }
+        return -1;
+    }
+
+    /**
+     * Stores a position for a fingerprint unless it already has one.
+     */
+    private void put(long fingerprint, int value) {
+        int mask = keys.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (keys[slot] != 0 && keys[slot] != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == 0) {
+            keys[slot] = fingerprint;
+            values[slot] = value;
+            size++;
+        }
+    }
+
+    /**
+     * Doubles the table.
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
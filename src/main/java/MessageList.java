@@ -0,0 +1,525 @@
+//Libraries
+import java.util.AbstractList; // Imports AbstractList, the base for custom lists
+import java.util.Arrays;       // Imports Arrays for growing the page tables
+import java.util.RandomAccess; // Imports RandomAccess to mark constant-time get
+import java.util.function.IntConsumer; // Imports IntConsumer for scan callbacks
+
+/**
+ * Append-only, column-oriented list of messages.
+ *
+ * Instead of one object per message with five Strings, each field lives in its own column:
+ * message IDs, recipients and senders, which are digit strings, are packed into longs;
+ * hash and text are stored next to each other in a {@link MessageArena} and found through
+ * one address column. Columns grow in fixed-size pages, so growing never copies data and a
+ * scan over one column reads consecutive memory. MessageEntry objects are only built when
+ * get() is called; hot read paths use {@link #view} instead.
+ *
+ * Timestamps are kept in a column of their own, and every page also records the earliest
+ * and latest timestamp among its rows. That per-page range is a sparse time index: a time
+ * range query skips every page whose range does not overlap it, so finding the last hour's
+ * messages reads only the newest pages, however long the history is.
+ *
+ * A message can be edited or deleted after it was added: an edit stores the new hash and
+ * text in the arena and points the row's body cell at them, and a delete replaces the
+ * body cell with a tombstone. Scans and views skip or blank deleted rows; the row itself
+ * stays, so positions never shift, and is left out when the list is next saved.
+ *
+ * Changes happen on one thread at a time (callers that fill reserved rows from a loader
+ * thread lock the list). {@link #snapshot()} captures the current contents in constant
+ * time and can be read from another thread while appends continue.
+ */
+public class MessageList extends AbstractList<MessageEntry> implements RandomAccess {
+
+    // Keeps message text in direct buffers outside the Java heap unless started with
+    // -Dquickchat.messages.offheap=false, in which case heap byte arrays are used
+    static final boolean OFF_HEAP = Boolean.parseBoolean(System.getProperty("quickchat.messages.offheap", "true"));
+
+    // Rows per page (a power of two, so index math is shifts and masks)
+    static final int PAGE_BITS = 12;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    // Longest digit string that fits in a packed long
+    private static final int MAX_DIGITS = 17;
+    // Bit set in a packed value when the string started with '+'
+    private static final long PLUS_FLAG = 1L << 62;
+    // Position of the digit count in a packed value
+    private static final int LENGTH_SHIFT = 57;
+    // Mask for the numeric part of a packed value
+    private static final long VALUE_MASK = (1L << LENGTH_SHIFT) - 1;
+    // Cell of a null ID, recipient or sender; no arena address complements to it
+    private static final long NULL_CELL = Long.MIN_VALUE;
+    // Timestamp cell of a message whose time is not known
+    static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    // Body cell of a deleted message; no arena address equals it
+    static final long DELETED = Long.MIN_VALUE;
+
+    // Current columns; replaced by a larger copy when the page tables fill up
+    private Columns columns = new Columns();
+    // Number of messages
+    private int size;
+
+    /**
+     * The columns of a list at one point in time. Page tables are only ever replaced by
+     * larger copies, and rows are never overwritten apart from the body cell of an edited
+     * or deleted message, so an old Columns object stays valid for every row it already held.
+     */
+    static final class Columns {
+        // Holds hash and text, back to back, plus any ID or recipient that is not all digits
+        final MessageArena arena;
+        // Packed message IDs, or the bitwise complement of an arena address
+        final long[][] ids;
+        // Packed recipients, or the bitwise complement of an arena address
+        final long[][] recipients;
+        // Packed senders, stored like recipients
+        final long[][] senders;
+        // Arena address of each message's hash; its text follows it
+        final long[][] bodies;
+        // Time each message was stored, in epoch milliseconds, or NO_TIMESTAMP
+        final long[][] timestamps;
+        // Earliest and latest known timestamp of each page; only ever widened
+        final long[] pageMin;
+        final long[] pageMax;
+
+        private Columns() {
+            this(new MessageArena(OFF_HEAP), new long[16][], new long[16][], new long[16][], new long[16][],
+                    new long[16][], new long[16], new long[16]);
+        }
+
+        private Columns(MessageArena arena, long[][] ids, long[][] recipients, long[][] senders, long[][] bodies,
+                        long[][] timestamps, long[] pageMin, long[] pageMax) {
+            this.arena = arena;
+            this.ids = ids;
+            this.recipients = recipients;
+            this.senders = senders;
+            this.bodies = bodies;
+            this.timestamps = timestamps;
+            this.pageMin = pageMin;
+            this.pageMax = pageMax;
+        }
+
+        /**
+         * Returns a copy with page tables twice as large.
+         */
+        private Columns grow() {
+            int pages = ids.length * 2;
+            return new Columns(arena, Arrays.copyOf(ids, pages), Arrays.copyOf(recipients, pages),
+                    Arrays.copyOf(senders, pages), Arrays.copyOf(bodies, pages), Arrays.copyOf(timestamps, pages),
+                    Arrays.copyOf(pageMin, pages), Arrays.copyOf(pageMax, pages));
+        }
+
+        /**
+         * Allocates a page in every column, with an empty time range.
+         */
+        private void allocate(int page) {
+            ids[page] = new long[PAGE_SIZE];
+            recipients[page] = new long[PAGE_SIZE];
+            senders[page] = new long[PAGE_SIZE];
+            bodies[page] = new long[PAGE_SIZE];
+            timestamps[page] = new long[PAGE_SIZE];
+            pageMin[page] = Long.MAX_VALUE;
+            pageMax[page] = Long.MIN_VALUE;
+        }
+
+        /**
+         * Decodes an ID or recipient cell.
+         */
+        String decode(long cell) {
+            return cell >= 0 ? unpack(cell) : cell == NULL_CELL ? null : arena.get(~cell);
+        }
+    }
+
+    /**
+     * Appends a message. Its fields are copied into the columns.
+     * @param entry The message to add.
+     * @return Always true.
+     */
+    @Override
+    public boolean add(MessageEntry entry) {
+        int page = size >>> PAGE_BITS;
+        if (page == columns.ids.length) {
+            columns = columns.grow(); // Snapshots keep the old tables
+        }
+        if (columns.ids[page] == null) {
+            columns.allocate(page);
+        }
+        fill(size, entry);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Adds {@code count} empty rows at the end, to be filled later with {@link #fill}.
+     * Used to make room for a history that is still being loaded, so that new messages
+     * can be appended after it in the meantime.
+     * @param count The number of rows.
+     */
+    public void reserve(int count) {
+        for (int end = size + count; size < end; ) {
+            int page = size >>> PAGE_BITS;
+            if (page == columns.ids.length) {
+                columns = columns.grow();
+            }
+            if (columns.ids[page] == null) {
+                columns.allocate(page);
+            }
+            size = Math.min(end, (page + 1) << PAGE_BITS); // Skips to the end of this page
+        }
+        modCount++;
+    }
+
+    /**
+     * Writes a message into a row made by {@link #reserve(int)}. Each reserved row is
+     * filled exactly once, before it is read or included in a snapshot.
+     * @param index The row index.
+     * @param entry The message.
+     */
+    public void fill(int index, MessageEntry entry) {
+        Columns c = columns;
+        int page = index >>> PAGE_BITS;
+        int row = index & (PAGE_SIZE - 1);
+        c.ids[page][row] = encode(c.arena, entry.MessageID);
+        c.recipients[page][row] = encode(c.arena, entry.Recipient);
+        c.senders[page][row] = encode(c.arena, entry.Sender);
+        c.bodies[page][row] = c.arena.putAll(entry.MessageHash, entry.Message);
+        long timestamp = entry.Timestamp == null ? NO_TIMESTAMP : entry.Timestamp;
+        c.timestamps[page][row] = timestamp;
+        if (timestamp != NO_TIMESTAMP) { // Widens the page's range before the row becomes visible
+            c.pageMin[page] = Math.min(c.pageMin[page], timestamp);
+            c.pageMax[page] = Math.max(c.pageMax[page], timestamp);
+        }
+    }
+
+    /**
+     * Replaces the hash and text of a message. The old text stays in the arena until the
+     * list is next loaded from a save.
+     * @param index The row index.
+     * @param hash The new hash.
+     * @param message The new text.
+     */
+    public void revise(int index, String hash, String message) {
+        Columns c = columns;
+        c.bodies[index >>> PAGE_BITS][index & (PAGE_SIZE - 1)] = c.arena.putAll(hash, message); // One cell write
+        modCount++;
+    }
+
+    /**
+     * Deletes a message, leaving a tombstone so the positions of later messages stay the same.
+     * @param index The row index.
+     */
+    public void delete(int index) {
+        columns.bodies[index >>> PAGE_BITS][index & (PAGE_SIZE - 1)] = DELETED;
+        modCount++;
+    }
+
+    /**
+     * Returns whether a message has been deleted.
+     * @param index The row index.
+     * @return True if the row is a tombstone.
+     */
+    public boolean isDeleted(int index) {
+        return columns.bodies[index >>> PAGE_BITS][index & (PAGE_SIZE - 1)] == DELETED;
+    }
+
+    /**
+     * Inserts a message. Only appending at the end is supported.
+     * @param index Must equal size().
+     * @param entry The message to add.
+     */
+    @Override
+    public void add(int index, MessageEntry entry) {
+        if (index != size) {
+            throw new UnsupportedOperationException("MessageList only supports appending");
+        }
+        add(entry);
+    }
+
+    /**
+     * Builds a MessageEntry for the message at an index.
+     * @param index The index.
+     * @return A new MessageEntry with the message's fields.
+     */
+    @Override
+    public MessageEntry get(int index) {
+        return view(index, new MessageView()).toEntry();
+    }
+
+    /**
+     * Points a view at the message at an index, without creating any objects.
+     * @param index The index.
+     * @param view The view to reuse.
+     * @return The view.
+     */
+    public MessageView view(int index, MessageView view) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return view.moveTo(columns, index);
+    }
+
+    /**
+     * Returns the number of messages.
+     * @return The size.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every message. Fresh columns are started, so snapshots taken earlier
+     * stay readable until they are dropped.
+     */
+    @Override
+    public void clear() {
+        columns = new Columns();
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Finds the first message with a given ID by scanning the ID column. Deleted messages are skipped.
+     * @param messageID The message ID.
+     * @return The index, or -1 if there is none.
+     */
+    public int indexOfMessageID(String messageID) {
+        return scan(columns, size, columns.ids, messageID, pack(messageID), 0);
+    }
+
+    /**
+     * Calls {@code action} with the index of every message to a recipient, in order,
+     * by scanning the recipient column. Deleted messages are skipped.
+     * @param recipient The recipient's cell number.
+     * @param action Receives each matching index.
+     */
+    public void forEachToRecipient(String recipient, IntConsumer action) {
+        forEachToRecipient(columns, size, recipient, action);
+    }
+
+    /**
+     * Calls {@code action} with the index of every message to a recipient among the first
+     * {@code size} rows of some columns.
+     */
+    private static void forEachToRecipient(Columns columns, int size, String recipient, IntConsumer action) {
+        long packed = pack(recipient); // Packed once for the whole scan
+        for (int index = scan(columns, size, columns.recipients, recipient, packed, 0); index >= 0;
+                index = scan(columns, size, columns.recipients, recipient, packed, index + 1)) {
+            action.accept(index);
+        }
+    }
+
+    /**
+     * Calls {@code action} with the index of every message stored in a time range, in
+     * order. Pages whose time range does not overlap are skipped without reading their rows.
+     * Messages whose time is not known, and deleted messages, never match.
+     * @param fromMillis The start of the range in epoch milliseconds, inclusive.
+     * @param toMillis The end of the range in epoch milliseconds, exclusive.
+     * @param action Receives each matching index.
+     */
+    public void forEachInTimeRange(long fromMillis, long toMillis, IntConsumer action) {
+        forEachInTimeRange(columns, size, fromMillis, toMillis, action);
+    }
+
+    /**
+     * Calls {@code action} with the index of every message in a time range among the first
+     * {@code size} rows of some columns.
+     */
+    private static void forEachInTimeRange(Columns columns, int size, long fromMillis, long toMillis,
+                                           IntConsumer action) {
+        for (int page = 0; page << PAGE_BITS < size; page++) {
+            if (columns.pageMax[page] < fromMillis || columns.pageMin[page] >= toMillis) {
+                continue; // Nothing on this page is in range
+            }
+            long[] timestamps = columns.timestamps[page];
+            long[] bodies = columns.bodies[page];
+            int end = Math.min(PAGE_SIZE, size - (page << PAGE_BITS));
+            for (int row = 0; row < end; row++) {
+                long timestamp = timestamps[row];
+                if (timestamp >= fromMillis && timestamp < toMillis && timestamp != NO_TIMESTAMP && bodies[row] != DELETED) {
+                    action.accept((page << PAGE_BITS) | row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pages a time range query has to read; the others are skipped.
+     * @param fromMillis The start of the range in epoch milliseconds, inclusive.
+     * @param toMillis The end of the range in epoch milliseconds, exclusive.
+     * @return The number of overlapping pages.
+     */
+    int pagesInTimeRange(long fromMillis, long toMillis) {
+        int pages = 0;
+        for (int page = 0; page << PAGE_BITS < size; page++) {
+            if (columns.pageMax[page] >= fromMillis && columns.pageMin[page] < toMillis) {
+                pages++;
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Scans an ID or recipient column for a value, skipping deleted messages. Digit strings
+     * are compared as packed longs, so the common case never touches the arena or creates a String.
+     * @param columns The columns the column belongs to.
+     * @param size The number of rows to look at.
+     * @param column The column.
+     * @param value The value to find.
+     * @param packed The value packed with {@link #pack(String)}.
+     * @param from The first index to look at.
+     * @return The index of the next match, or -1 if there is none.
+     */
+    private static int scan(Columns columns, int size, long[][] column, String value, long packed, int from) {
+        MessageArena arena = columns.arena;
+        for (int index = from; index < size; index++) {
+            long cell = column[index >>> PAGE_BITS][index & (PAGE_SIZE - 1)];
+            if ((packed >= 0 ? cell == packed
+                    : value == null ? cell == NULL_CELL
+                    : cell < 0 && cell != NULL_CELL && value.equals(arena.get(~cell)))
+                    && columns.bodies[index >>> PAGE_BITS][index & (PAGE_SIZE - 1)] != DELETED) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of bytes reserved for message text.
+     * @return The arena capacity in bytes.
+     */
+    public long arenaBytes() {
+        return columns.arena.capacity();
+    }
+
+    /**
+     * Captures the current contents without copying them.
+     * The snapshot must be handed to other threads through a synchronized hand-off.
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(columns, size);
+    }
+
+    /**
+     * Stores an ID, recipient or sender: packed into the cell when it is a digit string,
+     * otherwise in the arena with the cell holding the complement of its address.
+     * @param arena The arena for values that do not pack.
+     * @param value The value.
+     * @return The cell.
+     */
+    private static long encode(MessageArena arena, String value) {
+        if (value == null) {
+            return NULL_CELL; // Costs no arena space, e.g. the sender of older messages
+        }
+        long packed = pack(value);
+        return packed >= 0 ? packed : ~arena.put(value);
+    }
+
+    /**
+     * Packs a string of up to 17 digits, optionally preceded by '+', into a long.
+     * The digit count is kept, so leading zeros survive the round trip.
+     * @param value The string.
+     * @return The packed value, or -1 if the string cannot be packed.
+     */
+    static long pack(String value) {
+        if (value == null) return -1;
+        int start = value.startsWith("+") ? 1 : 0;
+        int digits = value.length() - start;
+        if (digits < 1 || digits > MAX_DIGITS) return -1;
+        long number = 0;
+        for (int i = start; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch < '0' || ch > '9') return -1;
+            number = number * 10 + (ch - '0');
+        }
+        return (start == 1 ? PLUS_FLAG : 0) | ((long) digits << LENGTH_SHIFT) | number;
+    }
+
+    /**
+     * Reverses {@link #pack(String)}.
+     * @param packed The packed value.
+     * @return The original string.
+     */
+    static String unpack(long packed) {
+        int digits = (int) ((packed >>> LENGTH_SHIFT) & 0x1F);
+        boolean plus = (packed & PLUS_FLAG) != 0;
+        char[] chars = new char[digits + (plus ? 1 : 0)];
+        long number = packed & VALUE_MASK;
+        for (int i = chars.length - 1; i >= chars.length - digits; i--) {
+            chars[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        if (plus) chars[0] = '+';
+        return new String(chars);
+    }
+
+    /**
+     * Read-only view of the first {@code size} messages at the time it was taken.
+     * Later appends write beyond those rows and never change them.
+     */
+    public static final class Snapshot {
+
+        private final Columns columns;
+        private final int size;
+
+        private Snapshot(Columns columns, int size) {
+            this.columns = columns;
+            this.size = size;
+        }
+
+        /**
+         * Returns the number of messages in the snapshot.
+         * @return The size.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Points a view at the message at an index.
+         * @param index The index, below size().
+         * @param view The view to reuse.
+         * @return The view.
+         */
+        public MessageView view(int index, MessageView view) {
+            return view.moveTo(columns, index);
+        }
+
+        /**
+         * Returns whether a message in the snapshot has been deleted.
+         * @param index The index, below size().
+         * @return True if the row is a tombstone.
+         */
+        public boolean isDeleted(int index) {
+            return columns.bodies[index >>> PAGE_BITS][index & (PAGE_SIZE - 1)] == DELETED;
+        }
+
+        /**
+         * Finds the first message in the snapshot with a given ID.
+         * @param messageID The message ID.
+         * @return The index, or -1 if there is none.
+         */
+        public int indexOfMessageID(String messageID) {
+            return scan(columns, size, columns.ids, messageID, pack(messageID), 0);
+        }
+
+        /**
+         * Calls {@code action} with the index of every message in the snapshot to a recipient, in order.
+         * @param recipient The recipient's cell number.
+         * @param action Receives each matching index.
+         */
+        public void forEachToRecipient(String recipient, IntConsumer action) {
+            MessageList.forEachToRecipient(columns, size, recipient, action);
+        }
+
+        /**
+         * Calls {@code action} with the index of every message in the snapshot stored in a time range, in order.
+         * @param fromMillis The start of the range in epoch milliseconds, inclusive.
+         * @param toMillis The end of the range in epoch milliseconds, exclusive.
+         * @param action Receives each matching index.
+         */
+        public void forEachInTimeRange(long fromMillis, long toMillis, IntConsumer action) {
+            MessageList.forEachInTimeRange(columns, size, fromMillis, toMillis, action);
+        }
+    }
+}
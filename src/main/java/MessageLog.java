@@ -0,0 +1,333 @@
+//Libraries
+import java.io.IOException;                // Imports IOException for I/O errors
+import java.nio.ByteBuffer;                // Imports ByteBuffer for encoding records
+import java.nio.channels.FileChannel;      // Imports FileChannel for appends and fsync
+import java.nio.charset.StandardCharsets;  // Imports UTF-8 for encoding strings
+import java.nio.file.Path;                 // Imports Path for the log location
+import java.nio.file.StandardOpenOption;   // Imports open options for the channel
+import java.util.zip.CRC32C;               // Imports CRC32C for record checksums
+
+/**
+ * Append-only binary log of message records, one file per shard, and also the record of
+ * scheduled sends.
+ *
+ * Each record is framed as [length][CRC32C][type][sequence][payload], so a reader can tell
+ * where one record ends and whether it was written completely. Opening a log replays every
+ * intact record and cuts off a torn tail left by a crash mid-write, so appends always
+ * continue after the last good record. Appends are buffered by the caller and written in
+ * batches; {@link #force()} makes everything written so far durable.
+ */
+public class MessageLog implements AutoCloseable {
+
+    // Record type of a stored message
+    public static final byte MESSAGE = 1;
+    // Record types of an edit and a delete; the payload is a message holding the ID, the
+    // recipient and, for an edit, the new hash and text, with the time of the change
+    public static final byte UPDATE = 4;
+    public static final byte DELETE = 5;
+    // Record type of a user in a users log; the payload is the user as compact JSON
+    public static final byte USER = 6;
+
+    // Bytes before the payload: length, CRC, type and sequence
+    static final int HEADER = 4 + 4 + 1 + 8;
+    // Largest record accepted when reading, to reject garbage lengths
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+
+    /**
+     * Receives the records replayed when a log is opened.
+     */
+    public interface RecordHandler {
+        void record(byte type, long sequence, ByteBuffer payload);
+    }
+
+    // The log file
+    private final Path file;
+    // Channel appended to
+    private final FileChannel channel;
+    // Bytes in the log after recovery and appends
+    private long length;
+
+    /**
+     * Opens a log, replaying its intact records and truncating anything after them.
+     * @param file The log file; created if missing.
+     * @param handler Receives each intact record, oldest first.
+     * @throws IOException If the file cannot be opened.
+     */
+    public MessageLog(Path file, RecordHandler handler) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.length = replay(handler);
+        if (length < channel.size()) {
+            System.out.println("Truncating torn tail of " + file.getFileName() + " at byte " + length);
+            channel.truncate(length);
+            channel.force(true);
+        }
+        channel.position(length);
+    }
+
+    /**
+     * Reads records from the start until the end or the first damaged record.
+     * @param handler Receives each intact record.
+     * @return The length of the intact prefix.
+     */
+    private long replay(RecordHandler handler) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        long position = 0;
+        while (position + HEADER <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int recordLength = header.getInt(); // Type, sequence and payload
+            int crc = header.getInt();
+            if (recordLength < 9 || recordLength > MAX_RECORD || position + 8 + recordLength > size) {
+                break; // Torn or garbage length
+            }
+            ByteBuffer body = ByteBuffer.allocate(recordLength);
+            readFully(body, position + 8);
+            body.flip();
+            if (crc(body) != crc) {
+                break; // Partly written record
+            }
+            byte type = body.get();
+            long sequence = body.getLong();
+            handler.record(type, sequence, body.slice());
+            position += 8 + recordLength;
+        }
+        return position;
+    }
+
+    /**
+     * Reads raw log bytes, as written, from a position. Safe to call while appends continue.
+     * @param buffer Receives the bytes.
+     * @param position The offset in the log.
+     * @return The number of bytes read, or -1 past the end.
+     * @throws IOException If the read fails.
+     */
+    public int read(ByteBuffer buffer, long position) throws IOException {
+        return channel.read(buffer, position);
+    }
+
+    /**
+     * Passes every complete record at the front of a buffer to a handler, for example
+     * records shipped from another node's log. A record cut off at the end is left in the buffer.
+     * @param data Raw log bytes, ready to read; its position is moved past the complete records.
+     * @param handler Receives each record.
+     * @return The number of bytes in the complete records.
+     * @throws IOException If a complete record is damaged.
+     */
+    public static int scanRecords(ByteBuffer data, RecordHandler handler) throws IOException {
+        int start = data.position();
+        while (data.remaining() >= HEADER) {
+            int recordLength = data.getInt(data.position());
+            if (recordLength < 9 || recordLength > MAX_RECORD) {
+                throw new IOException("Damaged record length " + recordLength);
+            }
+            if (data.remaining() < 8 + recordLength) {
+                break; // Rest of the record has not arrived yet
+            }
+            int crc = data.getInt(data.position() + 4);
+            ByteBuffer body = data.duplicate().position(data.position() + 8).limit(data.position() + 8 + recordLength);
+            if (crc(body) != crc) {
+                throw new IOException("Checksum mismatch in record at byte " + (data.position() - start));
+            }
+            byte type = body.get();
+            long sequence = body.getLong();
+            handler.record(type, sequence, body.slice());
+            data.position(data.position() + 8 + recordLength);
+        }
+        return data.position() - start;
+    }
+
+    /**
+     * Appends a batch of encoded records. Not durable until {@link #force()}.
+     * @param batch Records produced by {@link #encode}, ready to read.
+     * @throws IOException If the write fails.
+     */
+    public void append(ByteBuffer batch) throws IOException {
+        while (batch.hasRemaining()) {
+            length += channel.write(batch);
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk.
+     * @throws IOException If the sync fails.
+     */
+    public void force() throws IOException {
+        channel.force(false); // Data only; the file length is covered by the data sync on Linux
+    }
+
+    /**
+     * Cuts the log back to a length, dropping anything appended after it, such as the
+     * part of a batch written before a write failed.
+     * @param newLength The length to keep, no more than {@link #length()}.
+     * @throws IOException If the file cannot be truncated.
+     */
+    public void truncate(long newLength) throws IOException {
+        channel.truncate(newLength);
+        channel.position(newLength);
+        channel.force(true);
+        length = newLength;
+    }
+
+    /**
+     * Returns the number of bytes in the log.
+     * @return The length.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Returns the log file.
+     * @return The path.
+     */
+    public Path file() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Encodes a message record onto a buffer, growing it if needed.
+     * @param out The buffer to append to, in write mode.
+     * @param sequence The record's sequence number.
+     * @param entry The message.
+     * @return The buffer, possibly a larger copy.
+     */
+    public static ByteBuffer encode(ByteBuffer out, long sequence, MessageEntry entry) {
+        return encode(out, MESSAGE, sequence, entry);
+    }
+
+    /**
+     * Encodes a record of any type that carries a message, growing the buffer if needed.
+     * @param out The buffer to append to, in write mode.
+     * @param type The record type.
+     * @param sequence The record's sequence number.
+     * @param entry The message.
+     * @return The buffer, possibly a larger copy.
+     */
+    public static ByteBuffer encode(ByteBuffer out, byte type, long sequence, MessageEntry entry) {
+        byte[][] fields = {bytes(entry.MessageID), bytes(entry.MessageHash), bytes(entry.Recipient), bytes(entry.Message),
+                bytes(entry.Sender)};
+        int payload = entry.Timestamp == null ? 0 : 8;
+        for (byte[] field : fields) {
+            payload += 4 + (field == null ? 0 : field.length);
+        }
+        out = ensure(out, HEADER + payload);
+        int start = out.position();
+        out.putInt(1 + 8 + payload);
+        out.putInt(0); // CRC, filled in below
+        out.put(type);
+        out.putLong(sequence);
+        for (byte[] field : fields) {
+            out.putInt(field == null ? -1 : field.length);
+            if (field != null) out.put(field);
+        }
+        if (entry.Timestamp != null) {
+            out.putLong(entry.Timestamp); // Last, after the sender
+        }
+        ByteBuffer body = out.duplicate().position(start + 8).limit(out.position());
+        out.putInt(start + 4, crc(body));
+        return out;
+    }
+
+    /**
+     * Encodes a record with no payload, such as a marker that something is finished.
+     * @param out The buffer to append to, in write mode.
+     * @param type The record type.
+     * @param sequence The record's sequence number.
+     * @return The buffer, possibly a larger copy.
+     */
+    public static ByteBuffer encodeMarker(ByteBuffer out, byte type, long sequence) {
+        return encode(out, type, sequence, new byte[0]);
+    }
+
+    /**
+     * Encodes a record with raw bytes as its payload, growing the buffer if needed.
+     * @param out The buffer to append to, in write mode.
+     * @param type The record type.
+     * @param sequence The record's sequence number.
+     * @param payload The payload.
+     * @return The buffer, possibly a larger copy.
+     */
+    public static ByteBuffer encode(ByteBuffer out, byte type, long sequence, byte[] payload) {
+        out = ensure(out, HEADER + payload.length);
+        int start = out.position();
+        out.putInt(1 + 8 + payload.length);
+        out.putInt(0); // CRC, filled in below
+        out.put(type);
+        out.putLong(sequence);
+        out.put(payload);
+        ByteBuffer body = out.duplicate().position(start + 8).limit(out.position());
+        out.putInt(start + 4, crc(body));
+        return out;
+    }
+
+    /**
+     * Decodes the payload of a message record. Records written before senders were
+     * recorded end after the text, and records written before timestamps after the sender.
+     * @param payload The payload, as passed to a {@link RecordHandler}.
+     * @return The message.
+     */
+    public static MessageEntry decode(ByteBuffer payload) {
+        String id = string(payload);
+        String hash = string(payload);
+        String recipient = StringInterner.RECIPIENTS.intern(string(payload));
+        String message = StringInterner.MESSAGES.intern(string(payload));
+        String sender = payload.hasRemaining() ? StringInterner.RECIPIENTS.intern(string(payload)) : null;
+        Long timestamp = payload.remaining() >= 8 ? payload.getLong() : null;
+        return new MessageEntry(id, hash, recipient, message, sender, timestamp);
+    }
+
+    /**
+     * Reads one length-prefixed string.
+     */
+    private static String string(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * Encodes a string as UTF-8, keeping null as null.
+     */
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Makes sure a buffer has room for more bytes, copying it into a larger one if not.
+     */
+    private static ByteBuffer ensure(ByteBuffer out, int needed) {
+        if (out.remaining() >= needed) return out;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + needed));
+        out.flip();
+        return bigger.put(out);
+    }
+
+    /**
+     * Computes the CRC32C of a buffer's remaining bytes without consuming them.
+     */
+    private static int crc(ByteBuffer body) {
+        CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Fills a buffer from a file position.
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) throw new IOException("Unexpected end of " + file.getFileName());
+        }
+    }
+}
@@ -0,0 +1,286 @@
+//Libraries
+import java.io.IOException;                   // Imports IOException for I/O errors
+import java.nio.ByteBuffer;                   // Imports ByteBuffer for encoding log records
+import java.nio.file.Files;                   // Imports Files for replacing the log after compaction
+import java.nio.file.Path;                    // Imports Path for the log location
+import java.nio.file.StandardCopyOption;      // Imports copy options for the atomic rename
+import java.util.ArrayList;                   // Imports ArrayList for the messages due on a tick
+import java.util.HashMap;                     // Imports HashMap for the pending schedule
+import java.util.LinkedHashMap;               // Imports LinkedHashMap for replay in schedule order
+import java.util.List;                        // Imports List interface
+import java.util.Map;                         // Imports Map interface
+import java.util.function.LongSupplier;       // Imports LongSupplier for the clock
+
+/**
+ * Schedule of messages to be sent later.
+ *
+ * Pending messages wait in a {@link TimingWheel}, so scheduling and cancelling are O(1)
+ * even with millions pending, and each tick only touches the messages due on it. Every
+ * change is first appended to a {@link MessageLog} (schedule.log by default): a SCHEDULED
+ * record holds the message, with its Timestamp set to the time it is due, and a DONE
+ * record marks it sent or cancelled. Opening the log replays it, so pending messages
+ * survive a restart; messages that fell due while the app was down are sent on the first
+ * tick. When most of the log is finished records, it is rewritten with only the pending ones,
+ * both when it is opened and as messages are sent or cancelled.
+ *
+ * A background thread ticks every quickchat.schedule.tick milliseconds and hands due
+ * messages to the send path. A message is marked DONE only after the send path has taken
+ * it, so a crash in between sends it again after the restart rather than losing it; the
+ * send path is given the schedule ID so it can recognise such a repeat.
+ */
+public class MessageScheduler implements AutoCloseable {
+
+    // Length of a timing wheel tick in milliseconds
+    static final long TICK_MILLIS = Long.getLong("quickchat.schedule.tick", 1000);
+    // Wait before retrying a message the send path turned down, e.g. over quota
+    static final long RETRY_MILLIS = 60_000;
+    // Longest delay a user may ask for, in minutes: one year
+    static final long MAX_DELAY_MINUTES = 365L * 24 * 60;
+
+    // Record types in the schedule log
+    static final byte SCHEDULED = 2;
+    static final byte DONE = 3;
+
+    // The schedule's log file
+    private final Path file;
+    // Stores a due message; returns false to try again later
+    private final SendPath send;
+    // Current time in milliseconds
+    private final LongSupplier clock;
+    // Pending messages by due time
+    private final TimingWheel<Scheduled> wheel;
+    // Pending messages by schedule ID, for cancelling
+    private final Map<Long, TimingWheel.Timer<Scheduled>> pending = new HashMap<>();
+    // Append-only record of the schedule
+    private MessageLog log;
+    // Next schedule ID
+    private long nextId;
+    // Records in the log, to tell when compaction is worth it
+    private long records;
+    // Buffer for encoding records
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+    // True once close() has been called
+    private volatile boolean closed;
+
+    /**
+     * Stores messages as they fall due.
+     */
+    public interface SendPath {
+        /**
+         * Stores a due message. A message whose DONE record was lost in a crash comes
+         * again after the restart with the same schedule ID, so a send path that must not
+         * store it twice can key on that ID.
+         * @param scheduleId The message's schedule ID.
+         * @param entry The message; its Timestamp is the time it fell due.
+         * @return True if the message was taken; false to try again later.
+         */
+        boolean send(long scheduleId, MessageEntry entry);
+    }
+
+    /**
+     * A message waiting to be sent.
+     */
+    private static final class Scheduled {
+        final long id;
+        final MessageEntry entry; // Its Timestamp is the due time
+
+        Scheduled(long id, MessageEntry entry) {
+            this.id = id;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Opens a schedule, recovering the messages still pending in its log.
+     * Call {@link #start()} to begin sending.
+     * @param file The schedule's log file; created if missing.
+     * @param send Stores a due message; returns false to have it retried a minute later.
+     * @param clock The current time in milliseconds.
+     * @throws IOException If the log cannot be opened.
+     */
+    public MessageScheduler(Path file, SendPath send, LongSupplier clock) throws IOException {
+        this.file = file;
+        this.send = send;
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(TICK_MILLIS, clock.getAsLong());
+
+        Map<Long, MessageEntry> recovered = new LinkedHashMap<>();
+        long[] records = {0, -1}; // Records in the log, largest ID seen
+        log = new MessageLog(file, (type, sequence, payload) -> {
+            records[0]++;
+            records[1] = Math.max(records[1], sequence);
+            if (type == SCHEDULED) {
+                recovered.put(sequence, MessageLog.decode(payload)); // A later record for the same ID replaces it
+            } else if (type == DONE) {
+                recovered.remove(sequence);
+            }
+        });
+        nextId = records[1] + 1;
+        this.records = records[0];
+        for (Map.Entry<Long, MessageEntry> entry : recovered.entrySet()) {
+            Scheduled scheduled = new Scheduled(entry.getKey(), entry.getValue());
+            pending.put(scheduled.id, wheel.add(scheduled, scheduled.entry.Timestamp));
+        }
+        compactIfWorthwhile();
+    }
+
+    /**
+     * Starts the ticking thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this::run, "message-scheduler");
+        thread.setDaemon(true); // Pending messages are already in the log
+        thread.start();
+    }
+
+    /**
+     * Schedules a message. It is durable when this returns.
+     * @param entry The message to send.
+     * @param dueMillis When to send it, in epoch milliseconds.
+     * @return The schedule ID, for {@link #cancel(long)}.
+     * @throws IOException If the schedule cannot be written.
+     */
+    public synchronized long schedule(MessageEntry entry, long dueMillis) throws IOException {
+        long id = nextId++;
+        Scheduled scheduled = new Scheduled(id, new MessageEntry(entry.MessageID, entry.MessageHash, entry.Recipient,
+                entry.Message, entry.Sender, dueMillis));
+        write(MessageLog.encode(buffer.clear(), SCHEDULED, id, scheduled.entry));
+        pending.put(id, wheel.add(scheduled, dueMillis));
+        return id;
+    }
+
+    /**
+     * Cancels a scheduled message that has not been sent yet.
+     * @param id The schedule ID.
+     * @return True if it was cancelled; false if it is being or has been sent, was cancelled or never scheduled.
+     * @throws IOException If the cancellation cannot be written.
+     */
+    public synchronized boolean cancel(long id) throws IOException {
+        TimingWheel.Timer<Scheduled> timer = pending.get(id);
+        if (timer == null || !wheel.cancel(timer)) {
+            return false; // Fired timers stay pending until the send path has taken them
+        }
+        pending.remove(id);
+        write(MessageLog.encodeMarker(buffer.clear(), DONE, id));
+        compactIfWorthwhile();
+        return true;
+    }
+
+    /**
+     * Returns the number of messages waiting to be sent.
+     * @return The count.
+     */
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Sends every message that has fallen due. Called by the ticking thread.
+     * @return The number of messages the send path took.
+     * @throws IOException If the schedule cannot be written.
+     */
+    int sendDue() throws IOException {
+        List<Scheduled> due = new ArrayList<>();
+        synchronized (this) {
+            wheel.advance(clock.getAsLong(), due::add);
+        }
+        int sent = 0;
+        for (Scheduled scheduled : due) {
+            boolean accepted = send.send(scheduled.id, scheduled.entry); // Outside the lock; scheduling carries on meanwhile
+            synchronized (this) {
+                pending.remove(scheduled.id);
+                if (accepted) {
+                    write(MessageLog.encodeMarker(buffer.clear(), DONE, scheduled.id));
+                    compactIfWorthwhile();
+                    sent++;
+                } else {
+                    long retryAt = clock.getAsLong() + RETRY_MILLIS;
+                    MessageEntry retry = scheduled.entry;
+                    Scheduled again = new Scheduled(scheduled.id, new MessageEntry(retry.MessageID, retry.MessageHash,
+                            retry.Recipient, retry.Message, retry.Sender, retryAt));
+                    write(MessageLog.encode(buffer.clear(), SCHEDULED, again.id, again.entry)); // Replaces the old due time
+                    pending.put(again.id, wheel.add(again, retryAt));
+                }
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Stops ticking and closes the log. Pending messages stay in the log.
+     * @throws IOException If the log cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        log.close();
+    }
+
+    /**
+     * Ticking thread: sends due messages once per tick until closed.
+     */
+    private void run() {
+        while (!closed) {
+            try {
+                Thread.sleep(TICK_MILLIS - clock.getAsLong() % TICK_MILLIS); // Wakes on the tick boundary
+                sendDue();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    System.out.println("Error sending scheduled messages: " + e.getMessage()); // Prints message
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends encoded records to the log and makes them durable.
+     */
+    private void write(ByteBuffer records) throws IOException {
+        buffer = records; // Keeps the buffer if encoding grew it
+        log.append(records.flip());
+        if (MessageShard.FSYNC) {
+            log.force();
+        }
+        this.records++; // One record per write
+    }
+
+    /**
+     * Compacts the log once it is mostly finished records. Called under the lock.
+     */
+    private void compactIfWorthwhile() throws IOException {
+        if (records > 2L * pending.size() + 1024) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the pending messages, replacing it atomically.
+     */
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        try (MessageLog fresh = new MessageLog(tmp, (type, sequence, payload) -> { })) {
+            ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+            for (Map.Entry<Long, TimingWheel.Timer<Scheduled>> entry : pending.entrySet()) {
+                out = MessageLog.encode(out, SCHEDULED, entry.getKey(), entry.getValue().value().entry);
+                if (out.position() > 48 * 1024) {
+                    fresh.append(out.flip());
+                    out.clear();
+                }
+            }
+            fresh.append(out.flip());
+            records = pending.size();
+            if (nextId > 0 && !pending.containsKey(nextId - 1)) {
+                out.clear();
+                fresh.append(MessageLog.encodeMarker(out, DONE, nextId - 1).flip()); // Keeps the ID counter
+                records++;
+            }
+            fresh.force();
+        }
+        log.close();
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log = new MessageLog(file, (type, sequence, payload) -> { });
+    }
+}
@@ -0,0 +1,27 @@
+//Libraries
+import jdk.jfr.Category;   // Imports JFR annotations for describing the event
+import jdk.jfr.Description;
+import jdk.jfr.Event;      // Imports the JFR base event class
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for one message stored through Messages.storeMessage.
+ * The recipient is left out on purpose so recordings carry no phone numbers.
+ */
+@Name("quickchat.MessageSend")
+@Label("Message Send")
+@Category({"QuickChat", "Messages"})
+@Description("A message stored by Messages.storeMessage, including the history write")
+public class MessageSendEvent extends Event {
+
+    @Label("Message ID")
+    String messageId;
+
+    @Label("Message Length")
+    int messageLength;
+
+    @Label("History Size")
+    @Description("Messages in the history after this one was added")
+    int historySize;
+}
@@ -0,0 +1,741 @@
+//Libraries
+import java.io.IOException;                 // Imports IOException for I/O errors
+import java.nio.ByteBuffer;                 // Imports ByteBuffer for batched log writes
+import java.nio.file.Files;                 // Imports Files for the log's modification time and compaction
+import java.nio.file.Path;                  // Imports Path for the log location
+import java.nio.file.StandardCopyOption;    // Imports copy options for the atomic rename
+import java.util.ArrayDeque;                // Imports ArrayDeque for the write queue
+import java.util.ArrayList;                 // Imports ArrayList for records awaiting a timestamp
+import java.util.Arrays;                    // Imports Arrays for growing the sequence pages
+import java.util.List;                      // Imports List interface
+import java.util.function.LongSupplier;     // Imports LongSupplier for the shared sequence
+
+/**
+ * One partition of a {@link ShardedMessageStore}: the messages of the recipients that hash
+ * to it, with their own log file, their own in-memory index and their own writer thread.
+ *
+ * Callers only queue a message and get its position in the shard back. The writer thread
+ * drains the queue in batches, appends each batch to the log with a single write and one
+ * fsync (group commit), then adds the messages to the index and publishes a new read view.
+ * Nothing is shared with the other shards, so shards write in parallel without contending.
+ *
+ * Every message carries a sequence number drawn from a counter shared by all shards, so a
+ * global listing can merge the shards back into the order the messages were stored in.
+ *
+ * On a replication follower the writer thread stays idle; records shipped from the
+ * leader's log are appended unchanged by {@link #applyReplicated}, so both logs hold the
+ * same bytes at the same offsets.
+ *
+ * Records written before messages carried a timestamp are given one when they are read:
+ * the timestamp of the next record that has one, since it was stored later, or the log's
+ * modification time if none follows. The log itself is never rewritten for this.
+ *
+ * Edits and deletes are appended as UPDATE and DELETE records that name the message by
+ * ID; the writer (or replay) finds the row through a {@link MessageIdIndex} and revises
+ * it or leaves a tombstone, so nothing already in the log is touched. {@link #compact}
+ * later rewrites a log without the deleted messages and the superseded records.
+ */
+public class MessageShard implements AutoCloseable {
+
+    // Forces each batch to disk before it counts as written, unless -Dquickchat.log.fsync=false
+    static final boolean FSYNC = Boolean.parseBoolean(System.getProperty("quickchat.log.fsync", "true"));
+    // Most records written to the log in one batch
+    static final int MAX_BATCH = 1024;
+    // Superseded records a log needs before compaction is worth a rewrite
+    static final int COMPACT_MIN_DEAD = 1024;
+
+    // Position of this shard in the store
+    private final int number;
+    // This shard's log file
+    private final MessageLog log;
+    // Index of the shard's messages; changed only by the constructor and the writer (or replication) thread
+    private final MessageList rows = new MessageList();
+    // Sequence number of each row, in pages like the MessageList columns
+    private long[][] sequences = new long[16][];
+    // Rows of each conversation whose messages are in this shard
+    private final ConversationIndex conversations = new ConversationIndex();
+    // Row of each message ID
+    private final MessageIdIndex ids = new MessageIdIndex();
+    // Rows deleted so far, and log records that compaction would drop
+    private int deletedRows;
+    private long deadRecords;
+    // Records in the log
+    private long records;
+    // Largest sequence number in the log when it was opened, or -1
+    private long recoveredSequence = -1;
+    // Records read without a timestamp, held back until one is known, and their sequence numbers
+    private final List<MessageEntry> untimed = new ArrayList<>();
+    private final List<Long> untimedSequences = new ArrayList<>();
+    // Read view of everything written so far
+    private volatile View published;
+    // Log bytes that are complete (and forced to disk, with fsync on)
+    private volatile long durableLength;
+    // Told about every batch once it is durable, or null
+    private volatile BatchListener listener;
+    // Told about every message written, edited or deleted once readers can see the change, or null
+    private volatile ChangeListener changeListener;
+
+    // Shared sequence counter, advanced under this shard's lock
+    private final LongSupplier nextSequence;
+    // Records waiting for the writer thread, with their types and sequence numbers
+    private final ArrayDeque<MessageEntry> queue = new ArrayDeque<>();
+    private final ArrayDeque<Byte> queuedTypes = new ArrayDeque<>();
+    private final ArrayDeque<Long> queuedSequences = new ArrayDeque<>();
+    // Rows handed out so far and rows written so far
+    private int accepted;
+    private int written;
+    // Records queued so far and records written so far, edits included
+    private long queuedRecords;
+    private long writtenRecords;
+    // True once close() has been called
+    private boolean closed;
+    // Why the log could not be written, or null; once set the shard takes no more records
+    private IOException failure;
+    // Batch buffer, reused by the writer thread
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * Told when a batch of a shard's log has become durable.
+     */
+    public interface BatchListener {
+        /**
+         * Called on the writer thread before the batch's messages count as written,
+         * so a listener that blocks holds back the callers' acknowledgements.
+         * @param shard The shard number.
+         * @param logLength The durable length of the shard's log.
+         */
+        void written(int shard, long logLength);
+    }
+
+    /**
+     * Told when a message of a shard has been added, edited or deleted.
+     */
+    public interface ChangeListener {
+        /**
+         * Called on the writer thread after the change has been published to readers.
+         * @param sender The message's sender, or null if unknown.
+         * @param recipient The message's recipient.
+         */
+        void changed(String sender, String recipient);
+    }
+
+    /**
+     * Opens a shard, replaying its log into the index. Call {@link #start()} before appending.
+     * @param number The shard's position in the store.
+     * @param file The shard's log file.
+     * @param nextSequence Hands out sequence numbers shared by every shard.
+     * @throws IOException If the log cannot be opened.
+     */
+    public MessageShard(int number, Path file, LongSupplier nextSequence) throws IOException {
+        this.number = number;
+        this.nextSequence = nextSequence;
+        this.log = new MessageLog(file, (type, sequence, payload) -> {
+            if (applyRecord(type, sequence, payload)) {
+                recoveredSequence = Math.max(recoveredSequence, sequence);
+            }
+        });
+        backfill(Files.getLastModifiedTime(file).toMillis()); // Untimed records at the end of the log
+        this.accepted = rows.size();
+        this.written = rows.size();
+        this.durableLength = log.length();
+        publish();
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this::run, "shard-writer-" + number);
+        thread.setDaemon(true); // close() drains the queue instead
+        thread.start();
+    }
+
+    /**
+     * Queues a message for this shard.
+     * @param entry The message.
+     * @return The message's position in the shard, valid as soon as this returns.
+     */
+    public synchronized int append(MessageEntry entry) {
+        checkOpen();
+        enqueue(MessageLog.MESSAGE, entry);
+        return accepted++;
+    }
+
+    /**
+     * Edits or deletes a message of this shard by ID, returning once the change is written
+     * (and forced to disk, with fsync on). Only a record is appended; the log is not rewritten.
+     * @param type {@link MessageLog#UPDATE} or {@link MessageLog#DELETE}.
+     * @param change The message ID and recipient, the new hash and text for an edit, and the time of the change.
+     */
+    public void edit(byte type, MessageEntry change) {
+        long ticket;
+        synchronized (this) {
+            checkOpen();
+            ticket = enqueue(type, change);
+        }
+        awaitRecord(ticket);
+    }
+
+    /**
+     * Finds the first live message with an ID among the rows written so far.
+     * @param messageID The message ID.
+     * @return Its position in {@link #view()}, or -1 if there is none.
+     */
+    public int indexOf(String messageID) {
+        return ids.find(messageID, published.rows());
+    }
+
+    /**
+     * Blocks until the message at a position has been written (and forced to disk, with fsync on).
+     * @param index A position returned by {@link #append}.
+     * @throws IllegalStateException If the log could not be written and the message never will be.
+     */
+    public synchronized void awaitWritten(int index) {
+        while (written <= index) {
+            checkWritable();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while writing shard " + number, e);
+            }
+        }
+    }
+
+    /**
+     * Blocks until every message and edit queued so far has been written.
+     * @throws IllegalStateException If the log could not be written.
+     */
+    public void flush() {
+        long last;
+        synchronized (this) {
+            last = queuedRecords - 1;
+        }
+        awaitRecord(last);
+    }
+
+    /**
+     * Returns a read view of every message written so far.
+     * @return The view.
+     */
+    public View view() {
+        return published;
+    }
+
+    /**
+     * Sets the listener told about each durable batch.
+     * @param listener The listener, or null for none.
+     */
+    public void setListener(BatchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the listener told about each change once readers can see it.
+     * @param listener The listener, or null for none.
+     */
+    public void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    /**
+     * Returns the length of the log that is complete and durable.
+     * @return The length in bytes.
+     */
+    public long durableLength() {
+        return durableLength;
+    }
+
+    /**
+     * Reads raw bytes from the durable part of the log.
+     * @param buffer Receives the bytes.
+     * @param position The offset in the log.
+     * @return The number of bytes read.
+     * @throws IOException If the read fails.
+     */
+    public int readLog(ByteBuffer buffer, long position) throws IOException {
+        long available = durableLength - position;
+        if (available < buffer.remaining()) {
+            buffer.limit(buffer.position() + (int) Math.max(0, available)); // Never past the durable end
+        }
+        return Math.max(0, log.read(buffer, position));
+    }
+
+    /**
+     * Appends records shipped from the same shard of a leader's log and adds them to the index.
+     * Every complete record is checked and decoded before any is written or applied, and none
+     * is applied before all are on disk, so a damaged record or a failed write leaves the
+     * shard as it was and the leader can send the same bytes again.
+     * Only the follower's replication thread calls this.
+     * @param data Raw log bytes; complete records are consumed and a partial record at the end is left.
+     * @throws IOException If a record is damaged or the log cannot be written.
+     */
+    public void applyReplicated(ByteBuffer data) throws IOException {
+        ByteBuffer shipped = data.duplicate();
+        List<ShippedRecord> decoded = new ArrayList<>();
+        int length;
+        try {
+            length = MessageLog.scanRecords(data.duplicate(), (type, sequence, payload) -> decoded.add(
+                    new ShippedRecord(type, sequence, carriesMessage(type) ? MessageLog.decode(payload) : null)));
+        } catch (RuntimeException e) {
+            throw new IOException("Damaged shipped record: " + e, e); // The checksum matched but the payload does not decode
+        }
+        if (length == 0) {
+            return;
+        }
+        shipped.limit(shipped.position() + length);
+        try {
+            log.append(shipped); // Same bytes at the same offsets as the leader's log
+            if (FSYNC) {
+                log.force();
+            }
+        } catch (IOException e) {
+            log.truncate(durableLength); // No torn record is left for the next append to follow
+            throw e;
+        }
+        data.position(data.position() + length); // Consumed only once written
+        durableLength = log.length();
+        int rowsBefore = rows.size() + untimed.size();
+        for (ShippedRecord record : decoded) {
+            if (record.entry != null) {
+                applyDecoded(record.type, record.sequence, record.entry);
+            }
+        }
+        backfill(System.currentTimeMillis()); // Every applied record is added before publishing
+        int messages = rows.size() - rowsBefore;
+        publish();
+        synchronized (this) {
+            accepted += messages;
+            written += messages;
+            queuedRecords += decoded.size();
+            writtenRecords += decoded.size();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the index of this shard's conversations. It may hold rows newer than
+     * {@link #view()}, so readers bound their lookups by the view's size.
+     * @return The conversation index.
+     */
+    public ConversationIndex conversations() {
+        return conversations;
+    }
+
+    /**
+     * Returns the largest sequence number found in the log when it was opened.
+     * @return The sequence number, or -1 if the log was empty.
+     */
+    public long recoveredSequence() {
+        return recoveredSequence;
+    }
+
+    /**
+     * Rewrites a shard log with only its live messages, in their current form and with
+     * their original sequence numbers, and replaces it atomically. Deleted messages and
+     * edit records are dropped. The shard must not be open. The directory gets a new
+     * generation first, so replication followers copy the rewritten log from the start.
+     * @param file The shard's log file.
+     * @throws IOException If the log cannot be read or replaced.
+     */
+    static void compact(Path file) throws IOException {
+        MessageShard old = new MessageShard(-1, file, () -> 0); // Replayed, never started
+        compact(old, file);
+    }
+
+    /**
+     * Compacts a shard log if enough of it is superseded records to be worth a rewrite:
+     * at least COMPACT_MIN_DEAD, and at least a quarter of the log.
+     * @param file The shard's log file.
+     * @return True if the log was compacted.
+     * @throws IOException If the log cannot be read or replaced.
+     */
+    static boolean compactIfWorthwhile(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        MessageShard old = new MessageShard(-1, file, () -> 0);
+        if (old.deadRecords < COMPACT_MIN_DEAD || old.deadRecords * 4 < old.records) {
+            old.close();
+            return false;
+        }
+        compact(old, file);
+        return true;
+    }
+
+    /**
+     * Writes the live rows of a replayed shard to a fresh log and moves it over the old one.
+     */
+    private static void compact(MessageShard old, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        try (MessageLog fresh = new MessageLog(tmp, (type, sequence, payload) -> { })) {
+            MessageList.Snapshot live = old.rows.snapshot();
+            MessageView view = new MessageView();
+            ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+            for (int i = 0; i < live.size(); i++) {
+                if (live.isDeleted(i)) {
+                    continue; // Purged
+                }
+                long sequence = old.sequences[i >>> MessageList.PAGE_BITS][i & (MessageList.PAGE_SIZE - 1)];
+                out = MessageLog.encode(out, sequence, live.view(i, view).toEntry());
+                if (out.position() > 48 * 1024) {
+                    fresh.append(out.flip());
+                    out.clear();
+                }
+            }
+            fresh.append(out.flip());
+            fresh.force();
+        } finally {
+            old.close();
+        }
+        ShardedMessageStore.newGeneration(file.toAbsolutePath().getParent()); // Before followers could see the new log
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes what is queued, stops the writer thread and closes the log.
+     * @throws IOException If the log cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flush();
+        } catch (IllegalStateException e) {
+            throw new IOException(e.getMessage(), e.getCause()); // The log could not be written
+        } finally {
+            log.close();
+        }
+    }
+
+    /**
+     * Refuses new records once the shard is closed or its log has failed. Called under the lock.
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Shard " + number + " is closed");
+        }
+        checkWritable();
+    }
+
+    /**
+     * Throws if the log could not be written, so callers are never told a record is durable
+     * when it is not. Called under the lock.
+     */
+    private void checkWritable() {
+        if (failure != null) {
+            throw new IllegalStateException("Shard " + number + " stopped after failing to write "
+                    + log.file().getFileName() + ": " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Queues a record for the writer thread. Called under the lock.
+     * @return The record's ticket for {@link #awaitRecord}.
+     */
+    private long enqueue(byte type, MessageEntry entry) {
+        // Drawn under the lock, so sequence numbers rise within the shard in queue order
+        queuedSequences.addLast(nextSequence.getAsLong());
+        queuedTypes.addLast(type);
+        queue.addLast(entry);
+        notifyAll(); // Wakes the writer thread
+        return queuedRecords++;
+    }
+
+    /**
+     * Blocks until a queued record has been written.
+     */
+    private synchronized void awaitRecord(long ticket) {
+        while (writtenRecords <= ticket) {
+            checkWritable();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while writing shard " + number, e);
+            }
+        }
+    }
+
+    /**
+     * Writer thread: takes up to MAX_BATCH queued records at a time and writes them.
+     */
+    private void run() {
+        MessageEntry[] batch = new MessageEntry[MAX_BATCH];
+        byte[] batchTypes = new byte[MAX_BATCH];
+        long[] batchSequences = new long[MAX_BATCH];
+        while (true) {
+            int count = 0;
+            int messages = 0;
+            synchronized (this) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queue.isEmpty()) {
+                    return; // Closed and drained
+                }
+                while (count < MAX_BATCH && !queue.isEmpty()) {
+                    batch[count] = queue.pollFirst();
+                    batchTypes[count] = queuedTypes.pollFirst();
+                    if (batchTypes[count] == MessageLog.MESSAGE) messages++;
+                    batchSequences[count++] = queuedSequences.pollFirst();
+                }
+            }
+            IOException error = writeBatch(batch, batchTypes, batchSequences, count);
+            synchronized (this) {
+                if (error == null) {
+                    written += messages;
+                    writtenRecords += count;
+                } else {
+                    failure = error; // Waiting callers throw instead of counting the batch as written
+                }
+                notifyAll(); // Wakes callers waiting for these rows and edits
+            }
+            if (error != null) {
+                return; // Positions after the lost batch can never be honoured
+            }
+        }
+    }
+
+    /**
+     * Appends a batch to the log, then applies it to the index in order and publishes it.
+     * If the write fails, the log is cut back to its last durable length and nothing of the
+     * batch is applied, published or shipped to followers; the shard then stops.
+     * @return Null, or why the batch could not be written.
+     */
+    private IOException writeBatch(MessageEntry[] batch, byte[] batchTypes, long[] batchSequences, int count) {
+        buffer.clear();
+        for (int i = 0; i < count; i++) {
+            buffer = MessageLog.encode(buffer, batchTypes[i], batchSequences[i], batch[i]);
+        }
+        buffer.flip();
+        try {
+            log.append(buffer); // One write for the whole batch
+            if (FSYNC) {
+                log.force();    // One fsync for the whole batch
+            }
+            durableLength = log.length();
+        } catch (IOException e) {
+            System.out.println("Error writing " + log.file().getFileName() + ": " + e.getMessage()); // Prints message
+            try {
+                log.truncate(durableLength); // Drops whatever part of the batch reached the file
+            } catch (IOException t) {
+                e.addSuppressed(t);
+            }
+            return e;
+        }
+        BatchListener l = listener;
+        if (l != null) {
+            l.written(number, durableLength); // Replication ships the batch; with sync acks this waits
+        }
+        ChangeListener changes = changeListener;
+        String[] senders = changes == null ? null : new String[count];
+        MessageView view = new MessageView();
+        for (int i = 0; i < count; i++) {
+            records++;
+            if (batchTypes[i] == MessageLog.MESSAGE) {
+                addRow(batch[i], batchSequences[i]);
+                if (changes != null) senders[i] = batch[i].Sender;
+            } else {
+                int index = applyEdit(batchTypes[i], batch[i]);
+                if (changes != null && index >= 0) senders[i] = rows.view(index, view).getSender();
+            }
+            if (changes == null) batch[i] = null;
+        }
+        publish();
+        if (changes != null) {
+            for (int i = 0; i < count; i++) { // Readers see the change before caches drop their copies
+                changes.changed(senders[i], batch[i].Recipient);
+                batch[i] = null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Applies a record read from a log or shipped from a leader.
+     * @return True if the record is one a shard writes.
+     */
+    private boolean applyRecord(byte type, long sequence, ByteBuffer payload) {
+        if (!carriesMessage(type)) {
+            return false;
+        }
+        applyDecoded(type, sequence, MessageLog.decode(payload));
+        return true;
+    }
+
+    /**
+     * Adds a decoded message record to the index, or applies a decoded edit record.
+     */
+    private void applyDecoded(byte type, long sequence, MessageEntry entry) {
+        records++;
+        if (type == MessageLog.MESSAGE) {
+            addRecord(entry, sequence);
+        } else {
+            backfill(entry.Timestamp); // The edited message may still be held back
+            applyEdit(type, entry);
+        }
+    }
+
+    /**
+     * Tells whether a record type carries a message: a new message, an edit or a delete.
+     */
+    private static boolean carriesMessage(byte type) {
+        return type == MessageLog.MESSAGE || type == MessageLog.UPDATE || type == MessageLog.DELETE;
+    }
+
+    /**
+     * Revises or tombstones the row an edit record names. An edit whose message is
+     * already gone changes nothing.
+     * @return The row changed, or -1.
+     */
+    private int applyEdit(byte type, MessageEntry change) {
+        deadRecords++; // The edit record itself, once compaction folds it into the row
+        int index = ids.find(change.MessageID, rows.snapshot());
+        if (index < 0) {
+            return -1;
+        }
+        if (type == MessageLog.DELETE) {
+            rows.delete(index);
+            deletedRows++;
+            deadRecords++; // And the deleted message's record
+        } else {
+            rows.revise(index, change.MessageHash, change.Message);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a message read from a log, holding it back if it has no timestamp yet.
+     */
+    private void addRecord(MessageEntry entry, long sequence) {
+        if (entry.Timestamp == null) {
+            untimed.add(entry);
+            untimedSequences.add(sequence);
+            return;
+        }
+        backfill(entry.Timestamp); // Earlier untimed records were stored no later than this one
+        addRow(entry, sequence);
+    }
+
+    /**
+     * Adds the held-back untimed records with a timestamp.
+     */
+    private void backfill(long timestamp) {
+        for (int i = 0; i < untimed.size(); i++) {
+            MessageEntry entry = untimed.get(i);
+            entry.Timestamp = timestamp;
+            addRow(entry, untimedSequences.get(i));
+        }
+        untimed.clear();
+        untimedSequences.clear();
+    }
+
+    /**
+     * Adds a message and its sequence number to the index.
+     */
+    private void addRow(MessageEntry entry, long sequence) {
+        int index = rows.size();
+        int page = index >>> MessageList.PAGE_BITS;
+        if (page == sequences.length) {
+            sequences = Arrays.copyOf(sequences, page * 2); // Published views keep the old table
+        }
+        if (sequences[page] == null) {
+            sequences[page] = new long[MessageList.PAGE_SIZE];
+        }
+        sequences[page][index & (MessageList.PAGE_SIZE - 1)] = sequence;
+        rows.add(entry);
+        conversations.add(entry.Sender, entry.Recipient, index);
+        ids.add(entry.MessageID, index);
+    }
+
+    /**
+     * Publishes a view of the rows added so far. The volatile write hands the rows to readers.
+     */
+    private void publish() {
+        published = new View(number, rows.snapshot(), sequences, deletedRows);
+    }
+
+    /**
+     * Read-only view of a shard at one point in time.
+     */
+    public static final class View {
+
+        private final int shard;
+        private final MessageList.Snapshot rows;
+        private final long[][] sequences;
+        private final int deleted;
+
+        private View(int shard, MessageList.Snapshot rows, long[][] sequences, int deleted) {
+            this.shard = shard;
+            this.rows = rows;
+            this.sequences = sequences;
+            this.deleted = deleted;
+        }
+
+        /**
+         * Returns the shard's position in the store.
+         * @return The shard number.
+         */
+        public int shard() {
+            return shard;
+        }
+
+        /**
+         * Returns the number of rows in the view, deleted messages included.
+         * @return The size.
+         */
+        public int size() {
+            return rows.size();
+        }
+
+        /**
+         * Returns the number of deleted messages among the rows.
+         * @return The count.
+         */
+        public int deleted() {
+            return deleted;
+        }
+
+        /**
+         * Returns the sequence number of a message.
+         * @param index The position, below size().
+         * @return The sequence number.
+         */
+        public long sequence(int index) {
+            return sequences[index >>> MessageList.PAGE_BITS][index & (MessageList.PAGE_SIZE - 1)];
+        }
+
+        /**
+         * Returns the messages themselves.
+         * @return The rows.
+         */
+        public MessageList.Snapshot rows() {
+            return rows;
+        }
+    }
+
+    /**
+     * A record shipped from the leader, checked and decoded but not yet applied.
+     */
+    private static final class ShippedRecord {
+        final byte type;
+        final long sequence;
+        // The message or change, or null for a record type the index ignores
+        final MessageEntry entry;
+
+        ShippedRecord(byte type, long sequence, MessageEntry entry) {
+            this.type = type;
+            this.sequence = sequence;
+            this.entry = entry;
+        }
+    }
+}
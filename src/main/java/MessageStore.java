@@ -0,0 +1,159 @@
+//Libraries
+import java.io.IOException;         // Imports IOException for opening a store
+import java.nio.file.Files;         // Imports Files for finding the recovered history
+import java.nio.file.Path;          // Imports Path for the data directory
+import java.util.List;              // Imports List interface
+import java.util.function.Consumer; // Imports Consumer for listing every message
+
+/**
+ * Storage engine for messages. Every backend keeps messages in the order they were
+ * stored, finds them by ID, recipient, conversation and time, and edits and deletes them
+ * by ID; MessageStoreConformanceTest checks that they all answer the same way.
+ *
+ * Backends, chosen with -Dquickchat.store:
+ * - json: the whole history in messages.json, rewritten as a snapshot after each change ({@link JsonMessageStore})
+ * - sharded: per-recipient append-only logs in messages-shards/ ({@link ShardedMessageStore})
+ * - sql: an embedded H2 database file, quickchat.mv.db ({@link SqlMessageStore})
+ * - memory: nothing written to disk, for tests and benchmarks ({@link InMemoryMessageStore})
+ *
+ * With json, {@link Messages} keeps using its own messages.json path, which loads the
+ * history in the background and writes edits to a side log; it shares the file format with
+ * JsonMessageStore, so tools can open the same file through this interface. JsonMessageStore
+ * opens messages.recovered.json when it exists and applies the edits log, as Messages does.
+ */
+public interface MessageStore extends AutoCloseable {
+
+    // Backend used by Messages and the command-line tools
+    String BACKEND = System.getProperty("quickchat.store", "json");
+
+    /**
+     * Opens a backend's store in a data directory.
+     * @param backend "json", "sharded", "sql" or "memory".
+     * @param dir The directory holding messages.json, messages-shards/ or quickchat.mv.db.
+     * @return The store.
+     * @throws IOException If the store cannot be opened.
+     * @throws IllegalArgumentException If the backend is unknown.
+     */
+    static MessageStore open(String backend, Path dir) throws IOException {
+        switch (backend) {
+            case "json":
+                Path recovered = dir.resolve("messages.recovered.json"); // Loaded in place of messages.json, as by Messages
+                return new JsonMessageStore(Files.exists(recovered) ? recovered : dir.resolve("messages.json"));
+            case "sharded":
+                return ShardedMessageStore.forDirectory(dir.resolve("messages-shards"), ShardedMessageStore.SHARDS);
+            case "sql":
+                return SqlMessageStore.forDirectory(dir);
+            case "memory":
+                return new InMemoryMessageStore();
+            default:
+                throw new IllegalArgumentException("Unknown message store " + backend + "; use json, sharded, sql or memory");
+        }
+    }
+
+    /**
+     * Stores a message. A message without a timestamp is stamped with the current time.
+     * The store may write it in the background; {@link #flush()} waits for that.
+     * @param entry The message.
+     * @return A reference to the message for {@link #view(int, MessageView)}.
+     */
+    int store(MessageEntry entry);
+
+    /**
+     * Stores a batch of messages, such as a slice of an import, in order. By default each is
+     * stored and the batch is waited for, so a bulk load never queues more than one batch;
+     * a store that rewrites its whole file on each change only adds them, and writes them
+     * all on the next {@link #flush()}.
+     * @param batch The messages; the caller may reuse the list afterwards.
+     */
+    default void storeAll(List<MessageEntry> batch) {
+        for (MessageEntry entry : batch) {
+            store(entry);
+        }
+        flush();
+    }
+
+    /**
+     * Replaces the hash and text of the earliest message with an ID.
+     * @param messageID The message ID.
+     * @param hash The new hash.
+     * @param message The new text.
+     * @return True if the message was found and edited.
+     */
+    boolean update(String messageID, String hash, String message);
+
+    /**
+     * Deletes the earliest message with an ID.
+     * @param messageID The message ID.
+     * @return True if the message was found and deleted.
+     */
+    boolean delete(String messageID);
+
+    /**
+     * Points a view at a stored message.
+     * @param reference A reference returned by {@link #store}.
+     * @param view The view to reuse.
+     * @return The view.
+     */
+    MessageView view(int reference, MessageView view);
+
+    /**
+     * Returns the number of stored messages, not counting deleted ones.
+     * @return The message count.
+     */
+    int size();
+
+    /**
+     * Calls {@code action} with every message that has not been deleted, in the order they were stored.
+     * @param action Receives a view of each message; the view is reused.
+     */
+    void forEach(Consumer<MessageView> action);
+
+    /**
+     * Finds every message stored in a time range, in the order they were stored.
+     * @param fromMillis The start of the range in epoch milliseconds, inclusive.
+     * @param toMillis The end of the range in epoch milliseconds, exclusive.
+     * @return The matching messages; empty if there are none.
+     */
+    List<MessageEntry> findMessagesBetween(long fromMillis, long toMillis);
+
+    /**
+     * Finds the earliest message with a given ID.
+     * @param messageID The message ID.
+     * @return The message, or null if no message has that ID.
+     */
+    MessageEntry findMessageByID(String messageID);
+
+    /**
+     * Finds every message sent to a recipient, oldest first.
+     * @param recipient The recipient's cell number.
+     * @return The matching messages; empty if there are none.
+     */
+    List<MessageEntry> findMessagesToRecipient(String recipient);
+
+    /**
+     * Loads the newest messages between two people, in both directions.
+     * @param a One participant's cell number.
+     * @param b The other participant's cell number.
+     * @param limit The most messages to return.
+     * @return The messages, oldest first.
+     */
+    List<MessageEntry> loadConversation(String a, String b, int limit);
+
+    /**
+     * Blocks until every message stored so far has been written.
+     */
+    void flush();
+
+    /**
+     * Writes what is pending and releases the store's files.
+     * @throws IOException If a file cannot be closed.
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Returns the cache of formatted conversation pages kept up to date with this store.
+     * @return The cache.
+     */
+    HistoryPageCache pageCache();
+}
@@ -0,0 +1,104 @@
+/**
+ * Flyweight over one row of a {@link MessageList}.
+ *
+ * A single view is moved from row to row, so read paths such as listing or saving the
+ * history touch every message without creating a MessageEntry for each. Fields are
+ * decoded from their columns on request and are not pooled, so a save that walks the
+ * whole history does not churn {@link StringInterner}; only {@link #toEntry()}, which
+ * builds long-lived entries, interns recipients and short bodies.
+ */
+public class MessageView {
+
+    // Columns holding the current row
+    private MessageList.Columns columns;
+    // Page and position of the current row
+    private int page;
+    private int row;
+
+    /**
+     * Points this view at a row.
+     * @param columns The columns holding the row.
+     * @param index The row index.
+     * @return This view, for chaining.
+     */
+    MessageView moveTo(MessageList.Columns columns, int index) {
+        this.columns = columns;
+        this.page = index >>> MessageList.PAGE_BITS;
+        this.row = index & (MessageList.PAGE_SIZE - 1);
+        return this;
+    }
+
+    /**
+     * Returns the message ID of the current row.
+     * @return The message ID.
+     */
+    public String getMessageID() {
+        return columns.decode(columns.ids[page][row]);
+    }
+
+    /**
+     * Returns whether the current row's message has been deleted.
+     * @return True if it is a tombstone.
+     */
+    public boolean isDeleted() {
+        return columns.bodies[page][row] == MessageList.DELETED;
+    }
+
+    /**
+     * Returns the message hash of the current row.
+     * @return The message hash, or null if the message was deleted.
+     */
+    public String getMessageHash() {
+        long body = columns.bodies[page][row];
+        return body == MessageList.DELETED ? null : columns.arena.get(body);
+    }
+
+    /**
+     * Returns the recipient of the current row.
+     * @return The recipient's cell number.
+     */
+    public String getRecipient() {
+        return columns.decode(columns.recipients[page][row]);
+    }
+
+    /**
+     * Returns the text of the current row.
+     * @return The message text, or null if the message was deleted.
+     */
+    public String getMessage() {
+        long body = columns.bodies[page][row];
+        if (body == MessageList.DELETED) {
+            return null;
+        }
+        return columns.arena.get(columns.arena.next(body)); // Text is stored right after the hash
+    }
+
+    /**
+     * Returns the sender of the current row.
+     * @return The sender's cell number, or null if it was not recorded.
+     */
+    public String getSender() {
+        return columns.decode(columns.senders[page][row]);
+    }
+
+    /**
+     * Returns when the current row's message was stored.
+     * @return The time in epoch milliseconds, or null if it is not known.
+     */
+    public Long getTimestamp() {
+        long timestamp = columns.timestamps[page][row];
+        return timestamp == MessageList.NO_TIMESTAMP ? null : timestamp;
+    }
+
+    /**
+     * Copies the current row into a standalone MessageEntry.
+     * Recipients and short bodies are pooled, so entries kept from repeated rows share them.
+     * @return A new MessageEntry with the row's fields.
+     */
+    public MessageEntry toEntry() {
+        return new MessageEntry(getMessageID(), getMessageHash(),
+                StringInterner.RECIPIENTS.intern(getRecipient()),
+                StringInterner.MESSAGES.intern(getMessage()),
+                StringInterner.RECIPIENTS.intern(getSender()), getTimestamp()); // Senders are recipients too
+    }
+}
@@ -2,34 +2,206 @@
 import java.util.ArrayList; // Imports ArrayList for dynamic arrays
 import java.util.List;      // Imports List interface
 import javax.swing.*;       // Imports Swing for GUI components
-import java.io.FileWriter;  // Imports FileWriter for writing files
-import java.io.IOException; // Imports IOException for I/O errors
-import java.io.File;        // Imports File class for file operations
 import java.util.*;         // Imports all utility classes (e.g., Random, Scanner)
-import com.google.gson.Gson;          // Imports Gson for JSON serialization/deserialization
-import com.google.gson.GsonBuilder;   // Imports GsonBuilder for Gson configuration
+import java.io.IOException; // Imports IOException for opening a message store
+import java.nio.ByteBuffer; // Imports ByteBuffer for encoding edit records
+import java.nio.file.Files; // Imports Files for the history's modification time
+import java.nio.file.Path;  // Imports Path for file locations
+import java.nio.file.Paths; // Imports Paths for building file paths
 
 public class Messages {
 
-    // List to hold all message entries
-    private List<MessageEntry> messages = new ArrayList<>();
+    // List to hold all message entries; their fields are kept off the Java heap
+    private MessageList messages = new MessageList();
     // Counter for the total number of messages
     private int totalMessages = 0;
+    // Background load of the saved history, or null when it was loaded synchronously
+    private HistoryLoader loader;
+    // True once the loaded history has been added to totalMessages
+    private boolean historyCounted;
+    // The saved history, and the copy that replaces it once it could not be read completely
+    static final Path HISTORY_FILE = Paths.get("messages.json");
+    static final Path RECOVERED_FILE = Paths.get("messages.recovered.json");
+    // File the history was loaded from, which saves go back to
+    private Path historyFile = HISTORY_FILE;
+    // True once the user has been told that the loaded history was damaged
+    private volatile boolean damageReported;
+    // Storage backend used instead of messages.json, or null (-Dquickchat.store=sharded or memory)
+    private MessageStore store;
+    // Conversations of the messages list, brought up to date when one is loaded
+    private ConversationIndex conversations = new ConversationIndex();
+    // Number of messages already in the conversation index
+    private int conversationsIndexed;
+    // Row of each message ID in the messages list, brought up to date when one is looked up
+    private final MessageIdIndex ids = new MessageIdIndex();
+    // Edits and deletes made since messages.json was last compacted, or null when not kept on disk
+    private Path editLogFile;
+    // True once the edits log has been replayed into the loaded history
+    private volatile boolean editsReplayed;
+    // The open edits log, or null until the first edit after the replay
+    private MessageLog editLog;
+    // Records in the edits log
+    private long editRecords;
+
+    // Messages shown by printConversation
+    static final int CONVERSATION_PAGE = 50;
+    // Rows of the history formatted and cached together by printMessages
+    static final int LISTING_PAGE = 256;
+    // Cache scope of the full history listing
+    static final String HISTORY_SCOPE = "history";
+
+    // Formatted history and conversation pages of the messages list, dropped as the messages change
+    private HistoryPageCache pageCache = new HistoryPageCache(HistoryPageCache.MAX_BYTES);
+    // Size of the messages list when the cache was last used, to notice the list being cleared
+    private int pagesCachedFor;
+
+    // How long a send's idempotency key is remembered, and how many keys at most
+    static final long DEDUPE_WINDOW_MILLIS = Long.getLong("quickchat.dedupe.window", 24 * 60) * 60_000L;
+    static final int DEDUPE_MAX_KEYS = Integer.getInteger("quickchat.dedupe.maxkeys", 5_000_000);
+    // Keys of recent sends, so a retried send is not stored twice
+    private final DuplicateFilter sentKeys = new DuplicateFilter(DEDUPE_WINDOW_MILLIS, 24,
+            Math.max(1024, DEDUPE_MAX_KEYS / 24), DEDUPE_MAX_KEYS, System::currentTimeMillis);
+    // Locks held from checking a send's key to recording it; keys that share a stripe wait for each other
+    private static final int SEND_STRIPES = 256;
+    private final Object[] sendLocks = newLocks(SEND_STRIPES);
+
+    // Per-sender limits checked before a message is stored, or null for none
+    private SendQuota quota;
+    // Messages waiting to be sent later, or null until scheduled sends are started
+    private MessageScheduler scheduler;
+
+    // Metrics for the persistence hot paths (no-ops unless metrics are enabled)
+    private static final LatencyHistogram STORE_TIMER = Metrics.timer("store_message");
+    private static final LatencyHistogram WRITE_TIMER = Metrics.timer("write_messages_json");
+    private static final MetricCounter STORED_COUNTER = Metrics.counter("messages_stored");
+    private static final MetricCounter DUPLICATE_COUNTER = Metrics.counter("duplicate_sends_suppressed");
+    private static final MetricCounter QUOTA_COUNTER = Metrics.counter("sends_over_quota");
 
     /**
      * Sets the total number of messages.
      * @param tm The new total number of messages.
      */
     public void setTotalMessages(int tm){
+        awaitHistoryCount();    // So the history is not added on top later
         this.totalMessages = tm; // Sets the total messages to the provided value
     }
 
+    /**
+     * Sets the per-sender quota that messages with a known sender are checked against.
+     * @param quota The quota, or null to store without limits.
+     */
+    public void setQuota(SendQuota quota) {
+        this.quota = quota;
+    }
+
+    /**
+     * Opens the schedule of delayed sends and starts sending messages as they fall due.
+     * Messages still pending from an earlier run are recovered, and any that fell due
+     * while the app was closed are sent straight away.
+     * @param file The schedule's log file, e.g. "schedule.log".
+     * @throws IOException If the schedule cannot be opened.
+     */
+    public void startScheduledSends(Path file) throws IOException {
+        scheduler = new MessageScheduler(file, this::sendScheduled, System::currentTimeMillis);
+        scheduler.start();
+    }
+
+    /**
+     * Stores a scheduled message that has fallen due, exactly once. The scheduler may hand
+     * over the same message again after a crash, so the send is keyed by its schedule ID,
+     * and a message already in the history from before the restart counts as sent.
+     * It only counts as sent once it is on disk, since the scheduler then forgets it.
+     * @param scheduleId The message's schedule ID.
+     * @param entry The message.
+     * @return True if the message is stored and saved; false if it is over quota or could
+     *         not be saved, and should be retried later.
+     */
+    private boolean sendScheduled(long scheduleId, MessageEntry entry) {
+        MessageEntry stored = findMessageByID(entry.MessageID);
+        if (stored != null && Objects.equals(stored.Recipient, entry.Recipient)) {
+            DUPLICATE_COUNTER.increment(); // Stored before the crash, or by an attempt whose save failed
+        } else if (storeMessageOnce("schedule:" + scheduleId, entry.MessageID, entry.MessageHash, entry.Recipient,
+                entry.Message, entry.Sender) == null) {
+            return false;
+        }
+        return awaitSaved();
+    }
+
+    /**
+     * Blocks until every message stored so far is on disk.
+     * @return True if they are; false if the newest save failed or saves are refused.
+     */
+    private boolean awaitSaved() {
+        try {
+            if (store != null) {
+                store.flush(); // Queued in the store until its writer has written it
+                return true;
+            }
+            awaitHistory(); // A save put off while loading is submitted before loading ends
+            SnapshotWriter writer = historyWriter();
+            if (writer == null) {
+                return false; // Nothing is saved while the recovered history is damaged
+            }
+            writer.flush(); // Only submitted to the background writer until then
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            System.out.println("Error saving a scheduled message: " + e.getMessage()); // Prints message
+            return false;
+        }
+    }
+
+    /**
+     * Schedules a message to be stored and sent later. It is durable when this returns.
+     * @param id The message ID.
+     * @param hash The message hash.
+     * @param recipient The message recipient.
+     * @param text The message text.
+     * @param sender The sender's cell number.
+     * @param dueMillis When to send it, in epoch milliseconds.
+     * @return The schedule ID, for {@link #cancelScheduledMessage(long)}.
+     * @throws IOException If the schedule cannot be written.
+     */
+    public long scheduleMessage(String id, String hash, String recipient, String text, String sender, long dueMillis)
+            throws IOException {
+        return scheduler().schedule(new MessageEntry(id, hash, recipient, text, sender), dueMillis);
+    }
+
+    /**
+     * Cancels a scheduled message that has not been sent yet.
+     * @param scheduleId The ID returned by {@link #scheduleMessage}.
+     * @return True if it was cancelled; false if it was already sent or cancelled.
+     * @throws IOException If the cancellation cannot be written.
+     */
+    public boolean cancelScheduledMessage(long scheduleId) throws IOException {
+        return scheduler().cancel(scheduleId);
+    }
+
+    /**
+     * Returns the number of scheduled messages not yet sent.
+     * @return The count; 0 if scheduled sends are not started.
+     */
+    public int scheduledMessageCount() {
+        return scheduler == null ? 0 : scheduler.pendingCount();
+    }
+
+    /**
+     * Returns the schedule of delayed sends.
+     * @return The scheduler.
+     */
+    private MessageScheduler scheduler() {
+        if (scheduler == null) {
+            throw new IllegalStateException("Scheduled sends are not started");
+        }
+        return scheduler;
+    }
+
     /**
      * Constructor for the Messages class.
      * Initializes message list and count, then loads saved messages.
+     * The history loads in the background, so the constructor returns immediately.
      */
     public Messages() {
-        this.messages = new ArrayList<>(); // Initializes the messages list
+        this.messages = new MessageList(); // Initializes the messages list
         this.totalMessages = 0;           // Initializes the total messages counter
         loadMessagesFromJson();           // Loads messages from a JSON file
     }
@@ -84,11 +256,11 @@ public class Messages {
     }
 
     /**
-     * Presents options to the user for message action (Send, Store, Disregard).
+     * Presents options to the user for message action (Send, Store, Schedule, Disregard).
      * @return The user's choice as a String.
      */
     public String sentMessage() {
-        Object[] options = {"Send", "Store", "Disregard"}; // Defines dialog options
+        Object[] options = {"Send", "Store", "Schedule", "Disregard"}; // Defines dialog options
         // Shows a dialog and gets the user's choice
         int choice = JOptionPane.showOptionDialog(null, "What would you like to do with the message?",
                 "Message Action", JOptionPane.YES_NO_CANCEL_OPTION,
@@ -98,6 +270,7 @@ public class Messages {
         switch (choice) {
             case 0: return "send";      // User chose "Send"
             case 1: return "store";     // User chose "Store"
+            case 2: return "schedule";  // User chose "Schedule"
             default: return "disregard"; // User chose "Disregard" or closed
         }
     }
@@ -107,24 +280,311 @@ public class Messages {
      * Informs the user if no messages are stored.
      */
     public void printMessages() {
-        if (messages.isEmpty()) { // Checks if message list is empty
+        String listing = historyText();
+        if (listing.isEmpty()) { // Checks if there are no messages
             JOptionPane.showMessageDialog(null, "No messages have been sent yet.");
             return; // Exits if no messages
         }
 
+        // Displays formatted messages in a dialog
+        JOptionPane.showMessageDialog(null, listing, "Recent Messages", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Formats every stored message as shown by {@link #printMessages()}.
+     * The history is formatted in pages of LISTING_PAGE rows that stay cached until one of
+     * their messages changes, so listing again only formats the pages that changed,
+     * usually just the newest.
+     * @return The listing; empty if there are no messages.
+     */
+    public String historyText() {
+        awaitHistory(); // Lists every message, so the whole history is needed
         StringBuilder sb = new StringBuilder(); // Creates a StringBuilder
-        for (int i = 0; i < messages.size(); i++) { // Loops through each message
-            MessageEntry msg = messages.get(i); // Gets the current message
-            // Appends message details to the StringBuilder
-            sb.append("Message #").append(i + 1).append(":\n")
-                    .append("ID: ").append(msg.MessageID).append("\n")
-                    .append("Hash: ").append(msg.MessageHash).append("\n")
-                    .append("Recipient: ").append(msg.Recipient).append("\n")
-                    .append("Message: ").append(msg.Message).append("\n\n");
+        if (store != null) {
+            int[] count = {0};
+            store.forEach(msg -> appendMessage(sb, ++count[0], msg)); // In the order messages were stored; a sharded store merges its shards
+            return sb.toString();
+        }
+        int size;
+        synchronized (messages) {
+            size = pagesValidFor();
         }
+        int number = 1; // Number of the first message on the next page
+        for (int page = 0; page * LISTING_PAGE < size; page++) {
+            int from = page * LISTING_PAGE;
+            int first = number;
+            sb.append(pageCache.get(HISTORY_SCOPE, "", page, () -> listingPage(from, first)));
+            synchronized (messages) {
+                for (int i = from; i < Math.min(from + LISTING_PAGE, messages.size()); i++) {
+                    if (!messages.isDeleted(i)) number++; // Counting is cheap next to formatting
+                }
+            }
+        }
+        return sb.toString();
+    }
 
-        // Displays formatted messages in a dialog
-        JOptionPane.showMessageDialog(null, sb.toString(), "Recent Messages", JOptionPane.INFORMATION_MESSAGE);
+    /**
+     * Formats one page of the history listing.
+     * @param from The page's first row.
+     * @param number The number of the page's first message in the listing.
+     * @return The formatted page.
+     */
+    private String listingPage(int from, int number) {
+        StringBuilder sb = new StringBuilder();
+        synchronized (messages) { // The page ends where the list ends now, not when the listing started
+            MessageView msg = new MessageView(); // Reused for every message instead of copying each one
+            for (int i = from; i < Math.min(from + LISTING_PAGE, messages.size()); i++) { // Loops through each message
+                if (!messages.isDeleted(i)) {
+                    appendMessage(sb, number++, messages.view(i, msg)); // Points the view at the current message
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends one message's details to a listing.
+     * @param sb The listing.
+     * @param number The message's number in the listing, from 1.
+     * @param msg The message.
+     */
+    private static void appendMessage(StringBuilder sb, int number, MessageView msg) {
+        sb.append("Message #").append(number).append(":\n")
+                .append("ID: ").append(msg.getMessageID()).append("\n")
+                .append("Hash: ").append(msg.getMessageHash()).append("\n")
+                .append("Recipient: ").append(msg.getRecipient()).append("\n")
+                .append("Message: ").append(msg.getMessage()).append("\n\n");
+    }
+
+    /**
+     * Finds a stored message by its ID.
+     * @param messageID The message ID to look for.
+     * @return The message, or null if no message has that ID.
+     */
+    public MessageEntry findMessageByID(String messageID) {
+        if (store != null) {
+            return store.findMessageByID(messageID); // Through the store's ID index
+        }
+        awaitHistory(); // Any message may have the ID
+        synchronized (messages) {
+            int index = indexOf(messageID);
+            return index < 0 ? null : messages.get(index);
+        }
+    }
+
+    /**
+     * Changes the text of a stored message. The hash is recomputed for the new text and
+     * keeps the message's number. Only a record of the change is appended; messages.json
+     * or the shard log is not rewritten.
+     * @param messageID The ID of the message to edit.
+     * @param newText The new text.
+     * @return True if the message was found and edited.
+     * @throws IOException If the change cannot be recorded.
+     */
+    public boolean editMessage(String messageID, String newText) throws IOException {
+        if (store != null) {
+            store.flush(); // A message stored just before can be edited
+            MessageEntry old = store.findMessageByID(messageID);
+            return old != null && store.update(messageID, rehash(old, newText), newText);
+        }
+        awaitHistory(); // Also replays earlier edits
+        synchronized (messages) {
+            int index = indexOf(messageID);
+            if (index < 0) {
+                return false;
+            }
+            MessageEntry old = messages.get(index);
+            String hash = rehash(old, newText);
+            recordEdit(MessageLog.UPDATE, new MessageEntry(messageID, hash, old.Recipient, newText, null,
+                    System.currentTimeMillis())); // Durable before the change is visible
+            messages.revise(index, hash, newText);
+            invalidatePages(index, old.Sender, old.Recipient, false);
+        }
+        return true;
+    }
+
+    /**
+     * Deletes a stored message. Only a record of the delete is appended; the message is
+     * left out of messages.json from its next save, or dropped from its shard log when
+     * the log is compacted.
+     * @param messageID The ID of the message to delete.
+     * @return True if the message was found and deleted.
+     * @throws IOException If the delete cannot be recorded.
+     */
+    public boolean deleteMessage(String messageID) throws IOException {
+        if (store != null) {
+            if (!store.delete(messageID)) {
+                return false;
+            }
+        } else {
+            awaitHistory(); // Also replays earlier edits
+            synchronized (messages) {
+                int index = indexOf(messageID);
+                if (index < 0) {
+                    return false;
+                }
+                MessageEntry old = messages.get(index);
+                recordEdit(MessageLog.DELETE, new MessageEntry(messageID, null, old.Recipient, null, null,
+                        System.currentTimeMillis()));
+                messages.delete(index);
+                invalidatePages(index, old.Sender, old.Recipient, true);
+            }
+        }
+        awaitHistoryCount();
+        totalMessages--;
+        return true;
+    }
+
+    /**
+     * Finds every stored message sent to a recipient, oldest first.
+     * @param recipient The recipient's cell number.
+     * @return The matching messages; empty if there are none.
+     */
+    public List<MessageEntry> findMessagesToRecipient(String recipient) {
+        if (store != null) {
+            return store.findMessagesToRecipient(recipient); // A sharded store reads the recipient's shard only
+        }
+        awaitHistory(); // Scans every message
+        List<MessageEntry> found = new ArrayList<>(); // Creates a list for the matches
+        messages.forEachToRecipient(recipient, index -> found.add(messages.get(index))); // Builds entries for matches only
+        return found;
+    }
+
+    /**
+     * Finds every message stored in a time range, oldest first, e.g. the last hour's
+     * messages. Only the pages of history whose time range overlaps are read.
+     * @param fromMillis The start of the range in epoch milliseconds, inclusive.
+     * @param toMillis The end of the range in epoch milliseconds, exclusive.
+     * @return The matching messages; empty if there are none.
+     */
+    public List<MessageEntry> findMessagesBetween(long fromMillis, long toMillis) {
+        if (store != null) {
+            return store.findMessagesBetween(fromMillis, toMillis); // A sharded store merges every shard
+        }
+        awaitHistory(); // Older messages may be in any page
+        List<MessageEntry> found = new ArrayList<>();
+        synchronized (messages) {
+            messages.forEachInTimeRange(fromMillis, toMillis, index -> found.add(messages.get(index)));
+        }
+        return found;
+    }
+
+    /**
+     * Loads the newest messages between two people, in both directions.
+     * Takes one lookup plus the page, however long the history is.
+     * @param a One participant's cell number.
+     * @param b The other participant's cell number.
+     * @param limit The most messages to return.
+     * @return The messages, oldest first; empty if they have not exchanged any.
+     */
+    public List<MessageEntry> loadConversation(String a, String b, int limit) {
+        if (store != null) {
+            return store.loadConversation(a, b, limit); // A sharded store reads the two participants' shards
+        }
+        awaitHistory(); // The index is built from the complete history
+        List<MessageEntry> found = new ArrayList<>();
+        synchronized (messages) {
+            if (conversationsIndexed > messages.size()) { // The list was cleared since
+                conversations = new ConversationIndex();
+                conversationsIndexed = 0;
+            }
+            MessageView msg = new MessageView();
+            for (; conversationsIndexed < messages.size(); conversationsIndexed++) { // Messages stored since the last lookup
+                messages.view(conversationsIndexed, msg);
+                conversations.add(msg.getSender(), msg.getRecipient(), conversationsIndexed);
+            }
+            int before = Integer.MAX_VALUE;
+            while (found.size() < limit) {
+                int[] positions = conversations.latest(a, b, limit - found.size(), before);
+                for (int i = positions.length - 1; i >= 0; i--) {
+                    if (!messages.isDeleted(positions[i])) found.add(0, messages.get(positions[i]));
+                }
+                if (positions.length == 0) break;
+                before = positions[0]; // Pages further back past deleted messages
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Displays the newest messages between the logged-in user and someone else in a dialog box.
+     * @param me The logged-in user's cell number.
+     * @param other The other person's cell number.
+     */
+    public void printConversation(String me, String other) {
+        String page = conversationText(me, other, 0);
+        if (page.isEmpty()) { // Checks if they have exchanged any messages
+            JOptionPane.showMessageDialog(null, "No messages with " + other + " yet.");
+            return;
+        }
+        JOptionPane.showMessageDialog(null, page, "Conversation with " + other, JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Formats a page of the conversation between the logged-in user and someone else,
+     * as shown by {@link #printConversation}. Pages stay cached until a message between
+     * the two is stored, edited or deleted.
+     * @param me The logged-in user's cell number.
+     * @param other The other person's cell number.
+     * @param page 0 for the newest CONVERSATION_PAGE messages, 1 for the ones before, and so on.
+     * @return The formatted page; empty if there are no messages on it.
+     */
+    public String conversationText(String me, String other, int page) {
+        HistoryPageCache cache = store != null ? store.pageCache() : pageCache;
+        if (store == null) {
+            awaitHistory(); // Edits made in an earlier run are applied before anything is cached
+            synchronized (messages) {
+                pagesValidFor();
+            }
+        }
+        return cache.get(ConversationIndex.conversationKey(me, other), me, page, () -> {
+            List<MessageEntry> newest = loadConversation(me, other, (page + 1) * CONVERSATION_PAGE);
+            int end = Math.max(0, newest.size() - page * CONVERSATION_PAGE);
+            StringBuilder sb = new StringBuilder(); // Creates a StringBuilder
+            for (MessageEntry entry : newest.subList(Math.max(0, end - CONVERSATION_PAGE), end)) {
+                sb.append(me.equals(entry.Sender) ? "You" : other).append(": ").append(entry.Message).append("\n");
+            }
+            return sb.toString();
+        });
+    }
+
+    /**
+     * Returns the cache of formatted pages.
+     * @return The cache used for this history.
+     */
+    HistoryPageCache pageCache() {
+        return store != null ? store.pageCache() : pageCache;
+    }
+
+    /**
+     * Drops every cached page if the messages list shrank since the cache was last used,
+     * i.e. it was cleared and reloaded. Called holding the messages lock.
+     * @return The size of the messages list.
+     */
+    private int pagesValidFor() {
+        if (messages.size() < pagesCachedFor) {
+            pageCache.invalidateAll();
+        }
+        pagesCachedFor = messages.size();
+        return pagesCachedFor;
+    }
+
+    /**
+     * Drops the cached pages a change to a message of the messages list affects.
+     * @param index The message's row.
+     * @param sender The message's sender, or null.
+     * @param recipient The message's recipient.
+     * @param laterPagesToo True if the numbering of later pages shifts, as after a delete.
+     */
+    private void invalidatePages(int index, String sender, String recipient, boolean laterPagesToo) {
+        if (laterPagesToo) {
+            pageCache.invalidateFrom(HISTORY_SCOPE, index / LISTING_PAGE);
+        } else {
+            pageCache.invalidatePage(HISTORY_SCOPE, index / LISTING_PAGE);
+        }
+        if (sender != null && recipient != null) {
+            pageCache.invalidate(ConversationIndex.conversationKey(sender, recipient)); // Only this conversation
+        }
     }
 
     /**
@@ -132,6 +592,7 @@ public class Messages {
      * @return The total number of messages.
      */
     public int returnTotalMessages() {
+        awaitHistoryCount(); // Only needs the count, not the decoded history
         return totalMessages;
     }
 
@@ -143,45 +604,396 @@ public class Messages {
      * @param text The message text.
      */
     public void storeMessage(String id, String hash, String recipient, String text) {
-        MessageEntry message = new MessageEntry(id, hash, recipient, text); // Creates a new MessageEntry
-        messages.add(message); // Adds message to list
+        store(id, hash, recipient, text, null);
+    }
+
+    /**
+     * Stores a new message from a known sender, so it becomes part of their conversation
+     * with the recipient. The send counts towards the sender's quota, if one is set.
+     * @param id The message ID.
+     * @param hash The message hash.
+     * @param recipient The message recipient.
+     * @param text The message text.
+     * @param sender The sender's cell number.
+     * @return True if the message was stored; false if the sender has reached a quota limit.
+     */
+    public boolean storeMessage(String id, String hash, String recipient, String text, String sender) {
+        return store(id, hash, recipient, text, sender) >= 0;
+    }
+
+    /**
+     * Stores a new message and saves it.
+     * @param id The message ID.
+     * @param hash The message hash.
+     * @param recipient The message recipient.
+     * @param text The message text.
+     * @param sender The sender's cell number, or null.
+     * @return The message's index, or its reference in the message store; -1 if the sender is over quota.
+     */
+    private int store(String id, String hash, String recipient, String text, String sender) {
+        if (quota != null && sender != null && !quota.tryAcquire(sender)) { // Lock-free check and count
+            QUOTA_COUNTER.increment();
+            return -1;
+        }
+        long start = Metrics.start(); // Starts the latency measurement
+        MessageSendEvent event = new MessageSendEvent(); // Flight Recorder event for this send
+        event.begin();
+        awaitHistoryCount(); // New messages go after the history, so its size must be known
+        MessageEntry message = new MessageEntry(id, hash, recipient, text, sender, System.currentTimeMillis()); // Creates a new MessageEntry, stamped now
+        int position;
+        if (store != null) {
+            position = store.store(message); // A sharded store queues it on the recipient's shard, written by its own thread
+        } else {
+            synchronized (messages) { // The loader may be filling history rows at the same time
+                messages.add(message); // Adds message to list
+                position = messages.size() - 1;
+            }
+            invalidatePages(position, sender, recipient, false); // After the message is visible to readers
+        }
         totalMessages++;       // Increments total messages
-        writeMessagesToJson(); // Writes messages to JSON file
+        if (store == null && (loader == null || !loader.deferWrite())) { // While loading, the loader saves once it is done
+            writeMessagesToJson(); // Writes messages to JSON file
+        }
+        STORED_COUNTER.increment();
+        STORE_TIMER.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) { // Only fills in the event when it is being recorded
+            event.messageId = id;
+            event.messageLength = text.length();
+            event.historySize = totalMessages;
+            event.commit();
+        }
+        return position;
+    }
+
+    /**
+     * Stores a message unless the same send was already stored recently, so a client that
+     * retries a send after a timeout does not create a second message, even if the retry
+     * arrives while the first send is still being stored.
+     * The send is identified by the client's idempotency key, or by the message hash if the
+     * client has none. Keys are remembered for a day by default (quickchat.dedupe.window, in minutes).
+     * @param idempotencyKey The client's key for this send, or null to use the hash.
+     * @param id The message ID.
+     * @param hash The message hash.
+     * @param recipient The message recipient.
+     * @param text The message text.
+     * @return The ID of the stored message: {@code id}, or the original message's ID for a retry.
+     */
+    public String storeMessageOnce(String idempotencyKey, String id, String hash, String recipient, String text) {
+        return storeMessageOnce(idempotencyKey, id, hash, recipient, text, null);
+    }
+
+    /**
+     * Stores a message from a known sender unless the same send was already stored recently.
+     * @param idempotencyKey The client's key for this send, or null to use the hash.
+     * @param id The message ID.
+     * @param hash The message hash.
+     * @param recipient The message recipient.
+     * @param text The message text.
+     * @param sender The sender's cell number, or null.
+     * @return The ID of the stored message: {@code id}, or the original message's ID for a retry;
+     *         null if the sender has reached a quota limit. Retries do not count towards the quota.
+     */
+    public String storeMessageOnce(String idempotencyKey, String id, String hash, String recipient, String text,
+                                   String sender) {
+        String key = idempotencyKey != null ? idempotencyKey : hash;
+        // A concurrent send with the same key waits here until this one is recorded
+        synchronized (sendLocks[(key.hashCode() & 0x7fffffff) % SEND_STRIPES]) {
+            int previous = sentKeys.find(key); // Constant time; usually answered by the Bloom filter alone
+            if (previous >= 0) {
+                MessageView original = viewAt(previous);
+                // A hash key is confirmed against the stored message itself
+                if (idempotencyKey != null || hash.equals(original.getMessageHash())) {
+                    DUPLICATE_COUNTER.increment();
+                    return original.getMessageID();
+                }
+            }
+            int position = store(id, hash, recipient, text, sender); // Stores the new message
+            if (position < 0) {
+                return null; // Over quota; nothing was stored
+            }
+            sentKeys.record(key, position);
+            return id;
+        }
     }
 
     /**
-     * Writes the current list of messages to "messages.json" in a pretty format.
+     * Creates the lock objects for the send stripes.
+     * @param count The number of stripes.
+     * @return The locks.
+     */
+    private static Object[] newLocks(int count) {
+        Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    /**
+     * Reads the stored message at a position, as findMessageByID does.
+     * @param position The message's position in the history.
+     * @return A view of the message.
+     */
+    private MessageView viewAt(int position) {
+        if (store != null) {
+            return store.view(position, new MessageView());
+        }
+        awaitHistory(); // Positions count from the start of the loaded history
+        synchronized (messages) {
+            return messages.view(position, new MessageView());
+        }
+    }
+
+    /**
+     * Saves the current list of messages to "messages.json" in a pretty format.
+     * The list is captured here and written on a background thread as a crash-safe snapshot,
+     * so the caller neither waits for the disk nor shares the live list with the writer.
+     * If some of messages.json could not be loaded, saves go to "messages.recovered.json"
+     * instead, so the messages that could not be read are not saved over; the next start
+     * loads that file.
+     * If the last save failed, an error dialog says so; this save is still queued.
      */
     public void writeMessagesToJson() {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create(); // Creates Gson with pretty printing
-        try (FileWriter writer = new FileWriter("messages.json")) { // Opens FileWriter
-            gson.toJson(messages, writer); // Writes messages to JSON
+        if (store != null) {
+            return; // The message store saves its own messages
+        }
+        SnapshotWriter writer = historyWriter();
+        if (writer == null) {
+            return; // Saving would lose the records that could not be read
+        }
+        MessageList.Snapshot snapshot;
+        synchronized (messages) { // May run on the loader thread
+            snapshot = messages.snapshot(); // Constant-time view the writer thread can read safely
+        }
+        try {
+            writer.submit(snapshot.size(), () -> {
+                MessageDictionary.trainIfMissing(snapshot); // First large enough save with compression on
+                return JsonSupport.toJson(snapshot);
+            });
         } catch (IOException e) {
             JOptionPane.showMessageDialog(null, "Error writing to JSON file: " + e.getMessage()); // Shows error
         }
     }
 
     /**
-     * Loads messages from "messages.json" into the messages list.
-     * Handles file not found or reading errors.
+     * Blocks until every message stored so far has been written to "messages.json".
+     * Shows an error dialog if the newest save failed.
      */
-    public void loadMessagesFromJson() {
-        Gson gson = new Gson(); // Creates a Gson object
-        try (Scanner scanner = new Scanner(new File("messages.json"))) { // Opens Scanner to read file
-            StringBuilder json = new StringBuilder(); // Creates StringBuilder for JSON string
-            while (scanner.hasNextLine()) {         // Reads each line
-                json.append(scanner.nextLine());    // Appends line to StringBuilder
-            }
+    public void flush() {
+        if (store != null) {
+            store.flush(); // Waits for the store's writes, e.g. every shard's writer thread
+            return;
+        }
+        awaitHistory(); // A save put off while loading is submitted before loading ends
+        SnapshotWriter writer = historyWriter();
+        if (writer == null) {
+            return; // Nothing is saved
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Error writing to JSON file: " + e.getMessage()); // Shows error
+        }
+    }
+
+    /**
+     * Blocks until the saved history has been loaded completely, with the edits made
+     * since the last compaction applied.
+     */
+    public void awaitHistory() {
+        if (loader != null) {
+            loader.awaitAll();
+        }
+        if (editLogFile != null && !editsReplayed) {
+            replayEdits();
+        }
+    }
 
-            // Deserializes JSON into an array of MessageEntry
-            MessageEntry[] loadedMessages = gson.fromJson(json.toString(), MessageEntry[].class);
-            if (loadedMessages != null) { // If messages were loaded
-                messages.addAll(Arrays.asList(loadedMessages)); // Adds loaded messages to list
-                totalMessages = messages.size(); // Updates total messages count
+    /**
+     * Finds the first live message with an ID through the ID index. Called holding the messages lock.
+     * @param messageID The message ID.
+     * @return The message's index, or -1 if there is none.
+     */
+    private int indexOf(String messageID) {
+        MessageList.Snapshot rows = messages.snapshot();
+        ids.catchUp(rows); // Messages stored since the last lookup
+        return ids.find(messageID, rows);
+    }
+
+    /**
+     * Computes the hash of a message's new text, keeping the number from its old hash.
+     * @param old The message before the edit.
+     * @param newText The new text.
+     * @return The new hash.
+     */
+    private String rehash(MessageEntry old, String newText) {
+        int number = 0;
+        String[] parts = old.MessageHash == null ? new String[0] : old.MessageHash.split(":");
+        if (parts.length > 1 && parts[1].matches("\\d+")) {
+            number = Integer.parseInt(parts[1]);
+        }
+        return createMessageHash(old.MessageID, number, newText);
+    }
+
+    /**
+     * Appends an edit or delete to the edits log and makes it durable. Called holding the messages lock.
+     * @param type {@link MessageLog#UPDATE} or {@link MessageLog#DELETE}.
+     * @param change The message ID and recipient, the new hash and text for an edit, and the time of the change.
+     * @throws IOException If the log cannot be written.
+     */
+    private void recordEdit(byte type, MessageEntry change) throws IOException {
+        if (editLogFile == null) {
+            return; // Not kept on disk
+        }
+        if (editLog == null) {
+            editLog = new MessageLog(editLogFile, (t, sequence, payload) -> { }); // Created by the first edit
+        }
+        editLog.append(MessageLog.encode(ByteBuffer.allocate(256), type, editRecords++, change).flip());
+        if (MessageShard.FSYNC) {
+            editLog.force();
+        }
+    }
+
+    /**
+     * Applies the edits and deletes left in the edits log to the loaded history, then
+     * saves the history with them and removes the log: this is where deleted messages
+     * leave messages.json for good and edit records are folded in. The log is only removed
+     * once that save is known to be on disk.
+     */
+    private synchronized void replayEdits() {
+        if (editsReplayed) {
+            return;
+        }
+        if (!Files.exists(editLogFile)) {
+            editsReplayed = true;
+            return; // No edits since the last compaction
+        }
+        awaitHistoryCount();
+        try {
+            synchronized (messages) {
+                editLog = new MessageLog(editLogFile, (type, sequence, payload) -> {
+                    MessageEntry change = MessageLog.decode(payload);
+                    int index = indexOf(change.MessageID);
+                    editRecords++;
+                    if (index < 0) {
+                        return; // Already left out of messages.json
+                    }
+                    if (type == MessageLog.DELETE) {
+                        messages.delete(index);
+                        totalMessages--;
+                    } else if (type == MessageLog.UPDATE) {
+                        messages.revise(index, change.MessageHash, change.Message);
+                    }
+                });
+            }
+            pageCache.invalidateAll(); // Pages formatted before the replay are out of date
+            if (loader != null && loader.isDamaged()) {
+                return; // Kept, with the log open for new edits, until messages.json can be compacted
+            }
+            writeMessagesToJson();
+            try {
+                historyWriter().flush(); // Saved before the records are dropped
+            } catch (IOException e) {
+                System.out.println("Error writing to JSON file: " + e.getMessage() + "; keeping "
+                        + editLogFile); // Prints message
+                return; // Kept, with the log open for new edits, until messages.json can be compacted
             }
+            editLog.close();
+            editLog = null;
+            editRecords = 0;
+            Files.delete(editLogFile);
+        } catch (IOException e) {
+            System.out.println("Error reading " + editLogFile + ": " + e.getMessage()); // Prints message
+            editLogFile = null; // Edits stay in memory only
+        } finally {
+            editsReplayed = true;
+        }
+    }
+
+    /**
+     * Blocks until the number of saved messages is known, and adds it to the total once.
+     */
+    private void awaitHistoryCount() {
+        if (loader != null && !historyCounted) {
+            totalMessages += loader.awaitRecords();
+            historyCounted = true;
+        }
+    }
 
+    /**
+     * Returns when a file was last written, or the current time if that cannot be read.
+     * @param file The file.
+     * @return The time in epoch milliseconds.
+     */
+    private static long lastSaved(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
         } catch (IOException e) {
-            System.out.println("No previous messages found or error reading file."); // Prints message
+            return System.currentTimeMillis(); // Only an older generation survived
+        }
+    }
+
+    /**
+     * Returns the background writer for this history's saves: the file it was loaded from,
+     * or "messages.recovered.json" if messages.json held records that could not be loaded.
+     * The recovered file is loaded in place of messages.json from then on, so nothing saved
+     * to it is lost. The first time saves are redirected or refused, a dialog says so.
+     * @return The snapshot writer, or null if messages.recovered.json itself could not be
+     *         read completely or loading stopped for a missing dictionary, in which case
+     *         nothing is saved.
+     */
+    private SnapshotWriter historyWriter() {
+        if (loader != null && loader.failure() != null) {
+            return null; // Loading stopped; a save would drop every record not yet in place
+        }
+        if (loader == null || !loader.isDamaged()) {
+            return SnapshotWriter.forFile(historyFile, WRITE_TIMER);
+        }
+        boolean refused = historyFile.equals(RECOVERED_FILE); // The last copy that could be saved
+        if (!damageReported) {
+            damageReported = true;
+            JOptionPane.showMessageDialog(null, refused
+                    ? RECOVERED_FILE + " could not be read completely and is left as it is."
+                            + " New messages will not be saved until it is repaired."
+                    : HISTORY_FILE + " could not be read completely and is left as it is."
+                            + " Messages are saved to " + RECOVERED_FILE + ", which is loaded in its place from now on."); // Shows error
+        }
+        return refused ? null : SnapshotWriter.forFile(RECOVERED_FILE, WRITE_TIMER);
+    }
+
+    /**
+     * Loads messages from "messages.json" into the messages list, or from
+     * "messages.recovered.json" if an earlier run could not read messages.json completely.
+     * Loading runs in the background, newest messages first; methods that read the
+     * history wait for the part they need. Handles file not found or reading errors.
+     * With -Dquickchat.store=sharded or memory, opens that {@link MessageStore} instead.
+     */
+    public void loadMessagesFromJson() {
+        if (!"json".equals(MessageStore.BACKEND)) {
+            try {
+                store = MessageStore.open(MessageStore.BACKEND, Paths.get("")); // Shard logs are replayed while opening
+                totalMessages += store.size();
+                return;
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Error opening " + MessageStore.BACKEND + " messages: " + e.getMessage() + "; using messages.json");
+            }
+        }
+        try {
+            MessageDictionary.checkFiles(Paths.get(".")); // Records compressed with a lost dictionary cannot be read
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Cannot load messages: " + e.getMessage()); // Shows error
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        if (Files.exists(RECOVERED_FILE)) {
+            historyFile = RECOVERED_FILE; // Everything readable from messages.json, and what was saved since
+            System.out.println("Loading " + RECOVERED_FILE + " in place of " + HISTORY_FILE); // Prints message
         }
+        SnapshotWriter source = SnapshotWriter.forFile(historyFile, WRITE_TIMER);
+        Path saved = historyFile;
+        loader = new HistoryLoader(messages, source::read, this::writeMessagesToJson,
+                () -> lastSaved(saved)); // Older messages get the time of the last save
+        editLogFile = Paths.get("messages.edits.log"); // Replayed once the history has loaded
+        loader.start(); // Returns immediately
     }
-}
\ No newline at end of file
+}
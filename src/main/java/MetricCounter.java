@@ -0,0 +1,54 @@
+//Libraries
+import java.util.concurrent.atomic.LongAdder; // Imports LongAdder for low-contention counting
+
+/**
+ * A monotonically increasing counter, safe to update from any thread.
+ */
+public class MetricCounter {
+
+    // Name of the metric, e.g. "messages_stored"
+    private final String name;
+    // Current value, striped to avoid contention
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * Creates a counter starting at zero.
+     * @param name The metric name.
+     */
+    public MetricCounter(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the metric name.
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds one to the counter. Does nothing when metrics are disabled.
+     */
+    public void increment() {
+        if (!Metrics.ENABLED) return; // Folded away by the JIT when metrics are off
+        value.increment();
+    }
+
+    /**
+     * Adds an amount to the counter. Does nothing when metrics are disabled.
+     * @param amount The amount to add.
+     */
+    public void add(long amount) {
+        if (!Metrics.ENABLED) return;
+        value.add(amount);
+    }
+
+    /**
+     * Returns the current value.
+     * @return The count.
+     */
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,111 @@
+//Libraries
+import java.io.IOException;                    // Imports IOException for exporter start-up errors
+import java.util.ArrayList;                    // Imports ArrayList for the started exporters
+import java.util.Collection;                   // Imports Collection for registry views
+import java.util.List;                         // Imports List interface
+import java.util.Map;                          // Imports Map interface
+import java.util.concurrent.ConcurrentHashMap; // Imports ConcurrentHashMap for the registry
+
+/**
+ * Registry of counters and latency histograms for the hot paths.
+ *
+ * Metrics are off unless the JVM is started with -Dquickchat.metrics=true. The flag is a
+ * static final constant, so when it is off every recording call folds down to nothing.
+ * Exporters are chosen with -Dquickchat.metrics.port=PORT (Prometheus text on localhost)
+ * and -Dquickchat.metrics.log=SECONDS (periodic dumps to the console).
+ */
+public final class Metrics {
+
+    // Whether metrics are collected at all
+    public static final boolean ENABLED = Boolean.getBoolean("quickchat.metrics");
+
+    // All registered metrics, by name
+    private static final Map<String, MetricCounter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    // Exporters started by startExporters
+    private static final List<MetricsExporter> exporters = new ArrayList<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns a start time for a later {@link LatencyHistogram#recordSince(long)}.
+     * @return System.nanoTime(), or 0 when metrics are disabled.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Returns the counter with the given name, creating it on first use.
+     * @param name The metric name.
+     * @return The counter.
+     */
+    public static MetricCounter counter(String name) {
+        return counters.computeIfAbsent(name, MetricCounter::new);
+    }
+
+    /**
+     * Returns the latency histogram with the given name, creating it on first use.
+     * @param name The metric name.
+     * @return The histogram.
+     */
+    public static LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    /**
+     * Returns all registered counters.
+     * @return A live view of the counters.
+     */
+    public static Collection<MetricCounter> counters() {
+        return counters.values();
+    }
+
+    /**
+     * Returns all registered latency histograms.
+     * @return A live view of the histograms.
+     */
+    public static Collection<LatencyHistogram> timers() {
+        return timers.values();
+    }
+
+    /**
+     * Starts the exporters selected by system properties. Does nothing when metrics are disabled.
+     */
+    public static synchronized void startExporters() {
+        if (!ENABLED || !exporters.isEmpty()) return;
+
+        Integer port = Integer.getInteger("quickchat.metrics.port");
+        if (port != null) {
+            addExporter(new PrometheusExporter(port));
+        }
+        Integer logSeconds = Integer.getInteger("quickchat.metrics.log");
+        if (logSeconds != null) {
+            addExporter(new LogMetricsExporter(logSeconds));
+        }
+    }
+
+    /**
+     * Starts an exporter and keeps it until {@link #stopExporters()}.
+     * @param exporter The exporter to start.
+     */
+    public static synchronized void addExporter(MetricsExporter exporter) {
+        try {
+            exporter.start();
+            exporters.add(exporter);
+        } catch (IOException e) {
+            System.out.println("Could not start metrics exporter: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops all started exporters.
+     */
+    public static synchronized void stopExporters() {
+        for (MetricsExporter exporter : exporters) {
+            exporter.stop();
+        }
+        exporters.clear();
+    }
+}
@@ -0,0 +1,19 @@
+//Libraries
+import java.io.IOException; // Imports IOException for start-up errors
+
+/**
+ * Publishes the metrics held in {@link Metrics} somewhere outside the process.
+ */
+public interface MetricsExporter {
+
+    /**
+     * Starts publishing.
+     * @throws IOException If the exporter cannot open its output.
+     */
+    void start() throws IOException;
+
+    /**
+     * Stops publishing and releases any resources.
+     */
+    void stop();
+}
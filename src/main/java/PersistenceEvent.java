@@ -0,0 +1,45 @@
+//Libraries
+import jdk.jfr.Category;   // Imports JFR annotations for describing the event
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;      // Imports the JFR base event class
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event for one load or save of messages.json or users.json.
+ * The event duration covers the whole operation; encodeTime and ioTime split it into
+ * Gson work and file I/O, so a stall can be pinned on one or the other (GC pauses
+ * show up as the JDK's own events in the same recording).
+ */
+@Name("quickchat.Persistence")
+@Label("Persistence Operation")
+@Category({"QuickChat", "Persistence"})
+@Description("Load or save of a QuickChat data file")
+public class PersistenceEvent extends Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Operation")
+    @Description("load or save")
+    String operation;
+
+    @Label("Records")
+    int records;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Encode/Decode Time")
+    @Description("Time spent in Gson")
+    @Timespan(Timespan.NANOSECONDS)
+    long encodeTime;
+
+    @Label("I/O Time")
+    @Description("Time spent reading or writing the file")
+    @Timespan(Timespan.NANOSECONDS)
+    long ioTime;
+}
@@ -0,0 +1,93 @@
+//Libraries
+import com.sun.net.httpserver.HttpExchange;  // Imports HttpExchange for handling scrape requests
+import com.sun.net.httpserver.HttpServer;    // Imports the JDK's built-in HTTP server
+import java.io.IOException;                  // Imports IOException for I/O errors
+import java.io.OutputStream;                 // Imports OutputStream for writing responses
+import java.net.InetAddress;                 // Imports InetAddress for binding to localhost
+import java.net.InetSocketAddress;           // Imports InetSocketAddress for the listen address
+import java.nio.charset.StandardCharsets;    // Imports UTF-8 for the response body
+import java.util.Locale;                     // Imports Locale for stable number formatting
+
+/**
+ * Serves all metrics in the Prometheus text format at http://localhost:PORT/metrics.
+ */
+public class PrometheusExporter implements MetricsExporter {
+
+    // Percentiles published for every latency histogram
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // Port to listen on
+    private final int port;
+    // Running server, or null when stopped
+    private HttpServer server;
+
+    /**
+     * Creates an exporter for the given port.
+     * @param port The local port to serve metrics on.
+     */
+    public PrometheusExporter(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle); // Only the scrape endpoint is served
+        server.start();
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * Answers one scrape request.
+     * @param exchange The HTTP exchange.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Renders every registered metric in the Prometheus text format.
+     * Counters become quickchat_NAME_total; histograms become summaries in seconds.
+     * @return The exposition text.
+     */
+    static String render() {
+        StringBuilder sb = new StringBuilder();
+        for (MetricCounter counter : Metrics.counters()) {
+            String name = "quickchat_" + counter.getName() + "_total";
+            sb.append("# TYPE ").append(name).append(" counter\n")
+                    .append(name).append(' ').append(counter.get()).append('\n');
+        }
+        for (LatencyHistogram timer : Metrics.timers()) {
+            String name = "quickchat_" + timer.getName() + "_seconds";
+            sb.append("# TYPE ").append(name).append(" summary\n");
+            for (double q : QUANTILES) {
+                sb.append(name).append("{quantile=\"").append(q).append("\"} ")
+                        .append(seconds(timer.getValueAtPercentile(q * 100))).append('\n');
+            }
+            sb.append(name).append("_sum ").append(seconds(timer.getSumNanos())).append('\n')
+                    .append(name).append("_count ").append(timer.getCount()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formats nanoseconds as seconds.
+     * @param nanos The value in nanoseconds.
+     * @return The value in seconds.
+     */
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,315 @@
+//Libraries
+import com.sun.net.httpserver.HttpExchange;  // Imports HttpExchange for handling queries
+import com.sun.net.httpserver.HttpServer;    // Imports the JDK's built-in HTTP server
+import java.io.BufferedInputStream;          // Imports BufferedInputStream for reading frames
+import java.io.BufferedOutputStream;         // Imports BufferedOutputStream for acknowledgements
+import java.io.DataInputStream;              // Imports DataInputStream for the wire format
+import java.io.DataOutputStream;             // Imports DataOutputStream for the wire format
+import java.io.IOException;                  // Imports IOException for I/O errors
+import java.io.OutputStream;                 // Imports OutputStream for writing responses
+import java.net.InetAddress;                 // Imports InetAddress for binding to localhost
+import java.net.InetSocketAddress;           // Imports InetSocketAddress for addresses
+import java.net.Socket;                      // Imports Socket for the leader connection
+import java.net.URLDecoder;                  // Imports URLDecoder for query parameters
+import java.nio.ByteBuffer;                  // Imports ByteBuffer for buffering shipped records
+import java.nio.charset.StandardCharsets;    // Imports UTF-8 for responses
+import java.nio.file.DirectoryStream;        // Imports DirectoryStream for finding shard logs
+import java.nio.file.Files;                  // Imports Files for dropping a stale copy
+import java.nio.file.Path;                   // Imports Path for the data directory
+import java.nio.file.Paths;                  // Imports Paths for the default directory
+import java.util.ArrayList;                  // Imports ArrayList for full listings
+import java.util.Collections;                // Imports Collections for empty results
+import java.util.List;                       // Imports List interface
+
+/**
+ * Follower side of log-shipping replication: keeps a read-only copy of a leader's
+ * {@link ShardedMessageStore} and answers history queries from it.
+ *
+ * The follower connects to the leader, opens its own copy of the shard logs with the
+ * leader's shard count, and reports how much of each log it already has. Shipped bytes are
+ * checked record by record, appended unchanged, forced to disk and acknowledged. If the
+ * connection drops, the follower reconnects and resumes from its own log lengths. If the
+ * leader's logs have been rewritten since (a new generation, e.g. after compaction), the
+ * follower drops its copy and replicates them again from the start.
+ *
+ * Queries are served over HTTP on localhost:
+ *   /count                       number of replicated messages
+ *   /messages                    every message, in store order
+ *   /messages?recipient=CELL     messages to one recipient
+ *   /messages?id=ID              the message with that ID
+ *
+ * Usage: java -cp ... ReplicationFollower LEADER_HOST LEADER_PORT [HTTP_PORT] [DIRECTORY]
+ */
+public class ReplicationFollower implements AutoCloseable {
+
+    // Longest wait between reconnection attempts, in milliseconds
+    private static final long MAX_RETRY_MILLIS = 30_000;
+
+    // Directory for the replicated shard logs
+    private final Path dir;
+    // Leader address
+    private final String host;
+    private final int port;
+    // Local copy, opened once the leader's shard count is known
+    private volatile ShardedMessageStore store;
+    // Current leader connection, or null
+    private volatile Socket socket;
+    // True once close() has been called
+    private volatile boolean closed;
+    // Query server, or null
+    private HttpServer http;
+
+    /**
+     * Creates a follower. Call {@link #start()} to connect.
+     * @param dir The directory for the replicated shard logs.
+     * @param host The leader's host.
+     * @param port The leader's replication port.
+     */
+    public ReplicationFollower(Path dir, String host, int port) {
+        this.dir = dir;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Starts following the leader on a background thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts answering queries over HTTP on localhost.
+     * @param httpPort The port; 0 picks a free port.
+     * @return The bound port.
+     * @throws IOException If the port cannot be opened.
+     */
+    public int serve(int httpPort) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+        http.createContext("/count", exchange -> respond(exchange, String.valueOf(store == null ? 0 : store.size())));
+        http.createContext("/messages", this::handleMessages);
+        http.start();
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * Returns the local copy of the store.
+     * @return The store, or null before the first connection.
+     */
+    public ShardedMessageStore store() {
+        return store;
+    }
+
+    /**
+     * Disconnects from the leader and stops answering queries.
+     * @throws IOException If the logs cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (http != null) {
+            http.stop(0);
+        }
+        Socket s = socket;
+        if (s != null) {
+            s.close();
+        }
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * Follower thread: follows the leader, reconnecting with growing pauses after failures.
+     */
+    private void run() {
+        long retry = 500;
+        while (!closed) {
+            try {
+                follow();
+                retry = 500;
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                System.out.println("Replication from " + host + ":" + port + " interrupted: " + e.getMessage()
+                        + "; retrying"); // Prints message
+            }
+            try {
+                Thread.sleep(retry);
+            } catch (InterruptedException e) {
+                return;
+            }
+            retry = Math.min(retry * 2, MAX_RETRY_MILLIS);
+        }
+    }
+
+    /**
+     * Connects once and applies shipped records until the connection ends.
+     */
+    private void follow() throws IOException {
+        try (Socket s = new Socket(host, port)) {
+            socket = s;
+            s.setTcpNoDelay(true); // Acknowledgements are small and latency-sensitive
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            out.writeInt(ReplicationServer.MAGIC);
+            out.flush();
+            if (in.readInt() != ReplicationServer.MAGIC) {
+                throw new IOException("not a QuickChat leader");
+            }
+            int shards = in.readInt();
+            long generation = in.readLong();
+            if (ShardedMessageStore.generation(dir) != generation) {
+                startOver(generation); // Offsets into the old logs would land anywhere in the new ones
+            }
+            if (store == null) {
+                ShardedMessageStore opened = new ShardedMessageStore(dir, shards); // Fails if the directory has another count
+                opened.setReadOnly();
+                store = opened;
+            } else if (store.shardCount() != shards) {
+                throw new IOException("leader now has " + shards + " shards, this copy has " + store.shardCount());
+            }
+            for (int i = 0; i < shards; i++) {
+                out.writeLong(store.shard(i).durableLength()); // Resumes where this copy ends
+            }
+            out.flush();
+            if (in.readInt() != 0) {
+                throw new IOException(in.readUTF());
+            }
+
+            ByteBuffer[] pending = new ByteBuffer[shards]; // Bytes of a record still arriving, per shard
+            while (!closed) {
+                int shard = in.readInt();
+                int length = in.readInt();
+                if (shard < 0) {
+                    continue; // Heartbeat
+                }
+                ByteBuffer data = append(pending[shard], length);
+                in.readFully(data.array(), data.position(), length);
+                data.position(data.position() + length).flip();
+                store.shard(shard).applyReplicated(data); // Leaves a partial record in the buffer
+                pending[shard] = data.hasRemaining() ? data.compact() : null;
+                out.writeInt(shard);
+                out.writeLong(store.shard(shard).durableLength());
+                out.flush();
+            }
+        } finally {
+            socket = null;
+        }
+    }
+
+    /**
+     * Drops this copy of the logs, which are not a copy of the leader's current ones, so
+     * replication starts again from the beginning. Queries see an empty copy until then.
+     * @param generation The generation of the leader's logs.
+     */
+    private void startOver(long generation) throws IOException {
+        ShardedMessageStore old = store;
+        store = null;
+        if (old != null) {
+            old.close();
+        }
+        Files.createDirectories(dir);
+        boolean dropped = false;
+        try (DirectoryStream<Path> logs = Files.newDirectoryStream(dir, "shard-*.log")) {
+            for (Path log : logs) {
+                Files.delete(log);
+                dropped = true;
+            }
+        }
+        Files.deleteIfExists(dir.resolve(ShardedMessageStore.SHARD_COUNT_FILE)); // Taken from the leader again
+        ShardedMessageStore.setGeneration(dir, generation);
+        if (dropped) {
+            System.out.println("The leader's logs were rewritten; replicating them again from the start"); // Prints message
+        }
+    }
+
+    /**
+     * Returns a buffer in write mode holding any leftover bytes, with room for {@code length} more.
+     */
+    private static ByteBuffer append(ByteBuffer leftover, int length) {
+        if (leftover == null) {
+            return ByteBuffer.allocate(length);
+        }
+        if (leftover.remaining() >= length) {
+            return leftover;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(leftover.position() + length);
+        leftover.flip();
+        return bigger.put(leftover);
+    }
+
+    /**
+     * Answers a /messages query as a JSON array.
+     */
+    private void handleMessages(HttpExchange exchange) throws IOException {
+        ShardedMessageStore s = store;
+        String query = exchange.getRequestURI().getRawQuery();
+        String recipient = parameter(query, "recipient");
+        String id = parameter(query, "id");
+        List<MessageEntry> found;
+        if (s == null) {
+            found = Collections.emptyList();
+        } else if (recipient != null) {
+            found = s.findMessagesToRecipient(recipient);
+        } else if (id != null) {
+            MessageEntry entry = s.findMessageByID(id);
+            found = entry == null ? Collections.emptyList() : List.of(entry);
+        } else {
+            found = new ArrayList<>();
+            s.forEach(view -> found.add(view.toEntry()));
+        }
+        respond(exchange, JsonSupport.COMPACT.toJson(found));
+    }
+
+    /**
+     * Returns a decoded query parameter, or null if it is missing.
+     */
+    private static String parameter(String query, String name) {
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            if (pair.startsWith(name + "=")) {
+                return URLDecoder.decode(pair.substring(name.length() + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends a 200 response.
+     */
+    private static void respond(HttpExchange exchange, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Runs a follower until the process is stopped.
+     * @param args Leader host, leader port, optional HTTP port (default 9470), optional directory.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: ReplicationFollower LEADER_HOST LEADER_PORT [HTTP_PORT] [DIRECTORY]");
+            return;
+        }
+        Path dir = Paths.get(args.length > 3 ? args[3] : "messages-shards");
+        ReplicationFollower follower = new ReplicationFollower(dir, args[0], Integer.parseInt(args[1]));
+        int httpPort = follower.serve(args.length > 2 ? Integer.parseInt(args[2]) : 9470);
+        follower.start();
+        System.out.println("Following " + args[0] + ":" + args[1] + "; queries on http://localhost:" + httpPort);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                follower.close();
+            } catch (IOException e) {
+                System.out.println("Error closing follower: " + e.getMessage()); // Prints message
+            }
+        }));
+    }
+}
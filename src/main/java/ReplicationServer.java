@@ -0,0 +1,311 @@
+//Libraries
+import java.io.BufferedInputStream;             // Imports BufferedInputStream for reading acknowledgements
+import java.io.BufferedOutputStream;            // Imports BufferedOutputStream for batching frames
+import java.io.DataInputStream;                 // Imports DataInputStream for the wire format
+import java.io.DataOutputStream;                // Imports DataOutputStream for the wire format
+import java.io.IOException;                     // Imports IOException for I/O errors
+import java.net.InetAddress;                    // Imports InetAddress for the loopback default
+import java.net.InetSocketAddress;              // Imports InetSocketAddress for the listen address
+import java.net.ServerSocket;                   // Imports ServerSocket for accepting followers
+import java.net.Socket;                         // Imports Socket for follower connections
+import java.nio.ByteBuffer;                     // Imports ByteBuffer for reading the logs
+import java.util.List;                          // Imports List interface
+import java.util.concurrent.CopyOnWriteArrayList; // Imports CopyOnWriteArrayList for the connected followers
+import java.util.concurrent.atomic.AtomicLongArray; // Imports AtomicLongArray for acknowledged offsets
+
+/**
+ * Leader side of log-shipping replication for a {@link ShardedMessageStore}.
+ *
+ * A follower connects, learns the shard count and the generation of the logs, and says how
+ * much of each shard log it already has. A follower whose copy is of another generation,
+ * e.g. from before the leader compacted its logs, drops it and starts from nothing. From then on the leader streams every durable byte of each log after that
+ * offset, in order, as it is written. The follower appends the bytes unchanged and
+ * acknowledges each shard's new length once it is on its own disk.
+ *
+ * With asynchronous acknowledgement (the default) the leader never waits for followers.
+ * With synchronous acknowledgement (-Dquickchat.replication.ack=sync) a batch only counts
+ * as written once every connected follower has acknowledged it, or the timeout passes;
+ * with no follower connected, writes go ahead alone.
+ *
+ * Followers are not authenticated, so the server only listens on loopback unless
+ * -Dquickchat.replication.host names another address to listen on.
+ *
+ * Wire format, all big-endian:
+ *   follower -> leader  MAGIC, then one long offset per shard
+ *   leader -> follower  MAGIC, shard count, long generation; then status (0 = ok, 1 = UTF reason follows)
+ *   leader -> follower  frames of [int shard][int length][log bytes]; shard -1 is a heartbeat
+ *   follower -> leader  acknowledgements of [int shard][long log length]
+ */
+public class ReplicationServer implements MessageShard.BatchListener, AutoCloseable {
+
+    // Port for followers; replication is off unless set
+    static final Integer PORT = Integer.getInteger("quickchat.replication.port");
+    // Address to listen on, or null for loopback only
+    static final String HOST = System.getProperty("quickchat.replication.host");
+    // True to wait for followers before a write counts as done
+    static final boolean SYNC = "sync".equals(System.getProperty("quickchat.replication.ack", "async"));
+    // Longest wait for synchronous acknowledgements, in milliseconds
+    static final long SYNC_TIMEOUT_MILLIS = Long.getLong("quickchat.replication.timeout", 5000);
+
+    // First int of each handshake ("QCR2"; version 1 had no generation)
+    static final int MAGIC = 0x51435232;
+    // Idle time after which a heartbeat is sent, in milliseconds
+    static final long HEARTBEAT_MILLIS = 1000;
+    // Most log bytes read for one frame
+    private static final int FRAME_BYTES = 256 * 1024;
+
+    // Store whose logs are shipped
+    private final ShardedMessageStore store;
+    // Port to listen on; 0 picks a free port
+    private final int port;
+    // True to wait for acknowledgements
+    private final boolean sync;
+    // Connected followers
+    private final List<Follower> followers = new CopyOnWriteArrayList<>();
+    // Bumped on every durable batch and acknowledgement; guarded by this
+    private long version;
+    // Listening socket, or null when stopped
+    private ServerSocket server;
+
+    /**
+     * Creates a server. Call {@link #start()} to accept followers.
+     * @param store The store to replicate.
+     * @param port The port to listen on; 0 picks a free port.
+     * @param sync True to wait for followers before a write counts as done.
+     */
+    public ReplicationServer(ShardedMessageStore store, int port, boolean sync) {
+        this.store = store;
+        this.port = port;
+        this.sync = sync;
+    }
+
+    /**
+     * Starts listening, on loopback unless quickchat.replication.host is set, and hooks into
+     * every shard's writer.
+     * @throws IOException If the port cannot be opened or the host is unknown.
+     */
+    public void start() throws IOException {
+        InetAddress address = HOST == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(HOST);
+        server = new ServerSocket();
+        server.bind(new InetSocketAddress(address, port));
+        for (int i = 0; i < store.shardCount(); i++) {
+            store.shard(i).setListener(this);
+        }
+        Thread thread = new Thread(this::accept, "replication-accept");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the port followers connect to.
+     * @return The bound port.
+     */
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Returns the number of connected followers.
+     * @return The follower count.
+     */
+    public int followerCount() {
+        return followers.size();
+    }
+
+    /**
+     * Wakes the senders for a new durable batch and, with synchronous acknowledgement,
+     * waits until every connected follower has it.
+     * @param shard The shard number.
+     * @param logLength The durable length of the shard's log.
+     */
+    @Override
+    public synchronized void written(int shard, long logLength) {
+        version++;
+        notifyAll(); // Wakes the senders
+        if (!sync) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + SYNC_TIMEOUT_MILLIS;
+        for (Follower follower : followers) {
+            while (follower.connected && follower.acknowledged.get(shard) < logLength) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    System.out.println("Follower " + follower.name + " did not acknowledge shard " + shard
+                            + " in time; continuing without it"); // Prints message
+                    return;
+                }
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting followers and disconnects the ones connected.
+     * @throws IOException If the socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < store.shardCount(); i++) {
+            store.shard(i).setListener(null);
+        }
+        server.close();
+        for (Follower follower : followers) {
+            follower.socket.close();
+        }
+    }
+
+    /**
+     * Accept thread: starts a sender for every follower that connects.
+     */
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true); // Frames are flushed deliberately
+                Follower follower = new Follower(socket, store.shardCount());
+                Thread thread = new Thread(() -> serve(follower), "replication-" + follower.name);
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.out.println("Error accepting follower: " + e.getMessage()); // Prints message
+                }
+            }
+        }
+    }
+
+    /**
+     * Sender thread for one follower: handshake, then stream the logs until it disconnects.
+     */
+    private void serve(Follower follower) {
+        try (Socket socket = follower.socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a QuickChat follower");
+            }
+            int shards = store.shardCount();
+            out.writeInt(MAGIC);
+            out.writeInt(shards);
+            out.writeLong(store.generation()); // Offsets only mean something within one generation
+            out.flush();
+            long[] offsets = new long[shards];
+            for (int i = 0; i < shards; i++) {
+                offsets[i] = in.readLong();
+                if (offsets[i] > store.shard(i).durableLength()) { // Follower has bytes the leader lost
+                    out.writeInt(1);
+                    out.writeUTF("follower has " + offsets[i] + " bytes of shard " + i + ", leader only "
+                            + store.shard(i).durableLength());
+                    out.flush();
+                    return;
+                }
+                follower.acknowledged.set(i, offsets[i]);
+            }
+            out.writeInt(0);
+            out.flush();
+
+            followers.add(follower);
+            Thread acks = new Thread(() -> readAcknowledgements(follower, in), "replication-acks-" + follower.name);
+            acks.setDaemon(true);
+            acks.start();
+            stream(follower, out, offsets);
+        } catch (IOException e) {
+            System.out.println("Follower " + follower.name + " disconnected: " + e.getMessage()); // Prints message
+        } finally {
+            followers.remove(follower);
+            synchronized (this) {
+                follower.connected = false;
+                notifyAll(); // A writer waiting for this follower stops waiting
+            }
+        }
+    }
+
+    /**
+     * Sends every durable log byte past the follower's offsets, then waits for more.
+     */
+    private void stream(Follower follower, DataOutputStream out, long[] offsets) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_BYTES);
+        while (follower.connected) {
+            long seen;
+            synchronized (this) {
+                seen = version;
+            }
+            boolean sent = false;
+            for (int shard = 0; shard < offsets.length; shard++) {
+                while (offsets[shard] < store.shard(shard).durableLength()) {
+                    buffer.clear();
+                    int n = store.shard(shard).readLog(buffer, offsets[shard]);
+                    out.writeInt(shard);
+                    out.writeInt(n);
+                    out.write(buffer.array(), 0, n);
+                    offsets[shard] += n;
+                    sent = true;
+                }
+            }
+            if (sent) {
+                out.flush();
+                continue;
+            }
+            boolean idle;
+            synchronized (this) {
+                if (version == seen) {
+                    try {
+                        wait(HEARTBEAT_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                idle = version == seen;
+            }
+            if (idle) {
+                out.writeInt(-1); // Heartbeat, so a dead connection is noticed
+                out.writeInt(0);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Acknowledgement thread for one follower.
+     */
+    private void readAcknowledgements(Follower follower, DataInputStream in) {
+        try {
+            while (true) {
+                int shard = in.readInt();
+                long length = in.readLong();
+                follower.acknowledged.set(shard, length);
+                synchronized (this) {
+                    version++;
+                    notifyAll(); // Wakes writers waiting for this acknowledgement
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                follower.connected = false; // The sender notices and closes the socket
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * State of one connected follower.
+     */
+    private static final class Follower {
+        final Socket socket;
+        final String name;
+        // Log length each shard has on the follower's disk
+        final AtomicLongArray acknowledged;
+        volatile boolean connected = true;
+
+        Follower(Socket socket, int shards) {
+            this.socket = socket;
+            this.name = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+            this.acknowledged = new AtomicLongArray(shards);
+        }
+    }
+}
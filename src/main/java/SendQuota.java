@@ -0,0 +1,227 @@
+//Libraries
+import com.google.gson.stream.JsonReader;    // Imports JsonReader for loading a checkpoint
+import com.google.gson.stream.JsonWriter;    // Imports JsonWriter for writing a checkpoint
+import java.io.IOException;                  // Imports IOException for I/O errors
+import java.io.StringReader;                 // Imports StringReader to parse a checkpoint
+import java.io.StringWriter;                 // Imports StringWriter to build a checkpoint
+import java.nio.charset.StandardCharsets;    // Imports UTF-8 for the checkpoint file
+import java.nio.file.Path;                   // Imports Path for the checkpoint location
+import java.util.Map;                        // Imports Map interface
+import java.util.concurrent.ConcurrentHashMap; // Imports ConcurrentHashMap for the counters and registry
+import java.util.concurrent.atomic.AtomicLong; // Imports AtomicLong for one user's packed counters
+import java.util.function.LongSupplier;      // Imports LongSupplier for the clock
+
+/**
+ * Per-user send quotas: at most so many messages a minute and so many a day.
+ *
+ * Each user's counters fit in one long: the day and minute they belong to, and the number
+ * of messages sent in each. A send is checked and counted with a single compare-and-set on
+ * that long, so the send path takes no lock and users never wait for each other. Counters
+ * of an earlier minute or day count as zero; nothing has to be reset on a timer.
+ *
+ * The counters are checkpointed to a crash-safe file (quotas.json by default) every few
+ * seconds and on exit, and read back on startup, so logging out or restarting does not
+ * hand out a fresh quota. A crash loses at most the sends since the last checkpoint.
+ * Days and minutes are counted in UTC.
+ */
+public class SendQuota {
+
+    // Most messages a user may send per minute and per day; 0 means no limit
+    static final int PER_MINUTE = Integer.getInteger("quickchat.quota.minute", 20);
+    static final int PER_DAY = Integer.getInteger("quickchat.quota.day", 500);
+    // Seconds between checkpoints
+    static final long CHECKPOINT_MILLIS = Long.getLong("quickchat.quota.checkpoint", 30) * 1000;
+
+    // Packed counter layout, low bits first: sent this minute (16), minute of the day (11),
+    // sent today (16), day since the epoch (20)
+    private static final int COUNT_BITS = 16;
+    private static final int MINUTE_BITS = 11;
+    private static final int MINUTE_SHIFT = COUNT_BITS;
+    private static final int DAY_COUNT_SHIFT = MINUTE_SHIFT + MINUTE_BITS;
+    private static final int DAY_SHIFT = DAY_COUNT_SHIFT + COUNT_BITS;
+    // Largest count a field holds; counts without a limit stop here
+    static final int MAX_COUNT = (1 << COUNT_BITS) - 1;
+    private static final long MINUTES_PER_DAY = 24 * 60;
+
+    // One quota per checkpoint file, shared by every Messages instance that uses it
+    private static final Map<Path, SendQuota> quotas = new ConcurrentHashMap<>();
+
+    // Limits; 0 means no limit
+    private final int perMinute;
+    private final int perDay;
+    // Current time in milliseconds
+    private final LongSupplier clock;
+    // Checkpoint file, or null to keep counters in memory only
+    private final Path file;
+    // Packed counters of every user who has sent something
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    // True when a send was counted since the last checkpoint
+    private volatile boolean dirty;
+
+    /**
+     * Returns the shared quota for a checkpoint file, loading it and starting its
+     * checkpoint thread on first use. Limits come from quickchat.quota.minute and quickchat.quota.day.
+     * @param file The checkpoint file.
+     * @return The quota.
+     */
+    public static SendQuota forFile(Path file) {
+        return quotas.computeIfAbsent(file.toAbsolutePath().normalize(), f -> {
+            SendQuota quota = new SendQuota(PER_MINUTE, PER_DAY, System::currentTimeMillis, f);
+            Thread thread = new Thread(quota::runCheckpoints, "quota-checkpoint");
+            thread.setDaemon(true); // The shutdown hook writes the last checkpoint
+            thread.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(quota::checkpoint));
+            return quota;
+        });
+    }
+
+    /**
+     * Creates a quota, loading the counters checkpointed in {@code file}.
+     * @param perMinute Most messages per user per minute; 0 for no limit.
+     * @param perDay Most messages per user per day; 0 for no limit.
+     * @param clock The current time in milliseconds.
+     * @param file The checkpoint file, or null to keep counters in memory only.
+     */
+    public SendQuota(int perMinute, int perDay, LongSupplier clock, Path file) {
+        this.perMinute = Math.min(perMinute, MAX_COUNT);
+        this.perDay = Math.min(perDay, MAX_COUNT);
+        this.clock = clock;
+        this.file = file;
+        if (file != null) {
+            load();
+        }
+    }
+
+    /**
+     * Counts a send if the user is within both limits. Lock-free.
+     * @param user The sender's cell number.
+     * @return True if the send may go ahead; false if a limit has been reached.
+     */
+    public boolean tryAcquire(String user) {
+        AtomicLong cell = counters.get(user);
+        if (cell == null) {
+            cell = counters.computeIfAbsent(user, u -> new AtomicLong()); // First send only
+        }
+        long minute = clock.getAsLong() / 60_000;
+        long day = minute / MINUTES_PER_DAY;
+        int minuteOfDay = (int) (minute % MINUTES_PER_DAY);
+        while (true) {
+            long old = cell.get();
+            int today = sentToday(old, day);
+            int thisMinute = sentThisMinute(old, day, minuteOfDay);
+            if ((perDay > 0 && today >= perDay) || (perMinute > 0 && thisMinute >= perMinute)) {
+                return false;
+            }
+            long next = pack(day, Math.min(today + 1, MAX_COUNT), minuteOfDay, Math.min(thisMinute + 1, MAX_COUNT));
+            if (cell.compareAndSet(old, next)) { // Retries only if the same user sent at the same moment
+                dirty = true;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns how many messages a user has sent today.
+     * @param user The user's cell number.
+     * @return The count.
+     */
+    public int sentToday(String user) {
+        AtomicLong cell = counters.get(user);
+        return cell == null ? 0 : sentToday(cell.get(), clock.getAsLong() / 60_000 / MINUTES_PER_DAY);
+    }
+
+    /**
+     * Returns how many messages a user has sent in the current minute.
+     * @param user The user's cell number.
+     * @return The count.
+     */
+    public int sentThisMinute(String user) {
+        AtomicLong cell = counters.get(user);
+        long minute = clock.getAsLong() / 60_000;
+        return cell == null ? 0 : sentThisMinute(cell.get(), minute / MINUTES_PER_DAY, (int) (minute % MINUTES_PER_DAY));
+    }
+
+    /**
+     * Writes today's counters to the checkpoint file, if anything was counted since the last one.
+     * Counters of earlier days are left out, so the file only holds users active today.
+     */
+    public synchronized void checkpoint() {
+        if (file == null || !dirty) {
+            return;
+        }
+        dirty = false; // A send counted from here on marks the next checkpoint
+        long today = clock.getAsLong() / 60_000 / MINUTES_PER_DAY;
+        StringWriter text = new StringWriter();
+        try (JsonWriter out = new JsonWriter(text)) {
+            out.beginObject();
+            for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+                long packed = entry.getValue().get();
+                if (packed >>> DAY_SHIFT == today) {
+                    out.name(entry.getKey()).value(packed);
+                }
+            }
+            out.endObject();
+            SnapshotWriter.writeAtomically(file, text.toString().getBytes(StandardCharsets.UTF_8), 1);
+        } catch (IOException e) {
+            dirty = true; // Tries again next time
+            System.out.println("Error saving quotas: " + e.getMessage()); // Prints message
+        }
+    }
+
+    /**
+     * Reads the counters back from the newest intact checkpoint.
+     */
+    private void load() {
+        try {
+            byte[] data = SnapshotWriter.readLatest(file, 1);
+            if (data == null) {
+                return; // No checkpoint yet
+            }
+            JsonReader in = new JsonReader(new StringReader(new String(data, StandardCharsets.UTF_8)));
+            in.beginObject();
+            while (in.hasNext()) {
+                counters.put(in.nextName(), new AtomicLong(in.nextLong()));
+            }
+            in.endObject();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error reading quotas: " + e.getMessage() + "; starting from zero"); // Prints message
+        }
+    }
+
+    /**
+     * Checkpoint thread: writes a checkpoint every CHECKPOINT_MILLIS, forever.
+     */
+    private void runCheckpoints() {
+        while (true) {
+            try {
+                Thread.sleep(CHECKPOINT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            checkpoint();
+        }
+    }
+
+    /**
+     * Packs a user's counters into one long.
+     */
+    private static long pack(long day, int today, int minuteOfDay, int thisMinute) {
+        return day << DAY_SHIFT | (long) today << DAY_COUNT_SHIFT | (long) minuteOfDay << MINUTE_SHIFT | thisMinute;
+    }
+
+    /**
+     * Returns the day count of packed counters, or 0 if they belong to another day.
+     */
+    private static int sentToday(long packed, long day) {
+        return packed >>> DAY_SHIFT == day ? (int) (packed >>> DAY_COUNT_SHIFT) & MAX_COUNT : 0;
+    }
+
+    /**
+     * Returns the minute count of packed counters, or 0 if they belong to another minute.
+     */
+    private static int sentThisMinute(long packed, long day, int minuteOfDay) {
+        boolean sameMinute = packed >>> DAY_SHIFT == day
+                && ((packed >>> MINUTE_SHIFT) & ((1 << MINUTE_BITS) - 1)) == minuteOfDay;
+        return sameMinute ? (int) packed & MAX_COUNT : 0;
+    }
+}
@@ -0,0 +1,508 @@
+//Libraries
+import java.io.IOException;                    // Imports IOException for I/O errors
+import java.io.UncheckedIOException;           // Imports UncheckedIOException for the registry
+import java.nio.charset.StandardCharsets;      // Imports UTF-8 for the generation file
+import java.nio.file.DirectoryStream;          // Imports DirectoryStream for finding shard logs
+import java.nio.file.Files;                    // Imports Files for directory operations
+import java.nio.file.Path;                     // Imports Path for file locations
+import java.util.ArrayList;                    // Imports ArrayList for query results
+import java.util.List;                         // Imports List interface
+import java.util.Map;                          // Imports Map interface
+import java.util.concurrent.ConcurrentHashMap; // Imports ConcurrentHashMap for the store registry
+import java.util.concurrent.ThreadLocalRandom; // Imports ThreadLocalRandom for new generations
+import java.util.concurrent.atomic.AtomicLong; // Imports AtomicLong for the shared sequence
+import java.util.function.Consumer;            // Imports Consumer for merged listing
+
+/**
+ * Message store partitioned by recipient, so writes can use several cores and disks at once.
+ *
+ * Each message goes to the shard chosen by a hash of its recipient. A shard owns a log
+ * file (shard-N.log), an index and a writer thread, and shares nothing with the others,
+ * so N shards write N batches in parallel instead of queueing behind one file. Queries
+ * for one recipient only touch that recipient's shard. Listing everything merges the
+ * shards by sequence number, which gives back the order the messages were stored in.
+ *
+ * Messages are edited and deleted by ID: the change is appended to the message's shard
+ * log as one record, never by rewriting the log. Logs with many superseded records are
+ * compacted when the shared store for a directory is opened. The directory's generation
+ * file names the current version of its logs and changes whenever a log is rewritten, so a
+ * replication follower can tell that its copy no longer lines up and copy them again.
+ *
+ * The shard count is fixed when a directory is first used, since it decides where every
+ * recipient's messages live, and is kept in the directory's shards file; opening the
+ * directory again adopts it, whatever the host's core count or -Dquickchat.shards. With
+ * -Dquickchat.replication.port set, the logs are also shipped to followers by a
+ * {@link ReplicationServer}.
+ */
+public class ShardedMessageStore implements MessageStore {
+
+    // File in the directory naming the current version of its logs
+    static final String GENERATION_FILE = "generation";
+    // File in the directory holding its shard count
+    static final String SHARD_COUNT_FILE = "shards";
+
+    // Number of shards for a new directory
+    static final int SHARDS = Integer.getInteger("quickchat.shards", Runtime.getRuntime().availableProcessors());
+
+    // One store per directory, shared by every instance that uses it
+    private static final Map<Path, ShardedMessageStore> stores = new ConcurrentHashMap<>();
+
+    // The shards, in routing order
+    private final MessageShard[] shards;
+    // Next sequence number, shared by all shards
+    private final AtomicLong nextSequence = new AtomicLong();
+    // Version of the logs, from the generation file
+    private final long generation;
+    // True on a replication follower, whose messages only arrive from the leader
+    private volatile boolean readOnly;
+    // Formatted conversation pages, dropped as their conversations change
+    private final HistoryPageCache pageCache = new HistoryPageCache(HistoryPageCache.MAX_BYTES);
+
+    /**
+     * Returns the shared store for a directory, opening it on first use. A directory that
+     * already holds shards is opened with the count it was created with.
+     * @param dir The directory holding the shard logs.
+     * @param shardCount The number of shards if the directory is new.
+     * @return The store.
+     * @throws IOException If the logs cannot be opened.
+     */
+    public static ShardedMessageStore forDirectory(Path dir, int shardCount) throws IOException {
+        try {
+            return stores.computeIfAbsent(dir.toAbsolutePath().normalize(), d -> {
+                try {
+                    int existing = shardCount(d);
+                    if (existing > 0 && existing != shardCount) {
+                        System.out.println(d + " holds " + existing + " shards; opening it with " + existing
+                                + " instead of " + shardCount); // Prints message
+                    }
+                    int count = existing > 0 ? existing : shardCount;
+                    for (int i = 0; i < count; i++) {
+                        MessageShard.compactIfWorthwhile(d.resolve("shard-" + i + ".log")); // Before any follower connects
+                    }
+                    ShardedMessageStore store = new ShardedMessageStore(d, count);
+                    Runtime.getRuntime().addShutdownHook(new Thread(store::flush)); // Writes what is queued on exit
+                    if (ReplicationServer.PORT != null) {
+                        new ReplicationServer(store, ReplicationServer.PORT, ReplicationServer.SYNC).start();
+                    }
+                    return store;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Opens every shard in a directory and starts their writer threads.
+     * @param dir The directory holding the shard logs; created if missing.
+     * @param shardCount The number of shards; must match the directory's count if it has one.
+     * @throws IOException If the logs cannot be opened or the shard count does not match.
+     */
+    ShardedMessageStore(Path dir, int shardCount) throws IOException {
+        Files.createDirectories(dir);
+        long known = generation(dir);
+        generation = known != 0 ? known : newGeneration(dir); // A directory from before generations, or a new one
+        int existing = shardCount(dir);
+        if (existing > 0 && existing != Math.max(1, shardCount)) {
+            throw new IOException(dir + " holds " + existing + " shards, not " + shardCount);
+        }
+        shards = new MessageShard[Math.max(1, shardCount)];
+        if (!Files.exists(dir.resolve(SHARD_COUNT_FILE))) { // New, or from before the count was kept
+            SnapshotWriter.writeAtomically(dir.resolve(SHARD_COUNT_FILE),
+                    Integer.toString(shards.length).getBytes(StandardCharsets.UTF_8), 0);
+        }
+        long last = -1;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new MessageShard(i, dir.resolve("shard-" + i + ".log"), nextSequence::getAndIncrement);
+            last = Math.max(last, shards[i].recoveredSequence());
+        }
+        nextSequence.set(last + 1); // New messages sort after everything recovered
+        for (MessageShard shard : shards) {
+            shard.setChangeListener((sender, recipient) -> {
+                if (sender != null) {
+                    pageCache.invalidate(ConversationIndex.conversationKey(sender, recipient));
+                }
+            });
+            shard.start();
+        }
+    }
+
+    /**
+     * Queues a message on its recipient's shard. It is written in the background.
+     * A message without a timestamp is stamped with the current time.
+     * @param entry The message.
+     * @return A reference to the message for {@link #view(int, MessageView)}.
+     */
+    public int store(MessageEntry entry) {
+        if (readOnly) {
+            throw new IllegalStateException("This node is a read-only replication follower");
+        }
+        if (entry.Timestamp == null) {
+            entry = new MessageEntry(entry.MessageID, entry.MessageHash, entry.Recipient, entry.Message, entry.Sender,
+                    System.currentTimeMillis());
+        }
+        int shard = shardOf(entry.Recipient);
+        int index = shards[shard].append(entry);
+        return index * shards.length + shard;
+    }
+
+    /**
+     * Replaces the hash and text of the earliest message with an ID. Only an UPDATE record
+     * is appended to its shard log. Returns once the change is written.
+     * @param messageID The message ID.
+     * @param hash The new hash.
+     * @param message The new text.
+     * @return True if the message was found and edited.
+     */
+    public boolean update(String messageID, String hash, String message) {
+        return edit(MessageLog.UPDATE, messageID, hash, message);
+    }
+
+    /**
+     * Deletes the earliest message with an ID. Only a DELETE record is appended to its
+     * shard log; the message is dropped for good when the log is next compacted.
+     * Returns once the change is written.
+     * @param messageID The message ID.
+     * @return True if the message was found and deleted.
+     */
+    public boolean delete(String messageID) {
+        return edit(MessageLog.DELETE, messageID, null, null);
+    }
+
+    /**
+     * Points a view at a stored message, waiting for it to be written if needed.
+     * @param reference A reference returned by {@link #store}.
+     * @param view The view to reuse.
+     * @return The view.
+     */
+    public MessageView view(int reference, MessageView view) {
+        awaitWritten(reference);
+        return shards[reference % shards.length].view().rows().view(reference / shards.length, view);
+    }
+
+    /**
+     * Blocks until a stored message has been written (and forced to disk, with fsync on).
+     * @param reference A reference returned by {@link #store}.
+     */
+    public void awaitWritten(int reference) {
+        shards[reference % shards.length].awaitWritten(reference / shards.length);
+    }
+
+    /**
+     * Returns the number of messages written so far, not counting deleted ones.
+     * @return The message count.
+     */
+    public int size() {
+        int size = 0;
+        for (MessageShard shard : shards) {
+            MessageShard.View view = shard.view();
+            size += view.size() - view.deleted();
+        }
+        return size;
+    }
+
+    /**
+     * Calls {@code action} with every written message that has not been deleted, in the
+     * order they were stored.
+     * @param action Receives a view of each message; the view is reused.
+     */
+    public void forEach(Consumer<MessageView> action) {
+        MessageShard.View[] views = new MessageShard.View[shards.length];
+        int[] next = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            views[i] = shards[i].view(); // Each shard's messages are already in sequence order
+        }
+        MessageView view = new MessageView();
+        while (true) {
+            int best = -1;
+            long bestSequence = Long.MAX_VALUE;
+            for (int i = 0; i < views.length; i++) { // A linear pick is cheaper than a heap for a few shards
+                if (next[i] < views[i].size() && views[i].sequence(next[i]) < bestSequence) {
+                    best = i;
+                    bestSequence = views[i].sequence(next[i]);
+                }
+            }
+            if (best < 0) {
+                return;
+            }
+            int index = next[best]++;
+            if (!views[best].rows().isDeleted(index)) {
+                action.accept(views[best].rows().view(index, view));
+            }
+        }
+    }
+
+    /**
+     * Finds every written message stored in a time range, in the order they were stored.
+     * Each shard reads only the pages whose time range overlaps, and the matches are
+     * merged by sequence number.
+     * @param fromMillis The start of the range in epoch milliseconds, inclusive.
+     * @param toMillis The end of the range in epoch milliseconds, exclusive.
+     * @return The matching messages; empty if there are none.
+     */
+    public List<MessageEntry> findMessagesBetween(long fromMillis, long toMillis) {
+        MessageShard.View[] views = new MessageShard.View[shards.length];
+        List<List<Integer>> matches = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            views[i] = shards[i].view();
+            List<Integer> indexes = new ArrayList<>();
+            views[i].rows().forEachInTimeRange(fromMillis, toMillis, indexes::add);
+            matches.add(indexes);
+        }
+        List<MessageEntry> found = new ArrayList<>();
+        int[] next = new int[shards.length];
+        MessageView view = new MessageView();
+        while (true) {
+            int best = -1;
+            long bestSequence = Long.MAX_VALUE;
+            for (int i = 0; i < views.length; i++) { // Same linear merge as forEach, over the matches only
+                if (next[i] < matches.get(i).size() && views[i].sequence(matches.get(i).get(next[i])) < bestSequence) {
+                    best = i;
+                    bestSequence = views[i].sequence(matches.get(i).get(next[i]));
+                }
+            }
+            if (best < 0) {
+                return found;
+            }
+            found.add(views[best].rows().view(matches.get(best).get(next[best]++), view).toEntry());
+        }
+    }
+
+    /**
+     * Finds the earliest stored message with a given ID, through every shard's ID index.
+     * @param messageID The message ID.
+     * @return The message, or null if no message has that ID.
+     */
+    public MessageEntry findMessageByID(String messageID) {
+        MessageEntry found = null;
+        long foundSequence = Long.MAX_VALUE;
+        for (MessageShard shard : shards) {
+            MessageShard.View view = shard.view();
+            int index = shard.indexOf(messageID);
+            if (index >= 0 && index < view.size() && view.sequence(index) < foundSequence) {
+                found = view.rows().view(index, new MessageView()).toEntry();
+                foundSequence = view.sequence(index);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds every stored message sent to a recipient, oldest first. Only the recipient's shard is read.
+     * @param recipient The recipient's cell number.
+     * @return The matching messages; empty if there are none.
+     */
+    public List<MessageEntry> findMessagesToRecipient(String recipient) {
+        MessageShard.View view = shards[shardOf(recipient)].view();
+        List<MessageEntry> found = new ArrayList<>();
+        MessageView message = new MessageView();
+        view.rows().forEachToRecipient(recipient, index -> found.add(view.rows().view(index, message).toEntry()));
+        return found;
+    }
+
+    /**
+     * Loads the newest messages between two people, in both directions. Each direction
+     * lives on its recipient's shard, so at most two shards are read and their pages merged.
+     * Deleted messages are left out and older ones read instead, so the page stays full.
+     * @param a One participant's cell number.
+     * @param b The other participant's cell number.
+     * @param limit The most messages to return.
+     * @return The messages, oldest first.
+     */
+    public List<MessageEntry> loadConversation(String a, String b, int limit) {
+        int first = shardOf(a);
+        int second = shardOf(b);
+        List<MessageEntry> page = new ArrayList<>();
+        List<Long> pageSequences = new ArrayList<>();
+        for (int shard : first == second ? new int[] {first} : new int[] {first, second}) {
+            MessageShard.View view = shards[shard].view();
+            List<Integer> live = new ArrayList<>();
+            int before = view.size(); // Only rows the view holds
+            while (live.size() < limit) {
+                int[] positions = shards[shard].conversations().latest(a, b, limit - live.size(), before);
+                for (int i = positions.length - 1; i >= 0; i--) {
+                    if (!view.rows().isDeleted(positions[i])) live.add(0, positions[i]);
+                }
+                if (positions.length == 0 || view.deleted() == 0) break;
+                before = positions[0]; // Pages further back past deleted messages
+            }
+            MessageView message = new MessageView();
+            int at = 0;
+            for (int position : live) { // Merges into the page by sequence number
+                long sequence = view.sequence(position);
+                while (at < pageSequences.size() && pageSequences.get(at) < sequence) at++;
+                page.add(at, view.rows().view(position, message).toEntry());
+                pageSequences.add(at++, sequence);
+            }
+        }
+        return page.subList(Math.max(0, page.size() - limit), page.size());
+    }
+
+    /**
+     * Blocks until every message queued so far has been written.
+     */
+    public void flush() {
+        for (MessageShard shard : shards) {
+            shard.flush();
+        }
+    }
+
+    /**
+     * Writes what is queued and closes every shard.
+     * @throws IOException If a log cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        for (MessageShard shard : shards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * Returns the cache of formatted conversation pages kept up to date with this store.
+     * @return The cache.
+     */
+    public HistoryPageCache pageCache() {
+        return pageCache;
+    }
+
+    /**
+     * Returns the number of shards.
+     * @return The shard count.
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the version of this store's logs. It changes whenever a log is rewritten.
+     * @return The generation; never 0.
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * Reads the generation of the logs in a directory.
+     * @param dir The directory holding the shard logs.
+     * @return The generation, or 0 if the directory has none.
+     * @throws IOException If the generation file cannot be read.
+     */
+    static long generation(Path dir) throws IOException {
+        byte[] data = SnapshotWriter.readLatest(dir.resolve(GENERATION_FILE), 0);
+        if (data == null) {
+            return 0;
+        }
+        try {
+            return Long.parseUnsignedLong(new String(data, StandardCharsets.UTF_8).trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Damaged " + dir.resolve(GENERATION_FILE) + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the shard count of a directory: the one in its shards file or, for a directory
+     * from before the count was kept, the number of shard logs in it.
+     * @param dir The directory holding the shard logs.
+     * @return The shard count, or 0 for a new directory.
+     * @throws IOException If the shards file is damaged.
+     */
+    static int shardCount(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        byte[] data = SnapshotWriter.readLatest(dir.resolve(SHARD_COUNT_FILE), 0);
+        if (data == null) {
+            return countLogs(dir);
+        }
+        try {
+            return Integer.parseInt(new String(data, StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Damaged " + dir.resolve(SHARD_COUNT_FILE) + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Records the generation of the logs in a directory.
+     * @param dir The directory holding the shard logs.
+     * @param generation The generation; not 0.
+     * @throws IOException If the generation file cannot be written.
+     */
+    static void setGeneration(Path dir, long generation) throws IOException {
+        SnapshotWriter.writeAtomically(dir.resolve(GENERATION_FILE),
+                Long.toHexString(generation).getBytes(StandardCharsets.UTF_8), 0);
+    }
+
+    /**
+     * Gives the logs in a directory a new random generation, before they are rewritten.
+     * @param dir The directory holding the shard logs.
+     * @return The new generation.
+     * @throws IOException If the generation file cannot be written.
+     */
+    static long newGeneration(Path dir) throws IOException {
+        long generation;
+        do {
+            generation = ThreadLocalRandom.current().nextLong();
+        } while (generation == 0);
+        setGeneration(dir, generation);
+        return generation;
+    }
+
+    /**
+     * Returns a shard.
+     * @param number The shard number.
+     * @return The shard.
+     */
+    MessageShard shard(int number) {
+        return shards[number];
+    }
+
+    /**
+     * Turns away new messages, on a node that only receives them through replication.
+     */
+    void setReadOnly() {
+        readOnly = true;
+    }
+
+    /**
+     * Appends an edit or delete to the shard of the earliest message with an ID.
+     */
+    private boolean edit(byte type, String messageID, String hash, String message) {
+        if (readOnly) {
+            throw new IllegalStateException("This node is a read-only replication follower");
+        }
+        flush(); // A message stored just before can be edited
+        MessageEntry target = findMessageByID(messageID);
+        if (target == null) {
+            return false;
+        }
+        shards[shardOf(target.Recipient)].edit(type,
+                new MessageEntry(messageID, hash, target.Recipient, message, null, System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * Picks the shard for a recipient. The hash is stable across runs, unlike identity hashes,
+     * so a recipient's messages stay on the same shard after a restart.
+     * @param recipient The recipient's cell number.
+     * @return The shard number.
+     */
+    int shardOf(String recipient) {
+        return recipient == null ? 0 : (int) Math.floorMod(DuplicateFilter.fingerprint(recipient), (long) shards.length);
+    }
+
+    /**
+     * Counts the shard logs already in a directory.
+     */
+    private static int countLogs(Path dir) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> logs = Files.newDirectoryStream(dir, "shard-*.log")) {
+            for (Path ignored : logs) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,392 @@
+//Libraries
+import java.io.IOException;                    // Imports IOException for I/O errors
+import java.nio.ByteBuffer;                    // Imports ByteBuffer for channel writes
+import java.nio.channels.FileChannel;          // Imports FileChannel for fsync
+import java.nio.charset.StandardCharsets;      // Imports UTF-8 for the checksum file
+import java.nio.file.AtomicMoveNotSupportedException; // Imports the fallback case for renames
+import java.nio.file.Files;                    // Imports Files for file operations
+import java.nio.file.NoSuchFileException;      // Imports NoSuchFileException for missing generations
+import java.nio.file.Path;                     // Imports Path for file locations
+import java.nio.file.StandardCopyOption;       // Imports copy options for renames
+import java.nio.file.StandardOpenOption;       // Imports open options for channels
+import java.util.Arrays;                       // Imports Arrays for comparing checksums
+import java.util.Map;                          // Imports Map interface
+import java.util.concurrent.ConcurrentHashMap; // Imports ConcurrentHashMap for the writer registry
+import java.util.zip.CRC32C;                   // Imports CRC32C for snapshot checksums
+
+/**
+ * Crash-safe writer for whole-file snapshots such as messages.json and users.json.
+ *
+ * A snapshot is written to a temporary file and fsynced, then the previous snapshots are
+ * shifted into numbered generations (messages.json.1, .2, ...) and the new one is renamed
+ * into place. Each snapshot has a ".crc" file holding its CRC32C and length, so a reader can
+ * fall back to the newest intact generation instead of loading a damaged file.
+ *
+ * Writes run on one background thread per file. Callers hand over an immutable copy of
+ * their data; if several snapshots are queued while one is being written, only the newest
+ * is written. Pending snapshots are flushed when the JVM exits. A failed write is kept until
+ * a later one succeeds, and {@link #flush()} and {@link #submit} report it, so a caller never
+ * takes a failed save for a saved file.
+ */
+public class SnapshotWriter {
+
+    // Number of older snapshots kept next to the live file
+    static final int GENERATIONS = Integer.getInteger("quickchat.snapshot.generations", 3);
+
+    // One writer per file, shared by every instance that saves to it
+    private static final Map<Path, SnapshotWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * Produces the content of a snapshot. Runs on the writer thread.
+     */
+    public interface Snapshot {
+        String encode();
+    }
+
+    // File this writer maintains
+    private final Path target;
+    // Latency histogram for completed saves
+    private final LatencyHistogram timer;
+    // Newest snapshot not yet picked up by the writer thread
+    private Snapshot pending;
+    // Record count of the pending snapshot, for the Flight Recorder event
+    private int pendingRecords;
+    // True while the writer thread is writing
+    private boolean writing;
+    // Why the last completed write failed, or null if it succeeded
+    private IOException failure;
+
+    /**
+     * Returns the shared writer for a file, starting it on first use.
+     * @param target The file to write.
+     * @param timer The latency histogram for completed saves.
+     * @return The writer.
+     */
+    public static SnapshotWriter forFile(Path target, LatencyHistogram timer) {
+        return writers.computeIfAbsent(target.toAbsolutePath().normalize(), p -> new SnapshotWriter(p, timer));
+    }
+
+    /**
+     * Creates a writer and starts its background thread.
+     * @param target The file to write.
+     * @param timer The latency histogram for completed saves.
+     */
+    private SnapshotWriter(Path target, LatencyHistogram timer) {
+        this.target = target;
+        this.timer = timer;
+        Thread thread = new Thread(this::run, "snapshot-" + target.getFileName());
+        thread.setDaemon(true); // The shutdown hook flushes instead
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushOnExit));
+    }
+
+    /**
+     * Queues a snapshot for writing, replacing any snapshot still waiting.
+     * @param records The number of records in the snapshot.
+     * @param snapshot Produces the file content from an immutable copy of the data.
+     * @throws IOException If the last write failed. The snapshot is queued all the same,
+     *                     since it holds everything the failed one did.
+     */
+    public synchronized void submit(int records, Snapshot snapshot) throws IOException {
+        pending = snapshot;
+        pendingRecords = records;
+        notifyAll(); // Wakes the writer thread
+        checkWritten();
+    }
+
+    /**
+     * Blocks until every queued snapshot has been written.
+     * @throws IOException If the newest snapshot could not be written, so the file is out of date.
+     */
+    public synchronized void flush() throws IOException {
+        awaitIdle();
+        checkWritten();
+    }
+
+    /**
+     * Waits for queued snapshots, then reads the newest intact one.
+     * @return The content, or null if there is no snapshot at all.
+     * @throws IOException If files exist but none can be read intact.
+     */
+    public byte[] read() throws IOException {
+        synchronized (this) {
+            awaitIdle(); // So a reader in this process never sees an older snapshot than it wrote
+        }
+        return readLatest(target, GENERATIONS);
+    }
+
+    /**
+     * Blocks until the writer thread has nothing queued or in progress. Called under the lock.
+     */
+    private void awaitIdle() {
+        while (pending != null || writing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Throws the failure of the last completed write, if it failed. Called under the lock.
+     * @throws IOException If the last write failed.
+     */
+    private void checkWritten() throws IOException {
+        if (failure != null) {
+            throw new IOException(target.getFileName() + ": " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Writes what is queued when the JVM exits, reporting a failure instead of throwing.
+     */
+    private void flushOnExit() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.out.println("Error writing " + e.getMessage()); // Prints message
+        }
+    }
+
+    /**
+     * Writer thread: takes the newest pending snapshot and writes it, forever.
+     */
+    private void run() {
+        while (true) {
+            Snapshot snapshot;
+            int records;
+            synchronized (this) {
+                while (pending == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                snapshot = pending;
+                records = pendingRecords;
+                pending = null;
+                writing = true;
+            }
+            IOException error = null;
+            try {
+                save(snapshot, records);
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException(e.getMessage(), e); // E.g. the snapshot could not be encoded
+            }
+            if (error != null) {
+                System.out.println("Error writing " + target.getFileName() + ": " + error.getMessage());
+            }
+            synchronized (this) {
+                writing = false;
+                failure = error; // A later snapshot holds everything an earlier one did
+                notifyAll(); // Wakes anyone waiting in flush()
+            }
+        }
+    }
+
+    /**
+     * Encodes and writes one snapshot, with metrics and a Flight Recorder event.
+     * @param snapshot The snapshot to write.
+     * @param records The number of records in it.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    private void save(Snapshot snapshot, int records) throws IOException {
+        long start = Metrics.start(); // Starts the latency measurement
+        PersistenceEvent event = new PersistenceEvent(); // Flight Recorder event for this save
+        event.begin();
+        long encodeStart = System.nanoTime();
+        byte[] data = snapshot.encode().getBytes(StandardCharsets.UTF_8);
+        event.encodeTime = System.nanoTime() - encodeStart;
+        long ioStart = System.nanoTime();
+        writeAtomically(target, data, GENERATIONS);
+        event.ioTime = System.nanoTime() - ioStart;
+        timer.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = target.getFileName().toString();
+            event.operation = "save";
+            event.records = records;
+            event.bytes = data.length;
+            event.commit();
+        }
+    }
+
+    /**
+     * Writes a snapshot so that a crash at any point leaves either the old or the new
+     * snapshot intact, keeping older snapshots as numbered generations.
+     * @param target The live file.
+     * @param data The new content.
+     * @param generations How many older snapshots to keep.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    static void writeAtomically(Path target, byte[] data, int generations) throws IOException {
+        Path tmp = sibling(target, ".tmp");
+        Path tmpCrc = sibling(target, ".tmp.crc");
+        writeDurably(tmp, data);                   // 1. New content, fsynced
+        writeDurably(tmpCrc, checksumLine(data));  // 2. Its checksum, fsynced
+
+        // 3. Shifts the older snapshots up one generation, dropping the oldest
+        for (int gen = generations; gen >= 1; gen--) {
+            Path from = gen == 1 ? target : generation(target, gen - 1);
+            moveIfExists(checksumFile(from), checksumFile(generation(target, gen)));
+            moveIfExists(from, generation(target, gen));
+        }
+
+        // 4. Renames the new snapshot into place: checksum first, so a live file
+        //    never appears next to an older checksum
+        move(tmpCrc, checksumFile(target));
+        move(tmp, target);
+        syncDirectory(target);
+    }
+
+    /**
+     * Reads the newest intact snapshot: the live file if its checksum matches,
+     * otherwise the newest generation that does. Files without a checksum file
+     * (written before snapshots were checksummed) are trusted as they are.
+     * @param target The live file.
+     * @param generations How many older snapshots to consider.
+     * @return The content, or null if there is no snapshot at all.
+     * @throws IOException If files exist but none can be read intact.
+     */
+    static byte[] readLatest(Path target, int generations) throws IOException {
+        boolean found = false;
+        for (int gen = 0; gen <= generations; gen++) {
+            Path file = gen == 0 ? target : generation(target, gen);
+            byte[] data;
+            try {
+                data = Files.readAllBytes(file);
+            } catch (NoSuchFileException e) {
+                continue; // Missing generation, e.g. after a crash mid-rotation
+            }
+            found = true;
+            if (verify(file, data)) {
+                if (gen > 0) {
+                    System.out.println("Recovered " + target.getFileName() + " from generation " + gen);
+                }
+                return data;
+            }
+            System.out.println("Checksum mismatch in " + file.getFileName() + ", trying an older snapshot");
+        }
+        if (found) {
+            throw new IOException("No intact snapshot of " + target.getFileName());
+        }
+        return null;
+    }
+
+    /**
+     * Checks data against its checksum file.
+     * @param file The snapshot file.
+     * @param data The content read from it.
+     * @return True if the checksum matches or there is no checksum file.
+     */
+    private static boolean verify(Path file, byte[] data) throws IOException {
+        byte[] expected;
+        try {
+            expected = Files.readAllBytes(checksumFile(file));
+        } catch (NoSuchFileException e) {
+            return true; // Legacy file without a checksum
+        }
+        return Arrays.equals(expected, checksumLine(data));
+    }
+
+    /**
+     * Builds the checksum file content: CRC32C in hex and the length in bytes.
+     * @param data The snapshot content.
+     * @return The checksum line as bytes.
+     */
+    private static byte[] checksumLine(byte[] data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        return (Long.toHexString(crc.getValue()) + " " + data.length + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a file and forces it to disk.
+     * @param file The file to write.
+     * @param data The content.
+     */
+    private static void writeDurably(Path file, byte[] data) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true); // fsync
+        }
+    }
+
+    /**
+     * Renames a file atomically where the file system allows it.
+     * @param from The source file.
+     * @param to The destination file, replaced if present.
+     */
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Renames a file if it exists.
+     * @param from The source file.
+     * @param to The destination file.
+     */
+    private static void moveIfExists(Path from, Path to) throws IOException {
+        try {
+            move(from, to);
+        } catch (NoSuchFileException e) {
+            // Nothing to rotate yet
+        }
+    }
+
+    /**
+     * Forces the directory entry changes (the renames) to disk. Not every platform
+     * allows opening a directory, in which case this is skipped.
+     * @param target A file in the directory.
+     */
+    private static void syncDirectory(Path target) {
+        Path dir = target.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened on this platform
+        }
+    }
+
+    /**
+     * Returns the path of an older snapshot.
+     * @param target The live file.
+     * @param gen The generation, 1 being the newest older snapshot.
+     * @return The generation path, e.g. messages.json.1.
+     */
+    static Path generation(Path target, int gen) {
+        return sibling(target, "." + gen);
+    }
+
+    /**
+     * Returns the checksum file of a snapshot.
+     * @param file The snapshot file.
+     * @return The checksum path, e.g. messages.json.crc.
+     */
+    static Path checksumFile(Path file) {
+        return sibling(file, ".crc");
+    }
+
+    /**
+     * Appends a suffix to a file name.
+     * @param file The file.
+     * @param suffix The suffix.
+     * @return The sibling path.
+     */
+    private static Path sibling(Path file, String suffix) {
+        return file.resolveSibling(file.getFileName() + suffix);
+    }
+}
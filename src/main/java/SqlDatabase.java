@@ -0,0 +1,88 @@
+//Libraries
+import java.io.IOException;                    // Imports IOException for reporting SQL errors
+import java.io.UncheckedIOException;           // Imports UncheckedIOException for the registry
+import java.nio.file.Path;                     // Imports Path for the database location
+import java.sql.Connection;                    // Imports Connection for JDBC access
+import java.sql.SQLException;                  // Imports SQLException for JDBC errors
+import java.sql.Statement;                     // Imports Statement for creating the schema
+import java.util.Map;                          // Imports Map interface
+import java.util.concurrent.ConcurrentHashMap; // Imports ConcurrentHashMap for the database registry
+import org.h2.jdbcx.JdbcConnectionPool;        // Imports H2's connection pool
+
+/**
+ * Embedded H2 database in a data directory (quickchat.mv.db), shared by the sql message
+ * and user stores. No server is started: the database runs inside the app and keeps its
+ * data in the one file. Connections come from a pool, so each query borrows an open
+ * connection instead of opening the file again.
+ *
+ * Messages are indexed on ID, hash, recipient, time and conversation, so every lookup the
+ * app makes is an index search instead of a table scan.
+ */
+public class SqlDatabase {
+
+    // Most pooled connections
+    static final int POOL_SIZE = Integer.getInteger("quickchat.sql.pool", 8);
+
+    // One database per directory, shared by every store that uses it
+    private static final Map<Path, SqlDatabase> databases = new ConcurrentHashMap<>();
+
+    // Statements creating the schema; each is skipped if its table or index exists
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS messages (seq BIGINT PRIMARY KEY, id VARCHAR, hash VARCHAR,"
+                    + " recipient VARCHAR, sender VARCHAR, body VARCHAR, ts BIGINT)",
+            "CREATE INDEX IF NOT EXISTS messages_id ON messages(id)",
+            "CREATE INDEX IF NOT EXISTS messages_hash ON messages(hash)",
+            "CREATE INDEX IF NOT EXISTS messages_recipient ON messages(recipient)",
+            "CREATE INDEX IF NOT EXISTS messages_ts ON messages(ts)",
+            "CREATE INDEX IF NOT EXISTS messages_conversation ON messages(sender, recipient)",
+            "CREATE TABLE IF NOT EXISTS users (username VARCHAR PRIMARY KEY, password VARCHAR,"
+                    + " name VARCHAR, surname VARCHAR, cellphone VARCHAR)"
+    };
+
+    // The pool of connections to the database
+    private final JdbcConnectionPool pool;
+
+    /**
+     * Returns the shared database in a directory, opening it and creating its tables on first use.
+     * @param dir The directory holding quickchat.mv.db.
+     * @return The database.
+     * @throws IOException If the database cannot be opened.
+     */
+    public static SqlDatabase forDirectory(Path dir) throws IOException {
+        try {
+            return databases.computeIfAbsent(dir.toAbsolutePath().normalize(), d -> {
+                try {
+                    return new SqlDatabase("jdbc:h2:file:" + d.resolve("quickchat"));
+                } catch (SQLException e) {
+                    throw new UncheckedIOException(new IOException("Cannot open database in " + d + ": " + e.getMessage(), e));
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Opens a database and creates its tables and indexes if missing.
+     * @param url The JDBC URL.
+     * @throws SQLException If the database cannot be opened.
+     */
+    SqlDatabase(String url) throws SQLException {
+        pool = JdbcConnectionPool.create(url, "sa", "");
+        pool.setMaxConnections(Math.max(1, POOL_SIZE));
+        try (Connection c = pool.getConnection(); Statement s = c.createStatement()) {
+            for (String sql : SCHEMA) {
+                s.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool; closing it returns it to the pool.
+     * @return The connection, in auto-commit mode.
+     * @throws SQLException If no connection can be had.
+     */
+    public Connection connection() throws SQLException {
+        return pool.getConnection();
+    }
+}
@@ -0,0 +1,495 @@
+//Libraries
+import java.io.IOException;                    // Imports IOException for I/O errors
+import java.io.UncheckedIOException;           // Imports UncheckedIOException for the registry
+import java.nio.file.Path;                     // Imports Path for the data directory
+import java.sql.Connection;                    // Imports Connection for JDBC access
+import java.sql.PreparedStatement;             // Imports PreparedStatement for parameterised SQL
+import java.sql.ResultSet;                     // Imports ResultSet for query results
+import java.sql.SQLException;                  // Imports SQLException for JDBC errors
+import java.sql.Types;                         // Imports Types for binding null timestamps
+import java.util.ArrayDeque;                   // Imports ArrayDeque for the write queue
+import java.util.ArrayList;                    // Imports ArrayList for query results
+import java.util.Collections;                  // Imports Collections for reversing a page
+import java.util.List;                         // Imports List interface
+import java.util.Map;                          // Imports Map interface
+import java.util.concurrent.ConcurrentHashMap; // Imports ConcurrentHashMap for the store registry
+import java.util.function.Consumer;            // Imports Consumer for listing every message
+
+/**
+ * Message store in the embedded H2 database of a data directory ({@link SqlDatabase}),
+ * chosen with -Dquickchat.store=sql. Every lookup is an indexed query, and the table can
+ * be queried ad hoc with any SQL tool while the app is closed.
+ *
+ * Stored messages are queued and written by one writer thread, which inserts up to
+ * MAX_BATCH of them at a time with a single prepared statement, batched and committed as
+ * one transaction. Each message gets a sequence number when it is queued; that number is
+ * its primary key, keeps the store order, and is the reference {@link #store} returns.
+ * As with the sharded store, queries see the messages written so far, and
+ * {@link #flush()} waits for the queue. A batch that fails is retried; if it still cannot
+ * be written, the store stops taking messages and {@link #flush()} and
+ * {@link #awaitWritten} throw instead of returning, so no caller is told that a lost
+ * message was saved.
+ */
+public class SqlMessageStore implements MessageStore {
+
+    // Most messages inserted in one batch
+    static final int MAX_BATCH = 1024;
+    // Rows read per query while listing everything
+    static final int CHUNK = 4096;
+    // Attempts at writing a batch before the store gives up, and the pause before the first retry
+    static final int ATTEMPTS = 3;
+    private static final long RETRY_MILLIS = 100;
+
+    // One store per directory, shared by every instance that uses it
+    private static final Map<Path, SqlMessageStore> stores = new ConcurrentHashMap<>();
+
+    // Columns of a message, in the order rows are read and written
+    private static final String COLUMNS = "id, hash, recipient, body, sender, ts";
+    private static final String SELECT = "SELECT " + COLUMNS + " FROM messages ";
+    private static final String INSERT = "INSERT INTO messages (seq, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    // Used on retries, in case an earlier attempt committed before it failed
+    private static final String UPSERT = "MERGE INTO messages (seq, " + COLUMNS + ") KEY (seq) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    // Metric for batched inserts (no-op unless metrics are enabled)
+    private static final LatencyHistogram BATCH_TIMER = Metrics.timer("sql_insert_batch");
+
+    // The database
+    private final SqlDatabase db;
+    // The data directory, for leaving the registry on close
+    private final Path dir;
+    // Messages queued for the writer thread
+    private final ArrayDeque<MessageEntry> queue = new ArrayDeque<>();
+    // Sequence number of the next message queued, and of the next one to be written
+    private long nextSequence;
+    private long written;
+    // True once close() has been called
+    private boolean closed;
+    // Why a batch could not be written, or null; once set the store takes no more messages
+    private Exception failure;
+    // Formatted conversation pages, dropped as their conversations change
+    private final HistoryPageCache pageCache = new HistoryPageCache(HistoryPageCache.MAX_BYTES);
+
+    /**
+     * Returns the shared store for a directory, opening its database on first use.
+     * @param dir The directory holding quickchat.mv.db.
+     * @return The store.
+     * @throws IOException If the database cannot be opened.
+     */
+    public static SqlMessageStore forDirectory(Path dir) throws IOException {
+        try {
+            return stores.computeIfAbsent(dir.toAbsolutePath().normalize(), d -> {
+                try {
+                    SqlMessageStore store = new SqlMessageStore(SqlDatabase.forDirectory(d), d);
+                    Runtime.getRuntime().addShutdownHook(new Thread(store::flushOnExit)); // Writes what is queued on exit
+                    return store;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Opens the messages table of a database and starts the writer thread.
+     * @param db The database.
+     * @param dir The data directory it lives in.
+     * @throws IOException If the table cannot be read.
+     */
+    SqlMessageStore(SqlDatabase db, Path dir) throws IOException {
+        this.db = db;
+        this.dir = dir;
+        try (Connection c = db.connection();
+             PreparedStatement ps = c.prepareStatement("SELECT COALESCE(MAX(seq) + 1, 0) FROM messages");
+             ResultSet rows = ps.executeQuery()) {
+            rows.next();
+            nextSequence = rows.getLong(1); // New messages sort after everything saved
+            written = nextSequence;
+        } catch (SQLException e) {
+            throw new IOException("Cannot read messages: " + e.getMessage(), e);
+        }
+        Thread thread = new Thread(this::run, "sql-writer");
+        thread.setDaemon(true); // close() drains the queue instead
+        thread.start();
+    }
+
+    @Override
+    public synchronized int store(MessageEntry entry) {
+        checkOpen();
+        if (entry.Timestamp == null) {
+            entry = new MessageEntry(entry.MessageID, entry.MessageHash, entry.Recipient, entry.Message, entry.Sender,
+                    System.currentTimeMillis());
+        }
+        queue.addLast(entry);
+        notifyAll(); // Wakes the writer thread
+        return (int) nextSequence++;
+    }
+
+    @Override
+    public boolean update(String messageID, String hash, String message) {
+        return edit(messageID, hash, message, false);
+    }
+
+    @Override
+    public boolean delete(String messageID) {
+        return edit(messageID, null, null, true);
+    }
+
+    @Override
+    public MessageView view(int reference, MessageView view) {
+        awaitWritten(reference);
+        List<MessageEntry> found = select("WHERE seq = ?", reference);
+        MessageList row = new MessageList(); // A one-row list for the view to read from
+        if (found.isEmpty()) {
+            row.add(new MessageEntry(null, null, null, null)); // Deleted since
+            row.delete(0);
+        } else {
+            row.add(found.get(0));
+        }
+        return row.view(0, view);
+    }
+
+    @Override
+    public int size() {
+        try (Connection c = db.connection();
+             PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM messages");
+             ResultSet rows = ps.executeQuery()) {
+            rows.next();
+            return rows.getInt(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Database query failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<MessageView> action) {
+        MessageList chunk = new MessageList();
+        MessageView view = new MessageView();
+        long after = -1;
+        while (true) {
+            chunk.clear();
+            long last = after;
+            try (Connection c = db.connection();
+                 PreparedStatement ps = c.prepareStatement("SELECT seq, " + COLUMNS
+                         + " FROM messages WHERE seq > ? ORDER BY seq LIMIT " + CHUNK)) {
+                ps.setLong(1, after);
+                try (ResultSet rows = ps.executeQuery()) {
+                    while (rows.next()) {
+                        last = rows.getLong(1);
+                        chunk.add(entry(rows, 2));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Database query failed: " + e.getMessage(), e);
+            }
+            for (int i = 0; i < chunk.size(); i++) { // Outside the query, so the action may query too
+                action.accept(chunk.view(i, view));
+            }
+            if (chunk.size() < CHUNK) {
+                return;
+            }
+            after = last; // Keyset paging: only one chunk is held at a time
+        }
+    }
+
+    @Override
+    public List<MessageEntry> findMessagesBetween(long fromMillis, long toMillis) {
+        return select("WHERE ts >= ? AND ts < ? ORDER BY seq", fromMillis, toMillis);
+    }
+
+    @Override
+    public MessageEntry findMessageByID(String messageID) {
+        List<MessageEntry> found = select("WHERE id = ? ORDER BY seq LIMIT 1", messageID);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    @Override
+    public List<MessageEntry> findMessagesToRecipient(String recipient) {
+        return select("WHERE recipient = ? ORDER BY seq", recipient);
+    }
+
+    @Override
+    public List<MessageEntry> loadConversation(String a, String b, int limit) {
+        List<MessageEntry> page = select("WHERE (sender = ? AND recipient = ?) OR (sender = ? AND recipient = ?)"
+                + " ORDER BY seq DESC LIMIT ?", a, b, b, a, limit);
+        Collections.reverse(page); // Oldest first
+        return page;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws IllegalStateException If a queued message could not be written.
+     */
+    @Override
+    public synchronized void flush() {
+        while (written < nextSequence) {
+            checkWritable();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes what is queued when the JVM exits, reporting a failed store instead of throwing.
+     */
+    private void flushOnExit() {
+        try {
+            flush();
+        } catch (IllegalStateException e) {
+            System.out.println("Queued messages were not saved: " + e.getMessage()); // Prints message
+        }
+    }
+
+    /**
+     * Writes what is queued and stops the writer thread. The database stays open for
+     * other stores; opening this directory again gives a new store.
+     * @throws IOException If queued messages could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flush();
+        } catch (IllegalStateException e) {
+            throw new IOException(e.getMessage(), e.getCause());
+        } finally {
+            stores.remove(dir, this);
+        }
+    }
+
+    @Override
+    public HistoryPageCache pageCache() {
+        return pageCache;
+    }
+
+    /**
+     * Blocks until a stored message has been written.
+     * @param reference A reference returned by {@link #store}.
+     * @throws IllegalStateException If the message could not be written and never will be.
+     */
+    public synchronized void awaitWritten(int reference) {
+        while (written <= reference) {
+            checkWritable();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while writing messages", e);
+            }
+        }
+    }
+
+    /**
+     * Writer thread: takes up to MAX_BATCH queued messages at a time and inserts them.
+     */
+    private void run() {
+        List<MessageEntry> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            long first;
+            synchronized (this) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queue.isEmpty()) {
+                    return; // Closed and drained
+                }
+                first = written; // Queued in sequence order, so the batch's numbers follow on
+                while (batch.size() < MAX_BATCH && !queue.isEmpty()) {
+                    batch.add(queue.pollFirst());
+                }
+            }
+            Exception error = insertWithRetries(batch, first);
+            synchronized (this) {
+                if (error == null) {
+                    written += batch.size();
+                } else {
+                    failure = error; // Waiting callers throw instead of counting the batch as written
+                }
+                notifyAll(); // Wakes callers waiting for these messages
+            }
+            if (error != null) {
+                return; // References after the lost batch can never be honoured
+            }
+            for (MessageEntry entry : batch) { // Readers see the messages before caches drop their copies
+                changed(entry.Sender, entry.Recipient);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Inserts a batch, retrying a failed attempt with a growing pause.
+     * @return Null, or why the batch could still not be written.
+     */
+    private Exception insertWithRetries(List<MessageEntry> batch, long first) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                insert(batch, first, attempt == 1 ? INSERT : UPSERT);
+                return null;
+            } catch (SQLException | RuntimeException e) { // Anything, so the writer thread never dies silently
+                System.out.println("Error writing messages to the database (attempt " + attempt + " of " + ATTEMPTS
+                        + "): " + e.getMessage()); // Prints message
+                if (attempt == ATTEMPTS) {
+                    return e;
+                }
+                try {
+                    Thread.sleep(RETRY_MILLIS << (attempt - 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts a batch as one transaction with one prepared statement.
+     * @param sql INSERT, or MERGE on a retry.
+     * @throws SQLException If the batch was not committed.
+     */
+    private void insert(List<MessageEntry> batch, long first, String sql) throws SQLException {
+        long start = Metrics.start();
+        try (Connection c = db.connection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            c.setAutoCommit(false);
+            try {
+                long sequence = first;
+                for (MessageEntry entry : batch) {
+                    ps.setLong(1, sequence++);
+                    ps.setString(2, entry.MessageID);
+                    ps.setString(3, entry.MessageHash);
+                    ps.setString(4, entry.Recipient);
+                    ps.setString(5, entry.Message);
+                    ps.setString(6, entry.Sender);
+                    if (entry.Timestamp == null) ps.setNull(7, Types.BIGINT); else ps.setLong(7, entry.Timestamp);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true); // Pooled connections go back as they came
+            }
+        }
+        BATCH_TIMER.recordSince(start);
+    }
+
+    /**
+     * Refuses new messages once the store is closed or a batch has failed. Called under the lock.
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The sql message store is closed");
+        }
+        checkWritable();
+    }
+
+    /**
+     * Throws if a batch could not be written, so callers are never told a lost message
+     * was saved. Called under the lock.
+     */
+    private void checkWritable() {
+        if (failure != null) {
+            throw new IllegalStateException("The sql message store stopped after failing to write messages: "
+                    + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Edits or deletes the earliest message with an ID, once everything queued is written.
+     */
+    private boolean edit(String messageID, String hash, String message, boolean delete) {
+        synchronized (this) {
+            checkOpen();
+        }
+        flush(); // A message stored just before can be edited
+        String sender;
+        String recipient;
+        try (Connection c = db.connection();
+             PreparedStatement find = c.prepareStatement(
+                     "SELECT seq, sender, recipient FROM messages WHERE id = ? ORDER BY seq LIMIT 1")) {
+            find.setString(1, messageID);
+            long seq;
+            try (ResultSet rows = find.executeQuery()) {
+                if (!rows.next()) {
+                    return false;
+                }
+                seq = rows.getLong(1);
+                sender = rows.getString(2);
+                recipient = rows.getString(3);
+            }
+            try (PreparedStatement change = c.prepareStatement(delete ? "DELETE FROM messages WHERE seq = ?"
+                    : "UPDATE messages SET hash = ?, body = ? WHERE seq = ?")) {
+                if (!delete) {
+                    change.setString(1, hash);
+                    change.setString(2, message);
+                }
+                change.setLong(delete ? 1 : 3, seq);
+                if (change.executeUpdate() == 0) {
+                    return false; // Deleted by someone else in between
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Database update failed: " + e.getMessage(), e);
+        }
+        changed(sender, recipient);
+        return true;
+    }
+
+    /**
+     * Runs a query for whole messages.
+     * @param where The WHERE and ORDER BY clauses, with ? for each argument.
+     * @param args The arguments.
+     * @return The messages, in the order the query gives them.
+     */
+    private List<MessageEntry> select(String where, Object... args) {
+        List<MessageEntry> found = new ArrayList<>();
+        try (Connection c = db.connection(); PreparedStatement ps = c.prepareStatement(SELECT + where)) {
+            for (int i = 0; i < args.length; i++) {
+                ps.setObject(i + 1, args[i]);
+            }
+            try (ResultSet rows = ps.executeQuery()) {
+                while (rows.next()) {
+                    found.add(entry(rows, 1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Database query failed: " + e.getMessage(), e);
+        }
+        return found;
+    }
+
+    /**
+     * Reads a message from the current row, starting at a column.
+     */
+    private static MessageEntry entry(ResultSet rows, int column) throws SQLException {
+        long ts = rows.getLong(column + 5);
+        Long timestamp = rows.wasNull() ? null : ts;
+        return new MessageEntry(rows.getString(column), rows.getString(column + 1),
+                StringInterner.RECIPIENTS.intern(rows.getString(column + 2)),
+                StringInterner.MESSAGES.intern(rows.getString(column + 3)),
+                StringInterner.RECIPIENTS.intern(rows.getString(column + 4)), timestamp);
+    }
+
+    /**
+     * Called after a conversation's messages changed: drops its cached pages.
+     */
+    private void changed(String sender, String recipient) {
+        if (sender != null && recipient != null) {
+            pageCache.invalidate(ConversationIndex.conversationKey(sender, recipient));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+//Libraries
+import java.io.IOException;        // Imports IOException for I/O errors
+import java.sql.Connection;        // Imports Connection for JDBC access
+import java.sql.PreparedStatement; // Imports PreparedStatement for parameterised SQL
+import java.sql.ResultSet;         // Imports ResultSet for query results
+import java.sql.SQLException;      // Imports SQLException for JDBC errors
+import java.util.ArrayList;        // Imports ArrayList for removed users
+import java.util.HashMap;          // Imports HashMap for the users
+import java.util.List;             // Imports List interface
+import java.util.Map;              // Imports Map interface
+
+/**
+ * User store in the users table of the embedded H2 database ({@link SqlDatabase}), chosen
+ * with -Dquickchat.users.store=sql. A save writes only the users that are new or changed,
+ * with one batched MERGE, and removes users that are gone, in a single transaction.
+ */
+public class SqlUserStore implements UserStore {
+
+    // Metric for user saves (no-op unless metrics are enabled)
+    private static final LatencyHistogram SAVE_TIMER = Metrics.timer("save_users");
+
+    // The database
+    private final SqlDatabase db;
+    // JSON of every user as last saved or loaded, by username, to find what changed
+    private final Map<String, String> written = new HashMap<>();
+
+    /**
+     * Opens the users table of a database.
+     * @param db The database.
+     * @throws IOException If the table cannot be read.
+     */
+    public SqlUserStore(SqlDatabase db) throws IOException {
+        this.db = db;
+        load(); // Learns what is already saved
+    }
+
+    @Override
+    public synchronized Map<String, User> load() throws IOException {
+        Map<String, User> users = new HashMap<>();
+        try (Connection c = db.connection();
+             PreparedStatement ps = c.prepareStatement("SELECT username, password, name, surname, cellphone FROM users");
+             ResultSet rows = ps.executeQuery()) {
+            while (rows.next()) {
+                User user = new User();
+                user.setUsername(rows.getString(1));
+                user.setPassword(rows.getString(2));
+                user.setName(rows.getString(3));
+                user.setSurname(rows.getString(4));
+                user.setCellphoneNumber(rows.getString(5));
+                users.put(user.getUsername(), user);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Cannot read users: " + e.getMessage(), e);
+        }
+        written.clear();
+        for (Map.Entry<String, User> e : users.entrySet()) {
+            written.put(e.getKey(), JsonSupport.COMPACT.toJson(e.getValue()));
+        }
+        return users;
+    }
+
+    @Override
+    public synchronized void save(Map<String, User> users) throws IOException {
+        long start = Metrics.start();
+        Map<String, String> changed = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+        try (Connection c = db.connection();
+             PreparedStatement merge = c.prepareStatement(
+                     "MERGE INTO users (username, password, name, surname, cellphone) KEY (username) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement remove = c.prepareStatement("DELETE FROM users WHERE username = ?")) {
+            for (Map.Entry<String, User> e : users.entrySet()) {
+                String json = JsonSupport.COMPACT.toJson(e.getValue());
+                if (!json.equals(written.get(e.getKey()))) { // New or changed since the last save
+                    User user = e.getValue();
+                    merge.setString(1, e.getKey());
+                    merge.setString(2, user.getPassword());
+                    merge.setString(3, user.getName());
+                    merge.setString(4, user.getSurname());
+                    merge.setString(5, user.getCellphoneNumber());
+                    merge.addBatch();
+                    changed.put(e.getKey(), json);
+                }
+            }
+            for (String username : written.keySet()) {
+                if (!users.containsKey(username)) {
+                    remove.setString(1, username);
+                    remove.addBatch();
+                    removed.add(username);
+                }
+            }
+            if (changed.isEmpty() && removed.isEmpty()) {
+                return; // Nothing changed
+            }
+            c.setAutoCommit(false);
+            try {
+                merge.executeBatch();
+                remove.executeBatch();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true); // Pooled connections go back as they came
+            }
+        } catch (SQLException e) {
+            throw new IOException("Cannot save users: " + e.getMessage(), e);
+        }
+        written.putAll(changed); // Only once the transaction is committed
+        written.keySet().removeAll(removed);
+        SAVE_TIMER.recordSince(start);
+    }
+
+    @Override
+    public void flush() {
+        // Every save is committed before it returns
+    }
+
+    @Override
+    public void close() {
+        flush(); // The database stays open for other stores
+    }
+}
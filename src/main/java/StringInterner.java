@@ -0,0 +1,79 @@
+//Libraries
+import java.util.concurrent.atomic.AtomicReferenceArray; // Imports AtomicReferenceArray for the lock-free slots
+
+/**
+ * Bounded, lock-free pool that hands out one shared copy of frequently repeated strings.
+ *
+ * Real traffic goes to a few recipients and repeats short bodies ("ok", "on my way"),
+ * yet every decoded message would otherwise carry its own copies. Unlike String.intern()
+ * the pool has a fixed number of slots: each string hashes to a pair of slots, a hit
+ * returns the pooled copy, and a miss takes the first slot, pushing its old occupant to
+ * the second. Strings that stop being used are simply overwritten, so the pool never grows.
+ *
+ * Hits and misses are counted as intern_NAME_hits and intern_NAME_misses.
+ */
+public class StringInterner {
+
+    // Slots per pool; 0 turns interning off (-Dquickchat.intern.slots=0)
+    static final int SLOTS = Integer.getInteger("quickchat.intern.slots", 4096);
+
+    // Pool for recipients' cell numbers
+    public static final StringInterner RECIPIENTS = new StringInterner("recipients", SLOTS, 16);
+    // Pool for short message bodies
+    public static final StringInterner MESSAGES = new StringInterner("messages", SLOTS, 32);
+
+    // Slots, in pairs; null when interning is off
+    private final AtomicReferenceArray<String> slots;
+    // Mask selecting a slot pair from a hash
+    private final int mask;
+    // Longer strings are returned as they are, since they rarely repeat
+    private final int maxLength;
+    // Hit and miss counters for the metrics exporters
+    private final MetricCounter hits;
+    private final MetricCounter misses;
+
+    /**
+     * Creates a pool.
+     * @param name The name used in the metrics.
+     * @param slots The number of slots, rounded up to a power of two; 0 disables the pool.
+     * @param maxLength The longest string worth pooling.
+     */
+    public StringInterner(String name, int slots, int maxLength) {
+        int size = slots <= 0 ? 0 : Math.max(2, Integer.highestOneBit(slots - 1) << 1);
+        this.slots = size == 0 ? null : new AtomicReferenceArray<>(size);
+        this.mask = size - 2; // Even indexes only: each hash owns slots i and i + 1
+        this.maxLength = maxLength;
+        this.hits = Metrics.counter("intern_" + name + "_hits");
+        this.misses = Metrics.counter("intern_" + name + "_misses");
+    }
+
+    /**
+     * Returns the pooled copy of a string, pooling this one if there is none.
+     * @param value The string; may be null.
+     * @return An equal string, shared with earlier callers where possible.
+     */
+    public String intern(String value) {
+        if (slots == null || value == null || value.length() > maxLength) {
+            return value;
+        }
+        int hash = value.hashCode();
+        int first = (hash ^ (hash >>> 16)) & mask; // Spreads the high bits, like HashMap
+        String pooled = slots.getAcquire(first);
+        if (value.equals(pooled)) {
+            hits.increment();
+            return pooled;
+        }
+        String second = slots.getAcquire(first + 1);
+        if (value.equals(second)) {
+            hits.increment();
+            return second;
+        }
+        // Miss: a racing thread may pool the same string twice, which only costs a duplicate
+        misses.increment();
+        if (pooled != null) {
+            slots.setRelease(first + 1, pooled); // Keeps the previous occupant one more round
+        }
+        slots.setRelease(first, value);
+        return value;
+    }
+}
@@ -0,0 +1,185 @@
+//Libraries
+import java.util.function.Consumer; // Imports Consumer for receiving due values
+
+/**
+ * Hierarchical timing wheel: a timer queue where adding and cancelling a timer are O(1)
+ * however many timers are pending.
+ *
+ * Time is counted in ticks. Level 0 has one slot per tick for the next 64 ticks, level 1
+ * one slot per 64 ticks for the next 64², and so on up to six levels. A timer goes into
+ * the slot of the lowest level that reaches its deadline, as a node in that slot's doubly
+ * linked list, so cancelling it is an unlink. When time reaches a higher-level slot, its
+ * timers cascade down into finer slots; each timer cascades at most once per level, so
+ * the work per timer stays constant. Deadlines past the top level wait in its furthest
+ * slot and are placed again when they get there.
+ *
+ * Not thread-safe; the owner locks around every call.
+ * @param <T> The type of value a timer carries.
+ */
+public class TimingWheel<T> {
+
+    // Slots per level (a power of two, so slot math is shifts and masks)
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    // Number of levels; 64^6 ticks is over 2000 years at one-second ticks
+    private static final int LEVELS = 6;
+    // Farthest a timer is placed ahead of the current tick
+    private static final long MAX_SPAN = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    // Length of a tick in milliseconds
+    private final long tickMillis;
+    // Sentinel node of every slot's list, by level and slot
+    private final Timer<T>[][] slots;
+    // Last tick whose timers have fired
+    private long currentTick;
+    // Number of pending timers
+    private int size;
+
+    /**
+     * A pending timer, returned by {@link #add} and accepted by {@link #cancel}.
+     * @param <T> The type of value it carries.
+     */
+    public static final class Timer<T> {
+        private final T value;
+        private long deadline; // In ticks
+        private Timer<T> prev;
+        private Timer<T> next;
+
+        private Timer(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Returns the value the timer carries.
+         * @return The value.
+         */
+        public T value() {
+            return value;
+        }
+
+        /**
+         * Returns whether the timer is still waiting to fire.
+         * @return True if pending.
+         */
+        public boolean isPending() {
+            return next != null;
+        }
+    }
+
+    /**
+     * Creates an empty wheel.
+     * @param tickMillis The length of a tick in milliseconds.
+     * @param nowMillis The current time in milliseconds.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic arrays can only be created raw
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        this.slots = new Timer[LEVELS][SLOTS];
+        for (Timer<T>[] level : slots) {
+            for (int i = 0; i < SLOTS; i++) {
+                Timer<T> sentinel = new Timer<>(null, 0);
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                level[i] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Adds a timer. A deadline that has already passed fires on the next tick.
+     * @param value The value to hand back when the timer fires.
+     * @param dueMillis The deadline in milliseconds.
+     * @return The timer, for cancelling.
+     */
+    public Timer<T> add(T value, long dueMillis) {
+        long deadline = Math.max(currentTick + 1, (dueMillis + tickMillis - 1) / tickMillis); // Never early
+        Timer<T> timer = new Timer<>(value, deadline);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Cancels a timer.
+     * @param timer A timer returned by {@link #add}.
+     * @return True if it was pending; false if it had already fired or been cancelled.
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (!timer.isPending()) {
+            return false;
+        }
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the number of pending timers.
+     * @return The count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves time forward, handing every timer whose deadline has been reached to
+     * {@code due}, earliest tick first.
+     * @param nowMillis The current time in milliseconds.
+     * @param due Receives the value of each timer that fires.
+     */
+    public void advance(long nowMillis, Consumer<T> due) {
+        long target = nowMillis / tickMillis;
+        while (currentTick < target) {
+            long tick = ++currentTick;
+            // Cascades each level whose slot boundary this tick crosses, coarsest timers moving down
+            for (int level = 1; level < LEVELS && (tick & ((1L << (SLOT_BITS * level)) - 1)) == 0; level++) {
+                Timer<T> sentinel = slots[level][(int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1)];
+                for (Timer<T> timer = sentinel.next; timer != sentinel; ) {
+                    Timer<T> next = timer.next;
+                    unlink(timer);
+                    place(timer); // Lands in a finer slot, or this tick's slot if due now
+                    timer = next;
+                }
+            }
+            Timer<T> sentinel = slots[0][(int) tick & (SLOTS - 1)];
+            while (sentinel.next != sentinel) {
+                Timer<T> timer = sentinel.next;
+                unlink(timer);
+                size--;
+                due.accept(timer.value);
+            }
+            if (size == 0) {
+                currentTick = Math.max(currentTick, target); // Nothing pending, so idle ticks are skipped
+            }
+        }
+    }
+
+    /**
+     * Links a timer into the slot of the lowest level that reaches its deadline.
+     */
+    private void place(Timer<T> timer) {
+        long delta = Math.min(Math.max(timer.deadline - currentTick, 0), MAX_SPAN);
+        long at = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        Timer<T> sentinel = slots[level][(int) (at >>> (SLOT_BITS * level)) & (SLOTS - 1)];
+        timer.prev = sentinel.prev;
+        timer.next = sentinel;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
+    }
+
+    /**
+     * Removes a timer from its slot's list.
+     */
+    private static <T> void unlink(Timer<T> timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+}
@@ -0,0 +1,48 @@
+//Libraries
+import com.google.gson.TypeAdapter;          // Imports TypeAdapter, the base for streaming adapters
+import com.google.gson.stream.JsonReader;    // Imports JsonReader for streaming input
+import com.google.gson.stream.JsonToken;     // Imports JsonToken to detect nulls
+import com.google.gson.stream.JsonWriter;    // Imports JsonWriter for streaming output
+import java.io.IOException;                  // Imports IOException for I/O errors
+
+/**
+ * Hand-written Gson adapter for User.
+ * Writes the fields in declaration order and skips nulls, exactly like Gson's reflective
+ * binding, so users.json stays byte-for-byte the same while skipping reflection entirely.
+ */
+public class UserAdapter extends TypeAdapter<User> {
+
+    @Override
+    public void write(JsonWriter out, User user) throws IOException {
+        out.beginObject();
+        out.name("name").value(user.getName());       // Null values are dropped with their name
+        out.name("surname").value(user.getSurname());
+        out.name("username").value(user.getUsername());
+        out.name("password").value(user.getPassword());
+        out.name("cellphoneNumber").value(user.getCellphoneNumber());
+        out.endObject();
+    }
+
+    @Override
+    public User read(JsonReader in) throws IOException {
+        User user = new User();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) { // Explicit nulls leave the field unset
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "name": user.setName(in.nextString()); break;
+                case "surname": user.setSurname(in.nextString()); break;
+                case "username": user.setUsername(in.nextString()); break;
+                case "password": user.setPassword(in.nextString()); break;
+                case "cellphoneNumber": user.setCellphoneNumber(in.nextString()); break;
+                default: in.skipValue(); // Ignores fields this version does not know
+            }
+        }
+        in.endObject();
+        return user;
+    }
+}
@@ -1,10 +1,7 @@
 //Libraries
-import com.google.gson.Gson; // Imports the Gson library for JSON serialization/deserialization
-import com.google.gson.reflect.TypeToken; // Imports TypeToken for handling generic types with Gson
-
 import javax.swing.*; // Imports Swing for GUI components
-import java.io.*;     // Imports classes for input/output operations (File, Reader, Writer)
-import java.lang.reflect.Type; // Imports Type for reflection operations
+import java.io.IOException; // Imports IOException for I/O errors
+import java.nio.file.Paths; // Imports Paths for building file paths
 import java.util.HashMap; // Imports HashMap for storing users
 import java.util.Map;     // Imports Map interface
 
@@ -14,14 +11,22 @@ public class UserManager {
     private Map<String, User> users = new HashMap<>();
     // The file path where user data will be saved/loaded (JSON format)
     private final String filePath = "users.json";
-    // An instance of Gson for converting Java objects to/from JSON
-    private final Gson gson = new Gson();
+    // Where users are saved and loaded (-Dquickchat.users.store), opened on first use
+    private UserStore userStore;
     // An instance of the Validation class to perform input validation
     private final Validation validator = new Validation();
 
     // Variable to represent the currently logged-in user
     private User loggedInUser = null;
 
+    // Metric for loading users (no-op unless metrics are enabled)
+    private static final LatencyHistogram LOAD_TIMER = Metrics.timer("load_users");
+
+    // Most user profiles kept in the profile cache
+    static final int MAX_PROFILES = Integer.getInteger("quickchat.profiles.max", 10_000);
+    // Password-free profiles by username and cellphone, read without locking
+    private final UserProfile.Cache profiles = new UserProfile.Cache(MAX_PROFILES);
+
     //Constructor, each time a constructor for this class is created, it will load the currently registered users for login purposes
     public UserManager() {
         loadUsers(); // Calls the method to load users from the JSON file
@@ -42,19 +47,32 @@ public class UserManager {
         String surname = JOptionPane.showInputDialog("Enter surname:");
         String cellphone = JOptionPane.showInputDialog("Enter cellphone (+27XXXXXXXXX):");
 
+        // Registers the user and displays the outcome
+        JOptionPane.showMessageDialog(null, registerUser(username, password, name, surname, cellphone));
+    }
+
+    /**
+     * Registers a user without any dialogs.
+     * Validates the details, rejects taken usernames and saves the new user.
+     * @param username The desired username.
+     * @param password The desired password.
+     * @param name The user's name.
+     * @param surname The user's surname.
+     * @param cellphone The user's cellphone number.
+     * @return The message describing the outcome of the registration.
+     */
+    public synchronized String registerUser(String username, String password, String name, String surname, String cellphone) {
         // Validates the entered details using the Validation class
         String validationResult = validator.registerUser(username, password, cellphone);
 
         // Checks if the validation failed (i.e., the result message does not contain "User registered successfully")
         if (!validationResult.contains("User registered successfully")) {
-            JOptionPane.showMessageDialog(null, "❌ Registration failed:\n" + validationResult); // Displays validation errors
-            return; // Exits the method if validation fails
+            return "❌ Registration failed:\n" + validationResult; // Returns validation errors
         }
 
         // Checks if the username already exists in the system
         if (users.containsKey(username)) {
-            JOptionPane.showMessageDialog(null, "❌ Username already exists."); // Informs user if username is taken
-            return; // Exits the method
+            return "❌ Username already exists."; // Informs user if username is taken
         }
 
         // Creates a new User object and sets its properties
@@ -65,9 +83,38 @@ public class UserManager {
         newUser.setSurname(surname);
         newUser.setCellphoneNumber(cellphone);
         users.put(username, newUser); // Adds the new user to the map
+        profiles.put(new UserProfile(newUser)); // Caches the new user's profile
         saveUsers(); // Saves the updated user data to the JSON file
 
-        JOptionPane.showMessageDialog(null, "✅ Registration successful!"); // Confirms successful registration
+        return "✅ Registration successful!"; // Confirms successful registration
+    }
+
+    /**
+     * Changes the logged-in user's name, surname and cellphone number, saves them and
+     * refreshes the cached profile.
+     * @param name The new name.
+     * @param surname The new surname.
+     * @param cellphone The new cellphone number.
+     * @return The message describing the outcome of the update.
+     */
+    public synchronized String updateProfile(String name, String surname, String cellphone) {
+        if (loggedInUser == null) {
+            return "⚠️ You are not logged in."; // Only the logged-in user's profile can change
+        }
+        if (!Validation.checkCellPhoneNumber(cellphone)) {
+            return "❌ Cell number is incorrectly formatted or does not contain an international code, please correct the number and try again"; // Keeps the old details
+        }
+        User updated = new User(); // A new object, since the last saved one may still be being written
+        updated.setUsername(loggedInUser.getUsername());
+        updated.setPassword(loggedInUser.getPassword());
+        updated.setName(name);
+        updated.setSurname(surname);
+        updated.setCellphoneNumber(cellphone);
+        users.put(updated.getUsername(), updated);
+        loggedInUser = updated;
+        profiles.put(new UserProfile(updated)); // Replaces the cached profile
+        saveUsers(); // Saves the updated user data to the JSON file
+        return "✅ Profile updated!";
     }
 
     /**
@@ -83,10 +130,8 @@ public class UserManager {
             String username = JOptionPane.showInputDialog("Enter username:"); // Prompts for username
             String password = JOptionPane.showInputDialog("Enter password:"); // Prompts for password
 
-            // Attempts to log in the user using the Validation class
-            boolean success = validator.loginUser(username, password, users);
-            if (success) {
-                loggedInUser = users.get(username); // Sets the loggedInUser if login is successful
+            // Attempts to log in the user
+            if (loginUser(username, password)) {
                 JOptionPane.showMessageDialog(null, "✅ " + validator.returnLoginStatus()); // Displays success message
                 break; // Exits the loop on successful login
             } else {
@@ -101,6 +146,21 @@ public class UserManager {
         }
     }
 
+    /**
+     * Logs a user in without any dialogs.
+     * The outcome message is available from the validator's login status.
+     * @param username The login username.
+     * @param password The login password.
+     * @return True if the credentials are correct, false otherwise.
+     */
+    public boolean loginUser(String username, String password) {
+        boolean success = validator.loginUser(username, password, users); // Checks the credentials using the Validation class
+        if (success) {
+            loggedInUser = users.get(username); // Sets the loggedInUser if login is successful
+        }
+        return success;
+    }
+
     /**
      * Handles the user logout process.
      * If a user is logged in, it logs them out and clears the loggedInUser.
@@ -134,30 +194,76 @@ public class UserManager {
      * Displays the profile information of the currently logged-in user.
      */
     public void viewProfile() {
-        if (loggedInUser != null) { // Checks if a user is logged in
-            // Constructs the profile string with user's details
-            String profile = "\n👤 --- User Profile ---\n" +
-                    "Name: " + loggedInUser.getName() + "\n" +
-                    "Surname: " + loggedInUser.getSurname() + "\n" +
-                    "Username: " + loggedInUser.getUsername() + "\n" +
-                    "Cellphone: " + loggedInUser.getCellphoneNumber();
-            JOptionPane.showMessageDialog(null, profile); // Displays the profile
+        User user = loggedInUser;
+        if (user != null) { // Checks if a user is logged in
+            UserProfile profile = getProfile(user.getUsername()); // The cached profile
+            if (profile == null) {
+                profile = new UserProfile(user); // Logged in without being in the user map
+            }
+            JOptionPane.showMessageDialog(null, profile.text()); // Displays the profile
         } else {
             JOptionPane.showMessageDialog(null, "⚠️ You are not logged in."); // Informs if no user is logged in
         }
     }
 
+    /**
+     * Returns a user's profile. Cached profiles are returned without locking; any other
+     * is built from the user map and cached.
+     * @param username The username.
+     * @return The profile, or null if there is no such user.
+     */
+    public UserProfile getProfile(String username) {
+        UserProfile profile = profiles.byUsername(username);
+        if (profile != null) {
+            return profile;
+        }
+        synchronized (this) { // Reads the user map while no registration is changing it
+            User user = username == null ? null : users.get(username);
+            if (user == null) {
+                return null;
+            }
+            profile = new UserProfile(user);
+            profiles.put(profile);
+            return profile;
+        }
+    }
+
+    /**
+     * Returns the profile of the user with a cellphone number, as used for message recipients.
+     * Cached profiles are returned without locking; otherwise the users are searched.
+     * @param cellphoneNumber The cellphone number.
+     * @return The profile, or null if no user has that number.
+     */
+    public UserProfile findProfileByCellphone(String cellphoneNumber) {
+        UserProfile profile = profiles.byCellphone(cellphoneNumber);
+        if (profile != null || cellphoneNumber == null) {
+            return profile;
+        }
+        synchronized (this) {
+            for (User user : users.values()) {
+                if (cellphoneNumber.equals(user.getCellphoneNumber())) {
+                    profile = new UserProfile(user);
+                    profiles.put(profile);
+                    return profile;
+                }
+            }
+            return null;
+        }
+    }
+
 
     // Methods to Manage User Data Storage
 
     /**
-     * Saves the current map of users to a JSON file (`users.json`).
+     * Saves the current map of users to the user store (`users.json` by default).
+     * The map is copied here; the JSON store writes it as a crash-safe snapshot. A failed save is shown in a dialog.
      * This method is protected, meaning it can be accessed within the package
      * or by subclasses.
      */
     protected void saveUsers() {
-        try (Writer writer = new FileWriter(filePath)) { // Opens a FileWriter to the specified file path
-            gson.toJson(users, writer); // Serializes the 'users' map to JSON and writes it to the file
+        Map<String, User> snapshot = new HashMap<>(users); // Copy that the writer thread can read safely
+        try {
+            userStore().save(snapshot);
         } catch (IOException e) {
             // Displays an error message if there's an issue saving the data
             JOptionPane.showMessageDialog(null, "Error saving user data: " + e.getMessage());
@@ -165,22 +271,35 @@ public class UserManager {
     }
 
     /**
-     * Loads user data from the JSON file (`users.json`) into the 'users' map.
-     * If the file doesn't exist, it initializes an empty HashMap for users.
+     * Loads user data from the user store (`users.json` by default) into the 'users' map.
+     * If nothing was saved yet, it initializes an empty HashMap for users.
      * This method is protected.
      */
-    protected void loadUsers() {
-        try (Reader reader = new FileReader(filePath)) { // Opens a FileReader from the specified file path
-            // Defines the generic type for Gson to correctly deserialize the Map
-            Type type = new TypeToken<Map<String, User>>() {}.getType();
-            users = gson.fromJson(reader, type); // Deserializes the JSON data into the 'users' map
-            if (users == null) users = new HashMap<>(); // If the file was empty or contained null, initialize as empty map
-        } catch (FileNotFoundException e) {
-            // If the file does not exist, it's the first run, so initialize an empty map
-            users = new HashMap<>();
+    protected synchronized void loadUsers() {
+        profiles.clear(); // Rebuilt from the loaded users as they are asked for
+        long start = Metrics.start(); // Starts the latency measurement
+        try {
+            users = userStore().load();
         } catch (IOException e) {
             // Displays an error message if there's an issue loading the data (other than file not found)
             JOptionPane.showMessageDialog(null, "Error loading user data: " + e.getMessage());
         }
+        LOAD_TIMER.recordSince(start);
+    }
+
+    /**
+     * Returns the store for the users file, opening it on first use.
+     * @return The user store.
+     */
+    private synchronized UserStore userStore() {
+        if (userStore == null) {
+            try {
+                userStore = UserStore.open(UserStore.BACKEND, Paths.get(filePath));
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Error opening " + UserStore.BACKEND + " users: " + e.getMessage() + "; using " + filePath);
+                userStore = new JsonUserStore(Paths.get(filePath));
+            }
+        }
+        return userStore;
     }
-}
\ No newline at end of file
+}
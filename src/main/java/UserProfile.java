@@ -0,0 +1,137 @@
+//Libraries
+import java.util.Iterator;                     // Imports Iterator for dropping a profile when full
+import java.util.Map;                          // Imports Map interface
+import java.util.concurrent.ConcurrentHashMap; // Imports ConcurrentHashMap for lock-free lookups
+
+/**
+ * Read-only view of a {@link User} for showing and looking up profiles: everything but
+ * the password. A profile never changes once built, so any number of threads can read
+ * one without locking; when the user changes, a new profile replaces it.
+ */
+public final class UserProfile {
+
+    private final String username;
+    private final String name;
+    private final String surname;
+    private final String cellphoneNumber;
+    // The profile as shown by UserManager.viewProfile, built once
+    private final String text;
+
+    /**
+     * Builds the profile of a user.
+     * @param user The user.
+     */
+    public UserProfile(User user) {
+        this.username = user.getUsername();
+        this.name = user.getName();
+        this.surname = user.getSurname();
+        this.cellphoneNumber = user.getCellphoneNumber();
+        this.text = "\n👤 --- User Profile ---\n" +
+                "Name: " + name + "\n" +
+                "Surname: " + surname + "\n" +
+                "Username: " + username + "\n" +
+                "Cellphone: " + cellphoneNumber;
+    }
+
+    public String getUsername() { return username; }
+    public String getName() { return name; }
+    public String getSurname() { return surname; }
+    public String getCellphoneNumber() { return cellphoneNumber; }
+
+    /**
+     * Returns the profile formatted for display.
+     * @return The profile text.
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Bounded cache of profiles by username and by cellphone number. Lookups are plain
+     * concurrent-map reads. When the cache is full, an arbitrary profile is dropped to
+     * make room; it is rebuilt from its user the next time it is asked for.
+     */
+    public static final class Cache {
+
+        // Most profiles kept
+        private final int maxProfiles;
+        // Profiles by username and by cellphone number
+        private final Map<String, UserProfile> byUsername = new ConcurrentHashMap<>();
+        private final Map<String, UserProfile> byCellphone = new ConcurrentHashMap<>();
+
+        /**
+         * Creates an empty cache.
+         * @param maxProfiles The most profiles to keep.
+         */
+        public Cache(int maxProfiles) {
+            this.maxProfiles = Math.max(1, maxProfiles);
+        }
+
+        /**
+         * Returns a cached profile by username.
+         * @param username The username.
+         * @return The profile, or null if it is not cached.
+         */
+        public UserProfile byUsername(String username) {
+            return username == null ? null : byUsername.get(username);
+        }
+
+        /**
+         * Returns a cached profile by cellphone number.
+         * @param cellphoneNumber The cellphone number.
+         * @return The profile, or null if it is not cached.
+         */
+        public UserProfile byCellphone(String cellphoneNumber) {
+            return cellphoneNumber == null ? null : byCellphone.get(cellphoneNumber);
+        }
+
+        /**
+         * Caches a profile, replacing the user's old one. Writers are serialised by the caller.
+         * @param profile The profile.
+         */
+        public void put(UserProfile profile) {
+            if (profile.username == null) {
+                return;
+            }
+            UserProfile old = byUsername.get(profile.username);
+            if (old == null) {
+                while (byUsername.size() >= maxProfiles) {
+                    Iterator<UserProfile> it = byUsername.values().iterator();
+                    remove(it.next()); // Dropped; rebuilt on its next lookup
+                }
+            } else if (old.cellphoneNumber != null && !old.cellphoneNumber.equals(profile.cellphoneNumber)) {
+                byCellphone.remove(old.cellphoneNumber, old); // The number moved
+            }
+            byUsername.put(profile.username, profile);
+            if (profile.cellphoneNumber != null) {
+                byCellphone.put(profile.cellphoneNumber, profile);
+            }
+        }
+
+        /**
+         * Drops every profile.
+         */
+        public void clear() {
+            byUsername.clear();
+            byCellphone.clear();
+        }
+
+        /**
+         * Returns the number of cached profiles.
+         * @return The count.
+         */
+        public int size() {
+            return byUsername.size();
+        }
+
+        /**
+         * Drops one profile from both maps.
+         */
+        private void remove(UserProfile profile) {
+            byUsername.remove(profile.username, profile);
+            if (profile.cellphoneNumber != null) {
+                byCellphone.remove(profile.cellphoneNumber, profile);
+            }
+        }
+    }
+}
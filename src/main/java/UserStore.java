@@ -0,0 +1,71 @@
+//Libraries
+import java.io.IOException; // Imports IOException for I/O errors
+import java.nio.file.Path;  // Imports Path for the users file
+import java.util.Map;       // Imports Map interface
+
+/**
+ * Storage engine for registered users. {@link UserManager} loads every user once and
+ * hands the store the complete set after each change; UserStoreConformanceTest checks that
+ * every backend gives the same users back.
+ *
+ * Backends, chosen with -Dquickchat.users.store:
+ * - json: users.json rewritten as a snapshot after each change ({@link JsonUserStore})
+ * - log: users.log, to which only the users that changed are appended ({@link LogUserStore})
+ * - sql: the users table of an embedded H2 database file, quickchat.mv.db ({@link SqlUserStore})
+ * - memory: nothing written to disk, for tests and benchmarks ({@link InMemoryUserStore})
+ */
+public interface UserStore extends AutoCloseable {
+
+    // Backend used by UserManager
+    String BACKEND = System.getProperty("quickchat.users.store", "json");
+
+    /**
+     * Opens a backend's store.
+     * @param backend "json", "log", "sql" or "memory".
+     * @param file The users.json file; the log and sql backends use users.log and quickchat.mv.db next to it.
+     * @return The store.
+     * @throws IOException If the store cannot be opened.
+     * @throws IllegalArgumentException If the backend is unknown.
+     */
+    static UserStore open(String backend, Path file) throws IOException {
+        switch (backend) {
+            case "json":
+                return new JsonUserStore(file);
+            case "log":
+                String name = file.getFileName().toString().replaceFirst("\\.json$", "");
+                return new LogUserStore(file.resolveSibling(name + ".log"));
+            case "sql":
+                return new SqlUserStore(SqlDatabase.forDirectory(file.toAbsolutePath().getParent()));
+            case "memory":
+                return new InMemoryUserStore();
+            default:
+                throw new IllegalArgumentException("Unknown user store " + backend + "; use json, log, sql or memory");
+        }
+    }
+
+    /**
+     * Reads every saved user, waiting for pending saves first.
+     * @return The users by username; a new map the caller may change.
+     * @throws IOException If the saved users cannot be read.
+     */
+    Map<String, User> load() throws IOException;
+
+    /**
+     * Saves the complete set of users. The store may write in the background; {@link #flush()} waits for that.
+     * @param users The users by username; neither the map nor its users are changed by the caller afterwards.
+     * @throws IOException If the users cannot be written.
+     */
+    void save(Map<String, User> users) throws IOException;
+
+    /**
+     * Blocks until every save so far has been written.
+     */
+    void flush();
+
+    /**
+     * Writes what is pending and releases the store's files.
+     * @throws IOException If a file cannot be closed.
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -5,6 +5,10 @@ public class Validation {
     // Stores the message about the last login attempt
     private String loginStatus = "";
 
+    // Metrics for login attempts (no-ops unless metrics are enabled)
+    private static final LatencyHistogram LOGIN_TIMER = Metrics.timer("login_user");
+    private static final MetricCounter LOGIN_FAILURES = Metrics.counter("login_failures");
+
     // ## Validation Methods
 
     /**
@@ -104,6 +108,21 @@ public class Validation {
      * @return True if login is successful, false otherwise.
      */
     public boolean loginUser(String username, String password, Map<String, User> users) {
+        long start = Metrics.start(); // Starts the latency measurement
+        boolean success = checkLogin(username, password, users);
+        if (!success) LOGIN_FAILURES.increment();
+        LOGIN_TIMER.recordSince(start);
+        return success;
+    }
+
+    /**
+     * Checks the credentials and updates `loginStatus`.
+     * @param username The login username.
+     * @param password The login password.
+     * @param users A map of existing users.
+     * @return True if login is successful, false otherwise.
+     */
+    private boolean checkLogin(String username, String password, Map<String, User> users) {
         if (!users.containsKey(username)) { // Check if username exists
             loginStatus = "Username does not exist."; // Set status
             return false; // Login failed
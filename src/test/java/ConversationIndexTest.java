@@ -0,0 +1,44 @@
+//Libraries
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+// Test class for the index of two-way conversations
+public class ConversationIndexTest {
+
+    // Test to verify that both directions of a conversation share one list
+    @Test
+    void testAdd_EitherDirectionIsOneConversation() {
+        ConversationIndex index = new ConversationIndex();
+        index.add("+27111111111", "+27222222222", 0);
+        index.add("+27222222222", "+27111111111", 1);
+        index.add("+27111111111", "+27333333333", 2);
+        Assertions.assertArrayEquals(new int[] {0, 1}, index.latest("+27111111111", "+27222222222", 50, Integer.MAX_VALUE));
+        Assertions.assertEquals(2, index.size("+27222222222", "+27111111111"));
+        Assertions.assertEquals(0, index.size("+27222222222", "+27333333333"));
+    }
+
+    // Test to verify that the newest page and earlier pages are found by position
+    @Test
+    void testLatest_PagesBackFromAPosition() {
+        ConversationIndex index = new ConversationIndex();
+        for (int i = 0; i < 1000; i++) {
+            index.add("+27111111111", "+27222222222", i * 3); // Other conversations fill the gaps
+        }
+        int[] newest = index.latest("+27111111111", "+27222222222", 50, Integer.MAX_VALUE);
+        Assertions.assertEquals(50, newest.length);
+        Assertions.assertEquals(950 * 3, newest[0]);
+        Assertions.assertEquals(999 * 3, newest[49]);
+        int[] earlier = index.latest("+27111111111", "+27222222222", 50, newest[0]);
+        Assertions.assertEquals(900 * 3, earlier[0]);
+        Assertions.assertEquals(949 * 3, earlier[49]);
+        Assertions.assertArrayEquals(new int[] {0, 3}, index.latest("+27111111111", "+27222222222", 50, 4));
+    }
+
+    // Test to verify that messages without a sender belong to no conversation
+    @Test
+    void testAdd_IgnoresUnknownSender() {
+        ConversationIndex index = new ConversationIndex();
+        index.add(null, "+27222222222", 0);
+        Assertions.assertEquals(0, index.latest("+27111111111", "+27222222222", 50, Integer.MAX_VALUE).length);
+    }
+}
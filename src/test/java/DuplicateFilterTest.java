@@ -0,0 +1,61 @@
+//Libraries
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+// Test class for the windowed Bloom filter that detects retried sends
+public class DuplicateFilterTest {
+
+    // Test to verify that a recorded key is found with its message index and others are not
+    @Test
+    void testFind_RecordedKey() {
+        DuplicateFilter filter = new DuplicateFilter(60_000, 4, 100, 1000, () -> 0L);
+        filter.record("key-1", 7);
+        Assertions.assertEquals(7, filter.find("key-1"));
+        Assertions.assertEquals(-1, filter.find("key-2"));
+    }
+
+    // Test to verify that keys are forgotten once they leave the time window
+    @Test
+    void testFind_ExpiresAfterWindow() {
+        AtomicLong now = new AtomicLong();
+        DuplicateFilter filter = new DuplicateFilter(60_000, 4, 100, 1000, now::get);
+        filter.record("old", 1);
+        now.set(30_000);
+        filter.record("newer", 2);
+        Assertions.assertEquals(1, filter.find("old")); // Still within the window
+        now.set(60_000 + 15_000); // Old's slice has fully left the window
+        Assertions.assertEquals(-1, filter.find("old"));
+        Assertions.assertEquals(2, filter.find("newer"));
+        Assertions.assertEquals(1, filter.size());
+    }
+
+    // Test to verify that a slice far past its planned size still finds every key exactly
+    @Test
+    void testRecord_ScalesPastExpectedSize() {
+        DuplicateFilter filter = new DuplicateFilter(60_000, 1, 1000, 1_000_000, () -> 0L);
+        for (int i = 0; i < 50_000; i++) {
+            filter.record("key-" + i, i);
+        }
+        for (int i = 0; i < 50_000; i += 997) {
+            Assertions.assertEquals(i, filter.find("key-" + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertEquals(-1, filter.find("other-" + i)); // False Bloom hits are caught by the index
+        }
+    }
+
+    // Test to verify that the key limit drops the oldest slice
+    @Test
+    void testRecord_BoundedByMaxKeys() {
+        AtomicLong now = new AtomicLong();
+        DuplicateFilter filter = new DuplicateFilter(60_000, 60, 100, 150, now::get);
+        for (int i = 0; i < 300; i++) {
+            now.set(i * 1000L / 2); // Two keys per one-second slice
+            filter.record("key-" + i, i);
+        }
+        Assertions.assertTrue(filter.size() <= 150);
+        Assertions.assertEquals(-1, filter.find("key-0"));
+        Assertions.assertEquals(299, filter.find("key-299"));
+    }
+}
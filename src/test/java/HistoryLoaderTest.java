@@ -0,0 +1,158 @@
+//Libraries
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+// Test class for the background history loader
+public class HistoryLoaderTest {
+
+    // Builds messages.json content with the given number of records
+    private byte[] history(int size) {
+        List<MessageEntry> entries = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            entries.add(new MessageEntry(String.format("%010d", i), "00:" + i + ":HI", "+27123456789", "message " + i));
+        }
+        return JsonSupport.PRETTY.toJson(entries).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Test to verify that a history spanning several chunks loads completely and in order
+    @Test
+    void testLoad_ManyChunksInOrder() {
+        int size = HistoryLoader.CHUNK * 2 + 17;
+        byte[] data = history(size);
+        MessageList list = new MessageList();
+        HistoryLoader loader = new HistoryLoader(list, () -> data, () -> { });
+        loader.start();
+        Assertions.assertEquals(size, loader.awaitRecords());
+        loader.awaitAll();
+        Assertions.assertEquals(size, list.size());
+        for (int i = 0; i < size; i += 1001) {
+            Assertions.assertEquals("message " + i, list.get(i).Message);
+        }
+        Assertions.assertEquals(String.format("%010d", size - 1), list.get(size - 1).MessageID);
+    }
+
+    // Test to verify that braces, quotes and escapes inside strings do not confuse the boundary scan
+    @Test
+    void testLoad_BracesInsideStrings() {
+        List<MessageEntry> entries = new ArrayList<>();
+        entries.add(new MessageEntry("1", "h1", "+27123456789", "he said \"}{\" ]["));
+        entries.add(new MessageEntry("2", "h2", "+27123456789", "back\\slash \\\" é {"));
+        byte[] data = JsonSupport.COMPACT.toJson(entries).getBytes(StandardCharsets.UTF_8);
+        MessageList list = new MessageList();
+        HistoryLoader loader = new HistoryLoader(list, () -> data, () -> { });
+        loader.start();
+        loader.awaitAll();
+        Assertions.assertEquals(2, list.size());
+        Assertions.assertEquals("he said \"}{\" ][", list.get(0).Message);
+        Assertions.assertEquals("back\\slash \\\" é {", list.get(1).Message);
+    }
+
+    // Test to verify that a missing file leaves an empty list
+    @Test
+    void testLoad_NoFile() {
+        MessageList list = new MessageList();
+        HistoryLoader loader = new HistoryLoader(list, () -> null, () -> { });
+        loader.start();
+        Assertions.assertEquals(0, loader.awaitRecords());
+        loader.awaitAll();
+        Assertions.assertTrue(list.isEmpty());
+    }
+
+    // Test to verify that a record whose dictionary is missing stops loading instead of counting as damage
+    @Test
+    void testLoad_MissingDictionaryStops() {
+        byte[] data = ("[{\"MessageID\":\"1\",\"MessageHash\":\"h1\",\"Recipient\":\"+27123456789\",\"Message\":\"Hi\"},"
+                + "{\"MessageID\":\"2\",\"MessageHash\":\"h2\",\"Recipient\":\"+27123456789\",\"MessageZ\":\"7777;x\"}]")
+                .getBytes(StandardCharsets.UTF_8);
+        MessageList list = new MessageList();
+        HistoryLoader loader = new HistoryLoader(list, () -> data, () -> { });
+        loader.start();
+        Assertions.assertEquals(2, loader.awaitRecords());
+        MessageDictionary.MissingException e = Assertions.assertThrows(MessageDictionary.MissingException.class,
+                loader::awaitAll);
+        Assertions.assertTrue(e.getMessage().contains("messages.dict.7777"));
+        Assertions.assertSame(e, loader.failure());
+        Assertions.assertFalse(loader.isDamaged()); // Not treated as bad records
+    }
+
+    // Test to verify that starting returns at once and a save requested while loading has run by the time loading ends
+    @Test
+    void testLoad_DoesNotBlockAndDefersWrites() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        byte[] data = history(10);
+        MessageList list = new MessageList();
+        HistoryLoader loader = new HistoryLoader(list, () -> {
+            release.await(); // Simulates a slow disk
+            return data;
+        }, written::countDown);
+        loader.start(); // Must not wait for the source
+        Assertions.assertTrue(loader.deferWrite()); // Still loading, so the save is put off
+        release.countDown();
+        loader.awaitAll();
+        Assertions.assertEquals(0, written.getCount()); // Submitted on the loader thread before loading is done
+        Assertions.assertFalse(loader.deferWrite()); // Finished: callers save themselves
+        Assertions.assertEquals(10, list.size());
+    }
+
+    // Test to verify that parallel decoding gives exactly the same history as decoding on one thread
+    @Test
+    void testLoad_ParallelMatchesSequential() {
+        byte[] data = history(HistoryLoader.CHUNK * 5 + 3);
+        MessageList sequential = new MessageList();
+        HistoryLoader one = new HistoryLoader(sequential, () -> data, () -> { }, 1);
+        one.start();
+        one.awaitAll();
+        MessageList parallel = new MessageList();
+        HistoryLoader many = new HistoryLoader(parallel, () -> data, () -> { }, 4);
+        many.start();
+        many.awaitAll();
+        Assertions.assertEquals(JsonSupport.toJson(sequential.snapshot()), JsonSupport.toJson(parallel.snapshot()));
+        Assertions.assertArrayEquals(data, JsonSupport.PRETTY.toJson(parallel).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Test to verify that records saved before timestamps get the legacy time and newer records keep theirs
+    @Test
+    void testLoad_BackfillsLegacyTimestamps() {
+        List<MessageEntry> entries = new ArrayList<>();
+        entries.add(new MessageEntry("0000000001", "00:1:HI", "+27123456789", "old")); // Saved before timestamps
+        entries.add(new MessageEntry("0000000002", "00:2:HI", "+27123456789", "new", null, 9_000L));
+        byte[] data = JsonSupport.PRETTY.toJson(entries).getBytes(StandardCharsets.UTF_8);
+        MessageList list = new MessageList();
+        HistoryLoader loader = new HistoryLoader(list, () -> data, () -> { }, () -> 4_000L);
+        loader.start();
+        loader.awaitAll();
+        Assertions.assertEquals(4_000L, list.get(0).Timestamp);
+        Assertions.assertEquals(9_000L, list.get(1).Timestamp);
+    }
+
+    // Test to verify that one bad record costs only itself, is never saved and marks the history damaged
+    @Test
+    void testLoad_BadRecordSkippedAlone() {
+        String json = "[{\"MessageID\":\"0000000001\",\"Message\":\"one\",\"Timestamp\":1},"
+                + "{\"MessageID\":\"0000000002\",\"Message\":\"two\",\"Timestamp\":\"not a number\"},"
+                + "{\"MessageID\":\"0000000003\",\"Message\":\"three\",\"Timestamp\":3}]";
+        MessageList list = new MessageList();
+        HistoryLoader loader = new HistoryLoader(list, () -> json.getBytes(StandardCharsets.UTF_8), () -> { });
+        loader.start();
+        loader.awaitAll();
+        Assertions.assertTrue(loader.isDamaged());
+        Assertions.assertEquals(3, list.size()); // Later rows keep their indexes
+        Assertions.assertEquals("one", list.get(0).Message);
+        Assertions.assertTrue(list.isDeleted(1));
+        Assertions.assertEquals("three", list.get(2).Message);
+        String saved = JsonSupport.toJson(list.snapshot());
+        Assertions.assertFalse(saved.contains("{}")); // No placeholder is ever written
+        Assertions.assertTrue(saved.contains("three"));
+
+        MessageList clean = new MessageList();
+        HistoryLoader good = new HistoryLoader(clean, () -> history(3), () -> { });
+        good.start();
+        good.awaitAll();
+        Assertions.assertFalse(good.isDamaged());
+    }
+}
@@ -0,0 +1,76 @@
+//Libraries
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+// Test class for the cache of formatted history pages
+public class HistoryPageCacheTest {
+
+    // Test to verify that a page is loaded once, then served from the cache, and hits are counted
+    @Test
+    void testGet_LoadsOnceThenHits() {
+        HistoryPageCache cache = new HistoryPageCache(1 << 20);
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals("page", cache.get("a|b", "a", 0, () -> {
+                loads.incrementAndGet();
+                return "page";
+            }));
+        }
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(3, cache.hits());
+        Assertions.assertEquals(0.75, cache.hitRatio(), 1e-9);
+    }
+
+    // Test to verify that invalidation drops only the pages of the scope and range it names
+    @Test
+    void testInvalidate_OnlyAffectedPages() {
+        HistoryPageCache cache = new HistoryPageCache(1 << 20);
+        for (int page = 0; page < 3; page++) {
+            int p = page;
+            cache.get("a|b", "a", p, () -> "ab" + p);
+            cache.get("a|b", "b", p, () -> "ba" + p);
+            cache.get("c|d", "c", p, () -> "cd" + p);
+        }
+        cache.invalidatePage("a|b", 1);
+        Assertions.assertEquals(7, cache.size()); // Both variants of page 1 went
+        cache.invalidateFrom("c|d", 1);
+        Assertions.assertEquals(5, cache.size());
+        Assertions.assertEquals("cd0", cache.get("c|d", "c", 0, () -> "reloaded"));
+        cache.invalidate("a|b");
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals("new", cache.get("a|b", "a", 0, () -> "new"));
+    }
+
+    // Test to verify that a page loaded while its scope changed is returned but not cached
+    @Test
+    void testGet_StaleLoadNotCached() {
+        HistoryPageCache cache = new HistoryPageCache(1 << 20);
+        Assertions.assertEquals("old", cache.get("a|b", "a", 0, () -> {
+            cache.invalidate("a|b"); // A message is stored while the page is being formatted
+            return "old";
+        }));
+        Assertions.assertEquals("fresh", cache.get("a|b", "a", 0, () -> "fresh"));
+    }
+
+    // Test to verify that the cache stays within its byte budget and a scan of one-off pages keeps the busy ones
+    @Test
+    void testAdmission_KeepsPopularPagesWithinBudget() {
+        String text = "x".repeat(1000); // About 2 KB a page
+        HistoryPageCache cache = new HistoryPageCache(20 * 1024);
+        for (int round = 0; round < 5; round++) {
+            for (int hot = 0; hot < 4; hot++) {
+                cache.get("hot" + hot, "", 0, () -> text);
+            }
+        }
+        for (int cold = 0; cold < 200; cold++) {
+            cache.get("cold" + cold, "", 0, () -> text); // Each read only once
+        }
+        Assertions.assertTrue(cache.weight() <= 20 * 1024);
+        long before = cache.hits();
+        for (int hot = 0; hot < 4; hot++) {
+            cache.get("hot" + hot, "", 0, () -> text);
+        }
+        Assertions.assertEquals(before + 4, cache.hits()); // Still cached after the scan
+    }
+}
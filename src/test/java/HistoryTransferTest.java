@@ -0,0 +1,145 @@
+//Libraries
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+// Test class for exporting and importing the message history
+public class HistoryTransferTest {
+
+    // Test to verify that every format gives back the same messages, awkward text included
+    @ParameterizedTest
+    @EnumSource(HistoryTransfer.Format.class)
+    void testExportImport_RoundTrips(HistoryTransfer.Format format) throws IOException {
+        try (MessageStore source = new InMemoryMessageStore(); MessageStore target = new InMemoryMessageStore()) {
+            source.store(new MessageEntry("0000000001", "00:1:HIWORLD", "+27711111111", "Hi, \"you\"\r\nsecond line", "+27722222222", 1000L));
+            source.store(new MessageEntry("0000000002", "00:2:ÉMOJI🙂", "+27722222222", "Émoji 🙂 ok", null, 2000L));
+            source.store(new MessageEntry("0000000003", "00:3:EMPTY", "+27711111111", "", "+27733333333", 3000L));
+            for (int i = 4; i <= 5000; i++) {
+                source.store(new MessageEntry(String.format("%010d", i), "00:" + i + ":HIWORLD", "+27744444444", "Message " + i, "+27711111111", 4000L + i));
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assertions.assertEquals(5000, HistoryTransfer.export(source, format, HistoryTransfer.Filter.ALL, out, HistoryTransfer.Progress.NONE));
+            Assertions.assertEquals(5000, HistoryTransfer.importInto(target, format, HistoryTransfer.Filter.ALL,
+                    new ByteArrayInputStream(out.toByteArray()), HistoryTransfer.Progress.NONE));
+            Assertions.assertEquals(rows(source), rows(target));
+        }
+    }
+
+    // Test to verify that the recipient and time-range filters apply on export and on import
+    @Test
+    void testFilters_KeepOnlyMatchingMessages() throws IOException {
+        try (MessageStore source = new InMemoryMessageStore()) {
+            for (int i = 0; i < 100; i++) {
+                source.store(new MessageEntry(String.format("%010d", i), "h" + i, i % 2 == 0 ? "+27711111111" : "+27722222222", "m" + i, null, 1000L * i));
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            HistoryTransfer.Filter even = new HistoryTransfer.Filter("+27711111111", 10_000, 20_000);
+            Assertions.assertEquals(5, HistoryTransfer.export(source, HistoryTransfer.Format.NDJSON, even, out, HistoryTransfer.Progress.NONE));
+            Assertions.assertTrue(out.toString("UTF-8").contains("\"MessageID\":\"0000000010\""));
+            Assertions.assertFalse(out.toString("UTF-8").contains("\"MessageID\":\"0000000020\"")); // End is exclusive
+
+            out.reset();
+            HistoryTransfer.export(source, HistoryTransfer.Format.CSV, HistoryTransfer.Filter.ALL, out, HistoryTransfer.Progress.NONE);
+            try (MessageStore target = new InMemoryMessageStore()) {
+                HistoryTransfer.Filter odd = new HistoryTransfer.Filter("+27722222222", Long.MIN_VALUE, Long.MAX_VALUE);
+                Assertions.assertEquals(50, HistoryTransfer.importInto(target, HistoryTransfer.Format.CSV, odd,
+                        new ByteArrayInputStream(out.toByteArray()), HistoryTransfer.Progress.NONE));
+                Assertions.assertTrue(target.findMessagesToRecipient("+27711111111").isEmpty());
+            }
+        }
+    }
+
+    // Test to verify that a shard log imports with its edits and deletes applied
+    @Test
+    void testImportBinary_ReadsShardLog(@TempDir Path dir) throws IOException {
+        try (ShardedMessageStore sharded = ShardedMessageStore.forDirectory(dir.resolve("shards"), 1)) {
+            sharded.store(new MessageEntry("0000000001", "00:1:A", "+27711111111", "first", null, 1L));
+            sharded.store(new MessageEntry("0000000002", "00:2:B", "+27711111111", "second", null, 2L));
+            sharded.store(new MessageEntry("0000000003", "00:3:C", "+27711111111", "third", null, 3L));
+            sharded.flush();
+            Assertions.assertTrue(sharded.update("0000000001", "00:1:EDITED", "edited"));
+            Assertions.assertTrue(sharded.delete("0000000002"));
+            sharded.flush();
+        }
+        try (MessageStore target = new InMemoryMessageStore(); InputStream in = Files.newInputStream(dir.resolve("shards").resolve("shard-0.log"))) {
+            HistoryTransfer.importInto(target, HistoryTransfer.Format.BINARY, HistoryTransfer.Filter.ALL, in, HistoryTransfer.Progress.NONE);
+            Assertions.assertEquals(2, target.size());
+            Assertions.assertEquals("edited", target.findMessageByID("0000000001").Message);
+            Assertions.assertNull(target.findMessageByID("0000000002"));
+        }
+    }
+
+    // Test to verify that a cut-off binary dump is reported instead of silently dropping its last message
+    @Test
+    void testImportBinary_TruncatedDumpFails() throws IOException {
+        try (MessageStore source = new InMemoryMessageStore(); MessageStore target = new InMemoryMessageStore()) {
+            source.store(new MessageEntry("0000000001", "h", "+27711111111", "hello", null, 1L));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            HistoryTransfer.export(source, HistoryTransfer.Format.BINARY, HistoryTransfer.Filter.ALL, out, HistoryTransfer.Progress.NONE);
+            byte[] cut = Arrays.copyOf(out.toByteArray(), out.size() - 3);
+            Assertions.assertThrows(IOException.class, () -> HistoryTransfer.importInto(target, HistoryTransfer.Format.BINARY,
+                    HistoryTransfer.Filter.ALL, new ByteArrayInputStream(cut), HistoryTransfer.Progress.NONE));
+        }
+    }
+
+    // Test to verify that a json export shows the edits and deletes logged by the app, not the messages as first saved
+    @Test
+    void testExportJson_AppliesEditsLog(@TempDir Path dir) throws IOException {
+        try (MessageStore json = MessageStore.open("json", dir)) {
+            json.store(new MessageEntry("0000000001", "00:1:HI", "+27711111111", "hi", null, 1L));
+            json.store(new MessageEntry("0000000002", "00:2:BYE", "+27711111111", "bye", null, 2L));
+        }
+        ByteBuffer edits = MessageLog.encode(ByteBuffer.allocate(256), MessageLog.UPDATE, 0,
+                new MessageEntry("0000000001", "00:1:EDITED", null, "edited", null, 3L));
+        edits = MessageLog.encode(edits, MessageLog.DELETE, 1, new MessageEntry("0000000002", null, null, null, null, 4L)).flip();
+        Files.write(dir.resolve("messages.edits.log"), Arrays.copyOf(edits.array(), edits.limit()));
+        try (MessageStore json = MessageStore.open("json", dir)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assertions.assertEquals(1, HistoryTransfer.export(json, HistoryTransfer.Format.NDJSON, HistoryTransfer.Filter.ALL,
+                    out, HistoryTransfer.Progress.NONE));
+            Assertions.assertTrue(out.toString("UTF-8").contains("\"Message\":\"edited\""));
+            Assertions.assertFalse(out.toString("UTF-8").contains("0000000002"));
+        }
+    }
+
+    // Test to verify that an import into messages.json writes the file once instead of once per batch
+    @Test
+    void testImportJson_WritesFileOnce(@TempDir Path dir) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MessageStore source = new InMemoryMessageStore()) {
+            for (int i = 0; i < 3 * HistoryTransfer.FLUSH_EVERY; i++) {
+                source.store(new MessageEntry(String.format("%010d", i), "h" + i, "+27711111111", "m" + i, null, (long) i));
+            }
+            HistoryTransfer.export(source, HistoryTransfer.Format.BINARY, HistoryTransfer.Filter.ALL, out, HistoryTransfer.Progress.NONE);
+        }
+        try (MessageStore json = MessageStore.open("json", dir)) {
+            HistoryTransfer.importInto(json, HistoryTransfer.Format.BINARY, HistoryTransfer.Filter.ALL,
+                    new ByteArrayInputStream(out.toByteArray()), HistoryTransfer.Progress.NONE);
+            Assertions.assertEquals(3 * HistoryTransfer.FLUSH_EVERY, json.size());
+        }
+        Assertions.assertFalse(Files.exists(SnapshotWriter.generation(dir.resolve("messages.json"), 1))); // No earlier write was rotated out
+        try (MessageStore json = MessageStore.open("json", dir)) {
+            Assertions.assertEquals(3 * HistoryTransfer.FLUSH_EVERY, json.size());
+        }
+    }
+
+    // Lists every message's fields, to compare two stores
+    private static List<List<Object>> rows(MessageStore store) {
+        List<List<Object>> rows = new ArrayList<>();
+        store.forEach(v -> rows.add(Arrays.asList(v.getMessageID(), v.getMessageHash(), v.getRecipient(), v.getMessage(),
+                v.getSender(), v.getTimestamp())));
+        return rows;
+    }
+}
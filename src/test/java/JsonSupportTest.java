@@ -0,0 +1,81 @@
+//Libraries
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+// Test class for the shared Gson instances and the hand-written adapters
+public class JsonSupportTest {
+
+    // Creates a user with all fields set
+    private User createUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("Passw0rd!");
+        user.setName("Name");
+        user.setSurname("Surname");
+        user.setCellphoneNumber("+27123456789");
+        return user;
+    }
+
+    // Test to verify that messages are written byte-for-byte like Gson's reflective binding
+    @Test
+    void testMessages_PrettyOutputMatchesReflectiveGson() {
+        List<MessageEntry> messages = new ArrayList<>();
+        messages.add(new MessageEntry("0123456789", "01:1:HIHI", "+27123456789", "Hi \"there\" é"));
+        messages.add(new MessageEntry("9876543210", null, "+27987654321", "")); // Null hash is skipped
+        String expected = new GsonBuilder().setPrettyPrinting().create().toJson(messages);
+        Assertions.assertEquals(expected, JsonSupport.PRETTY.toJson(messages));
+    }
+
+    // Test to verify that users are written byte-for-byte like Gson's reflective binding
+    @Test
+    void testUsers_CompactOutputMatchesReflectiveGson() {
+        Map<String, User> users = new LinkedHashMap<>();
+        users.put("one_", createUser("one_"));
+        User partial = new User();
+        partial.setUsername("two_"); // Other fields stay null
+        users.put("two_", partial);
+        Assertions.assertEquals(new Gson().toJson(users), JsonSupport.COMPACT.toJson(users));
+    }
+
+    // Test to verify that a file written by the old code round-trips unchanged
+    @Test
+    void testMessages_RoundTripIsByteIdentical() {
+        String original = new GsonBuilder().setPrettyPrinting().create().toJson(List.of(
+                new MessageEntry("0123456789", "01:1:HELLOWORLD", "+27123456789", "Hello world"),
+                new MessageEntry("1111111111", "11:2:OKOK", "+27111111111", "ok")));
+        MessageEntry[] loaded = JsonSupport.PRETTY.fromJson(original, MessageEntry[].class);
+        Assertions.assertEquals(original, JsonSupport.PRETTY.toJson(List.of(loaded)));
+    }
+
+    // Test to verify that the sender is written last, as reflective Gson would, and read back
+    @Test
+    void testMessages_SenderRoundTrip() {
+        List<MessageEntry> messages = List.of(new MessageEntry("0123456789", "01:1:HIHI", "+27123456789", "Hi", "+27111111111"));
+        String json = JsonSupport.PRETTY.toJson(messages);
+        Assertions.assertEquals(new GsonBuilder().setPrettyPrinting().create().toJson(messages), json);
+        Assertions.assertEquals("+27111111111", JsonSupport.PRETTY.fromJson(json, MessageEntry[].class)[0].Sender);
+    }
+
+    // Test to verify that users.json round-trips and unknown fields are ignored
+    @Test
+    void testUsers_ReadIgnoresUnknownFields() {
+        String json = "{\"ab_\":{\"name\":\"A\",\"extra\":[1,2],\"username\":\"ab_\",\"password\":null}}";
+        Map<String, User> users = JsonSupport.COMPACT.fromJson(json, JsonSupport.USER_MAP_TYPE);
+        Assertions.assertEquals("A", users.get("ab_").getName());
+        Assertions.assertEquals("ab_", users.get("ab_").getUsername());
+        Assertions.assertNull(users.get("ab_").getPassword());
+    }
+
+    // Test to verify that compact output has no line breaks
+    @Test
+    void testCompact_WritesSingleLine() {
+        String json = JsonSupport.COMPACT.toJson(List.of(new MessageEntry("1", "2", "3", "4")));
+        Assertions.assertEquals("[{\"MessageID\":\"1\",\"MessageHash\":\"2\",\"Recipient\":\"3\",\"Message\":\"4\"}]", json);
+    }
+}
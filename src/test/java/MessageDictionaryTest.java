@@ -0,0 +1,116 @@
+//Libraries
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Test class for the shared message compression dictionary
+public class MessageDictionaryTest {
+
+    // Builds a training sample of repetitive chat traffic
+    private List<String> sample() {
+        List<String> bodies = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            bodies.add("running late, start without me");
+            bodies.add("can you pick up milk on the way home");
+            bodies.add("see you at the office tomorrow " + i);
+        }
+        return bodies;
+    }
+
+    // Test to verify that trained bodies compress to less than their length and decompress exactly
+    @Test
+    void testCompress_RoundTrip() throws IOException {
+        MessageDictionary dictionary = MessageDictionary.train(9001, sample());
+        MessageDictionary.install(dictionary); // Makes version 9001 known for decompression
+        for (String body : new String[] {"running late, start without me", "see you at the office tomorrow 999",
+                "can you pick up milk on the way home é", "running late, start without me \uE000\uE001 \uE123"}) {
+            String compressed = dictionary.compress(body);
+            Assertions.assertNotNull(compressed, body);
+            Assertions.assertTrue(compressed.startsWith("9001;"));
+            Assertions.assertTrue(compressed.length() < body.length());
+            Assertions.assertEquals(body, MessageDictionary.decompress(compressed));
+        }
+    }
+
+    // Test to verify that bodies that would not get shorter are left alone
+    @Test
+    void testCompress_SkipsWhenNotShorter() {
+        MessageDictionary dictionary = MessageDictionary.train(9002, sample());
+        Assertions.assertNull(dictionary.compress("ok"));
+        Assertions.assertNull(dictionary.compress("xq7#Zp!"));
+    }
+
+    // Test to verify that the best phrases are kept within the size limit
+    @Test
+    void testTrain_RespectsMaxSize() {
+        List<String> bodies = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            bodies.add("message number " + (i % 5000) + " with some shared words");
+        }
+        MessageDictionary dictionary = MessageDictionary.train(9003, bodies);
+        Assertions.assertTrue(dictionary.size() > 0);
+        Assertions.assertTrue(dictionary.size() <= MessageDictionary.MAX_SIZE);
+    }
+
+    // Test to verify that a dictionary is saved with a checksum and read back by version
+    @Test
+    void testSaveAndLoad(@TempDir Path dir) throws IOException {
+        MessageDictionary dictionary = MessageDictionary.train(3, sample());
+        dictionary.save(dir);
+        Assertions.assertTrue(Files.exists(dir.resolve("messages.dict.3.crc")));
+        Assertions.assertEquals(3, MessageDictionary.newestVersion(dir));
+        MessageDictionary loaded = MessageDictionary.load(dir, 3);
+        Assertions.assertEquals(dictionary.size(), loaded.size());
+        Assertions.assertNull(MessageDictionary.load(dir, 4)); // No such version
+    }
+
+    // Test to verify that a missing dictionary and corrupt data are reported as different errors
+    @Test
+    void testDecompress_Errors() {
+        Assertions.assertThrows(MessageDictionary.MissingException.class, () -> MessageDictionary.decompress("8888;AAAA"));
+        Assertions.assertThrows(IOException.class, () -> MessageDictionary.decompress("no colon"));
+        MessageDictionary.install(MessageDictionary.train(9004, sample()));
+        Assertions.assertThrows(IOException.class, () -> MessageDictionary.decompress("9004;\uF8FF")); // No such phrase
+        Assertions.assertThrows(IOException.class, () -> MessageDictionary.decompress("9004;ab\uE000")); // Dangling escape
+    }
+
+    // Test to verify that bodies written by older versions as Deflate and base64 still decode
+    @Test
+    void testDecompress_OlderDeflateBodies() throws IOException {
+        byte[] bytes = "running late, start without me".getBytes(StandardCharsets.UTF_8);
+        MessageDictionary.install(new MessageDictionary(9005, bytes));
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setDictionary(bytes);
+        deflater.setInput("running late again".getBytes(StandardCharsets.UTF_8));
+        deflater.finish();
+        byte[] output = new byte[64];
+        int length = deflater.deflate(output);
+        deflater.end();
+        String encoded = "9005:" + Base64.getEncoder().withoutPadding().encodeToString(Arrays.copyOf(output, length));
+        Assertions.assertEquals("running late again", MessageDictionary.decompress(encoded));
+    }
+
+    // Test to verify that a missing or damaged dictionary file is a startup error
+    @Test
+    void testCheckFiles_MissingOrDamaged(@TempDir Path dir) throws IOException {
+        MessageDictionary.checkFiles(dir); // No dictionaries yet
+        MessageDictionary.train(1, sample()).save(dir);
+        MessageDictionary.train(3, sample()).save(dir);
+        IOException missing = Assertions.assertThrows(IOException.class, () -> MessageDictionary.checkFiles(dir));
+        Assertions.assertTrue(missing.getMessage().contains("messages.dict.2 is missing"), missing.getMessage());
+        MessageDictionary.train(2, sample()).save(dir);
+        MessageDictionary.checkFiles(dir);
+        Files.write(dir.resolve("messages.dict.2"), new byte[] {1, 2, 3});
+        IOException damaged = Assertions.assertThrows(IOException.class, () -> MessageDictionary.checkFiles(dir));
+        Assertions.assertTrue(damaged.getMessage().contains("messages.dict.2 is damaged"), damaged.getMessage());
+    }
+}
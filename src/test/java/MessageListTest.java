@@ -0,0 +1,158 @@
+//Libraries
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+// Test class for the arena-backed message list and its flyweight views
+public class MessageListTest {
+
+    // Test to verify that messages read back with every field intact, including nulls and non-ASCII text
+    @Test
+    void testAddAndGet_RoundTrip() {
+        MessageList list = new MessageList();
+        list.add(new MessageEntry("0123456789", "01:1:HIHI", "+27123456789", "Hi \"there\" é 👋"));
+        list.add(new MessageEntry("9876543210", null, "+27987654321", ""));
+        Assertions.assertEquals(2, list.size());
+        MessageEntry first = list.get(0);
+        Assertions.assertEquals("0123456789", first.MessageID);
+        Assertions.assertEquals("Hi \"there\" é 👋", first.Message);
+        MessageView view = list.view(1, new MessageView());
+        Assertions.assertNull(view.getMessageHash()); // Null survives the arena
+        Assertions.assertEquals("", view.getMessage());
+        Assertions.assertEquals("+27987654321", view.getRecipient());
+    }
+
+    // Test to verify that edits and deletes change one row in place and scans skip deleted rows
+    @Test
+    void testReviseAndDelete_KeepPositions() {
+        MessageList list = new MessageList();
+        for (int i = 0; i < 3; i++) {
+            list.add(new MessageEntry("000000000" + i, "00:" + i + ":HI", "+27123456789", "text " + i));
+        }
+        MessageList.Snapshot before = list.snapshot();
+        list.revise(1, "00:1:EDITED", "edited");
+        list.delete(0);
+        Assertions.assertEquals(3, list.size()); // Positions do not shift
+        Assertions.assertEquals("edited", list.get(1).Message);
+        Assertions.assertEquals("00:1:EDITED", list.get(1).MessageHash);
+        Assertions.assertTrue(list.isDeleted(0));
+        Assertions.assertNull(list.view(0, new MessageView()).getMessage());
+        Assertions.assertEquals(-1, list.indexOfMessageID("0000000000"));
+        List<Integer> found = new ArrayList<>();
+        list.forEachToRecipient("+27123456789", found::add);
+        Assertions.assertEquals(List.of(1, 2), found);
+        Assertions.assertTrue(before.isDeleted(0)); // Snapshots share the body column
+        Assertions.assertFalse(JsonSupport.toJson(list.snapshot()).contains("0000000000")); // Purged on save
+    }
+
+    // Test to verify that many messages spill across chunks and a message larger than a chunk still fits
+    @Test
+    void testAdd_GrowsAcrossChunks() {
+        MessageList list = new MessageList();
+        String large = "x".repeat(200_000); // Bigger than the first chunk
+        for (int i = 0; i < 10_000; i++) {
+            list.add(new MessageEntry(String.valueOf(i), "h" + i, "+27123456789", i == 5000 ? large : "m" + i));
+        }
+        Assertions.assertEquals(10_000, list.size());
+        Assertions.assertEquals("9999", list.get(9999).MessageID);
+        Assertions.assertEquals(large, list.get(5000).Message);
+        Assertions.assertEquals("h4999", list.get(4999).MessageHash);
+    }
+
+    // Test to verify that a snapshot keeps its contents while the list is appended to and cleared
+    @Test
+    void testSnapshot_UnaffectedByLaterChanges() {
+        MessageList list = new MessageList();
+        list.add(new MessageEntry("1", "h1", "+27123456789", "one"));
+        MessageList.Snapshot snapshot = list.snapshot();
+        list.add(new MessageEntry("2", "h2", "+27123456789", "two"));
+        list.clear();
+        Assertions.assertEquals(0, list.size());
+        Assertions.assertEquals(1, snapshot.size());
+        Assertions.assertEquals("one", snapshot.view(0, new MessageView()).getMessage());
+    }
+
+    // Test to verify that writing from the arena gives the same JSON as Gson on the entries
+    @Test
+    void testToJson_MatchesGsonOutput() {
+        List<MessageEntry> entries = new ArrayList<>();
+        entries.add(new MessageEntry("0123456789", "01:1:HIHI", "+27123456789", "<b>Hi</b> é"));
+        entries.add(new MessageEntry("9876543210", null, "+27987654321", ""));
+        MessageList list = new MessageList();
+        list.addAll(entries);
+        Assertions.assertEquals(JsonSupport.MESSAGES.toJson(entries), JsonSupport.toJson(list.snapshot()));
+    }
+
+    // Test to verify that inserting anywhere but the end is rejected
+    @Test
+    void testAdd_OnlyAppends() {
+        MessageList list = new MessageList();
+        list.add(new MessageEntry("0", "h", "r", "m"));
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> list.add(0, new MessageEntry("1", "h", "r", "m")));
+    }
+
+    // Test to verify that digit strings pack into a long and back, keeping '+' and leading zeros
+    @Test
+    void testPack_RoundTrip() {
+        for (String value : new String[] {"0123456789", "+27831234567", "0", "+0", "99999999999999999"}) {
+            long packed = MessageList.pack(value);
+            Assertions.assertTrue(packed >= 0, value);
+            Assertions.assertEquals(value, MessageList.unpack(packed));
+        }
+        for (String value : new String[] {null, "", "+", "msgId1", "27-83", "123456789012345678"}) {
+            Assertions.assertEquals(-1, MessageList.pack(value), String.valueOf(value)); // Falls back to the arena
+        }
+    }
+
+    // Test to verify that scans find packed and fallback values alike
+    @Test
+    void testScans_FindByIdAndRecipient() {
+        MessageList list = new MessageList();
+        list.add(new MessageEntry("0000000001", "h1", "+27831234567", "one"));
+        list.add(new MessageEntry("msgId2", "h2", "0831234567", "two"));
+        list.add(new MessageEntry("0000000003", "h3", "+27831234567", "three"));
+        list.add(new MessageEntry(null, "h4", "not a number", "four"));
+        Assertions.assertEquals(2, list.indexOfMessageID("0000000003"));
+        Assertions.assertEquals(1, list.indexOfMessageID("msgId2"));
+        Assertions.assertEquals(-1, list.indexOfMessageID("0000000002"));
+        Assertions.assertEquals(-1, list.indexOfMessageID("000000001")); // Same number, different length
+        List<Integer> matches = new ArrayList<>();
+        list.forEachToRecipient("+27831234567", matches::add);
+        Assertions.assertEquals(List.of(0, 2), matches);
+        matches.clear();
+        list.forEachToRecipient("not a number", matches::add);
+        Assertions.assertEquals(List.of(3), matches);
+        Assertions.assertNull(list.get(3).MessageID);
+        Assertions.assertEquals("msgId2", list.get(1).MessageID);
+        Assertions.assertEquals("0831234567", list.get(1).Recipient);
+    }
+
+    // Test to verify that a time range query finds only messages in range and reads only the overlapping pages
+    @Test
+    void testTimeRange_SkipsPagesOutsideRange() {
+        MessageList list = new MessageList();
+        int count = MessageList.PAGE_SIZE * 4;
+        for (int i = 0; i < count; i++) { // One message a second
+            list.add(new MessageEntry(String.valueOf(i), "h" + i, "+27123456789", "m" + i, null, 1_000_000L + i * 1000L));
+        }
+        list.add(new MessageEntry("legacy", "h", "+27123456789", "no time")); // Never matches a range
+
+        long from = 1_000_000L + (MessageList.PAGE_SIZE * 3 + 10) * 1000L;
+        List<Integer> matches = new ArrayList<>();
+        list.forEachInTimeRange(from, from + 5000, matches::add);
+        Assertions.assertEquals(List.of(MessageList.PAGE_SIZE * 3 + 10, MessageList.PAGE_SIZE * 3 + 11,
+                MessageList.PAGE_SIZE * 3 + 12, MessageList.PAGE_SIZE * 3 + 13, MessageList.PAGE_SIZE * 3 + 14), matches);
+        Assertions.assertEquals(1, list.pagesInTimeRange(from, from + 5000)); // Three of four pages skipped
+        Assertions.assertEquals(from, list.get(MessageList.PAGE_SIZE * 3 + 10).Timestamp);
+        Assertions.assertNull(list.get(count).Timestamp);
+
+        matches.clear();
+        list.forEachInTimeRange(Long.MIN_VALUE, Long.MAX_VALUE, matches::add);
+        Assertions.assertEquals(count, matches.size());
+        matches.clear();
+        list.snapshot().forEachInTimeRange(0, 1_000_000L, matches::add); // Before the first message
+        Assertions.assertTrue(matches.isEmpty());
+    }
+}
@@ -0,0 +1,102 @@
+//Libraries
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Test class for scheduled sends and their log
+public class MessageSchedulerTest {
+
+    // Test to verify that messages are sent once due, and a cancelled one never is
+    @Test
+    void testSendDue_SendsWhenDueAndSkipsCancelled(@TempDir Path dir) throws IOException {
+        AtomicLong now = new AtomicLong(1_000_000);
+        List<String> sent = new ArrayList<>();
+        try (MessageScheduler scheduler = new MessageScheduler(dir.resolve("schedule.log"),
+                (id, entry) -> sent.add(entry.Message), now::get)) {
+            scheduler.schedule(entry("0000000001", "soon"), 1_060_000);
+            long later = scheduler.schedule(entry("0000000002", "later"), 1_120_000);
+            scheduler.schedule(entry("0000000003", "last"), 1_180_000);
+            Assertions.assertTrue(scheduler.cancel(later));
+            Assertions.assertFalse(scheduler.cancel(later));
+
+            Assertions.assertEquals(0, scheduler.sendDue());
+            now.set(1_200_000);
+            Assertions.assertEquals(2, scheduler.sendDue());
+            Assertions.assertEquals(List.of("soon", "last"), sent);
+            Assertions.assertEquals(0, scheduler.pendingCount());
+        }
+    }
+
+    // Test to verify that pending messages survive a restart and overdue ones go out on the first tick
+    @Test
+    void testReopen_RecoversPending(@TempDir Path dir) throws IOException {
+        AtomicLong now = new AtomicLong(1_000_000);
+        List<String> sent = new ArrayList<>();
+        Path file = dir.resolve("schedule.log");
+        long cancelled;
+        try (MessageScheduler scheduler = new MessageScheduler(file, (id, entry) -> sent.add(entry.Message), now::get)) {
+            scheduler.schedule(entry("0000000001", "first"), 1_060_000);
+            cancelled = scheduler.schedule(entry("0000000002", "cancelled"), 1_060_000);
+            scheduler.schedule(entry("0000000003", "tomorrow"), 1_000_000 + 86_400_000);
+            scheduler.cancel(cancelled);
+        }
+        now.set(2_000_000); // The first message fell due while closed
+        try (MessageScheduler scheduler = new MessageScheduler(file, (id, entry) -> sent.add(entry.Message), now::get)) {
+            Assertions.assertEquals(2, scheduler.pendingCount());
+            long next = scheduler.schedule(entry("0000000004", "new"), 3_000_000);
+            Assertions.assertTrue(next > cancelled); // IDs are not reused
+            now.addAndGet(MessageScheduler.TICK_MILLIS);
+            Assertions.assertEquals(1, scheduler.sendDue());
+            Assertions.assertEquals(List.of("first"), sent);
+        }
+        try (MessageScheduler scheduler = new MessageScheduler(file, (id, entry) -> sent.add(entry.Message), now::get)) {
+            Assertions.assertEquals(2, scheduler.pendingCount()); // "tomorrow" and "new"; "first" was marked sent
+        }
+    }
+
+    // Test to verify that a send turned down by the send path is retried later instead of dropped
+    @Test
+    void testSendDue_RetriesRefusedSend(@TempDir Path dir) throws IOException {
+        AtomicLong now = new AtomicLong(1_000_000);
+        boolean[] accept = {false};
+        try (MessageScheduler scheduler = new MessageScheduler(dir.resolve("schedule.log"), (id, entry) -> accept[0], now::get)) {
+            scheduler.schedule(entry("0000000001", "busy"), 1_001_000);
+            now.set(1_002_000);
+            Assertions.assertEquals(0, scheduler.sendDue());
+            Assertions.assertEquals(1, scheduler.pendingCount());
+            accept[0] = true;
+            now.addAndGet(MessageScheduler.RETRY_MILLIS);
+            Assertions.assertEquals(1, scheduler.sendDue());
+            Assertions.assertEquals(0, scheduler.pendingCount());
+        }
+    }
+
+    // Test to verify that a long-running schedule keeps its log compact as messages finish
+    @Test
+    void testDone_CompactsWhileRunning(@TempDir Path dir) throws IOException {
+        AtomicLong now = new AtomicLong(1_000_000);
+        Path file = dir.resolve("schedule.log");
+        try (MessageScheduler scheduler = new MessageScheduler(file, (id, entry) -> true, now::get)) {
+            scheduler.cancel(scheduler.schedule(entry("0000000001", "one"), 2_000_000));
+            long cycle = Files.size(file); // One SCHEDULED and one DONE record
+            for (int i = 0; i < 3000; i++) {
+                scheduler.cancel(scheduler.schedule(entry("0000000001", "one"), 2_000_000));
+            }
+            Assertions.assertTrue(Files.size(file) < cycle * 600); // Not 3001 cycles' worth
+        }
+        try (MessageScheduler scheduler = new MessageScheduler(file, (id, entry) -> true, now::get)) {
+            Assertions.assertEquals(0, scheduler.pendingCount());
+        }
+    }
+
+    // Builds a scheduled message
+    private static MessageEntry entry(String id, String text) {
+        return new MessageEntry(id, "00:1:" + text.toUpperCase(), "+27831234567", text, "+27711111111");
+    }
+}
@@ -0,0 +1,159 @@
+//Libraries
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// Test class run against every MessageStore backend, so they all behave the same way
+public class MessageStoreConformanceTest {
+
+    private static final String A = "+27711111111";
+    private static final String B = "+27722222222";
+    private static final String C = "+27733333333";
+
+    // Test to verify that stored messages are listed in store order and found by ID and recipient
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "sharded", "sql", "memory"})
+    void testStore_FindsByIdAndRecipientInOrder(String backend, @TempDir Path dir) throws IOException {
+        try (MessageStore store = open(backend, dir)) {
+            for (int i = 0; i < 50; i++) {
+                store.store(new MessageEntry(id(i), "h" + i, i % 2 == 0 ? B : C, "text " + i, A));
+            }
+            store.flush();
+            Assertions.assertEquals(50, store.size());
+            List<String> ids = new ArrayList<>();
+            store.forEach(view -> ids.add(view.getMessageID()));
+            for (int i = 0; i < 50; i++) {
+                Assertions.assertEquals(id(i), ids.get(i)); // Same order as stored
+            }
+            List<MessageEntry> toC = store.findMessagesToRecipient(C);
+            Assertions.assertEquals(25, toC.size());
+            Assertions.assertEquals(id(1), toC.get(0).MessageID);
+            Assertions.assertEquals("text 7", store.findMessageByID(id(7)).Message);
+            Assertions.assertNotNull(store.findMessageByID(id(7)).Timestamp); // Stamped when stored
+            Assertions.assertNull(store.findMessageByID("9999999999"));
+        }
+    }
+
+    // Test to verify that edits and deletes by ID show up in every query
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "sharded", "sql", "memory"})
+    void testUpdateAndDelete_VisibleEverywhere(String backend, @TempDir Path dir) throws IOException {
+        try (MessageStore store = open(backend, dir)) {
+            for (int i = 0; i < 10; i++) {
+                store.store(new MessageEntry(id(i), "h" + i, B, "text " + i, A));
+            }
+            store.flush();
+            Assertions.assertTrue(store.update(id(3), "h3b", "edited"));
+            Assertions.assertTrue(store.delete(id(4)));
+            Assertions.assertFalse(store.delete(id(4))); // Already gone
+            Assertions.assertFalse(store.update("9999999999", "h", "x"));
+            Assertions.assertEquals(9, store.size());
+            Assertions.assertEquals("edited", store.findMessageByID(id(3)).Message);
+            Assertions.assertEquals("h3b", store.findMessageByID(id(3)).MessageHash);
+            Assertions.assertNull(store.findMessageByID(id(4)));
+            Assertions.assertEquals(9, store.findMessagesToRecipient(B).size());
+            List<MessageEntry> page = store.loadConversation(A, B, 7);
+            Assertions.assertEquals(7, page.size()); // Paged back past the deleted message
+            Assertions.assertEquals("edited", page.get(1).Message);
+            Assertions.assertEquals(id(5), page.get(2).MessageID);
+            Assertions.assertEquals(id(9), page.get(6).MessageID);
+        }
+    }
+
+    // Test to verify that a conversation holds both directions, oldest first, and nothing from other people
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "sharded", "sql", "memory"})
+    void testLoadConversation_BothDirections(String backend, @TempDir Path dir) throws IOException {
+        try (MessageStore store = open(backend, dir)) {
+            for (int i = 0; i < 30; i++) {
+                boolean fromA = i % 3 != 0;
+                store.store(new MessageEntry(id(i), "h" + i, fromA ? B : A, "text " + i, fromA ? A : B));
+                store.store(new MessageEntry(id(100 + i), "x" + i, C, "other " + i, A));
+            }
+            store.flush();
+            List<MessageEntry> page = store.loadConversation(B, A, 10);
+            Assertions.assertEquals(10, page.size());
+            for (int i = 0; i < 10; i++) {
+                Assertions.assertEquals("text " + (20 + i), page.get(i).Message);
+            }
+            Assertions.assertTrue(store.loadConversation(B, C, 10).isEmpty());
+        }
+    }
+
+    // Test to verify that a time-range query returns exactly the messages stamped inside it
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "sharded", "sql", "memory"})
+    void testFindMessagesBetween_HalfOpenRange(String backend, @TempDir Path dir) throws IOException {
+        try (MessageStore store = open(backend, dir)) {
+            for (int i = 0; i < 20; i++) {
+                store.store(new MessageEntry(id(i), "h" + i, i % 2 == 0 ? B : C, "text " + i, A, 1_000L * i));
+            }
+            store.flush();
+            List<MessageEntry> found = store.findMessagesBetween(5_000, 9_000);
+            Assertions.assertEquals(4, found.size());
+            Assertions.assertEquals(id(5), found.get(0).MessageID);
+            Assertions.assertEquals(id(8), found.get(3).MessageID);
+        }
+    }
+
+    // Test to verify that a store's cached conversation pages are dropped when the conversation changes
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "sharded", "sql", "memory"})
+    void testPageCache_InvalidatedByChanges(String backend, @TempDir Path dir) throws IOException {
+        try (MessageStore store = open(backend, dir)) {
+            store.store(new MessageEntry(id(0), "h0", B, "text 0", A));
+            store.flush();
+            String scope = ConversationIndex.conversationKey(A, B);
+            store.pageCache().get(scope, A, 0, () -> "page");
+            Assertions.assertEquals(1, store.pageCache().size());
+            store.update(id(0), "h0b", "edited");
+            Assertions.assertEquals(0, store.pageCache().size());
+        }
+    }
+
+    // Test to verify that the file-backed stores give back the same messages after reopening
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "sharded", "sql"})
+    void testReopen_KeepsMessagesAndChanges(String backend, @TempDir Path dir) throws IOException {
+        try (MessageStore store = open(backend, dir)) {
+            for (int i = 0; i < 10; i++) {
+                store.store(new MessageEntry(id(i), "h" + i, B, "text " + i, A));
+            }
+            store.flush();
+            store.update(id(1), "h1b", "edited");
+            store.delete(id(2));
+            store.flush();
+        }
+        try (MessageStore store = open(backend, dir)) {
+            Assertions.assertEquals(9, store.size());
+            Assertions.assertEquals("edited", store.findMessageByID(id(1)).Message);
+            Assertions.assertNull(store.findMessageByID(id(2)));
+            Assertions.assertEquals(id(9), store.loadConversation(A, B, 1).get(0).MessageID);
+        }
+    }
+
+    // Test to verify that unknown backends are rejected by name
+    @Test
+    void testOpen_UnknownBackend(@TempDir Path dir) {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MessageStore.open("nosuch", dir));
+    }
+
+    // Opens a backend's store in its own directory; the sharded store is opened directly so it can be reopened
+    private static MessageStore open(String backend, Path dir) throws IOException {
+        if ("sharded".equals(backend)) {
+            return new ShardedMessageStore(dir.resolve("messages-shards"), 3);
+        }
+        return MessageStore.open(backend, dir);
+    }
+
+    // A 10-digit message ID for a number
+    private static String id(int i) {
+        return String.format("%010d", 1_000_000_000L + i);
+    }
+}
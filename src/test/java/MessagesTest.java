@@ -6,13 +6,16 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class MessagesTest {
     private Messages messages;
@@ -150,6 +153,154 @@ public class MessagesTest {
 
     }
 
+    @Test
+    void testFindMessages_ByIdAndRecipient() {
+        this.messages.storeMessage("0000000001", "00:1:HIHI", "+27123456789", "Hi");
+        this.messages.storeMessage("0000000002", "00:2:OKOK", "+27987654321", "Ok");
+        this.messages.storeMessage("0000000003", "00:3:BYEBYE", "+27123456789", "Bye");
+        Assertions.assertEquals("Ok", this.messages.findMessageByID("0000000002").Message);
+        Assertions.assertNull(this.messages.findMessageByID("0000000004"));
+        List<MessageEntry> found = this.messages.findMessagesToRecipient("+27123456789");
+        Assertions.assertEquals(2, found.size());
+        Assertions.assertEquals("Hi", found.get(0).Message);
+        Assertions.assertEquals("Bye", found.get(1).Message);
+    }
+
+    @Test
+    void testStoreMessageOnce_RetryIsStoredOnce() {
+        String first = this.messages.storeMessageOnce("client-key-1", "0000000001", "00:1:HIHI", "+27123456789", "Hi");
+        String retry = this.messages.storeMessageOnce("client-key-1", "0000000099", "00:2:HIHI", "+27123456789", "Hi");
+        Assertions.assertEquals("0000000001", first);
+        Assertions.assertEquals("0000000001", retry); // The retry returns the original message's ID
+        Assertions.assertEquals(1, this.messages.returnTotalMessages());
+        this.messages.storeMessageOnce(null, "0000000002", "00:2:BYEBYE", "+27123456789", "Bye");
+        this.messages.storeMessageOnce(null, "0000000003", "00:2:BYEBYE", "+27123456789", "Bye"); // Same hash
+        Assertions.assertEquals(2, this.messages.returnTotalMessages());
+    }
+
+    @Test
+    void testStoreMessageOnce_ConcurrentRetriesStoredOnce() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            String id = String.format("%010d", t + 1);
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    this.messages.storeMessageOnce("client-key-" + i, id, "00:" + i + ":HIHI",
+                            "+27123456789", "Hi");
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(200, this.messages.returnTotalMessages()); // One message per key
+    }
+
+    @Test
+    void testLoadConversation_BothDirectionsNewestFirstPage() {
+        for (int i = 0; i < 60; i++) { // Alternating sides, with someone else's message in between
+            boolean fromA = i % 2 == 0;
+            this.messages.storeMessage(String.format("%010d", i), "00:" + i + ":M", fromA ? "+27222222222" : "+27111111111",
+                    "m" + i, fromA ? "+27111111111" : "+27222222222");
+            this.messages.storeMessage(String.format("%010d", 100 + i), "00:" + i + ":X", "+27222222222", "x" + i, "+27333333333");
+        }
+        List<MessageEntry> page = this.messages.loadConversation("+27222222222", "+27111111111", 50);
+        Assertions.assertEquals(50, page.size());
+        Assertions.assertEquals("m10", page.get(0).Message); // Oldest of the newest 50
+        Assertions.assertEquals("m59", page.get(49).Message);
+        Assertions.assertEquals("+27222222222", page.get(49).Sender);
+        this.messages.storeMessage("0000000999", "00:9:N", "+27111111111", "newest", "+27222222222");
+        Assertions.assertEquals("newest", this.messages.loadConversation("+27111111111", "+27222222222", 1).get(0).Message);
+        Assertions.assertTrue(this.messages.loadConversation("+27111111111", "+27999999999", 50).isEmpty());
+    }
+
+    @Test
+    void testFindMessagesBetween_OnlyMessagesInRange() throws InterruptedException {
+        long before = System.currentTimeMillis();
+        this.messages.storeMessage("0000000001", "00:1:HIHI", "+27123456789", "Hi");
+        Thread.sleep(5); // So the next messages are stored later
+        long middle = System.currentTimeMillis();
+        this.messages.storeMessage("0000000002", "00:2:OKOK", "+27987654321", "Ok");
+        this.messages.storeMessage("0000000003", "00:3:BYEBYE", "+27123456789", "Bye");
+        long after = System.currentTimeMillis() + 1;
+        Assertions.assertEquals(3, this.messages.findMessagesBetween(before, after).size());
+        List<MessageEntry> found = this.messages.findMessagesBetween(middle, after);
+        Assertions.assertEquals(2, found.size());
+        Assertions.assertEquals("Ok", found.get(0).Message);
+        Assertions.assertNotNull(found.get(1).Timestamp);
+        Assertions.assertTrue(this.messages.findMessagesBetween(after, after + 60_000).isEmpty());
+    }
+
+    @Test
+    void testEditAndDeleteMessage_ById() throws IOException {
+        this.messages.storeMessage("0000000001", "00:1:HIHI", "+27123456789", "Hi", "+27111111111");
+        this.messages.storeMessage("0000000002", "00:2:OKOK", "+27123456789", "Ok", "+27111111111");
+        Assertions.assertTrue(this.messages.editMessage("0000000001", "Hello there"));
+        MessageEntry edited = this.messages.findMessageByID("0000000001");
+        Assertions.assertEquals("Hello there", edited.Message);
+        Assertions.assertEquals("00:1:HELLOTHERE", edited.MessageHash); // Keeps the message number
+        Assertions.assertTrue(this.messages.deleteMessage("0000000002"));
+        Assertions.assertFalse(this.messages.deleteMessage("0000000002"));
+        Assertions.assertFalse(this.messages.editMessage("9999999999", "x"));
+        Assertions.assertNull(this.messages.findMessageByID("0000000002"));
+        Assertions.assertEquals(1, this.messages.returnTotalMessages());
+        Assertions.assertEquals(1, this.messages.findMessagesToRecipient("+27123456789").size());
+        Assertions.assertEquals(1, this.messages.loadConversation("+27111111111", "+27123456789", 10).size());
+    }
+
+    @Test
+    void testConversationText_CachedUntilConversationChanges() throws IOException {
+        this.messages.storeMessage("0000000001", "00:1:HIHI", "+27222222222", "Hi", "+27111111111");
+        this.messages.storeMessage("0000000002", "00:2:YOYO", "+27444444444", "Yo", "+27333333333");
+        Assertions.assertEquals("You: Hi\n", this.messages.conversationText("+27111111111", "+27222222222", 0));
+        String other = this.messages.conversationText("+27333333333", "+27444444444", 0);
+        String listing = this.messages.historyText();
+        long hits = this.messages.pageCache().hits();
+        Assertions.assertSame(other, this.messages.conversationText("+27333333333", "+27444444444", 0));
+        Assertions.assertEquals(listing, this.messages.historyText());
+        Assertions.assertEquals(hits + 2, this.messages.pageCache().hits());
+
+        this.messages.storeMessage("0000000003", "00:3:BACKBACK", "+27111111111", "Back", "+27222222222");
+        Assertions.assertEquals("You: Hi\n+27222222222: Back\n",
+                this.messages.conversationText("+27111111111", "+27222222222", 0)); // Dropped and reformatted
+        Assertions.assertSame(other, this.messages.conversationText("+27333333333", "+27444444444", 0)); // Untouched
+        Assertions.assertTrue(this.messages.historyText().contains("Message #3:"));
+        this.messages.deleteMessage("0000000001");
+        Assertions.assertEquals("+27222222222: Back\n", this.messages.conversationText("+27111111111", "+27222222222", 0));
+        Assertions.assertFalse(this.messages.historyText().contains("Message #3:")); // Later messages renumbered
+    }
+
+    @Test
+    void testStoreMessage_RejectedOverQuota() {
+        this.messages.setQuota(new SendQuota(2, 100, System::currentTimeMillis, null));
+        Assertions.assertTrue(this.messages.storeMessage("0000000001", "00:1:HIHI", "+27123456789", "Hi", "+27111111111"));
+        Assertions.assertTrue(this.messages.storeMessage("0000000002", "00:2:HIHI", "+27123456789", "Hi", "+27111111111"));
+        Assertions.assertFalse(this.messages.storeMessage("0000000003", "00:3:HIHI", "+27123456789", "Hi", "+27111111111"));
+        Assertions.assertNull(this.messages.storeMessageOnce("key-4", "0000000004", "00:4:HIHI", "+27123456789", "Hi",
+                "+27111111111"));
+        Assertions.assertEquals(2, this.messages.returnTotalMessages()); // Nothing stored over the limit
+        Assertions.assertNull(this.messages.findMessageByID("0000000003"));
+    }
+
+    @Test
+    void testScheduleMessage_StoredWhenDue(@TempDir Path dir) throws IOException, InterruptedException {
+        this.messages.startScheduledSends(dir.resolve("schedule.log"));
+        long now = System.currentTimeMillis();
+        this.messages.scheduleMessage("0000000001", "00:1:HIHI", "+27123456789", "Hi", "+27111111111", now);
+        long cancelled = this.messages.scheduleMessage("0000000002", "00:2:BYEBYE", "+27123456789", "Bye",
+                "+27111111111", now + 3_600_000);
+        Assertions.assertTrue(this.messages.cancelScheduledMessage(cancelled));
+        long deadline = now + 10_000;
+        while (this.messages.scheduledMessageCount() > 0) { // Sent on the next tick
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "Scheduled message was not sent");
+            Thread.sleep(20);
+        }
+        Assertions.assertEquals("Hi", this.messages.findMessageByID("0000000001").Message);
+        Assertions.assertEquals(1, this.messages.returnTotalMessages());
+    }
+
     @Test
     void testLoadMessagesFromJson_NoFileExists() {
         this.cleanUpTestFile();
@@ -0,0 +1,82 @@
+//Libraries
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+// Test class for the metrics registry and the latency histogram
+public class MetricsTest {
+
+    // Test to verify that every value maps to a bucket whose upper bound covers it
+    @Test
+    void testBucketOf_UpperBoundCoversValue() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789L, Long.MAX_VALUE / 2};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            Assertions.assertTrue(LatencyHistogram.upperBoundOf(bucket) >= value); // Upper bound covers the value
+            if (bucket > 0) {
+                Assertions.assertTrue(LatencyHistogram.upperBoundOf(bucket - 1) < value); // Previous bucket does not
+            }
+        }
+    }
+
+    // Test to verify percentiles stay within the bucket precision
+    @Test
+    void testGetValueAtPercentile_WithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram("test_percentile");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L); // Records 1µs .. 1ms
+        }
+        Assertions.assertEquals(1000, histogram.getCount());
+        Assertions.assertEquals(1_000_000L, histogram.getMaxNanos());
+        long p50 = histogram.getValueAtPercentile(50);
+        Assertions.assertTrue(p50 >= 500_000L && p50 <= 500_000L * 107 / 100); // About 6% precision
+        Assertions.assertEquals(1_000_000L, histogram.getValueAtPercentile(100)); // Capped at the real maximum
+    }
+
+    // Test to verify that an empty histogram reports zero
+    @Test
+    void testGetValueAtPercentile_Empty() {
+        LatencyHistogram histogram = new LatencyHistogram("test_empty");
+        Assertions.assertEquals(0, histogram.getValueAtPercentile(99));
+        Assertions.assertEquals(0, histogram.getCount());
+    }
+
+    // Test to verify that concurrent recording loses no values
+    @Test
+    void testRecord_ConcurrentThreads() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram("test_concurrent");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(40_000, histogram.getCount());
+        Assertions.assertEquals(4L * (9_999L * 10_000L / 2), histogram.getSumNanos());
+    }
+
+    // Test to verify the Prometheus text output for a registered timer
+    @Test
+    void testPrometheusRender_IncludesTimerSummary() {
+        Metrics.timer("test_render").record(2_000_000L); // 2 ms
+        String text = PrometheusExporter.render();
+        Assertions.assertTrue(text.contains("# TYPE quickchat_test_render_seconds summary"));
+        Assertions.assertTrue(text.contains("quickchat_test_render_seconds_count 1"));
+        Assertions.assertTrue(text.contains("quickchat_test_render_seconds_sum 0.002000000"));
+    }
+
+    // Test to verify that the registry returns the same metric for the same name
+    @Test
+    void testRegistry_SameNameSameMetric() {
+        Assertions.assertSame(Metrics.timer("test_same"), Metrics.timer("test_same"));
+        Assertions.assertSame(Metrics.counter("test_same"), Metrics.counter("test_same"));
+    }
+}
@@ -0,0 +1,174 @@
+//Libraries
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.net.ServerSocket;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Test class for leader-follower replication of the shard logs
+public class ReplicationTest {
+
+    // Test to verify that with synchronous acknowledgement a written message is already on the follower
+    @Test
+    void testSyncAck_FollowerHasAcknowledgedWrites(@TempDir Path dir) throws Exception {
+        try (ShardedMessageStore leader = new ShardedMessageStore(dir.resolve("leader"), 3);
+             ReplicationServer server = new ReplicationServer(leader, 0, true)) {
+            server.start();
+            try (ReplicationFollower follower = new ReplicationFollower(dir.resolve("follower"), "localhost", server.port())) {
+                follower.start();
+                waitFor(() -> server.followerCount() == 1);
+                for (int i = 0; i < 30; i++) {
+                    leader.awaitWritten(leader.store(entry(i, "+2771000000" + (i % 4))));
+                    Assertions.assertEquals(i + 1, follower.store().size()); // Acknowledged means replicated
+                }
+                Assertions.assertEquals(8, follower.store().findMessagesToRecipient("+27710000001").size());
+                Assertions.assertThrows(IllegalStateException.class, () -> follower.store().store(entry(99, "+27710000001")));
+            }
+        }
+        for (int i = 0; i < 3; i++) { // Byte-for-byte copies of the leader's logs
+            Assertions.assertArrayEquals(Files.readAllBytes(dir.resolve("leader/shard-" + i + ".log")),
+                    Files.readAllBytes(dir.resolve("follower/shard-" + i + ".log")));
+        }
+    }
+
+    // Test to verify that a follower in its own process serves the history and resumes after a restart
+    @Test
+    void testFollowerProcess_ServesHistoryAndResumes(@TempDir Path dir) throws Exception {
+        try (ShardedMessageStore leader = new ShardedMessageStore(dir.resolve("leader"), 2);
+             ReplicationServer server = new ReplicationServer(leader, 0, false)) {
+            server.start();
+            for (int i = 0; i < 100; i++) {
+                leader.store(entry(i, "+2772000000" + (i % 5)));
+            }
+            int httpPort = freePort();
+            Process follower = startFollower(server.port(), httpPort, dir.resolve("follower"));
+            try {
+                waitFor(() -> "100".equals(query(httpPort, "/count")));
+                Assertions.assertTrue(query(httpPort, "/messages?recipient=%2B27720000003").contains("0000000098"));
+                Assertions.assertTrue(query(httpPort, "/messages?id=0000000042").contains("text 42"));
+            } finally {
+                follower.destroy();
+                follower.waitFor();
+            }
+
+            for (int i = 100; i < 150; i++) { // Written while the follower is down
+                leader.store(entry(i, "+2772000000" + (i % 5)));
+            }
+            follower = startFollower(server.port(), httpPort, dir.resolve("follower"));
+            try {
+                waitFor(() -> "150".equals(query(httpPort, "/count"))); // Catches up from its own log lengths
+            } finally {
+                follower.destroy();
+                follower.waitFor();
+            }
+        }
+    }
+
+    // Test to verify that a follower whose leader compacted its logs copies them again instead of resuming mid-log
+    @Test
+    void testLeaderCompacted_FollowerStartsOver(@TempDir Path dir) throws Exception {
+        Path leaderDir = dir.resolve("leader");
+        try (ShardedMessageStore leader = new ShardedMessageStore(leaderDir, 1);
+             ReplicationServer server = new ReplicationServer(leader, 0, true)) {
+            server.start();
+            try (ReplicationFollower follower = new ReplicationFollower(dir.resolve("follower"), "localhost", server.port())) {
+                follower.start();
+                waitFor(() -> server.followerCount() == 1);
+                for (int i = 0; i < 40; i++) {
+                    leader.store(entry(i, "+27730000000"));
+                }
+                for (int i = 0; i < 40; i += 2) {
+                    leader.delete(String.format("%010d", i));
+                }
+                leader.flush();
+                waitFor(() -> follower.store().shard(0).durableLength() == leader.shard(0).durableLength());
+            }
+        }
+        long before = ShardedMessageStore.generation(leaderDir);
+        MessageShard.compact(leaderDir.resolve("shard-0.log")); // Shorter log with the same messages
+        Assertions.assertNotEquals(before, ShardedMessageStore.generation(leaderDir));
+
+        try (ShardedMessageStore leader = new ShardedMessageStore(leaderDir, 1);
+             ReplicationServer server = new ReplicationServer(leader, 0, false)) {
+            server.start();
+            try (ReplicationFollower follower = new ReplicationFollower(dir.resolve("follower"), "localhost", server.port())) {
+                follower.start();
+                waitFor(() -> follower.store() != null && follower.store().generation() == leader.generation()
+                        && follower.store().shard(0).durableLength() == leader.shard(0).durableLength());
+                Assertions.assertEquals(20, follower.store().size());
+                Assertions.assertNull(follower.store().findMessageByID("0000000000"));
+                Assertions.assertEquals("text 39", follower.store().findMessageByID("0000000039").Message);
+            }
+        }
+        Assertions.assertArrayEquals(Files.readAllBytes(leaderDir.resolve("shard-0.log")),
+                Files.readAllBytes(dir.resolve("follower/shard-0.log")));
+    }
+
+    // Test to verify that a shipped chunk with a damaged record applies none of its records, so a resend does not duplicate them
+    @Test
+    void testApplyReplicated_DamagedChunkAppliesNothing(@TempDir Path dir) throws IOException {
+        ByteBuffer chunk = MessageLog.encode(ByteBuffer.allocate(256), 0, entry(0, "+27740000000"));
+        chunk = MessageLog.encode(chunk, 1, entry(1, "+27740000000")).flip();
+        ByteBuffer damaged = ByteBuffer.allocate(chunk.remaining()).put(chunk.duplicate()).flip();
+        damaged.put(damaged.limit() - 1, (byte) (damaged.get(damaged.limit() - 1) ^ 1)); // Second record's checksum fails
+        try (ShardedMessageStore copy = new ShardedMessageStore(dir, 1)) {
+            Assertions.assertThrows(IOException.class, () -> copy.shard(0).applyReplicated(damaged));
+            Assertions.assertEquals(0, copy.size()); // The first record was not applied either
+            Assertions.assertEquals(0, copy.shard(0).durableLength());
+            copy.shard(0).applyReplicated(chunk); // The leader sends the same bytes again
+            Assertions.assertEquals(2, copy.size());
+            Assertions.assertFalse(chunk.hasRemaining());
+        }
+    }
+
+    // Starts a follower in a separate JVM with the test classpath
+    private static Process startFollower(int leaderPort, int httpPort, Path dir) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "ReplicationFollower",
+                "localhost", String.valueOf(leaderPort), String.valueOf(httpPort), dir.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    // Sends a query to a follower, returning null while it is not answering yet
+    private static String query(int httpPort, String path) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + httpPort + path)).build();
+            return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString()).body();
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // Finds a free local port
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // Polls a condition for up to 30 seconds
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for replication");
+            Thread.sleep(20);
+        }
+    }
+
+    // Builds a message with a fixed-width ID
+    private static MessageEntry entry(int i, String recipient) {
+        return new MessageEntry(String.format("%010d", i), "00:" + i + ":TEXT" + i, recipient, "text " + i);
+    }
+}
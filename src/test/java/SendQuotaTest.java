@@ -0,0 +1,74 @@
+//Libraries
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Test class for the per-user send quotas and their checkpoints
+public class SendQuotaTest {
+
+    // Start of a day in UTC, in milliseconds
+    private static final long DAY_START = 20_000L * 24 * 60 * 60_000;
+
+    // Test to verify that the minute limit resets each minute and the day limit holds until the next day
+    @Test
+    void testTryAcquire_MinuteAndDayLimits() {
+        AtomicLong now = new AtomicLong(DAY_START);
+        SendQuota quota = new SendQuota(3, 5, now::get, null);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(quota.tryAcquire("+27831234567"));
+        }
+        Assertions.assertFalse(quota.tryAcquire("+27831234567")); // Fourth in the same minute
+        Assertions.assertTrue(quota.tryAcquire("+27839999999")); // Other users are not affected
+        now.addAndGet(60_000);
+        Assertions.assertTrue(quota.tryAcquire("+27831234567"));
+        Assertions.assertTrue(quota.tryAcquire("+27831234567"));
+        Assertions.assertFalse(quota.tryAcquire("+27831234567")); // Five today
+        Assertions.assertEquals(5, quota.sentToday("+27831234567"));
+        Assertions.assertEquals(2, quota.sentThisMinute("+27831234567"));
+        now.addAndGet(24 * 60 * 60_000L);
+        Assertions.assertEquals(0, quota.sentToday("+27831234567"));
+        Assertions.assertTrue(quota.tryAcquire("+27831234567"));
+    }
+
+    // Test to verify that counters survive a restart through the checkpoint file
+    @Test
+    void testCheckpoint_SurvivesRestart(@TempDir Path dir) {
+        AtomicLong now = new AtomicLong(DAY_START + 90_000);
+        Path file = dir.resolve("quotas.json");
+        SendQuota quota = new SendQuota(10, 4, now::get, file);
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertTrue(quota.tryAcquire("+27831234567"));
+        }
+        quota.checkpoint();
+        SendQuota reopened = new SendQuota(10, 4, now::get, file);
+        Assertions.assertEquals(4, reopened.sentToday("+27831234567"));
+        Assertions.assertFalse(reopened.tryAcquire("+27831234567")); // A restart is not a fresh quota
+    }
+
+    // Test to verify that concurrent sends by one user never get past the limit
+    @Test
+    void testTryAcquire_ConcurrentSendsCountExactly() throws InterruptedException {
+        SendQuota quota = new SendQuota(0, 1000, () -> DAY_START, null);
+        AtomicInteger granted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    if (quota.tryAcquire("+27831234567")) granted.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(1000, granted.get());
+        Assertions.assertEquals(1000, quota.sentToday("+27831234567"));
+    }
+}
@@ -0,0 +1,289 @@
+//Libraries
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Test class for the recipient-sharded message store and its logs
+public class ShardedMessageStoreTest {
+
+    // Test to verify that a recipient's messages stay on one shard and the merged listing keeps store order
+    @Test
+    void testStore_RoutesByRecipientAndMergesInOrder(@TempDir Path dir) throws IOException {
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 4)) {
+            for (int i = 0; i < 200; i++) {
+                store.store(entry(i, "+2771234560" + (i % 10)));
+            }
+            store.flush();
+            Assertions.assertEquals(200, store.size());
+
+            List<String> ids = new ArrayList<>();
+            store.forEach(view -> ids.add(view.getMessageID()));
+            for (int i = 0; i < 200; i++) {
+                Assertions.assertEquals(id(i), ids.get(i)); // Same order as stored, across shards
+            }
+
+            List<MessageEntry> toOne = store.findMessagesToRecipient("+27712345603");
+            Assertions.assertEquals(20, toOne.size());
+            Assertions.assertEquals(id(3), toOne.get(0).MessageID);
+            Assertions.assertEquals(id(193), toOne.get(19).MessageID);
+            Assertions.assertEquals("text 57", store.findMessageByID(id(57)).Message);
+            Assertions.assertNull(store.findMessageByID("9999999999"));
+        }
+    }
+
+    // Test to verify that a directory keeps its shard count whatever count it is opened with later
+    @Test
+    void testForDirectory_AdoptsStoredShardCount(@TempDir Path dir) throws IOException {
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 4)) {
+            for (int i = 0; i < 20; i++) {
+                store.store(entry(i, "+2771234560" + (i % 10)));
+            }
+            store.flush();
+        }
+        Assertions.assertEquals(4, ShardedMessageStore.shardCount(dir));
+        Assertions.assertThrows(IOException.class, () -> new ShardedMessageStore(dir, 2));
+        Files.delete(dir.resolve(ShardedMessageStore.SHARD_COUNT_FILE)); // As written before the count was kept
+        Assertions.assertEquals(4, ShardedMessageStore.shardCount(dir)); // Counted from the logs
+        try (ShardedMessageStore store = ShardedMessageStore.forDirectory(dir, 2)) { // As on a host with fewer cores
+            Assertions.assertEquals(4, store.shardCount());
+            Assertions.assertEquals(20, store.size());
+            Assertions.assertEquals("text 13", store.findMessagesToRecipient("+27712345603").get(1).Message);
+        }
+        Assertions.assertTrue(Files.exists(dir.resolve(ShardedMessageStore.SHARD_COUNT_FILE))); // Written back
+    }
+
+    // Test to verify that a conversation is merged from both participants' shards in store order
+    @Test
+    void testLoadConversation_MergesBothDirections(@TempDir Path dir) throws IOException {
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 4)) {
+            String a = "+27711111111";
+            String b = "+27722222222";
+            for (int i = 0; i < 30; i++) {
+                boolean fromA = i % 3 != 0;
+                store.store(new MessageEntry(id(i), "h" + i, fromA ? b : a, "text " + i, fromA ? a : b));
+            }
+            store.flush();
+            List<MessageEntry> page = store.loadConversation(b, a, 10);
+            Assertions.assertEquals(10, page.size());
+            for (int i = 0; i < 10; i++) {
+                Assertions.assertEquals("text " + (20 + i), page.get(i).Message);
+            }
+        }
+    }
+
+    // Test to verify that a cached conversation page is dropped once a new message in it is written
+    @Test
+    void testPageCache_InvalidatedWhenConversationChanges(@TempDir Path dir) throws IOException {
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 4)) {
+            String ab = ConversationIndex.conversationKey("+27711111111", "+27722222222");
+            String cd = ConversationIndex.conversationKey("+27733333333", "+27744444444");
+            store.pageCache().get(ab, "", 0, () -> "ab");
+            store.pageCache().get(cd, "", 0, () -> "cd");
+            store.store(new MessageEntry(id(1), "h1", "+27722222222", "text 1", "+27711111111"));
+            store.flush();
+            Assertions.assertEquals("cd", store.pageCache().get(cd, "", 0, () -> "reloaded")); // Other conversations stay
+            Assertions.assertEquals("ab2", store.pageCache().get(ab, "", 0, () -> "ab2"));
+        }
+    }
+
+    // Test to verify that a reference returned by store() leads back to the message
+    @Test
+    void testView_ByReference(@TempDir Path dir) throws IOException {
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 3)) {
+            int first = store.store(entry(1, "+27711111111"));
+            int second = store.store(entry(2, "+27722222222"));
+            Assertions.assertEquals(id(2), store.view(second, new MessageView()).getMessageID()); // Waits for the write
+            Assertions.assertEquals("+27711111111", store.view(first, new MessageView()).getRecipient());
+        }
+    }
+
+    // Test to verify that reopening a directory replays every shard and new messages sort after them
+    @Test
+    void testReopen_RecoversMessagesAndOrder(@TempDir Path dir) throws IOException {
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 2)) {
+            for (int i = 0; i < 50; i++) {
+                store.store(entry(i, "+2770000000" + (i % 7)));
+            }
+        }
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 2)) {
+            Assertions.assertEquals(50, store.size());
+            store.store(entry(50, "+27700000001"));
+            store.flush();
+            List<String> ids = new ArrayList<>();
+            store.forEach(view -> ids.add(view.getMessageID()));
+            Assertions.assertEquals(51, ids.size());
+            Assertions.assertEquals(id(0), ids.get(0));
+            Assertions.assertEquals(id(50), ids.get(50)); // After everything recovered
+        }
+    }
+
+    // Test to verify that a time range query merges every shard's matches in store order
+    @Test
+    void testFindMessagesBetween_MergesShardsInOrder(@TempDir Path dir) throws IOException {
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 4)) {
+            for (int i = 0; i < 100; i++) {
+                store.store(new MessageEntry(id(i), "h" + i, "+2771234560" + (i % 10), "text " + i, null, 5_000L + i));
+            }
+            store.flush();
+            List<MessageEntry> found = store.findMessagesBetween(5_020L, 5_030L);
+            Assertions.assertEquals(10, found.size());
+            for (int i = 0; i < 10; i++) {
+                Assertions.assertEquals(id(20 + i), found.get(i).MessageID);
+            }
+            Assertions.assertNotNull(store.findMessageByID(id(0)).Timestamp);
+        }
+    }
+
+    // Test to verify that records written without a timestamp get the next record's time when replayed
+    @Test
+    void testReplay_BackfillsLegacyTimestamps(@TempDir Path dir) throws IOException {
+        try (MessageLog log = new MessageLog(dir.resolve("shard-0.log"), (type, sequence, payload) -> { })) {
+            ByteBuffer batch = ByteBuffer.allocate(256);
+            batch = MessageLog.encode(batch, 0, entry(0, "+27711111111")); // Written before timestamps
+            batch = MessageLog.encode(batch, 1, entry(1, "+27711111111"));
+            batch = MessageLog.encode(batch, 2, new MessageEntry(id(2), "h2", "+27711111111", "text 2", null, 7_000L));
+            log.append(batch.flip());
+            log.force();
+        }
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 1)) {
+            List<MessageEntry> found = store.findMessagesToRecipient("+27711111111");
+            Assertions.assertEquals(3, found.size());
+            Assertions.assertEquals(id(0), found.get(0).MessageID); // Order is kept
+            Assertions.assertEquals(7_000L, found.get(0).Timestamp);
+            Assertions.assertEquals(7_000L, found.get(1).Timestamp);
+            Assertions.assertEquals(3, store.findMessagesBetween(7_000L, 7_001L).size());
+        }
+    }
+
+    // Test to verify that edits and deletes are appended as records, apply at once and survive a reopen
+    @Test
+    void testUpdateAndDelete_SurviveReopen(@TempDir Path dir) throws IOException {
+        long logSize;
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 2)) {
+            for (int i = 0; i < 10; i++) {
+                store.store(entry(i, "+2771234560" + (i % 3)));
+            }
+            store.flush();
+            long before = Files.size(dir.resolve("shard-0.log")) + Files.size(dir.resolve("shard-1.log"));
+            Assertions.assertTrue(store.update(id(4), "00:4:EDITED", "edited"));
+            Assertions.assertTrue(store.delete(id(7)));
+            Assertions.assertFalse(store.delete(id(7))); // Already gone
+            Assertions.assertFalse(store.update("9999999999", "h", "x"));
+            logSize = Files.size(dir.resolve("shard-0.log")) + Files.size(dir.resolve("shard-1.log"));
+            Assertions.assertTrue(logSize > before); // Appended, not rewritten
+            Assertions.assertEquals("edited", store.findMessageByID(id(4)).Message);
+            Assertions.assertNull(store.findMessageByID(id(7)));
+            Assertions.assertEquals(9, store.size());
+        }
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 2)) {
+            Assertions.assertEquals(9, store.size());
+            Assertions.assertEquals("00:4:EDITED", store.findMessageByID(id(4)).MessageHash);
+            List<String> ids = new ArrayList<>();
+            store.forEach(view -> ids.add(view.getMessageID()));
+            Assertions.assertFalse(ids.contains(id(7)));
+            Assertions.assertEquals(2, store.findMessagesToRecipient("+27712345601").size()); // 1 and 4; 7 was deleted
+        }
+    }
+
+    // Test to verify that compaction drops deleted messages and edit records but keeps order and edits
+    @Test
+    void testCompact_PurgesDeletedMessages(@TempDir Path dir) throws IOException {
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 1)) {
+            for (int i = 0; i < 20; i++) {
+                store.store(entry(i, "+27711111111"));
+            }
+            for (int i = 0; i < 20; i += 2) {
+                store.delete(id(i));
+            }
+            store.update(id(5), "00:5:EDITED", "edited");
+        }
+        Path log = dir.resolve("shard-0.log");
+        long before = Files.size(log);
+        MessageShard.compact(log);
+        Assertions.assertTrue(Files.size(log) < before / 2);
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 1)) {
+            List<MessageEntry> left = store.findMessagesToRecipient("+27711111111");
+            Assertions.assertEquals(10, left.size());
+            Assertions.assertEquals(id(1), left.get(0).MessageID);
+            Assertions.assertEquals("edited", left.get(2).Message);
+            store.store(entry(20, "+27711111111"));
+            store.flush();
+            List<String> ids = new ArrayList<>();
+            store.forEach(view -> ids.add(view.getMessageID()));
+            Assertions.assertEquals(id(20), ids.get(10)); // Sorts after the compacted messages
+        }
+    }
+
+    // Test to verify that a record torn by a crash is cut off and the intact records are kept
+    @Test
+    void testLog_TruncatesTornTail(@TempDir Path dir) throws IOException {
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 1)) {
+            store.store(entry(1, "+27711111111"));
+            store.store(entry(2, "+27711111111"));
+        }
+        Path log = dir.resolve("shard-0.log");
+        long intact = Files.size(log);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(intact - 3); // Second record loses its last bytes
+        }
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 1)) {
+            Assertions.assertEquals(1, store.size());
+            store.store(entry(3, "+27711111111"));
+            store.flush();
+            Assertions.assertEquals(id(3), store.findMessagesToRecipient("+27711111111").get(1).MessageID);
+        }
+    }
+
+    // Test to verify that a batch the log failed to write is never reported as written
+    @Test
+    void testWriteFailure_NotReportedAsWritten(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("shard-0.log");
+        long[] sequence = {0};
+        MessageShard shard = new MessageShard(0, file, () -> sequence[0]++);
+        shard.start();
+        shard.awaitWritten(shard.append(entry(1, "+27711111111")));
+        long durable = shard.durableLength();
+        java.lang.reflect.Field logField = MessageShard.class.getDeclaredField("log");
+        logField.setAccessible(true);
+        java.lang.reflect.Field channelField = MessageLog.class.getDeclaredField("channel");
+        channelField.setAccessible(true);
+        ((FileChannel) channelField.get(logField.get(shard))).close(); // Every later write fails
+
+        int lost = shard.append(entry(2, "+27711111111"));
+        Assertions.assertThrows(IllegalStateException.class, () -> shard.awaitWritten(lost));
+        Assertions.assertThrows(IllegalStateException.class, shard::flush);
+        Assertions.assertThrows(IllegalStateException.class, () -> shard.append(entry(3, "+27711111111")));
+        Assertions.assertEquals(1, shard.view().size()); // Not applied in memory either
+        Assertions.assertEquals(durable, shard.durableLength()); // Nothing to ship to followers
+        Assertions.assertThrows(IOException.class, shard::close);
+
+        try (ShardedMessageStore store = new ShardedMessageStore(dir, 1)) {
+            Assertions.assertEquals(1, store.size());
+        }
+    }
+
+    // Test to verify that a directory cannot be reopened with a different number of shards
+    @Test
+    void testOpen_RejectsDifferentShardCount(@TempDir Path dir) throws IOException {
+        new ShardedMessageStore(dir, 2).close();
+        Assertions.assertThrows(IOException.class, () -> new ShardedMessageStore(dir, 3));
+    }
+
+    // Builds a message with a fixed-width ID
+    private static MessageEntry entry(int i, String recipient) {
+        return new MessageEntry(id(i), "00:" + i + ":TEXT" + i, recipient, "text " + i);
+    }
+
+    // Returns the ID used for message i
+    private static String id(int i) {
+        return String.format("%010d", i);
+    }
+}
@@ -0,0 +1,102 @@
+//Libraries
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Test class for the crash-safe snapshot writer
+public class SnapshotWriterTest {
+
+    @TempDir
+    Path dir; // Fresh directory for every test
+
+    // Reads a file as a UTF-8 string
+    private String read(Path file) throws IOException {
+        return Files.readString(file, StandardCharsets.UTF_8);
+    }
+
+    // Test to verify that a snapshot replaces the live file and keeps the previous ones as generations
+    @Test
+    void testWriteAtomically_RotatesGenerations() throws IOException {
+        Path target = dir.resolve("data.json");
+        for (int i = 1; i <= 4; i++) {
+            SnapshotWriter.writeAtomically(target, ("v" + i).getBytes(StandardCharsets.UTF_8), 2);
+        }
+        Assertions.assertEquals("v4", read(target)); // Newest snapshot is live
+        Assertions.assertEquals("v3", read(SnapshotWriter.generation(target, 1)));
+        Assertions.assertEquals("v2", read(SnapshotWriter.generation(target, 2)));
+        Assertions.assertFalse(Files.exists(SnapshotWriter.generation(target, 3))); // Oldest was dropped
+        Assertions.assertFalse(Files.exists(dir.resolve("data.json.tmp"))); // No leftovers
+    }
+
+    // Test to verify that a damaged live file is skipped in favour of the newest intact generation
+    @Test
+    void testReadLatest_FallsBackWhenChecksumMismatches() throws IOException {
+        Path target = dir.resolve("data.json");
+        SnapshotWriter.writeAtomically(target, "good".getBytes(StandardCharsets.UTF_8), 2);
+        SnapshotWriter.writeAtomically(target, "newer".getBytes(StandardCharsets.UTF_8), 2);
+        Files.writeString(target, "torn"); // Simulates a damaged live file
+        Assertions.assertEquals("good", new String(SnapshotWriter.readLatest(target, 2), StandardCharsets.UTF_8));
+    }
+
+    // Test to verify recovery when a crash left no live file after rotation
+    @Test
+    void testReadLatest_LiveFileMissing() throws IOException {
+        Path target = dir.resolve("data.json");
+        SnapshotWriter.writeAtomically(target, "first".getBytes(StandardCharsets.UTF_8), 2);
+        SnapshotWriter.writeAtomically(target, "second".getBytes(StandardCharsets.UTF_8), 2);
+        Files.delete(target); // Crash between rotation and rename
+        Assertions.assertEquals("first", new String(SnapshotWriter.readLatest(target, 2), StandardCharsets.UTF_8));
+    }
+
+    // Test to verify that legacy files without a checksum are read as they are
+    @Test
+    void testReadLatest_LegacyFileWithoutChecksum() throws IOException {
+        Path target = dir.resolve("legacy.json");
+        Files.writeString(target, "[]");
+        Assertions.assertEquals("[]", new String(SnapshotWriter.readLatest(target, 2), StandardCharsets.UTF_8));
+        Assertions.assertNull(SnapshotWriter.readLatest(dir.resolve("missing.json"), 2)); // No file at all
+    }
+
+    // Test to verify that every generation being damaged is reported as an error
+    @Test
+    void testReadLatest_AllDamaged_Throws() throws IOException {
+        Path target = dir.resolve("data.json");
+        SnapshotWriter.writeAtomically(target, "only".getBytes(StandardCharsets.UTF_8), 1);
+        Files.writeString(target, "bad");
+        Assertions.assertThrows(IOException.class, () -> SnapshotWriter.readLatest(target, 1));
+    }
+
+    // Test to verify that background writes are flushed and the last submitted snapshot wins
+    @Test
+    void testSubmit_FlushWritesNewestSnapshot() throws IOException {
+        Path target = dir.resolve("async.json");
+        SnapshotWriter writer = SnapshotWriter.forFile(target, Metrics.timer("test_snapshot"));
+        for (int i = 0; i < 50; i++) {
+            final String content = "snapshot " + i;
+            writer.submit(1, () -> content);
+        }
+        writer.flush();
+        Assertions.assertEquals("snapshot 49", read(target));
+        Assertions.assertEquals("snapshot 49", new String(writer.read(), StandardCharsets.UTF_8));
+    }
+
+    // Test to verify that a failed background write is reported by flush and submit until a later one succeeds
+    @Test
+    void testFlush_ReportsFailedWrite() throws IOException {
+        Path target = dir.resolve("failing.json");
+        Path blocker = dir.resolve("failing.json.tmp");
+        Files.createDirectory(blocker); // The temporary file cannot be created
+        SnapshotWriter writer = SnapshotWriter.forFile(target, Metrics.timer("test_snapshot"));
+        writer.submit(1, () -> "lost");
+        Assertions.assertThrows(IOException.class, writer::flush);
+
+        Files.delete(blocker);
+        Assertions.assertThrows(IOException.class, () -> writer.submit(1, () -> "saved")); // Queued all the same
+        writer.flush(); // The newer snapshot holds everything, so the failure is over
+        Assertions.assertEquals("saved", read(target));
+    }
+}
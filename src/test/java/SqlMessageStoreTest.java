@@ -0,0 +1,29 @@
+//Libraries
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Test class for the failure handling of the SQL message store
+public class SqlMessageStoreTest {
+
+    // Test to verify that messages the database refused are never reported as written
+    @Test
+    void testWriteFailure_NotReportedAsWritten(@TempDir Path dir) throws IOException, SQLException {
+        SqlMessageStore store = SqlMessageStore.forDirectory(dir);
+        store.awaitWritten(store.store(new MessageEntry("0000000001", "00:1:HI", "+27711111111", "kept", null, 1L)));
+        try (Connection c = SqlDatabase.forDirectory(dir).connection(); Statement s = c.createStatement()) {
+            s.execute("DROP TABLE messages"); // Every later insert fails
+        }
+        int lost = store.store(new MessageEntry("0000000002", "00:2:HI", "+27711111111", "lost", null, 2L));
+        Assertions.assertThrows(IllegalStateException.class, () -> store.awaitWritten(lost));
+        Assertions.assertThrows(IllegalStateException.class, store::flush);
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> store.store(new MessageEntry("0000000003", "00:3:HI", "+27711111111", "refused", null, 3L)));
+        Assertions.assertThrows(IOException.class, store::close);
+    }
+}
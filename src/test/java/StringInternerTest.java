@@ -0,0 +1,75 @@
+//Libraries
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+// Test class for the bounded string pool
+public class StringInternerTest {
+
+    // Test to verify that equal strings come back as one shared copy
+    @Test
+    void testIntern_ReturnsSharedCopy() {
+        StringInterner pool = new StringInterner("test_shared", 64, 16);
+        String first = pool.intern(new String("+27123456789"));
+        String second = pool.intern(new String("+27123456789"));
+        Assertions.assertSame(first, second);
+        Assertions.assertNull(pool.intern(null));
+    }
+
+    // Test to verify that strings over the length limit are not pooled
+    @Test
+    void testIntern_SkipsLongStrings() {
+        StringInterner pool = new StringInterner("test_long", 64, 4);
+        String first = pool.intern(new String("hello"));
+        String second = pool.intern(new String("hello"));
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals(first, second);
+    }
+
+    // Test to verify that a disabled pool passes strings through
+    @Test
+    void testIntern_DisabledPool() {
+        StringInterner pool = new StringInterner("test_disabled", 0, 16);
+        String value = new String("ok");
+        Assertions.assertSame(value, pool.intern(value));
+        Assertions.assertNotSame(pool.intern(new String("ok")), pool.intern(new String("ok")));
+    }
+
+    // Test to verify that the pool stays bounded: old strings are evicted rather than kept forever
+    @Test
+    void testIntern_EvictsWhenFull() {
+        StringInterner pool = new StringInterner("test_evict", 8, 16);
+        String original = pool.intern(new String("value-0"));
+        for (int i = 1; i < 1000; i++) {
+            pool.intern("value-" + i);
+        }
+        Assertions.assertNotSame(original, pool.intern(new String("value-0"))); // Evicted long ago
+    }
+
+    // Test to verify that concurrent use always returns an equal string
+    @Test
+    void testIntern_ConcurrentThreads() throws InterruptedException {
+        StringInterner pool = new StringInterner("test_concurrent", 16, 16);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    String value = "r" + (i % 50);
+                    if (!value.equals(pool.intern(value))) {
+                        synchronized (failures) {
+                            failures.add(new AssertionError(value));
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertTrue(failures.isEmpty());
+    }
+}
@@ -0,0 +1,64 @@
+//Libraries
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+// Test class for the hierarchical timing wheel
+public class TimingWheelTest {
+
+    // Test to verify that timers fire on their tick, in deadline order, across every level
+    @Test
+    void testAdvance_FiresInDeadlineOrderAcrossLevels() {
+        TimingWheel<Long> wheel = new TimingWheel<>(1000, 0);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            long due = (1 + random.nextInt(1 << 20)) * 1000L; // Up to about 12 days of one-second ticks
+            deadlines.add(due);
+            wheel.add(due, due);
+        }
+        deadlines.sort(null);
+        List<Long> fired = new ArrayList<>();
+        long[] now = {0};
+        for (now[0] = 0; now[0] <= (1L << 20) * 1000; now[0] += 7 * 60_000) { // Advances several minutes at a time
+            wheel.advance(now[0], due -> {
+                Assertions.assertTrue(due <= now[0], "Fired early");
+                fired.add(due);
+            });
+        }
+        wheel.advance((1L << 21) * 1000, fired::add);
+        Assertions.assertEquals(deadlines, fired);
+        Assertions.assertEquals(0, wheel.size());
+    }
+
+    // Test to verify that a cancelled timer never fires and cancelling twice is refused
+    @Test
+    void testCancel_RemovesTimer() {
+        TimingWheel<String> wheel = new TimingWheel<>(1000, 0);
+        TimingWheel.Timer<String> keep = wheel.add("keep", 5_000);
+        TimingWheel.Timer<String> drop = wheel.add("drop", 500_000); // On a higher level
+        Assertions.assertTrue(wheel.cancel(drop));
+        Assertions.assertFalse(wheel.cancel(drop));
+        List<String> fired = new ArrayList<>();
+        wheel.advance(1_000_000, fired::add);
+        Assertions.assertEquals(List.of("keep"), fired);
+        Assertions.assertFalse(keep.isPending());
+        Assertions.assertFalse(wheel.cancel(keep)); // Already fired
+    }
+
+    // Test to verify that an overdue timer fires on the next tick and a far deadline waits
+    @Test
+    void testAdd_OverdueAndFarDeadlines() {
+        TimingWheel<String> wheel = new TimingWheel<>(1000, 10_000_000);
+        wheel.add("overdue", 5_000);
+        wheel.add("far", Long.MAX_VALUE / 2);
+        List<String> fired = new ArrayList<>();
+        wheel.advance(10_000_999, fired::add);
+        Assertions.assertTrue(fired.isEmpty()); // Never before the next tick
+        wheel.advance(10_001_000, fired::add);
+        Assertions.assertEquals(List.of("overdue"), fired);
+        Assertions.assertEquals(1, wheel.size());
+    }
+}
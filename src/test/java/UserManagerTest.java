@@ -346,6 +346,81 @@ public class UserManagerTest {
         Assertions.assertEquals("LoggedIn", this.UserManager.getLoggedInUser().getName()); // Asserts the logged-in user's name
     }
 
+    // Test to verify that registerUser adds a valid user and saves it without any dialogs
+    @Test
+    void testRegisterUser_ValidDetails_AddsUserAndSaves() {
+        String result = this.UserManager.registerUser("new_", "Passw0rd!", "New", "User", "+27123456789"); // Registers a user
+        Assertions.assertEquals("✅ Registration successful!", result); // Asserts the success message
+        Assertions.assertTrue(this.UserManager.getInternalUsers().containsKey("new_")); // Asserts the user was added
+        TestableUserManager loadedUserManager = new TestableUserManager(); // Loads users from the file
+        Assertions.assertTrue(loadedUserManager.getInternalUsers().containsKey("new_")); // Asserts the user was saved
+    }
+
+    // Test to verify that registerUser rejects invalid details and taken usernames
+    @Test
+    void testRegisterUser_InvalidOrDuplicate_DoesNotAddUser() {
+        Assertions.assertTrue(this.UserManager.registerUser("invalid", "Passw0rd!", "A", "B", "+27123456789").startsWith("❌ Registration failed")); // Invalid username
+        Assertions.assertTrue(this.UserManager.getInternalUsers().isEmpty()); // Asserts nothing was added
+        this.UserManager.registerUser("dup_", "Passw0rd!", "First", "User", "+27123456789"); // Registers the first user
+        Assertions.assertEquals("❌ Username already exists.", this.UserManager.registerUser("dup_", "Passw0rd!", "Second", "User", "+27123456789")); // Duplicate username
+        Assertions.assertEquals("First", this.UserManager.getInternalUsers().get("dup_").getName()); // Asserts the original user is unchanged
+    }
+
+    // Test to verify that loginUser sets the logged-in user only for correct credentials
+    @Test
+    void testLoginUser_SetsLoggedInUserOnSuccess() {
+        this.UserManager.registerUser("log_", "Passw0rd!", "Log", "User", "+27123456789"); // Registers a user
+        Assertions.assertFalse(this.UserManager.loginUser("log_", "wrong")); // Asserts wrong password fails
+        Assertions.assertFalse(this.UserManager.isLoggedIn()); // Asserts no user is logged in
+        Assertions.assertTrue(this.UserManager.loginUser("log_", "Passw0rd!")); // Asserts correct password succeeds
+        Assertions.assertEquals("log_", this.UserManager.getLoggedInUser().getUsername()); // Asserts the correct user is logged in
+    }
+
+    // Test to verify that a registered user's profile is cached, looked up by username or cellphone, and carries no password
+    @Test
+    void testGetProfile_CachedAfterRegistration() {
+        this.UserManager.registerUser("prof_", "Passw0rd!", "Pro", "File", "+27123456789"); // Registers a user
+        UserProfile profile = this.UserManager.getProfile("prof_"); // Looks the profile up by username
+        Assertions.assertEquals("Pro", profile.getName()); // Asserts the name was copied
+        Assertions.assertSame(profile, this.UserManager.getProfile("prof_")); // Asserts the same cached profile is served again
+        Assertions.assertSame(profile, this.UserManager.findProfileByCellphone("+27123456789")); // Asserts the cellphone lookup finds it too
+        Assertions.assertFalse(profile.text().contains("Passw0rd!")); // Asserts the password is not shown
+        Assertions.assertTrue(profile.text().contains("Cellphone: +27123456789")); // Asserts the profile text has the number
+        Assertions.assertNull(this.UserManager.getProfile("nobody_")); // Asserts unknown users have no profile
+    }
+
+    // Test to verify that updating the logged-in user's details replaces the cached profile
+    @Test
+    void testUpdateProfile_RefreshesCachedProfile() {
+        this.UserManager.registerUser("upd_", "Passw0rd!", "Old", "Name", "+27123456789"); // Registers a user
+        this.UserManager.loginUser("upd_", "Passw0rd!"); // Logs the user in
+        UserProfile before = this.UserManager.getProfile("upd_"); // Caches the old profile
+        Assertions.assertTrue(this.UserManager.updateProfile("New", "Name", "07123").startsWith("❌")); // Asserts a bad number is rejected
+        Assertions.assertSame(before, this.UserManager.getProfile("upd_")); // Asserts the profile did not change
+        Assertions.assertEquals("✅ Profile updated!", this.UserManager.updateProfile("New", "Name", "+27831234567")); // Updates the details
+        Assertions.assertEquals("New", this.UserManager.getProfile("upd_").getName()); // Asserts the cached profile was refreshed
+        Assertions.assertEquals("Old", before.getName()); // Asserts the old profile itself never changed
+        Assertions.assertNull(this.UserManager.findProfileByCellphone("+27123456789")); // Asserts the old number no longer finds the user
+        Assertions.assertEquals("upd_", this.UserManager.findProfileByCellphone("+27831234567").getUsername()); // Asserts the new number does
+    }
+
+    // Test to verify that the profile cache keeps at most its limit and rebuilds dropped profiles
+    @Test
+    void testProfileCache_BoundedAndRebuilt() {
+        UserProfile.Cache cache = new UserProfile.Cache(2); // A cache of two profiles
+        for (int i = 0; i < 5; i++) {
+            User user = new User(); // Creates a user for each slot
+            user.setUsername("u" + i + "_");
+            user.setCellphoneNumber("+2712345678" + i);
+            cache.put(new UserProfile(user)); // Caches the user's profile
+        }
+        Assertions.assertEquals(2, cache.size()); // Asserts the cache stayed within its limit
+        User user = new User(); // Creates a user that is not cached
+        user.setUsername("miss_");
+        this.UserManager.getInternalUsers().put("miss_", user); // Adds the user behind the cache's back
+        Assertions.assertEquals("miss_", this.UserManager.getProfile("miss_").getUsername()); // Asserts the profile is built on a miss
+    }
+
     // Inner class to make UserManager testable by exposing protected methods and fields
     private class TestableUserManager extends UserManager {
         // Constructor for TestableUserManager
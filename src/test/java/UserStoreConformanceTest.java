@@ -0,0 +1,85 @@
+//Libraries
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// Test class run against every UserStore backend, so they all behave the same way
+public class UserStoreConformanceTest {
+
+    // Test to verify that saved users, changes and removals are what the next load returns
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "log", "sql", "memory"})
+    void testSaveAndLoad_LatestUsersWin(String backend, @TempDir Path dir) throws IOException {
+        try (UserStore store = UserStore.open(backend, dir.resolve("users.json"))) {
+            Assertions.assertTrue(store.load().isEmpty()); // Nothing saved yet
+            Map<String, User> users = new HashMap<>();
+            users.put("ann_", user("ann_", "Ann", "+27711111111"));
+            users.put("bob_", user("bob_", "Bob", "+27722222222"));
+            store.save(new HashMap<>(users));
+            Assertions.assertEquals("Ann", store.load().get("ann_").getName());
+            store.load().get("ann_").setName("Changed"); // Loaded users are the caller's own copies
+            Assertions.assertEquals("Ann", store.load().get("ann_").getName());
+            users.put("ann_", user("ann_", "Anna", "+27711111111"));
+            users.remove("bob_");
+            store.save(new HashMap<>(users));
+            Map<String, User> loaded = store.load();
+            Assertions.assertEquals(1, loaded.size());
+            Assertions.assertEquals("Anna", loaded.get("ann_").getName());
+            Assertions.assertEquals("Passw0rd!", loaded.get("ann_").getPassword());
+            Assertions.assertEquals("+27711111111", loaded.get("ann_").getCellphoneNumber());
+        }
+    }
+
+    // Test to verify that the file-backed stores give back the same users after reopening
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "log", "sql"})
+    void testReopen_KeepsUsers(String backend, @TempDir Path dir) throws IOException {
+        Path file = dir.resolve("users.json");
+        try (UserStore store = UserStore.open(backend, file)) {
+            Map<String, User> users = new HashMap<>();
+            for (int i = 0; i < 20; i++) {
+                users.put("u" + i + "_", user("u" + i + "_", "Name" + i, "+2771234567" + (i % 10)));
+                store.save(new HashMap<>(users)); // One save per registration
+            }
+        }
+        try (UserStore store = UserStore.open(backend, file)) {
+            Map<String, User> loaded = store.load();
+            Assertions.assertEquals(20, loaded.size());
+            Assertions.assertEquals("Name13", loaded.get("u13_").getName());
+        }
+    }
+
+    // Test to verify that a users.json write that fails is reported by save instead of being taken as saved
+    @Test
+    void testJsonSave_FailedWriteThrows(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("users.json");
+        Files.createDirectory(dir.resolve("users.json.tmp")); // The snapshot's temporary file cannot be created
+        try (UserStore json = UserStore.open("json", file)) {
+            Map<String, User> users = new HashMap<>();
+            users.put("ann_", user("ann_", "Ann", "+27711111111"));
+            Assertions.assertThrows(IOException.class, () -> json.save(new HashMap<>(users)));
+            Assertions.assertThrows(IllegalStateException.class, json::flush);
+            Files.delete(dir.resolve("users.json.tmp"));
+            json.save(new HashMap<>(users)); // Writes once the file can be written again
+            Assertions.assertEquals("Ann", json.load().get("ann_").getName());
+        }
+    }
+
+    // Creates a user with a fixed password
+    private static User user(String username, String name, String cellphone) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("Passw0rd!");
+        user.setName(name);
+        user.setSurname("Tester");
+        user.setCellphoneNumber(cellphone);
+        return user;
+    }
+}